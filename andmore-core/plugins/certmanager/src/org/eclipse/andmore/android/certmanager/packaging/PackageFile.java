@@ -16,33 +16,29 @@
 
 package org.eclipse.andmore.android.certmanager.packaging;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.FileChannel;
-import java.nio.channels.WritableByteChannel;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
-import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 import org.eclipse.andmore.android.certmanager.CertificateManagerActivator;
@@ -58,10 +54,19 @@ import org.eclipse.core.runtime.Platform;
 
 /**
  * This class is an in-memory package file representation.
+ * <p>
+ * Entries coming from a base jar file are not extracted: their content is read
+ * from the jar file when they are digested, and their compressed data is copied
+ * as is when the package is written.
  */
 public class PackageFile {
 	private static final String ANDROID_FEATURE = "org.eclipse.andmore.android.feature";
 
+	/*
+	 * Alignment of uncompressed entries, as done by zipalign
+	 */
+	private static final int ZIP_ALIGNMENT = 4;
+
 	/*
 	 * Map of entries contained in this package file
 	 */
@@ -73,6 +78,21 @@ public class PackageFile {
 	 */
 	private final Map<String, File> tempEntryMap = new HashMap<String, File>();
 
+	/*
+	 * Map of entries read from the base jar file, in the jar file order
+	 */
+	private final Map<String, ZipCentralDirectory.Entry> sourceEntryMap = new LinkedHashMap<String, ZipCentralDirectory.Entry>();
+
+	/*
+	 * The base jar file, if any
+	 */
+	private JarFile sourceJar;
+
+	/*
+	 * The central directory of the base jar file, if any
+	 */
+	private ZipCentralDirectory sourceDirectory;
+
 	/*
 	 * Package manifest
 	 */
@@ -143,47 +163,20 @@ public class PackageFile {
 			manifest = createManifest(createdBy);
 		}
 
-		// go through all the entries in the base jar file
-		Enumeration<JarEntry> entryEnum = jarFile.entries();
-
-		while (entryEnum.hasMoreElements()) {
-			JarEntry entry = entryEnum.nextElement();
-			if (!entry.getName().equalsIgnoreCase(
+		// go through all the entries in the base jar file. The jar file is
+		// kept open to read them later, so it must not be closed before
+		// this package file is written.
+		sourceJar = jarFile;
+		sourceDirectory = new ZipCentralDirectory(new File(jarFile.getName()));
+		for (ZipCentralDirectory.Entry entry : sourceDirectory.getEntries()) {
+			if (!entry.name.equalsIgnoreCase(
 					CertificateManagerActivator.METAFILES_DIR + CertificateManagerActivator.JAR_SEPARATOR
 							+ CertificateManagerActivator.MANIFEST_FILE_NAME)) {
-				// create a temporary file for this entry
-				InputStream is = jarFile.getInputStream(entry);
-				File tempFile = File.createTempFile(CertificateManagerActivator.TEMP_FILE_PREFIX, null);
-				tempFile.deleteOnExit();
-
-				// copy contents from the original file to the temporary file
-				BufferedInputStream bis = null;
-				BufferedOutputStream bos = null;
-
-				try {
-					bis = new BufferedInputStream(is);
-					bos = new BufferedOutputStream(new FileOutputStream(tempFile));
-
-					int c;
-					while ((c = bis.read()) >= 0) {
-						bos.write(c);
-					}
-				} finally {
-					if (bis != null) {
-						bis.close();
-					}
-
-					if (bos != null) {
-						bos.close();
-					}
-				}
-
-				// add the temporary file to the package file
-				setTempEntryFile(entry.getName(), tempFile);
+				sourceEntryMap.put(entry.name, entry);
 
 				// check if the entry is not compressed to keep it this way
-				if (entry.getMethod() == ZipEntry.STORED) {
-					rawFiles.add(entry.getName());
+				if (entry.method == ZipEntry.STORED) {
+					rawFiles.add(entry.name);
 				}
 			}
 		}
@@ -233,7 +226,9 @@ public class PackageFile {
 	 * @return Set containing the names for all the entries in this package file
 	 */
 	public Set<String> getEntryNames() {
-		return Collections.unmodifiableSet(entryMap.keySet());
+		Set<String> entryNames = new LinkedHashSet<String>(sourceEntryMap.keySet());
+		entryNames.addAll(entryMap.keySet());
+		return Collections.unmodifiableSet(entryNames);
 	}
 
 	/**
@@ -241,12 +236,36 @@ public class PackageFile {
 	 * 
 	 * @param entryName
 	 *            the entry name
-	 * @return the File object corresponding to entryName
+	 * @return the File object corresponding to entryName, or null if the entry
+	 *         is read from the base jar file
 	 */
 	public File getEntryFile(String entryName) {
 		return entryMap.get(entryName);
 	}
 
+	/**
+	 * Opens a stream over the uncompressed content of a given entry, whether it
+	 * is a file or an entry of the base jar file. The stream must be closed by
+	 * the caller.
+	 * 
+	 * @param entryName
+	 *            the entry name
+	 * @return a stream over the entry content, or null if there is no such
+	 *         entry
+	 * @throws IOException
+	 *             if the entry cannot be opened
+	 */
+	public InputStream getEntryInputStream(String entryName) throws IOException {
+		File file = entryMap.get(entryName);
+		if (file != null) {
+			return new FileInputStream(file);
+		}
+		if (sourceEntryMap.containsKey(entryName)) {
+			return sourceJar.getInputStream(sourceJar.getEntry(entryName));
+		}
+		return null;
+	}
+
 	/**
 	 * Puts a File object as a named entry in this package file
 	 * 
@@ -256,6 +275,7 @@ public class PackageFile {
 	 *            the File object corresponding to entryName
 	 */
 	public void setEntryFile(String entryName, File file) {
+		sourceEntryMap.remove(entryName);
 		entryMap.put(entryName, file);
 	}
 
@@ -268,6 +288,7 @@ public class PackageFile {
 	 *            the temporary file object corresponding to entryName
 	 */
 	public void setTempEntryFile(String entryName, File tempFile) {
+		sourceEntryMap.remove(entryName);
 		entryMap.put(entryName, tempFile);
 		tempEntryMap.put(entryName, tempFile);
 	}
@@ -280,6 +301,7 @@ public class PackageFile {
 	 * @throws IOException
 	 */
 	public void removeEntryFile(String entryName) throws IOException {
+		sourceEntryMap.remove(entryName);
 		File entryFile = entryMap.get(entryName);
 		if (entryFile != null) {
 			entryMap.remove(entryName);
@@ -316,79 +338,50 @@ public class PackageFile {
 		manifest = cleanManifest;
 	}
 
-	private void writeCompressed(JarOutputStream jarOut, String entryName) throws IOException {
-		File file = entryMap.get(entryName);
-		if ((file.exists()) && (file.isFile())) {
-			JarEntry entry = new JarEntry(entryName);
-			jarOut.putNextEntry(entry);
-			WritableByteChannel outputChannel = null;
-			FileChannel readFromFileChannel = null;
-			FileInputStream inputStream = null;
+	/*
+	 * Whether an entry must be stored uncompressed
+	 */
+	private boolean isRaw(String entryName) {
+		return entryName.contains("raw/") || rawFiles.contains(entryName);
+	}
+
+	private void writeSourceEntry(RawZipOutputStream zipOut, RandomAccessFile source, ZipCentralDirectory.Entry entry)
+			throws IOException {
+		if (!isRaw(entry.name) || (entry.method == ZipEntry.STORED)) {
+			// copy the entry data as is, without inflating it
+			zipOut.writeRawEntry(entry.name, entry.method, entry.time, entry.crc, entry.compressedSize, entry.size,
+					sourceDirectory.getRawInputStream(source, entry));
+		} else {
+			InputStream inputStream = sourceJar.getInputStream(sourceJar.getEntry(entry.name));
 			try {
-				outputChannel = Channels.newChannel(jarOut);
-				inputStream = new FileInputStream(file);
-				readFromFileChannel = inputStream.getChannel();
-				readFromFileChannel.transferTo(0, file.length(), outputChannel);
+				zipOut.writeRawEntry(entry.name, ZipEntry.STORED, entry.time, entry.crc, entry.size, entry.size,
+						inputStream);
 			} finally {
-				try {
-					if (jarOut != null) {
-						jarOut.closeEntry();
-					}
-					if (readFromFileChannel != null) {
-						readFromFileChannel.close();
-					}
-					if (inputStream != null) {
-						inputStream.close();
-					}
-				} catch (IOException e) {
-					AndmoreLogger.error("Could not close stream: ", e.getMessage()); //$NON-NLS-1$
-				}
+				inputStream.close();
 			}
 		}
-
 	}
 
-	private void writeRaw(JarOutputStream jarOut, String entryName) throws IOException {
-		FileInputStream inputStream = null;
+	private void writeFileEntry(RawZipOutputStream zipOut, String entryName) throws IOException {
 		File file = entryMap.get(entryName);
 		if ((file.exists()) && (file.isFile())) {
-			CRC32 crc = new CRC32();
-			JarEntry entry = new JarEntry(entryName);
-			entry.setMethod(ZipEntry.STORED);
-			entry.setSize(file.length());
-			WritableByteChannel outputChannel = null;
-			FileChannel readFromFileChannel = null;
+			// file entries are the small signature files: read them at once
+			byte[] content = new byte[(int) file.length()];
+			DataInputStream inputStream = new DataInputStream(new FileInputStream(file));
 			try {
-				outputChannel = Channels.newChannel(jarOut);
-				inputStream = new FileInputStream(file);
-				readFromFileChannel = inputStream.getChannel();
-
-				ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
-				crc.reset();
-				while (readFromFileChannel.read(buffer) > 0) {
-					buffer.flip();
-					byte[] byteArray = new byte[buffer.limit()];
-					buffer.get(byteArray, 0, buffer.limit());
-					crc.update(byteArray);
-					buffer.clear();
-				}
-				entry.setCrc(crc.getValue());
-				jarOut.putNextEntry(entry);
-				readFromFileChannel.transferTo(0, file.length(), outputChannel);
+				inputStream.readFully(content);
 			} finally {
-				if (inputStream != null) {
-					inputStream.close();
-				}
-				if (readFromFileChannel != null) {
-					readFromFileChannel.close();
-				}
-				jarOut.closeEntry();
+				inputStream.close();
 			}
+			zipOut.writeEntry(entryName, isRaw(entryName) ? ZipEntry.STORED : ZipEntry.DEFLATED, content);
 		}
 	}
 
 	/**
-	 * Writes this package file to an output stream
+	 * Writes this package file to an output stream. The output stream must not
+	 * write to the base jar file; use {@link #write(File)} to replace it.
+	 * Uncompressed entries are 4-byte aligned, so the package does not need to
+	 * be zipaligned afterwards.
 	 * 
 	 * @param outputStream
 	 *            the stream to write the package to
@@ -397,28 +390,70 @@ public class PackageFile {
 	 *             the output stream
 	 */
 	public void write(OutputStream outputStream) throws IOException {
-		// create a jar output stream
-		JarOutputStream jarOut = null;
+		OutputStream bufferedOut = new BufferedOutputStream(outputStream, 64 * 1024);
+		RandomAccessFile source = null;
 
 		try {
-			jarOut = new JarOutputStream(outputStream, manifest);
-
-			// for each entry in the package file
-			for (String jarEntryName : entryMap.keySet()) {
-				if (jarEntryName.contains("raw/") || rawFiles.contains(jarEntryName)) {
-					writeRaw(jarOut, jarEntryName);
-				} else {
-					writeCompressed(jarOut, jarEntryName);
+			RawZipOutputStream zipOut = new RawZipOutputStream(bufferedOut, ZIP_ALIGNMENT);
+
+			// the manifest comes first
+			ByteArrayOutputStream manifestStream = new ByteArrayOutputStream();
+			manifest.write(manifestStream);
+			zipOut.writeEntry(CertificateManagerActivator.METAFILES_DIR + CertificateManagerActivator.JAR_SEPARATOR
+					+ CertificateManagerActivator.MANIFEST_FILE_NAME, ZipEntry.DEFLATED, manifestStream.toByteArray());
+
+			// then the entries of the base jar file, copied in one pass
+			if (!sourceEntryMap.isEmpty()) {
+				source = sourceDirectory.open();
+				for (ZipCentralDirectory.Entry entry : sourceEntryMap.values()) {
+					writeSourceEntry(zipOut, source, entry);
 				}
 			}
+
+			// and the files added to the package
+			for (String entryName : entryMap.keySet()) {
+				writeFileEntry(zipOut, entryName);
+			}
+
+			zipOut.finish();
 		} finally {
-			if (jarOut != null) {
-				try {
-					jarOut.finish();
-					jarOut.close();
-				} catch (IOException e) {
-					AndmoreLogger.error("Could not close stream while writing jar file. " + e.getMessage());
+			try {
+				if (source != null) {
+					source.close();
 				}
+				bufferedOut.close();
+			} catch (IOException e) {
+				AndmoreLogger.error("Could not close stream while writing jar file. " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Writes this package file to a file, which may be the base jar file. The
+	 * package is first written to a temporary file, which then replaces the
+	 * destination; the base jar file is closed before being replaced.
+	 * 
+	 * @param destination
+	 *            the file to write the package to
+	 * @throws IOException
+	 *             if an I/O error occurs when writing the package contents
+	 */
+	public void write(File destination) throws IOException {
+		File tempFile = File.createTempFile(CertificateManagerActivator.TEMP_FILE_PREFIX, null,
+				destination.getAbsoluteFile().getParentFile());
+		try {
+			write(new FileOutputStream(tempFile));
+
+			if ((sourceJar != null)
+					&& new File(sourceJar.getName()).getCanonicalFile().equals(destination.getCanonicalFile())) {
+				sourceJar.close();
+			}
+			if (!tempFile.renameTo(destination)) {
+				FileUtil.copyFile(tempFile, destination);
+			}
+		} finally {
+			if (tempFile.exists()) {
+				tempFile.delete();
 			}
 		}
 	}
@@ -435,6 +470,9 @@ public class PackageFile {
 				totalSize += file.length();
 			}
 		}
+		for (ZipCentralDirectory.Entry entry : sourceEntryMap.values()) {
+			totalSize += entry.size;
+		}
 
 		return totalSize;
 	}
@@ -510,7 +548,8 @@ public class PackageFile {
 	}
 
 	/**
-	 * Execute the zipalign for a certain apk
+	 * Execute the zipalign for a certain apk. This is not needed for packages
+	 * written by {@link #write(OutputStream)}, which are already aligned.
 	 * 
 	 * @param apk
 	 */
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.certmanager.packaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Zip output stream writing entries whose CRC and sizes are known beforehand.
+ * Unlike {@link java.util.zip.ZipOutputStream}, it accepts already compressed
+ * data, so that entries can be copied from another zip file without being
+ * inflated and deflated again.
+ * <p>
+ * The data of uncompressed entries can be aligned, as zipalign does, by
+ * padding the extra field of their local header, so that the package does not
+ * need to be aligned afterwards.
+ */
+final class RawZipOutputStream {
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	private static final int VERSION = 20;
+
+	/**
+	 * General purpose flag telling that names are UTF-8 encoded
+	 */
+	private static final int FLAG_UTF8 = 0x0800;
+
+	private final OutputStream out;
+
+	private final int alignment;
+
+	private final List<ZipCentralDirectory.Entry> entries = new ArrayList<ZipCentralDirectory.Entry>();
+
+	private final byte[] buffer = new byte[64 * 1024];
+
+	private long written;
+
+	/**
+	 * Creates a zip output stream
+	 *
+	 * @param out
+	 *            the stream to write the zip file to
+	 * @param alignment
+	 *            the alignment in bytes of the data of uncompressed entries, or
+	 *            1 to not align them
+	 */
+	RawZipOutputStream(OutputStream out, int alignment) {
+		this.out = out;
+		this.alignment = alignment;
+	}
+
+	/**
+	 * Writes an entry from its raw data
+	 *
+	 * @param name
+	 *            the entry name
+	 * @param method
+	 *            {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+	 * @param time
+	 *            the entry time, in MS-DOS format
+	 * @param crc
+	 *            the CRC-32 of the uncompressed data
+	 * @param compressedSize
+	 *            the size of the raw data
+	 * @param size
+	 *            the size of the uncompressed data
+	 * @param data
+	 *            the raw data, compressed if the method is deflated
+	 * @throws IOException
+	 *             if an I/O error occurs, or if the data is shorter than
+	 *             expected
+	 */
+	void writeRawEntry(String name, int method, int time, long crc, long compressedSize, long size,
+			InputStream data) throws IOException {
+		ZipCentralDirectory.Entry entry = new ZipCentralDirectory.Entry();
+		entry.name = name;
+		entry.method = method;
+		entry.time = time;
+		entry.crc = crc;
+		entry.compressedSize = compressedSize;
+		entry.size = size;
+		entry.localHeaderOffset = written;
+
+		byte[] nameBytes = name.getBytes("UTF-8");
+		int padding = 0;
+		if ((method == ZipEntry.STORED) && (alignment > 1)) {
+			long dataOffset = written + 30 + nameBytes.length;
+			padding = (int) ((alignment - (dataOffset % alignment)) % alignment);
+		}
+
+		byte[] header = new byte[30];
+		writeInt(header, 0, LOCAL_SIGNATURE);
+		writeShort(header, 4, VERSION);
+		writeShort(header, 6, FLAG_UTF8);
+		writeShort(header, 8, method);
+		writeInt(header, 10, time);
+		writeInt(header, 14, (int) crc);
+		writeInt(header, 18, (int) compressedSize);
+		writeInt(header, 22, (int) size);
+		writeShort(header, 26, nameBytes.length);
+		writeShort(header, 28, padding);
+		write(header);
+		write(nameBytes);
+		write(new byte[padding]);
+
+		long remaining = compressedSize;
+		while (remaining > 0) {
+			int count = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (count < 0) {
+				throw new IOException("Unexpected end of data for zip entry " + name);
+			}
+			out.write(buffer, 0, count);
+			written += count;
+			remaining -= count;
+		}
+
+		entries.add(entry);
+	}
+
+	/**
+	 * Writes an entry from its content, compressing it if needed
+	 *
+	 * @param name
+	 *            the entry name
+	 * @param method
+	 *            {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+	 * @param content
+	 *            the uncompressed entry content
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void writeEntry(String name, int method, byte[] content) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(content);
+
+		byte[] data = content;
+		if (method == ZipEntry.DEFLATED) {
+			data = deflate(content);
+		}
+
+		writeRawEntry(name, method, getDosTime(System.currentTimeMillis()), crc.getValue(), data.length,
+				content.length, new ByteArrayInputStream(data));
+	}
+
+	/**
+	 * Writes the central directory, completing the zip file. The underlying
+	 * stream is not closed.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	void finish() throws IOException {
+		long directoryOffset = written;
+		for (ZipCentralDirectory.Entry entry : entries) {
+			byte[] nameBytes = entry.name.getBytes("UTF-8");
+			byte[] header = new byte[46];
+			writeInt(header, 0, CENTRAL_SIGNATURE);
+			writeShort(header, 4, VERSION);
+			writeShort(header, 6, VERSION);
+			writeShort(header, 8, FLAG_UTF8);
+			writeShort(header, 10, entry.method);
+			writeInt(header, 12, entry.time);
+			writeInt(header, 16, (int) entry.crc);
+			writeInt(header, 20, (int) entry.compressedSize);
+			writeInt(header, 24, (int) entry.size);
+			writeShort(header, 28, nameBytes.length);
+			writeInt(header, 42, (int) entry.localHeaderOffset);
+			write(header);
+			write(nameBytes);
+		}
+
+		byte[] end = new byte[22];
+		writeInt(end, 0, END_SIGNATURE);
+		writeShort(end, 8, entries.size());
+		writeShort(end, 10, entries.size());
+		writeInt(end, 12, (int) (written - directoryOffset));
+		writeInt(end, 16, (int) directoryOffset);
+		write(end);
+		out.flush();
+	}
+
+	private void write(byte[] b) throws IOException {
+		out.write(b);
+		written += b.length;
+	}
+
+	private static byte[] deflate(byte[] content) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+			byte[] chunk = new byte[8192];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(chunk);
+				compressed.write(chunk, 0, count);
+			}
+			return compressed.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Converts a Java time to the MS-DOS date and time format used by zip
+	 * files
+	 */
+	static int getDosTime(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return ((year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21)
+				| (calendar.get(Calendar.DAY_OF_MONTH) << 16) | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+				| (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+	}
+
+	private static void writeShort(byte[] b, int offset, int value) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >> 8);
+	}
+
+	private static void writeInt(byte[] b, int offset, int value) {
+		writeShort(b, offset, value);
+		writeShort(b, offset + 2, value >> 16);
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.certmanager.packaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The central directory of a zip file, giving for each entry where its
+ * (possibly compressed) data is stored, so that it can be copied to another zip
+ * file as is, without inflating and deflating it again.
+ */
+final class ZipCentralDirectory {
+	private static final int END_SIGNATURE = 0x06054b50;
+
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+	private static final int END_SIZE = 22;
+
+	private static final int CENTRAL_SIZE = 46;
+
+	private static final int LOCAL_SIZE = 30;
+
+	/**
+	 * An entry of the central directory
+	 */
+	static final class Entry {
+		String name;
+
+		int method;
+
+		int time;
+
+		long crc;
+
+		long compressedSize;
+
+		long size;
+
+		long localHeaderOffset;
+	}
+
+	private final File file;
+
+	private final List<Entry> entries;
+
+	/**
+	 * Reads the central directory of a zip file
+	 *
+	 * @param file
+	 *            the zip file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a supported zip file
+	 */
+	ZipCentralDirectory(File file) throws IOException {
+		this.file = file;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			entries = readEntries(raf);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Gets the entries, in the order of the central directory
+	 */
+	List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Opens the zip file to read raw entry data. The returned file must be
+	 * closed by the caller.
+	 */
+	RandomAccessFile open() throws IOException {
+		return new RandomAccessFile(file, "r");
+	}
+
+	/**
+	 * Gets a stream over the raw data of an entry, as stored in the zip file
+	 *
+	 * @param raf
+	 *            the zip file, as returned by {@link #open()}
+	 * @param entry
+	 *            the entry
+	 * @return a stream over the compressed data of the entry
+	 * @throws IOException
+	 *             if the local header of the entry is invalid
+	 */
+	InputStream getRawInputStream(RandomAccessFile raf, Entry entry) throws IOException {
+		byte[] header = new byte[LOCAL_SIZE];
+		raf.seek(entry.localHeaderOffset);
+		raf.readFully(header);
+		if (readInt(header, 0) != LOCAL_SIGNATURE) {
+			throw new IOException("Invalid local header for zip entry " + entry.name);
+		}
+		long dataOffset = entry.localHeaderOffset + LOCAL_SIZE + readShort(header, 26) + readShort(header, 28);
+		return new RegionInputStream(raf, dataOffset, entry.compressedSize);
+	}
+
+	private static List<Entry> readEntries(RandomAccessFile raf) throws IOException {
+		// the end of central directory record is followed by a comment of
+		// up to 64k
+		long length = raf.length();
+		int tailSize = (int) Math.min(length, END_SIZE + 0xffff);
+		byte[] tail = new byte[tailSize];
+		raf.seek(length - tailSize);
+		raf.readFully(tail);
+
+		int end = -1;
+		for (int i = tailSize - END_SIZE; i >= 0; i--) {
+			if (readInt(tail, i) == END_SIGNATURE) {
+				end = i;
+				break;
+			}
+		}
+		if (end == -1) {
+			throw new IOException("Not a zip file: " + raf);
+		}
+
+		int count = readShort(tail, end + 10);
+		long directorySize = readInt(tail, end + 12) & 0xffffffffL;
+		long directoryOffset = readInt(tail, end + 16) & 0xffffffffL;
+		if ((count == 0xffff) || (directoryOffset == 0xffffffffL)) {
+			throw new IOException("Zip64 files are not supported");
+		}
+
+		byte[] directory = new byte[(int) directorySize];
+		raf.seek(directoryOffset);
+		raf.readFully(directory);
+
+		List<Entry> result = new ArrayList<Entry>(count);
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			if (readInt(directory, offset) != CENTRAL_SIGNATURE) {
+				throw new IOException("Invalid zip central directory");
+			}
+			int nameLength = readShort(directory, offset + 28);
+			int extraLength = readShort(directory, offset + 30);
+			int commentLength = readShort(directory, offset + 32);
+
+			Entry entry = new Entry();
+			entry.method = readShort(directory, offset + 10);
+			entry.time = readInt(directory, offset + 12);
+			entry.crc = readInt(directory, offset + 16) & 0xffffffffL;
+			entry.compressedSize = readInt(directory, offset + 20) & 0xffffffffL;
+			entry.size = readInt(directory, offset + 24) & 0xffffffffL;
+			entry.localHeaderOffset = readInt(directory, offset + 42) & 0xffffffffL;
+			entry.name = new String(directory, offset + CENTRAL_SIZE, nameLength, "UTF-8");
+			result.add(entry);
+
+			offset += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+		}
+
+		return result;
+	}
+
+	private static int readShort(byte[] b, int offset) {
+		return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8);
+	}
+
+	private static int readInt(byte[] b, int offset) {
+		return readShort(b, offset) | (readShort(b, offset + 2) << 16);
+	}
+
+	/**
+	 * Stream over a region of a file
+	 */
+	private static final class RegionInputStream extends InputStream {
+		private final RandomAccessFile raf;
+
+		private long position;
+
+		private long remaining;
+
+		RegionInputStream(RandomAccessFile raf, long offset, long length) {
+			this.raf = raf;
+			this.position = offset;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			raf.seek(position);
+			int count = raf.read(b, off, (int) Math.min(len, remaining));
+			if (count > 0) {
+				position += count;
+				remaining -= count;
+			}
+			return count;
+		}
+	}
+}
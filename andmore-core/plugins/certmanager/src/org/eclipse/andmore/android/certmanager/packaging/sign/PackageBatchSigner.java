@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.certmanager.packaging.sign;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.UnrecoverableKeyException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarFile;
+
+import org.eclipse.andmore.android.certmanager.packaging.PackageFile;
+import org.eclipse.andmore.android.certmanager.ui.model.IKeyStoreEntry;
+import org.eclipse.andmore.android.common.log.AndmoreLogger;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Utility class used to sign several package files at once.
+ * <p>
+ * Packages are signed concurrently on a bounded pool of threads. Each package
+ * is replaced by its signed and aligned version, so no zipalign step is needed
+ * afterwards. This class does not depend on the UI and can be used headless,
+ * e.g. from a release build.
+ */
+public class PackageBatchSigner {
+	private static final long POLL_INTERVAL_MS = 200;
+
+	/**
+	 * Signs a set of packages, using as many threads as there are processors
+	 *
+	 * @see #signPackages(List, IKeyStoreEntry, String, String, int,
+	 *      IProgressMonitor)
+	 */
+	public static Map<File, Exception> signPackages(List<File> packages, IKeyStoreEntry keystoreEntry,
+			String keyEntryPassword, String createdBy, IProgressMonitor monitor) throws UnrecoverableKeyException,
+			SignException {
+		return signPackages(packages, keystoreEntry, keyEntryPassword, createdBy, Runtime.getRuntime()
+				.availableProcessors(), monitor);
+	}
+
+	/**
+	 * Signs a set of packages, replacing each one by its signed version. Any
+	 * existing signature is removed first.
+	 * <p>
+	 * The monitor is advanced by one for each package as it completes. A
+	 * failure to sign one package does not stop the others: the failures are
+	 * returned instead. If the monitor is canceled, the packages whose signing
+	 * has not started yet are left untouched and reported as failed with an
+	 * {@link OperationCanceledException}; the packages being signed are
+	 * completed, and reported with their actual result.
+	 *
+	 * @param packages
+	 *            the package files to sign
+	 * @param keystoreEntry
+	 *            the signing key entry
+	 * @param keyEntryPassword
+	 *            the password of the key entry
+	 * @param createdBy
+	 *            Created-By manifest attribute
+	 * @param threads
+	 *            the maximum number of packages to sign at once
+	 * @param monitor
+	 *            the progress monitor, or null
+	 * @return the exception that caused each package which could not be signed
+	 *         to fail, by package, in the order of the given packages. The map
+	 *         is empty if all the packages have been signed.
+	 * @throws UnrecoverableKeyException
+	 *             if the key cannot be recovered with the given password; no
+	 *             package is modified in that case
+	 * @throws SignException
+	 *             if the key cannot be read from the key store
+	 */
+	public static Map<File, Exception> signPackages(List<File> packages, final IKeyStoreEntry keystoreEntry,
+			final String keyEntryPassword, final String createdBy, int threads, IProgressMonitor monitor)
+			throws UnrecoverableKeyException, SignException {
+		if (monitor == null) {
+			monitor = new NullProgressMonitor();
+		}
+
+		// check the password once, rather than failing on every package
+		try {
+			synchronized (keystoreEntry) {
+				keystoreEntry.getPrivateKey(keyEntryPassword);
+			}
+		} catch (UnrecoverableKeyException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SignException(e.getMessage(), e);
+		}
+
+		Map<File, Exception> failures = new HashMap<File, Exception>();
+		int poolSize = Math.max(1, Math.min(threads, packages.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Package signer"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// Set on cancellation. Tasks check it before touching their package,
+		// and tasks already running are never interrupted, since a package
+		// interrupted while being replaced would be lost.
+		final AtomicBoolean canceled = new AtomicBoolean();
+		boolean interrupted = false;
+
+		monitor.beginTask("Signing packages", packages.size());
+		try {
+			CompletionService<File> completionService = new ExecutorCompletionService<File>(executor);
+			Map<Future<File>, File> pending = new HashMap<Future<File>, File>();
+			for (final File packageFile : packages) {
+				Future<File> future = completionService.submit(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						if (canceled.get()) {
+							throw new OperationCanceledException();
+						}
+						signPackage(packageFile, keystoreEntry, keyEntryPassword, createdBy);
+						return packageFile;
+					}
+				});
+				pending.put(future, packageFile);
+			}
+
+			// report the progress from this thread, as monitors are usually
+			// not thread safe
+			while (!pending.isEmpty()) {
+				if (monitor.isCanceled()) {
+					canceled.set(true);
+				}
+
+				Future<File> future;
+				try {
+					future = completionService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					// stop starting new tasks, but wait for the running ones
+					interrupted = true;
+					canceled.set(true);
+					continue;
+				}
+				if (future == null) {
+					continue;
+				}
+
+				File packageFile = pending.remove(future);
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof OperationCanceledException) {
+						failures.put(packageFile, (OperationCanceledException) cause);
+					} else {
+						Exception exception = cause instanceof Exception ? (Exception) cause : new SignException(
+								cause.getMessage(), cause);
+						AndmoreLogger.error(PackageBatchSigner.class, "Could not sign package " + packageFile,
+								exception);
+						failures.put(packageFile, exception);
+					}
+				} catch (InterruptedException e) {
+					// cannot happen, the future is done
+					interrupted = true;
+				}
+				monitor.subTask(packageFile.getName());
+				monitor.worked(1);
+			}
+		} finally {
+			canceled.set(true);
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+					// wait for the running tasks to complete
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+			monitor.done();
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		// keep the order of the given packages
+		Map<File, Exception> orderedFailures = new LinkedHashMap<File, Exception>();
+		for (File packageFile : packages) {
+			if (failures.containsKey(packageFile)) {
+				orderedFailures.put(packageFile, failures.get(packageFile));
+			}
+		}
+
+		return orderedFailures;
+	}
+
+	/**
+	 * Signs a package, replacing it by its signed version. Any existing
+	 * signature is removed first.
+	 *
+	 * @param packageFile
+	 *            the package file to sign
+	 * @param keystoreEntry
+	 *            the signing key entry
+	 * @param keyEntryPassword
+	 *            the password of the key entry
+	 * @param createdBy
+	 *            Created-By manifest attribute
+	 * @throws IOException
+	 *             if the package cannot be read or written
+	 * @throws SignException
+	 *             if a processing error occurs during the signing process
+	 * @throws UnrecoverableKeyException
+	 *             if the key cannot be recovered with the given password
+	 */
+	public static void signPackage(File packageFile, IKeyStoreEntry keystoreEntry, String keyEntryPassword,
+			String createdBy) throws IOException, SignException, UnrecoverableKeyException {
+		JarFile jar = new JarFile(packageFile);
+		PackageFile pack = null;
+		try {
+			// Open package and remove signature
+			pack = new PackageFile(jar);
+			pack.removeMetaEntryFiles();
+
+			// Sign the package and replace it
+			PackageFileSigner.signPackage(pack, keystoreEntry, keyEntryPassword, createdBy);
+			pack.write(packageFile);
+		} finally {
+			try {
+				if (pack != null) {
+					pack.removeTemporaryEntryFiles();
+				}
+				jar.close();
+			} catch (IOException e) {
+				AndmoreLogger.error(PackageBatchSigner.class, "Could not delete temporary files", e);
+			}
+		}
+	}
+}
@@ -18,13 +18,9 @@ package org.eclipse.andmore.android.certmanager.packaging.sign;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.security.InvalidKeyException;
 import java.security.KeyStoreException;
 import java.security.MessageDigest;
@@ -106,26 +102,28 @@ public class PackageFileSigner {
 	 */
 	private static void addFilesDigestsToManifest(PackageFile packageFile, Base64Encoder encoder,
 			MessageDigest messageDigest) throws IOException {
-		InputStream fileInputStream = null;
-		ReadableByteChannel rc = null;
-		ByteArrayOutputStream encodedStream = null;
+		byte[] buffer = new byte[64 * 1024];
+		ByteArrayOutputStream encodedStream = new ByteArrayOutputStream();
 
-		// for each entry in the package file
+		// for each entry in the package file (directories are not digested)
 		for (String entryName : packageFile.getEntryNames()) {
-			File file = packageFile.getEntryFile(entryName);
-			if (file.isFile()) {
-				try {
-					// read the file contents
-					fileInputStream = new FileInputStream(file);
-					rc = Channels.newChannel(fileInputStream);
-					ByteBuffer byteBuffer = ByteBuffer.allocate((int) file.length());
-					rc.read(byteBuffer);
+			if (entryName.endsWith(CertificateManagerActivator.JAR_SEPARATOR)) {
+				continue;
+			}
 
+			// stream the entry contents straight from the package
+			InputStream inputStream = packageFile.getEntryInputStream(entryName);
+			if (inputStream != null) {
+				try {
 					// compute the digest
 					messageDigest.reset();
-					byte[] digestedArray = messageDigest.digest(byteBuffer.array());
+					int count;
+					while ((count = inputStream.read(buffer)) > 0) {
+						messageDigest.update(buffer, 0, count);
+					}
+					byte[] digestedArray = messageDigest.digest();
 
-					encodedStream = new ByteArrayOutputStream();
+					encodedStream.reset();
 					encoder.encode(digestedArray, 0, digestedArray.length, encodedStream);
 					String digestedMessage = encodedStream.toString();
 
@@ -135,15 +133,7 @@ public class PackageFileSigner {
 					packageFile.getManifest().getEntries().put(entryName, jarEntryAttributes);
 				} finally {
 					try {
-						if (encodedStream != null) {
-							encodedStream.close();
-						}
-						if (rc != null) {
-							rc.close();
-						}
-						if (fileInputStream != null) {
-							fileInputStream.close();
-						}
+						inputStream.close();
 					} catch (IOException e) {
 						AndmoreLogger.error("Could not close stream while signing package. " + e.getMessage());
 					}
@@ -209,10 +199,16 @@ public class PackageFileSigner {
 
 		File sigBlockFile = File.createTempFile(CertificateManagerActivator.TEMP_FILE_PREFIX, null);
 		FileOutputStream sigBlockFileOutStream = null;
+		String sigBlockFileName;
 
 		try {
 			sigBlockFileOutStream = new FileOutputStream(sigBlockFile);
-			signatureBlockFile.write(sigBlockFileOutStream);
+			// packages may be signed concurrently (see PackageBatchSigner):
+			// don't access the key store from several threads at once
+			synchronized (keystoreEntry) {
+				signatureBlockFile.write(sigBlockFileOutStream);
+				sigBlockFileName = signatureBlockFile.toString();
+			}
 		} finally {
 			if (sigBlockFileOutStream != null) {
 				try {
@@ -224,6 +220,6 @@ public class PackageFileSigner {
 			}
 		}
 
-		packageFile.setTempEntryFile(signatureBlockFile.toString(), sigBlockFile);
+		packageFile.setTempEntryFile(sigBlockFileName, sigBlockFile);
 	}
 }
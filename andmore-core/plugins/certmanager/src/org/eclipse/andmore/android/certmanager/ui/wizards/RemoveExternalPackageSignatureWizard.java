@@ -16,9 +16,7 @@
 package org.eclipse.andmore.android.certmanager.ui.wizards;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
@@ -87,7 +85,6 @@ public class RemoveExternalPackageSignatureWizard extends Wizard {
 					monitor.setTaskName(CertificateManagerNLS.UNSIGN_EXTERNAL_PKG_WIZARD_OPERATION + " "
 							+ file.getName());
 					if ((file != null) && file.exists() && file.isFile() && file.canWrite()) {
-						OutputStream fileToWrite = null;
 						JarFile jar = null;
 						PackageFile pack = null;
 						try {
@@ -103,9 +100,7 @@ public class RemoveExternalPackageSignatureWizard extends Wizard {
 							}
 
 							// Write the new package file
-							fileToWrite = new FileOutputStream(file);
-							pack.write(fileToWrite);
-							PackageFile.zipAlign(file);
+							pack.write(file);
 						} catch (IOException e) {
 							defectivePackages.add(selected);
 							AndmoreLogger.error(RemoveExternalPackageSignatureWizard.class.toString(),
@@ -127,10 +122,6 @@ public class RemoveExternalPackageSignatureWizard extends Wizard {
 								if (pack != null) {
 									pack.removeTemporaryEntryFiles();
 								}
-
-								if (fileToWrite != null) {
-									fileToWrite.close();
-								}
 							} catch (IOException e) {
 								// Silent exception. Only log the deletion
 								// exception.
@@ -16,20 +16,16 @@
 package org.eclipse.andmore.android.certmanager.ui.wizards;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.security.UnrecoverableKeyException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.jar.JarFile;
+import java.util.Map;
 
 import org.eclipse.andmore.android.certmanager.CertificateManagerActivator;
 import org.eclipse.andmore.android.certmanager.i18n.CertificateManagerNLS;
-import org.eclipse.andmore.android.certmanager.packaging.PackageFile;
+import org.eclipse.andmore.android.certmanager.packaging.sign.PackageBatchSigner;
 import org.eclipse.andmore.android.certmanager.packaging.sign.PackageFileSigner;
-import org.eclipse.andmore.android.certmanager.packaging.sign.SignException;
 import org.eclipse.andmore.android.certmanager.ui.model.IKeyStore;
 import org.eclipse.andmore.android.certmanager.ui.model.IKeyStoreEntry;
 import org.eclipse.andmore.android.common.log.AndmoreLogger;
@@ -93,105 +89,54 @@ public class SignExternalPackageWizard extends Wizard {
 			@Override
 			public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
 				List<String> selectedFiles = SignExternalPackageWizard.this.page.getSelectedPackages();
-				monitor.beginTask(CertificateManagerNLS.SIGN_EXTERNAL_PKG_WIZARD_WINDOW_TITLE, selectedFiles.size() * 2);
+				List<File> packages = new ArrayList<File>();
 				for (String selected : selectedFiles) {
 					File file = new File(selected);
-					monitor.setTaskName(CertificateManagerNLS.SIGN_EXTERNAL_PKG_WIZARD_OPERATION + " " + file.getName());
-					if ((file != null) && file.exists() && file.isFile() && file.canWrite()) {
-						OutputStream fileToWrite = null;
-						PackageFile pack = null;
-						JarFile jar = null;
-						try {
-
-							// Update monitor
-							monitor.worked(1);
-							monitor.setTaskName(CertificateManagerNLS.SIGN_EXTERNAL_PKG_WIZARD_OPERATION + " "
-									+ file.getName());
-
-							String keyStorePassword = SignExternalPackageWizard.this.page.getKeystorePassword();
-							if (SignExternalPackageWizard.this.page.getSavePasswordSelection()) {
-								SignExternalPackageWizard.this.page.getPasswordProvider().saveKeyStorePassword(
-										keyStorePassword);
-							}
-							String keyEntryPassword = SignExternalPackageWizard.this.page.getKeyEntryPassword();
-							boolean keepTrying;
-							if (keyEntryPassword != null) {
-								keepTrying = true;
-							} else {
-								keepTrying = false;
-								throw new Exception();
-							}
-							while (keepTrying) {
-								try {
-									// Open package and remove signature
-									jar = new JarFile(file);
-									pack = new PackageFile(jar);
-									pack.removeMetaEntryFiles();
-
-									// Sign the new package
-									PackageFileSigner.signPackage(pack,
-											SignExternalPackageWizard.this.page.getSelectedKeyEntry(),
-											keyEntryPassword, PackageFileSigner.ECLIPSE_ANDMORE);
-									keepTrying = false;
-								} catch (UnrecoverableKeyException sE) {
-									keyEntryPassword = SignExternalPackageWizard.this.page.getPasswordProvider()
-											.getPassword(
-													SignExternalPackageWizard.this.page.getSelectedKeyEntry()
-															.getAlias(), true, false);
-									if (keyEntryPassword == null) {
-										keepTrying = false;
-									} else {
-										keepTrying = true;
-									}
-								}
-							}
-
-							// Write the new package file
-							fileToWrite = new FileOutputStream(file);
-							pack.write(fileToWrite);
-							PackageFile.zipAlign(file);
-						} catch (IOException e) {
-							defectivePackages.add(selected);
-							AndmoreLogger.error(SignExternalPackageWizard.class.toString(),
-									"Impossible write to package: " + selected + " " + e.getMessage());
-						} catch (SignException e) {
-							defectivePackages.add(selected);
-							AndmoreLogger.error(SignExternalPackageWizard.class.toString(),
-									"Impossible sign the package: " + selected + " " + e.getMessage());
-						} catch (SecurityException e) {
-							defectivePackages.add(selected);
-							AndmoreLogger.error(SignExternalPackageWizard.class.toString(),
-									"Impossible sign the package: " + selected + " " + e.getMessage());
-						} catch (Exception e) {
-							defectivePackages.add(selected);
-							AndmoreLogger.error(SignExternalPackageWizard.class.toString(),
-									"Impossible sign the package: " + selected + " " + e.getMessage());
-						} finally {
-							System.gc(); // Force garbage collector to avoid
-							// errors when deleting temp files
-
-							try {
-								if (pack != null) {
-									pack.removeTemporaryEntryFiles();
-								}
-
-								if (fileToWrite != null) {
-									fileToWrite.close();
-								}
-
-								if (jar != null) {
-									jar.close();
-								}
-							} catch (IOException e) {
-								// Silent exception. Only log the deletion
-								// exception.
-								AndmoreLogger.error(CertificateManagerActivator.PLUGIN_ID, "Deleting temporary files");
-							}
-						}
+					if (file.exists() && file.isFile() && file.canWrite()) {
+						packages.add(file);
 					} else {
 						defectivePackages.add(selected);
 					}
-					monitor.worked(1);
+				}
+
+				IKeyStoreEntry keyEntry = SignExternalPackageWizard.this.page.getSelectedKeyEntry();
+				String keyEntryPassword = SignExternalPackageWizard.this.page.getKeyEntryPassword();
+
+				// Sign the packages concurrently, asking the key password
+				// again while it is wrong
+				Map<File, Exception> failures = null;
+				try {
+					String keyStorePassword = SignExternalPackageWizard.this.page.getKeystorePassword();
+					if (SignExternalPackageWizard.this.page.getSavePasswordSelection()) {
+						SignExternalPackageWizard.this.page.getPasswordProvider().saveKeyStorePassword(
+								keyStorePassword);
+					}
+
+					while ((failures == null) && (keyEntryPassword != null)) {
+						try {
+							failures = PackageBatchSigner.signPackages(packages, keyEntry, keyEntryPassword,
+									PackageFileSigner.ECLIPSE_ANDMORE, monitor);
+						} catch (UnrecoverableKeyException sE) {
+							keyEntryPassword = SignExternalPackageWizard.this.page.getPasswordProvider().getPassword(
+									keyEntry.getAlias(), true, false);
+						}
+					}
+				} catch (Exception e) {
+					AndmoreLogger.error(SignExternalPackageWizard.class.toString(),
+							"Impossible sign the packages: " + e.getMessage());
+				}
+
+				if (failures == null) {
+					// the packages could not be signed at all
+					for (File file : packages) {
+						defectivePackages.add(file.getPath());
+					}
+				} else {
+					for (Map.Entry<File, Exception> failure : failures.entrySet()) {
+						defectivePackages.add(failure.getKey().getPath());
+						AndmoreLogger.error(SignExternalPackageWizard.class.toString(), "Impossible sign the package: "
+								+ failure.getKey().getPath() + " " + failure.getValue().getMessage());
+					}
 				}
 				monitor.done();
 			}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.net.URL;
 
 import org.eclipse.andmore.android.common.log.AndmoreLogger;
+import org.eclipse.andmore.android.manifest.AndroidProjectManifestFile;
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
@@ -58,6 +59,7 @@ public class CommonPlugin extends AbstractUIPlugin {
 
 		super.start(context);
 		plugin = this;
+		AndroidProjectManifestFile.startListening();
 
 		AndmoreLogger.debug(CommonPlugin.class, "Andmore Common Plugin started.");
 	}
@@ -71,6 +73,7 @@ public class CommonPlugin extends AbstractUIPlugin {
 	 */
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		AndroidProjectManifestFile.stopListening();
 		plugin = null;
 		super.stop(context);
 	}
@@ -15,21 +15,40 @@
  */
 package org.eclipse.andmore.android.manifest;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.andmore.android.common.exception.AndroidException;
+import org.eclipse.andmore.android.common.log.AndmoreLogger;
 import org.eclipse.andmore.android.common.utilities.FileUtil;
 import org.eclipse.andmore.android.common.utilities.i18n.UtilitiesNLS;
 import org.eclipse.andmore.android.model.manifest.AndroidManifestFile;
+import org.eclipse.andmore.android.model.manifest.parser.AndroidManifestParser;
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.LocationKind;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.osgi.util.NLS;
+import org.w3c.dom.Document;
 
 /**
  * Class that contains methods to deal with AndroidManifest.xml file in projects
+ * <p>
+ * The XML DOM of the manifest of each project is cached until the file
+ * changes, since the manifest is read over and over, e.g. by the wizards. Each
+ * call still returns a new {@link AndroidManifestFile}, built from the cached
+ * DOM, which the caller is free to modify.
  */
 public class AndroidProjectManifestFile {
 	/**
@@ -37,6 +56,57 @@ public class AndroidProjectManifestFile {
 	 */
 	private static final String ANDROID_MANIFEST_FILENAME = "AndroidManifest.xml";
 
+	/**
+	 * The parsed manifests, by project
+	 */
+	private static final Map<IProject, CachedManifest> cache = new HashMap<IProject, CachedManifest>();
+
+	/**
+	 * Cache statistics
+	 */
+	private static int cacheHits;
+
+	private static int cacheMisses;
+
+	/**
+	 * Listener removing the manifests of the projects whose manifest changed,
+	 * or which were closed or deleted
+	 */
+	private static final IResourceChangeListener cacheListener = new IResourceChangeListener() {
+		@Override
+		public void resourceChanged(IResourceChangeEvent event) {
+			if (event.getResource() instanceof IProject) {
+				// closed or deleted
+				invalidate((IProject) event.getResource());
+			} else if (event.getDelta() != null) {
+				IPath manifestPath = new Path(ANDROID_MANIFEST_FILENAME);
+				for (IResourceDelta projectDelta : event.getDelta().getAffectedChildren()) {
+					IResourceDelta manifestDelta = projectDelta.findMember(manifestPath);
+					// ignore the markers changes, e.g. when the manifest is checked
+					if ((projectDelta.getKind() == IResourceDelta.REMOVED)
+							|| ((manifestDelta != null) && (manifestDelta.getFlags() != IResourceDelta.MARKERS))) {
+						invalidate((IProject) projectDelta.getResource());
+					}
+				}
+			}
+		}
+	};
+
+	/**
+	 * The XML DOM of a manifest file, and the modification stamp of the file
+	 * it was read from
+	 */
+	private static class CachedManifest {
+		private final long modificationStamp;
+
+		private final Document document;
+
+		CachedManifest(long modificationStamp, Document document) {
+			this.modificationStamp = modificationStamp;
+			this.document = document;
+		}
+	}
+
 	/**
 	 * Retrieves the project AndroidManifest.xml file
 	 * 
@@ -56,10 +126,13 @@ public class AndroidProjectManifestFile {
 		if ((resManifest != null) && (resManifest instanceof IFile)) {
 			if (resManifest.exists()) {
 				IFile manifestFile = (IFile) resManifest;
-				IDocument document = FileUtil.readFile(manifestFile);
+				Document document = getDocument(project, manifestFile);
 
 				androidManifestFile = new AndroidManifestFile();
-				androidManifestFile.parseDocument(document);
+				synchronized (document) {
+					// the DOM is shared by the callers, and not thread safe
+					androidManifestFile.parseDocument(document);
+				}
 			} else {
 				String errMsg = NLS.bind(UtilitiesNLS.ERR_AndroidProjectManifest_AndroidManifestDoesNotExist,
 						project.getName());
@@ -76,6 +149,100 @@ public class AndroidProjectManifestFile {
 		return androidManifestFile;
 	}
 
+	/**
+	 * Retrieves the XML DOM of a project AndroidManifest.xml file, from the
+	 * cache if the file has not changed since it was parsed
+	 */
+	private static Document getDocument(IProject project, IFile manifestFile) throws AndroidException,
+			CoreException {
+		// unsaved changes of an editor are read, but are not reflected by the
+		// modification stamp
+		ITextFileBuffer buffer = FileBuffers.getTextFileBufferManager().getTextFileBuffer(
+				manifestFile.getFullPath(), LocationKind.IFILE);
+		if ((buffer != null) && buffer.isDirty()) {
+			return AndroidManifestParser.readDocument(buffer.getDocument());
+		}
+
+		long modificationStamp = manifestFile.getModificationStamp();
+		synchronized (cache) {
+			CachedManifest cached = cache.get(project);
+			if ((cached != null) && (cached.modificationStamp == modificationStamp)) {
+				cacheHits++;
+				return cached.document;
+			}
+			cacheMisses++;
+		}
+
+		IDocument document = FileUtil.readFile(manifestFile);
+		Document xmlDocument = AndroidManifestParser.readDocument(document);
+
+		if (modificationStamp != IResource.NULL_STAMP) {
+			synchronized (cache) {
+				cache.put(project, new CachedManifest(modificationStamp, xmlDocument));
+			}
+		}
+
+		return xmlDocument;
+	}
+
+	/**
+	 * Removes the parsed manifest of a project from the cache
+	 * 
+	 * @param project
+	 *            The project
+	 */
+	public static void invalidate(IProject project) {
+		synchronized (cache) {
+			cache.remove(project);
+		}
+	}
+
+	/**
+	 * Returns the number of manifests read from the cache by
+	 * {@link #getFromProject(IProject)}
+	 * 
+	 * @return the number of cache hits
+	 */
+	public static int getCacheHits() {
+		synchronized (cache) {
+			return cacheHits;
+		}
+	}
+
+	/**
+	 * Returns the number of manifests read and parsed from the file by
+	 * {@link #getFromProject(IProject)}, excluding the unsaved manifests
+	 * 
+	 * @return the number of cache misses
+	 */
+	public static int getCacheMisses() {
+		synchronized (cache) {
+			return cacheMisses;
+		}
+	}
+
+	/**
+	 * Starts listening to the resource changes, to release the parsed
+	 * manifests of the projects which are closed or deleted, or whose manifest
+	 * changed
+	 */
+	public static void startListening() {
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(cacheListener,
+				IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+	}
+
+	/**
+	 * Stops listening to the resource changes, and clears the cache
+	 */
+	public static void stopListening() {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(cacheListener);
+		synchronized (cache) {
+			AndmoreLogger.debug(AndroidProjectManifestFile.class, NLS.bind(
+					"AndroidManifest.xml cache: {0} hits, {1} misses", cacheHits, cacheMisses)); //$NON-NLS-1$
+			cache.clear();
+		}
+	}
+
 	/**
 	 * Saves an AndroidManifestFile object to the AndroidManifest.xml file
 	 * 
@@ -99,5 +266,6 @@ public class AndroidProjectManifestFile {
 		IDocument document = androidManifestFile.getContent();
 
 		FileUtil.saveFile(manifestFile, document, UTF8_ENCODING, overwrite);
+		invalidate(project);
 	}
 }
@@ -29,6 +29,7 @@ import org.eclipse.andmore.android.model.manifest.dom.AndroidManifestNode.NodeTy
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.osgi.util.NLS;
 import org.w3c.dom.Comment;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -56,10 +57,21 @@ public abstract class AndroidManifestParser extends AndroidManifestNodeParser {
 	 *             When a reading error occurs
 	 */
 	public void parseDocument(IDocument document) throws AndroidException {
-		Node node;
-		DOMParser domParser = new DOMParser();
+		parseDocument(readDocument(document));
+	}
 
-		rootNodes.clear();
+	/**
+	 * Parses an IDocument object containing the AndroidManifest.xml into an XML
+	 * DOM, which can then be parsed by {@link #parseDocument(Document)}
+	 * 
+	 * @param document
+	 *            the IDocument object
+	 * @return the XML DOM
+	 * @throws AndroidException
+	 *             When a parsing or reading error occurs
+	 */
+	public static Document readDocument(IDocument document) throws AndroidException {
+		DOMParser domParser = new DOMParser();
 
 		StringReader stringReader = null;
 		try {
@@ -81,7 +93,23 @@ public abstract class AndroidManifestParser extends AndroidManifestNodeParser {
 			}
 		}
 
-		NodeList children = domParser.getDocument().getChildNodes();
+		return domParser.getDocument();
+	}
+
+	/**
+	 * Parses the XML DOM of an AndroidManifest.xml file. The DOM is not
+	 * modified, so the same DOM can be parsed several times, but not
+	 * concurrently.
+	 * 
+	 * @param document
+	 *            the XML DOM
+	 */
+	public void parseDocument(Document document) {
+		Node node;
+
+		rootNodes.clear();
+
+		NodeList children = document.getChildNodes();
 
 		for (int i = 0; i < children.getLength(); i++) {
 			node = children.item(i);
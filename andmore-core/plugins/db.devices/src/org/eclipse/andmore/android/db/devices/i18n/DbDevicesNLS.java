@@ -49,6 +49,8 @@ public class DbDevicesNLS extends NLS {
 
 	public static String DeviceDbNode_Push_Local_File_To_Device_Failed;
 
+	public static String DeviceDbNode_Remote_Md5_Failed;
+
 	public static String DeviceDbNode_RefreshQuestion;
 
 	public static String DeviceDbNode_Remote_File_Modified_Msg;
@@ -59,6 +61,10 @@ public class DbDevicesNLS extends NLS {
 
 	public static String DeviceDbNode_User_Canceled_Overwrite;
 
+	public static String DeviceDbNode_Write_Back_Job_Name;
+
+	public static String DeviceDbNode_Write_Back_Out_Of_Sync_Msg;
+
 	public static String DeviceNode_Cant_Refresh_Node;
 
 	public static String DeviceNode_CouldNotLoadInstalledApps;
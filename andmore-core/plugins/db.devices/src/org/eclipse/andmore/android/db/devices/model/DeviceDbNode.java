@@ -17,6 +17,7 @@ package org.eclipse.andmore.android.db.devices.model;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -39,16 +40,21 @@ import org.eclipse.andmore.android.db.core.ui.ITreeNode;
 import org.eclipse.andmore.android.db.devices.DbDevicesPlugin;
 import org.eclipse.andmore.android.db.devices.i18n.DbDevicesNLS;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.datatools.sqltools.result.ResultsViewAPI;
 import org.eclipse.datatools.sqltools.result.core.IResultManagerListener;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.osgi.util.NLS;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.console.IOConsoleOutputStream;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 
@@ -62,14 +68,34 @@ public class DeviceDbNode extends DbNode implements IDbNode {
      */
 	private static final int REMOTE_OPERATIONS_TIMEOUT = 2000;
 
+	/**
+	 * Time without statements after which the changes are written back to the
+	 * device
+	 */
+	private static final long WRITE_BACK_DELAY = 1000;
+
+	/**
+	 * Code of the status reporting that the device file has been modified
+	 * since it was last synchronized
+	 */
+	private static final int OUT_OF_SYNC = 1;
+
 	private final IPath remoteDbPath;
 
 	private final String serialNumber;
 
+	private final DeviceDbSynchronizer synchronizer;
+
+	private final Job writeBackJob;
+
+	private final Object writeBackLock = new Object();
+
 	private IResultManagerListener resultManagerListener;
 
 	private String localFileMd5;
 
+	private boolean writeBackPending;
+
 	public boolean isDirty;
 
 	private class ResultManagerListener extends AbstractDbResultManagerAdapter {
@@ -87,15 +113,7 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 						&& (sqlStatement.trim().toLowerCase().indexOf("select") != 0) //$NON-NLS-1$
 						&& (!sqlStatement.trim().equals(""))) //$NON-NLS-1$
 				{
-					IStatus status = checkMd5Sum(true);
-
-					if (status.isOK()) {
-						status = pushLocalDbFile();
-					}
-					if (!status.isOK()) {
-						isDirty = true;
-					}
-
+					scheduleWriteBack();
 				}
 			}
 		}
@@ -119,6 +137,15 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 		ImageDescriptor icon = AbstractUIPlugin.imageDescriptorFromPlugin(DbCoreActivator.PLUGIN_ID, DbNode.ICON_PATH);
 		setIcon(icon);
 		setTooltip(NLS.bind(DbDevicesNLS.DeviceDbNode_Tootip_Prefix, remoteDbPath.toString()));
+		synchronizer = new DeviceDbSynchronizer(serialNumber, remoteDbPath.toString(), REMOTE_OPERATIONS_TIMEOUT);
+		writeBackJob = new Job(NLS.bind(DbDevicesNLS.DeviceDbNode_Write_Back_Job_Name, getName())) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				writeBack();
+				return Status.OK_STATUS;
+			}
+		};
+		writeBackJob.setSystem(true);
 	}
 
 	/**
@@ -201,20 +228,32 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 	public IStatus connect() {
 		IStatus status = null;
 
+		// The local model is kept when the device file has not changed
+		boolean upToDate = false;
+		if (model != null) {
+			try {
+				upToDate = DeviceDbSynchronizer.sameMd5Sum(localFileMd5, synchronizer.getRemoteMd5Sum());
+			} catch (IOException e) {
+				// pull the file again
+			}
+		}
+
 		File tempFile = null;
-		try {
-			tempFile = getLocalTempFile();
-			status = pullRemoteTempFile(tempFile);
-		} catch (IOException e) {
-			status = new Status(IStatus.ERROR, DbDevicesPlugin.PLUGIN_ID,
-					DbDevicesNLS.DeviceDbNode_Create_Temp_Local_Db_Failed, e);
+		if (!upToDate) {
+			try {
+				tempFile = getLocalTempFile();
+				status = pullRemoteTempFile(tempFile);
+			} catch (IOException e) {
+				status = new Status(IStatus.ERROR, DbDevicesPlugin.PLUGIN_ID,
+						DbDevicesNLS.DeviceDbNode_Create_Temp_Local_Db_Failed, e);
+			}
+		} else {
+			status = Status.OK_STATUS;
 		}
 
-		if ((model != null) && status.isOK()) // Local model already exists, we
-												// must verify the md5 and
-												// update the localDbModel if
-												// needed.
-		{
+		// Local model already exists, we must verify the md5 and update the
+		// localDbModel if needed.
+		if ((model != null) && !upToDate && status.isOK()) {
 			try {
 				String newMd5Sum = FileUtil.calculateMd5Sum(tempFile);
 				if (!newMd5Sum.equals(localFileMd5)) {
@@ -239,7 +278,9 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 
 		if ((model != null) && status.isOK()) {
 			try {
-				localFileMd5 = getLocalMd5Sum();
+				if (!upToDate) {
+					localFileMd5 = synchronizer.reset(model.getDbPath().toFile());
+				}
 				model.connect();
 			} catch (IOException e) {
 				status = new Status(IStatus.ERROR, DbDevicesPlugin.PLUGIN_ID,
@@ -261,11 +302,98 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 	}
 
 	/**
-	 * @return
-	 * @throws IOException
+	 * Writes the changes back to the device once no statement has been
+	 * executed for a while, so that a batch of statements is checked and
+	 * pushed at once.
 	 */
-	private String getLocalMd5Sum() throws IOException {
-		return FileUtil.calculateMd5Sum(model.getDbPath().toFile());
+	private void scheduleWriteBack() {
+		synchronized (writeBackLock) {
+			writeBackPending = true;
+		}
+		writeBackJob.schedule(WRITE_BACK_DELAY);
+	}
+
+	/**
+	 * Writes the pending changes back to the device, if any. This is only run
+	 * by the write back job. The user is not asked whether to overwrite a
+	 * device file modified meanwhile, as this runs in the background: the
+	 * database is left out of sync instead, which is resolved on refresh.
+	 * 
+	 * @return the write back status
+	 */
+	private IStatus writeBack() {
+		IStatus status = Status.OK_STATUS;
+		boolean pending;
+		synchronized (writeBackLock) {
+			pending = writeBackPending;
+			writeBackPending = false;
+		}
+		if (pending && (model != null)) {
+			status = checkMd5Sum(false);
+
+			if (status.isOK()) {
+				status = pushLocalDbFile();
+			} else if (status.getCode() == OUT_OF_SYNC) {
+				EclipseUtils.showWarningDialog(DbDevicesNLS.DeviceDbNode_Remote_File_Modified_Title,
+						NLS.bind(DbDevicesNLS.DeviceDbNode_Write_Back_Out_Of_Sync_Msg, getName()));
+			}
+			if (!status.isOK()) {
+				isDirty = true;
+			}
+		}
+
+		return status;
+	}
+
+	/**
+	 * Writes the pending changes back to the device now, rather than waiting
+	 * for the delay of the write back job, and waits for the job to complete.
+	 * On the UI thread, the wait shows a progress dialog if it takes long, so
+	 * that a slow device does not freeze the UI.
+	 */
+	private void flushWriteBack() {
+		boolean pending;
+		synchronized (writeBackLock) {
+			pending = writeBackPending;
+		}
+		if (pending) {
+			writeBackJob.schedule();
+			writeBackJob.wakeUp();
+		}
+		if (writeBackJob.getState() == Job.NONE) {
+			return;
+		}
+
+		if (Display.getCurrent() != null) {
+			try {
+				PlatformUI.getWorkbench().getProgressService().busyCursorWhile(new IRunnableWithProgress() {
+					@Override
+					public void run(IProgressMonitor monitor) throws InterruptedException {
+						writeBackJob.join();
+					}
+				});
+			} catch (InvocationTargetException e) {
+				AndmoreLogger.error(DeviceDbNode.class, "Could not write the database back to the device", e); //$NON-NLS-1$
+			} catch (InterruptedException e) {
+				// stop waiting
+			}
+		} else {
+			try {
+				writeBackJob.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Drops the pending changes, which will not be written back to the device
+	 */
+	private void cancelWriteBack() {
+		writeBackJob.cancel();
+		synchronized (writeBackLock) {
+			writeBackPending = false;
+		}
 	}
 
 	/*
@@ -283,6 +411,7 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 
 			canDisconnect = status.isOK();
 			if (canDisconnect) {
+				flushWriteBack();
 				status = model.disconnect();
 				if (status.isOK()) {
 					deleteLocalDbModel();
@@ -376,6 +505,7 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 		IStatus status = null;
 		try {
 			closeAssociatedEditors(true, forceCloseEditors);
+			cancelWriteBack();
 			DDMSFacade.deleteFile(serialNumber, remoteDbPath.toString());
 			disconnect();
 		} catch (IOException e) {
@@ -394,9 +524,10 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 	@Override
 	public IStatus canRefresh() {
 		IStatus status = null;
+		flushWriteBack();
 		if (isDirty) {
 			status = checkMd5Sum(false);
-			if (!status.isOK()) {
+			if (status.getCode() == OUT_OF_SYNC) {
 				status = new CanRefreshStatus(CanRefreshStatus.ASK_USER | CanRefreshStatus.CANCELABLE,
 						DbDevicesPlugin.PLUGIN_ID, NLS.bind(DbDevicesNLS.DeviceDbNode_DBOutOfSync_Refresh_Message,
 								getName()));
@@ -420,8 +551,9 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 	public void refresh() {
 		if (model != null) {
 			if (model.isConnected()) {
+				flushWriteBack();
 				IStatus checkMd5Sum = checkMd5Sum(false);
-				if (!checkMd5Sum.isOK()) {
+				if (checkMd5Sum.getCode() == OUT_OF_SYNC) {
 					model.disconnect();
 					deleteLocalDbModel();
 					clear();
@@ -442,6 +574,7 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 	private boolean deleteLocalDbModel() {
 		IStatus deleteDb = model.deleteDb();
 		model = null;
+		synchronizer.clear();
 
 		return deleteDb.isOK();
 	}
@@ -482,6 +615,7 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 	@Override
 	public void refresh(boolean canRefreshYesResponse) {
 		if (canRefreshYesResponse) {
+			cancelWriteBack();
 			closeAssociatedEditors(false, true);
 		} else {
 			pushLocalDbFile(false);
@@ -500,18 +634,17 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 		try {
 			IPath localDbPath = model.getDbPath();
 			File localDbFile = localDbPath.toFile();
-			List<File> localList = Arrays.asList(new File[] { localDbFile });
-			List<String> remoteList = Arrays.asList(new String[] { remoteDbPath.toString() });
 			stream = EclipseUtils.getStudioConsoleOutputStream(false);
-			status = DDMSFacade.pushFiles(serialNumber, localList, remoteList, REMOTE_OPERATIONS_TIMEOUT,
-					new NullProgressMonitor(), stream);
+			// Only the pages changed since the last push are sent when
+			// possible
+			status = synchronizer.push(localDbFile, stream);
 			if (status.isOK()) {
 				isDirty = false;
 			}
 
 			// Update the local Md5Sum everytime the file is pushed to the
 			// device.
-			localFileMd5 = FileUtil.calculateMd5Sum(localDbFile);
+			localFileMd5 = synchronizer.getLocalMd5Sum();
 
 			String appName = getParent().getName();
 			if (warnUser) {
@@ -539,8 +672,16 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 	}
 
 	/**
-	 * @param status
-	 * @return
+	 * Checks whether the device file has been modified since it was last
+	 * synchronized
+	 * 
+	 * @param warnUser
+	 *            whether to ask the user if the device file may be
+	 *            overwritten when it has been modified
+	 * @return an OK status if the device file has not been modified, a status
+	 *         with the {@link #OUT_OF_SYNC} code if it has, a cancel status if
+	 *         the user chose not to overwrite it, or an error status if the
+	 *         device file could not be checked
 	 */
 	private IStatus checkMd5Sum(boolean warnUser) {
 		File tempFile = null;
@@ -548,13 +689,30 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 		if (localFileMd5 != null) // It will be null during create Db process.
 		{
 			try {
-				tempFile = getLocalTempFile(); // Create a new tempFile,
-												// different from the local db
-												// model file, in order to
-												// compare MD5 sum.
-				status = pullRemoteTempFile(tempFile);
-				String newMd5Sum = FileUtil.calculateMd5Sum(tempFile);
-				if (!localFileMd5.equals(newMd5Sum)) {
+				// Compute the MD5 sum on the device when possible, rather than
+				// pulling the whole file
+				String newMd5Sum;
+				try {
+					newMd5Sum = synchronizer.getRemoteMd5Sum();
+				} catch (IOException e) {
+					return new Status(IStatus.ERROR, DbDevicesPlugin.PLUGIN_ID, NLS.bind(
+							DbDevicesNLS.DeviceDbNode_Remote_Md5_Failed, serialNumber), e);
+				}
+				if (newMd5Sum == null) {
+					tempFile = getLocalTempFile(); // Create a new tempFile,
+													// different from the local
+													// db model file, in order
+													// to compare MD5 sum.
+					status = pullRemoteTempFile(tempFile);
+					if (!status.isOK()) {
+						// the device file could not be read, which says
+						// nothing about whether it was modified
+						return new Status(IStatus.ERROR, DbDevicesPlugin.PLUGIN_ID, NLS.bind(
+								DbDevicesNLS.DeviceDbNode_Remote_Md5_Failed, serialNumber), status.getException());
+					}
+					newMd5Sum = FileUtil.calculateMd5Sum(tempFile);
+				}
+				if (!DeviceDbSynchronizer.sameMd5Sum(localFileMd5, newMd5Sum)) {
 					if (warnUser) {
 						boolean canOverwrite = EclipseUtils.showQuestionDialog(
 								DbDevicesNLS.DeviceDbNode_Remote_File_Modified_Title,
@@ -564,8 +722,8 @@ public class DeviceDbNode extends DbNode implements IDbNode {
 									DbDevicesNLS.DeviceDbNode_User_Canceled_Overwrite);
 						}
 					} else {
-						status = new Status(IStatus.ERROR, DbDevicesPlugin.PLUGIN_ID,
-								DbDevicesNLS.DeviceDbNode_Md5Sum_Differs);
+						status = new Status(IStatus.ERROR, DbDevicesPlugin.PLUGIN_ID, OUT_OF_SYNC,
+								DbDevicesNLS.DeviceDbNode_Md5Sum_Differs, null);
 					}
 				}
 
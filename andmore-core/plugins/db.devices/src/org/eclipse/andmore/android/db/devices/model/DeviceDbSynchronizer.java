@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.android.db.devices.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.andmore.android.DDMSFacade;
+import org.eclipse.andmore.android.common.log.AndmoreLogger;
+import org.eclipse.andmore.android.db.devices.DbDevicesPlugin;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.ui.console.IOConsoleOutputStream;
+
+/**
+ * Keeps a device database file in sync with its local copy.
+ * <p>
+ * The local copy is hashed page by page each time it is synchronized, so that
+ * only the pages changed since then are pushed to the device, where they are
+ * patched into the database file with dd. The device file is pushed as a whole
+ * when too many pages changed, or when patching it fails. MD5 sums of the
+ * device file are computed on the device when its shell allows it, instead of
+ * pulling the file.
+ */
+class DeviceDbSynchronizer {
+	/**
+	 * Device directory where the patches are pushed
+	 */
+	private static final String REMOTE_TEMP_DIR = "/data/local/tmp/"; //$NON-NLS-1$
+
+	/**
+	 * Page size used when the file is not a SQLite3 database
+	 */
+	private static final int DEFAULT_PAGE_SIZE = 4096;
+
+	/**
+	 * Maximum number of runs of consecutive pages patched at once, which
+	 * bounds the length of the shell command
+	 */
+	private static final int MAX_PATCH_RUNS = 64;
+
+	/**
+	 * Commands tried in turn to compute a MD5 sum on the device, as older
+	 * devices only provide md5
+	 */
+	private static final String[] MD5_COMMANDS = new String[] { "md5sum", "md5" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	private final String serialNumber;
+
+	private final String remotePath;
+
+	private final int timeout;
+
+	/**
+	 * Index of the command used to compute MD5 sums on the device, or -1 if
+	 * none works
+	 */
+	private int md5Command = 0;
+
+	private int syncedPageSize;
+
+	private long syncedLength;
+
+	private long[] syncedPageHashes;
+
+	private String localMd5Sum;
+
+	/**
+	 * Creates a synchronizer for a device database file
+	 *
+	 * @param serialNumber
+	 *            the device serial number
+	 * @param remotePath
+	 *            the database file location at the device
+	 * @param timeout
+	 *            the timeout of the push operations
+	 */
+	DeviceDbSynchronizer(String serialNumber, String remotePath, int timeout) {
+		this.serialNumber = serialNumber;
+		this.remotePath = remotePath;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Records that the local file is the same as the device file, e.g. after it
+	 * has been pulled
+	 *
+	 * @param localFile
+	 *            the local database file
+	 * @return the MD5 sum of the local file
+	 * @throws IOException
+	 *             if the local file cannot be read
+	 */
+	synchronized String reset(File localFile) throws IOException {
+		Scan scan = new Scan(localFile);
+		setSynced(scan);
+		return localMd5Sum;
+	}
+
+	/**
+	 * Forgets the last synchronization, so that the next push sends the whole
+	 * file
+	 */
+	synchronized void clear() {
+		syncedPageHashes = null;
+		localMd5Sum = null;
+	}
+
+	/**
+	 * Gets the MD5 sum of the local file as of the last push or reset, in the
+	 * format of FileUtil#calculateMd5Sum(File)
+	 */
+	synchronized String getLocalMd5Sum() {
+		return localMd5Sum;
+	}
+
+	/**
+	 * Pushes the local file to the device. Only the pages changed since the
+	 * last synchronization are pushed when possible.
+	 *
+	 * @param localFile
+	 *            the local database file
+	 * @param stream
+	 *            the console stream of the push operations
+	 * @return the push status
+	 * @throws IOException
+	 *             if the local file cannot be read
+	 */
+	synchronized IStatus push(File localFile, IOConsoleOutputStream stream) throws IOException {
+		Scan scan = new Scan(localFile);
+		localMd5Sum = scan.md5Sum;
+
+		IStatus status = null;
+		if (canPatch(scan)) {
+			List<Integer> changedPages = new ArrayList<Integer>();
+			int runs = 0;
+			for (int i = 0; i < scan.pageHashes.length; i++) {
+				if ((i >= syncedPageHashes.length) || (scan.pageHashes[i] != syncedPageHashes[i])) {
+					if (changedPages.isEmpty() || (changedPages.get(changedPages.size() - 1) != (i - 1))) {
+						runs++;
+					}
+					changedPages.add(i);
+				}
+			}
+
+			if (changedPages.isEmpty() && (scan.length == syncedLength)) {
+				status = Status.OK_STATUS;
+			} else if ((runs <= MAX_PATCH_RUNS) && (changedPages.size() * 2 <= scan.pageHashes.length)) {
+				status = patch(localFile, scan, changedPages, stream);
+			}
+		}
+
+		if (status == null) {
+			List<File> localList = Arrays.asList(new File[] { localFile });
+			List<String> remoteList = Arrays.asList(new String[] { remotePath });
+			status = DDMSFacade.pushFiles(serialNumber, localList, remoteList, timeout, new NullProgressMonitor(),
+					stream);
+		}
+
+		if (status.isOK()) {
+			setSynced(scan);
+		} else {
+			clear();
+			localMd5Sum = scan.md5Sum;
+		}
+
+		return status;
+	}
+
+	/**
+	 * Computes the MD5 sum of the device file on the device
+	 *
+	 * @return the MD5 sum, or null if the device cannot compute it
+	 * @throws IOException
+	 *             if the command cannot be run on the device
+	 */
+	synchronized String getRemoteMd5Sum() throws IOException {
+		while ((md5Command >= 0) && (md5Command < MD5_COMMANDS.length)) {
+			try {
+				Collection<String> output = DDMSFacade.execRemoteApp(serialNumber, MD5_COMMANDS[md5Command] + " " //$NON-NLS-1$
+						+ quote(remotePath), new NullProgressMonitor());
+				for (String line : output) {
+					String hash = line.trim().split("\\s+")[0]; //$NON-NLS-1$
+					if (hash.matches("[0-9a-fA-F]{32}")) //$NON-NLS-1$
+					{
+						return hash.toLowerCase();
+					}
+				}
+			} catch (IOException e) {
+				AndmoreLogger.error(DeviceDbSynchronizer.class, "Could not compute the device database md5sum", e); //$NON-NLS-1$
+				throw e;
+			}
+			md5Command++;
+		}
+
+		md5Command = -1;
+		return null;
+	}
+
+	/**
+	 * Compares MD5 sums, ignoring leading zeros and case
+	 *
+	 * @return true if both sums are not null and are the same
+	 */
+	static boolean sameMd5Sum(String md5Sum, String otherMd5Sum) {
+		if ((md5Sum == null) || (otherMd5Sum == null)) {
+			return false;
+		}
+		try {
+			return new BigInteger(md5Sum, 16).equals(new BigInteger(otherMd5Sum, 16));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private boolean canPatch(Scan scan) {
+		return (syncedPageHashes != null) && (scan.pageSize == syncedPageSize) && (scan.length >= syncedLength)
+				&& (md5Command >= 0);
+	}
+
+	private void setSynced(Scan scan) {
+		syncedPageSize = scan.pageSize;
+		syncedLength = scan.length;
+		syncedPageHashes = scan.pageHashes;
+		localMd5Sum = scan.md5Sum;
+	}
+
+	/**
+	 * Pushes the changed pages, copies them into the device file, and checks
+	 * the result
+	 *
+	 * @return OK if the device file has been patched, or null if it must be
+	 *         pushed as a whole
+	 */
+	private IStatus patch(File localFile, Scan scan, List<Integer> changedPages, IOConsoleOutputStream stream)
+			throws IOException {
+		File patchFile = File.createTempFile("patch", ".db"); //$NON-NLS-1$ //$NON-NLS-2$
+		String remotePatchPath = REMOTE_TEMP_DIR + patchFile.getName();
+		StringBuilder command = new StringBuilder();
+		try {
+			byte[] page = new byte[scan.pageSize];
+			RandomAccessFile raf = new RandomAccessFile(localFile, "r"); //$NON-NLS-1$
+			OutputStream out = new FileOutputStream(patchFile);
+			try {
+				int runStart = 0;
+				for (int i = 0; i < changedPages.size(); i++) {
+					int pageIndex = changedPages.get(i);
+					long offset = (long) pageIndex * scan.pageSize;
+					int length = (int) Math.min(scan.pageSize, scan.length - offset);
+					raf.seek(offset);
+					raf.readFully(page, 0, length);
+					out.write(page, 0, length);
+
+					boolean runEnd = (i == changedPages.size() - 1) || (changedPages.get(i + 1) != pageIndex + 1);
+					if (runEnd) {
+						int runLength = i - runStart + 1;
+						command.append("dd if=").append(quote(remotePatchPath)) //$NON-NLS-1$
+								.append(" of=").append(quote(remotePath)) //$NON-NLS-1$
+								.append(" bs=").append(scan.pageSize) //$NON-NLS-1$
+								.append(" skip=").append(runStart) //$NON-NLS-1$
+								.append(" seek=").append(pageIndex - runLength + 1) //$NON-NLS-1$
+								.append(" count=").append(runLength) //$NON-NLS-1$
+								.append(" conv=notrunc 2>/dev/null; "); //$NON-NLS-1$
+						runStart = i + 1;
+					}
+				}
+			} finally {
+				out.close();
+				raf.close();
+			}
+
+			List<File> localList = Arrays.asList(new File[] { patchFile });
+			List<String> remoteList = Arrays.asList(new String[] { remotePatchPath });
+			IStatus status = DDMSFacade.pushFiles(serialNumber, localList, remoteList, timeout,
+					new NullProgressMonitor(), stream);
+			if (!status.isOK()) {
+				return null;
+			}
+
+			command.append("rm ").append(quote(remotePatchPath)); //$NON-NLS-1$
+			DDMSFacade.execRemoteApp(serialNumber, command.toString(), new NullProgressMonitor());
+		} finally {
+			patchFile.delete();
+		}
+
+		// a failed dd leaves the file partially patched: it is then pushed as
+		// a whole, as when the patched file cannot be checked
+		String remoteMd5Sum;
+		try {
+			remoteMd5Sum = getRemoteMd5Sum();
+		} catch (IOException e) {
+			return null;
+		}
+		return sameMd5Sum(scan.md5Sum, remoteMd5Sum) ? Status.OK_STATUS : null;
+	}
+
+	private static String quote(String path) {
+		return "'" + path.replace("'", "'\\''") + "'"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	/**
+	 * The page hashes and MD5 sum of a file, computed in a single pass
+	 */
+	private static class Scan {
+		private final int pageSize;
+
+		private final long length;
+
+		private final long[] pageHashes;
+
+		private final String md5Sum;
+
+		Scan(File file) throws IOException {
+			MessageDigest fileDigest;
+			MessageDigest pageDigest;
+			try {
+				fileDigest = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+				pageDigest = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e.getMessage());
+			}
+
+			length = file.length();
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] page = new byte[65536];
+				int read = readPage(in, page, 100);
+				pageSize = getPageSize(page, read);
+
+				pageHashes = new long[(int) ((length + pageSize - 1) / pageSize)];
+				int index = 0;
+				while (read > 0) {
+					read += readPage(in, page, pageSize - read, read);
+					fileDigest.update(page, 0, read);
+					pageDigest.update(page, 0, read);
+					if (index < pageHashes.length) {
+						pageHashes[index] = new BigInteger(1, pageDigest.digest()).longValue();
+					}
+					index++;
+					read = readPage(in, page, pageSize);
+				}
+			} finally {
+				in.close();
+			}
+
+			md5Sum = new BigInteger(1, fileDigest.digest()).toString(16);
+		}
+
+		private static int readPage(InputStream in, byte[] page, int count) throws IOException {
+			return readPage(in, page, count, 0);
+		}
+
+		private static int readPage(InputStream in, byte[] page, int count, int offset) throws IOException {
+			int total = 0;
+			while (total < count) {
+				int read = in.read(page, offset + total, count - total);
+				if (read < 0) {
+					break;
+				}
+				total += read;
+			}
+			return total;
+		}
+
+		/**
+		 * Reads the page size from the SQLite3 database header
+		 */
+		private static int getPageSize(byte[] header, int length) {
+			if ((length >= 18) && new String(header, 0, 16).equals("SQLite format 3\0")) //$NON-NLS-1$
+			{
+				int pageSize = ((header[16] & 0xff) << 8) | (header[17] & 0xff);
+				if (pageSize == 1) {
+					return 65536;
+				} else if ((pageSize >= 512) && ((pageSize & (pageSize - 1)) == 0)) {
+					return pageSize;
+				}
+			}
+			return DEFAULT_PAGE_SIZE;
+		}
+	}
+}
@@ -17,7 +17,6 @@
 package org.eclipse.andmore.android.packaging.ui.export;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.security.UnrecoverableKeyException;
@@ -1184,15 +1183,16 @@ public class PackageExportWizardArea {
 									submonitor.worked(PackagingUIPlugin.PROGRESS_MONITOR_MULTIPLIER);
 
 									if (signCheckBox.getSelection()) {
-										// sign the package if required
+										// sign the package if required; the
+										// signed package is already aligned
 										IStatus signStatus = signPackage(eclipseProject, file);
 										status.add(signStatus);
+									} else {
+										// zipalign the file and we are done
+										// exporting the package
+										PackageFile.zipAlign(file);
 									}
 
-									// zipalign the file and we are done
-									// exporting the package
-									PackageFile.zipAlign(file);
-
 									submonitor.worked(PackagingUIPlugin.PROGRESS_MONITOR_MULTIPLIER);
 								}
 								submonitor.done();
@@ -1325,14 +1325,11 @@ public class PackageExportWizardArea {
 			}
 
 			if (status.isOK()) {
-				FileOutputStream fileToWrite = null;
 				try {
 					// Write the new package file
-					fileToWrite = new FileOutputStream(exportedPackage);
-					pack.write(fileToWrite);
+					pack.write(exportedPackage);
 				} finally {
-
-					fileToWrite.close();
+					pack.removeTemporaryEntryFiles();
 				}
 			} else {
 				EclipseUtils.showErrorDialog("Package Signing", "Could not sign the package.");
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.android.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class JSONParserTest {
+
+	@Test
+	public void testValues() {
+		JSONObject object = (JSONObject) parse(" { \"s\" : \"text\", \"n\" : null, \"t\" : true, \"f\" : false,"
+				+ " \"a\" : [ 1 , [ ] , { } ] } ");
+		assertEquals(5, object.getValue().size());
+		assertEquals("text", get(object, "s").getValue());
+		assertNull(get(object, "n").getValue());
+		assertEquals(Boolean.TRUE, get(object, "t").getValue());
+		assertEquals(Boolean.FALSE, get(object, "f").getValue());
+
+		List<JSONValue> array = ((JSONArray) get(object, "a")).getValue();
+		assertEquals(3, array.size());
+		assertEquals(Integer.valueOf(1), array.get(0).getValue());
+		assertTrue(((JSONArray) array.get(1)).getValue().isEmpty());
+		assertTrue(((JSONObject) array.get(2)).getValue().isEmpty());
+	}
+
+	@Test
+	public void testEscapes() {
+		assertEquals("\" \\ / \b \f \n \r \t", parse("\"\\\" \\\\ \\/ \\b \\f \\n \\r \\t\"").getValue());
+		assertEquals("a&b", parse("\"a\\u0026b\"").getValue());
+		assertEquals("\u00e9\u4e2d", parse("\"\\u00E9\\u4e2d\"").getValue());
+
+		// a character outside of the BMP is escaped as a surrogate pair
+		String smiley = (String) parse("\"\\ud83d\\ude00\"").getValue();
+		assertEquals(2, smiley.length());
+		assertEquals(0x1F600, smiley.codePointAt(0));
+	}
+
+	@Test
+	public void testIntegers() {
+		assertEquals(Integer.valueOf(0), parse("0").getValue());
+		assertEquals(Integer.valueOf(-42), parse("-42").getValue());
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE), parse("2147483647").getValue());
+		assertEquals(Integer.valueOf(Integer.MIN_VALUE), parse("-2147483648").getValue());
+
+		// negative zero is the integer zero
+		assertEquals(Integer.valueOf(0), parse("-0").getValue());
+
+		// an integral exponent still gives an integer
+		assertEquals(Integer.valueOf(100), parse("1e2").getValue());
+		assertEquals(Integer.valueOf(1200), parse("1.2E+3").getValue());
+	}
+
+	@Test
+	public void testDecimals() {
+		// integers out of the int range overflow into BigDecimal
+		assertDecimal("2147483648", parse("2147483648"));
+		assertDecimal("-2147483649", parse("-2147483649"));
+		assertDecimal("123456789012345678901234567890", parse("123456789012345678901234567890"));
+
+		assertDecimal("1.5", parse("1.5"));
+		assertDecimal("0.0015", parse("1.5e-3"));
+		assertDecimal("-0.25", parse("-25E-2"));
+		assertDecimal("0", parse("-0.0"));
+		assertDecimal("1", parse("1.0"));
+	}
+
+	@Test
+	public void testMalformed() {
+		// separators
+		assertMalformed("[1 2]");
+		assertMalformed("[,,1]");
+		assertMalformed("[,1]");
+		assertMalformed("[1,]");
+		assertMalformed("[1,,2]");
+		assertMalformed("{\"a\":1 \"b\":2}");
+		assertMalformed("{,\"a\":1}");
+		assertMalformed("{\"a\":1,}");
+		assertMalformed("{\"a\" 1}");
+		assertMalformed("{a:1}");
+
+		// unterminated values
+		assertMalformed("[1");
+		assertMalformed("{\"a\":1");
+		assertMalformed("\"text");
+		assertMalformed("tru");
+		assertMalformed("nul");
+
+		// escapes
+		assertMalformed("\"\\x\"");
+		assertMalformed("\"\\u12G4\"");
+		assertMalformed("\"\\u+123\"");
+		assertMalformed("\"\\u12\"");
+
+		// numbers
+		assertMalformed("-");
+		assertMalformed("01");
+		assertMalformed("-01");
+		assertMalformed("1.");
+		assertMalformed(".5");
+		assertMalformed("1e");
+		assertMalformed("1e+");
+	}
+
+	@Test
+	public void testJason() {
+		Jason jason = new Jason("{\"a\":[1,2]}, {\"b\":\"c\"}");
+		Set<JSONObject> objects = jason.getJSON();
+		assertEquals(2, objects.size());
+	}
+
+	@Test
+	public void testCharacterLists() {
+		List<Character> json = toList(" \"a\\\"b\" , 1");
+		assertEquals("a\"b", JSONString.parseValues(json).getValue());
+		assertEquals(" , 1", toString(json));
+
+		json = toList("\"key\" : [1, 2]}");
+		JSONPair pair = JSONPair.parse(json);
+		assertEquals("key", pair.getName());
+		assertEquals(2, ((JSONArray) pair.getValue()).getValue().size());
+		assertEquals("}", toString(json));
+	}
+
+	private static JSONValue parse(String json) {
+		return JSONValueParser.parse(new JSONReader(json));
+	}
+
+	private static JSONValue get(JSONObject object, String name) {
+		for (JSONPair pair : object.getValue()) {
+			if (pair.getName().equals(name)) {
+				return pair.getValue();
+			}
+		}
+		fail("No pair named " + name);
+		return null;
+	}
+
+	private static void assertDecimal(String expected, JSONValue value) {
+		Object number = value.getValue();
+		assertTrue("Not a BigDecimal: " + number, number instanceof BigDecimal);
+		assertEquals(0, new BigDecimal(expected).compareTo((BigDecimal) number));
+	}
+
+	private static void assertMalformed(String json) {
+		try {
+			parse(json);
+			fail("Parsed malformed JSON: " + json);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static List<Character> toList(String string) {
+		List<Character> list = new ArrayList<Character>();
+		for (char c : string.toCharArray()) {
+			list.add(Character.valueOf(c));
+		}
+		return list;
+	}
+
+	private static String toString(List<Character> list) {
+		StringBuilder builder = new StringBuilder();
+		for (Character c : list) {
+			builder.append(c.charValue());
+		}
+		return builder.toString();
+	}
+}
@@ -18,7 +18,6 @@ package org.eclipse.andmore.android.json;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
 
 public class JSONArray extends JSONValue {
 	private final List<JSONValue> value;
@@ -32,28 +31,19 @@ public class JSONArray extends JSONValue {
 		return value;
 	}
 
-	static JSONValue parseValues(List<Character> json) {
-		Stack<Character> stack = new Stack<Character>();
+	static JSONValue parseValues(JSONReader json) {
 		List<JSONValue> values = new ArrayList<JSONValue>();
-		boolean parsed = false;
-		while (!parsed) {
-			Character next = json.get(0);
-			if (next == '[') {
-				json.remove(0);
-				stack.push('[');
-			} else if (next == ']') {
-				json.remove(0);
-				if (stack.pop() != '[') {
-					throw new IllegalArgumentException();
-				} else {
-					parsed = true;
-				}
-			} else if (next == ' ' || next == '\r' || next == '\n' || next == ',') {
-				json.remove(0);
-			} else {
-				values.add(JSONValueParser.parse(json));
-			}
+		if (json.next() != '[') {
+			throw new IllegalArgumentException();
+		}
+		json.skipWhitespace();
+		if (json.peek() == ']') {
+			json.next();
+			return new JSONArray(values);
 		}
+		do {
+			values.add(JSONValueParser.parse(json));
+		} while (json.nextMember(']'));
 		return new JSONArray(values);
 	}
 
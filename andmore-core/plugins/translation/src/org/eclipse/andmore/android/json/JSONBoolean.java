@@ -15,8 +15,6 @@
  */
 package org.eclipse.andmore.android.json;
 
-import java.util.List;
-
 public class JSONBoolean extends JSONValue {
 	public final boolean value;
 
@@ -29,31 +27,13 @@ public class JSONBoolean extends JSONValue {
 		return value;
 	}
 
-	static JSONValue parseValues(List<Character> json) {
-		boolean parsed = false;
-		boolean value = false;
-
-		while (!parsed) {
-			Character next = json.get(0);
-
-			if (next == 't' && json.get(1) == 'r' && json.get(2) == 'u' && json.get(3) == 'e') {
-				for (int i = 0; i < 4; i++) {
-					json.remove(0);
-				}
-				parsed = true;
-				value = true;
-			} else if (next == 'f' && json.get(1) == 'a' && json.get(2) == 'l' && json.get(3) == 's'
-					&& json.get(4) == 'e') {
-				for (int i = 0; i < 5; i++) {
-					json.remove(0);
-				}
-				parsed = true;
-			} else {
-				throw new IllegalArgumentException();
-			}
-
+	static JSONValue parseValues(JSONReader json) {
+		if (json.consume("true")) {
+			return new JSONBoolean(true);
+		} else if (json.consume("false")) {
+			return new JSONBoolean(false);
 		}
-		return new JSONBoolean(value);
+		throw new IllegalArgumentException();
 	}
 
 	@Override
@@ -15,42 +15,94 @@
  */
 package org.eclipse.andmore.android.json;
 
-import java.util.List;
+import java.math.BigDecimal;
 
 public class JSONNumber extends JSONValue {
 
-	private final int value;
+	private static final BigDecimal MIN_INT = BigDecimal.valueOf(Integer.MIN_VALUE);
+
+	private static final BigDecimal MAX_INT = BigDecimal.valueOf(Integer.MAX_VALUE);
+
+	private final Number value;
 
 	public JSONNumber(int value) {
+		this.value = Integer.valueOf(value);
+	}
+
+	public JSONNumber(Number value) {
 		this.value = value;
 	}
 
+	/**
+	 * Gets the number, as an {@link Integer} if it is an integer in the int
+	 * range, as a {@link BigDecimal} otherwise
+	 */
 	@Override
 	public Object getValue() {
 		return value;
 	}
 
-	static JSONValue parseValues(List<Character> json) {
-		boolean parsed = false;
+	/**
+	 * Parses a number, following the JSON grammar: an optional minus sign, an
+	 * integer part, an optional fraction and an optional exponent
+	 */
+	static JSONValue parseValues(JSONReader json) {
 		StringBuilder number = new StringBuilder();
-
-		while (!parsed) {
-			Character next = json.get(0);
-			if (next >= 48 && next <= 57) {
-				json.remove(0);
-				number.append(next);
-			} else {
-				parsed = true;
+		if (json.peek() == '-') {
+			number.append(json.next());
+		}
+		if (json.hasNext() && (json.peek() == '0')) {
+			// no leading zeros
+			number.append(json.next());
+			if (json.hasNext() && (json.peek() >= 48) && (json.peek() <= 57)) {
+				throw new IllegalArgumentException("Invalid number in JSON text: " + number);
 			}
+		} else {
+			appendDigits(json, number);
+		}
+		if (json.hasNext() && (json.peek() == '.')) {
+			number.append(json.next());
+			appendDigits(json, number);
+		}
+		if (json.hasNext() && ((json.peek() == 'e') || (json.peek() == 'E'))) {
+			number.append(json.next());
+			if ((json.peek() == '+') || (json.peek() == '-')) {
+				number.append(json.next());
+			}
+			appendDigits(json, number);
 		}
 
-		return new JSONNumber(Integer.parseInt(number.toString()));
+		BigDecimal decimal;
+		try {
+			decimal = new BigDecimal(number.toString());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number in JSON text: " + number, e);
+		}
 
+		// keep integers as they were, for the callers expecting them
+		if ((decimal.scale() <= 0) && (decimal.compareTo(MIN_INT) >= 0) && (decimal.compareTo(MAX_INT) <= 0)) {
+			return new JSONNumber(decimal.intValue());
+		}
+		return new JSONNumber(decimal);
+	}
+
+	/**
+	 * Consumes the digits the cursor is on, of which there must be at least
+	 * one
+	 */
+	private static void appendDigits(JSONReader json, StringBuilder number) {
+		int length = number.length();
+		while (json.hasNext() && (json.peek() >= 48) && (json.peek() <= 57)) {
+			number.append(json.next());
+		}
+		if (number.length() == length) {
+			throw new IllegalArgumentException("Invalid number in JSON text: " + number);
+		}
 	}
 
 	@Override
 	public String toString() {
-		return Integer.toString(value);
+		return value.toString();
 	}
 
 }
@@ -17,9 +17,7 @@ package org.eclipse.andmore.android.json;
 
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Set;
-import java.util.Stack;
 
 public class JSONObject extends JSONValue {
 	private final Set<JSONPair> value;
@@ -33,29 +31,23 @@ public class JSONObject extends JSONValue {
 		return value;
 	}
 
-	static JSONValue parseValues(List<Character> json) {
-		Stack<Character> stack = new Stack<Character>();
+	static JSONValue parseValues(JSONReader json) {
 		Set<JSONPair> values = new HashSet<JSONPair>();
-		boolean parsed = false;
-		while (!parsed) {
-			Character next = json.get(0);
-
-			if (next == '{') {
-				json.remove(0);
-				stack.push('{');
-			} else if (next == '}') {
-				json.remove(0);
-				if (stack.pop() != '{') {
-					throw new IllegalArgumentException();
-				} else {
-					parsed = true;
-				}
-			} else if (next == ' ' || next == '\r' || next == '\n' || next == ',') {
-				json.remove(0);
-			} else if (next == '"') {
-				values.add(JSONPair.parse(json));
-			}
+		if (json.next() != '{') {
+			throw new IllegalArgumentException();
 		}
+		json.skipWhitespace();
+		if (json.peek() == '}') {
+			json.next();
+			return new JSONObject(values);
+		}
+		do {
+			char next = json.peek();
+			if (next != '"') {
+				throw new IllegalArgumentException("Unexpected character in JSON object: " + next);
+			}
+			values.add(JSONPair.parse(json));
+		} while (json.nextMember('}'));
 		return new JSONObject(values);
 	}
 
@@ -35,48 +35,30 @@ public class JSONPair {
 		return value;
 	}
 
+	/**
+	 * Parses a name and value pair at the start of the given characters, and
+	 * removes it from them
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the characters do not start with a pair
+	 */
 	public static JSONPair parse(List<Character> json) {
-		String name = null;
-		JSONValue value = null;
-		boolean parsed = false;
-		while (!parsed) {
-			Character next = json.get(0);
-			if (next == '"') {
-				name = parseName(json);
-			} else if ((next == ' ') || (next == '\r') || (next == '\n')) {
-				json.remove(0);
-			} else if (next == ':') {
-				json.remove(0);
-				value = JSONValueParser.parse(json);
-				parsed = true;
-			}
-		}
-
-		return new JSONPair(name, value);
+		JSONReader reader = new JSONReader(json);
+		reader.skipWhitespace();
+		JSONPair pair = parse(reader);
+		reader.removeConsumed(json);
+		return pair;
 	}
 
-	private static String parseName(List<Character> json) {
-		String name = null;
-		StringBuilder nameBuilder = new StringBuilder();
-		boolean specialChar = false;
-		Character next;
-		json.remove(0);
-		while (name == null) {
-			next = json.remove(0);
-			if ((next == '"')) {
-				if (specialChar) {
-					specialChar = false;
-				} else {
-					name = nameBuilder.toString();
-				}
-			} else if (next == '\\') {
-				specialChar = true;
-			} else {
-				specialChar = false;
-				nameBuilder.append(next);
-			}
+	static JSONPair parse(JSONReader json) {
+		String name = json.readString();
+		json.skipWhitespace();
+		if (json.next() != ':') {
+			throw new IllegalArgumentException();
 		}
-		return name;
+		JSONValue value = JSONValueParser.parse(json);
+
+		return new JSONPair(name, value);
 	}
 
 	@Override
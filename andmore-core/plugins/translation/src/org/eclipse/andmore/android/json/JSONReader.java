@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.json;
+
+import java.util.List;
+
+/**
+ * Cursor over the JSON text being parsed. The parsers move it forward as they
+ * consume the text, so that a document is parsed in a single pass.
+ */
+class JSONReader {
+	private final CharSequence json;
+
+	private int position;
+
+	JSONReader(CharSequence json) {
+		this.json = json;
+	}
+
+	/**
+	 * Creates a cursor over a list of characters, for the parsers which used
+	 * to consume such lists. Call {@link #removeConsumed(List)} once parsed.
+	 */
+	JSONReader(final List<Character> json) {
+		this(new CharSequence() {
+			@Override
+			public int length() {
+				return json.size();
+			}
+
+			@Override
+			public char charAt(int index) {
+				return json.get(index);
+			}
+
+			@Override
+			public CharSequence subSequence(int start, int end) {
+				StringBuilder builder = new StringBuilder(end - start);
+				for (int i = start; i < end; i++) {
+					builder.append(json.get(i).charValue());
+				}
+				return builder;
+			}
+
+			@Override
+			public String toString() {
+				return subSequence(0, json.size()).toString();
+			}
+		});
+	}
+
+	/**
+	 * Removes the characters consumed so far from the list this cursor was
+	 * created over
+	 */
+	void removeConsumed(List<Character> list) {
+		list.subList(0, position).clear();
+	}
+
+	/**
+	 * Tells whether there are characters left to read
+	 */
+	boolean hasNext() {
+		return position < json.length();
+	}
+
+	/**
+	 * Gets the next character without consuming it
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the end of the text is reached
+	 */
+	char peek() {
+		return peek(0);
+	}
+
+	/**
+	 * Gets a character ahead of the cursor without consuming it
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the end of the text is reached
+	 */
+	char peek(int offset) {
+		if (position + offset >= json.length()) {
+			throw new IllegalArgumentException("Unexpected end of JSON text");
+		}
+		return json.charAt(position + offset);
+	}
+
+	/**
+	 * Consumes the next character
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the end of the text is reached
+	 */
+	char next() {
+		char next = peek();
+		position++;
+		return next;
+	}
+
+	/**
+	 * Consumes the given word if the text continues with it
+	 *
+	 * @return true if the word was consumed
+	 */
+	boolean consume(String word) {
+		int length = word.length();
+		if (position + length > json.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (json.charAt(position + i) != word.charAt(i)) {
+				return false;
+			}
+		}
+		position += length;
+		return true;
+	}
+
+	/**
+	 * Skips the blanks
+	 */
+	void skipWhitespace() {
+		while (position < json.length()) {
+			char next = json.charAt(position);
+			if ((next == ' ') || (next == '\r') || (next == '\n') || (next == '\t')) {
+				position++;
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Consumes the separator following a member of an array or object, and
+	 * the blanks around it
+	 *
+	 * @param end
+	 *            the character closing the array or object
+	 * @return true if the array or object continues with another member, false
+	 *         if its end was consumed
+	 * @throws IllegalArgumentException
+	 *             if the member is followed by neither a comma nor the end
+	 */
+	boolean nextMember(char end) {
+		skipWhitespace();
+		char next = next();
+		if (next == end) {
+			return false;
+		} else if (next != ',') {
+			throw new IllegalArgumentException("Expected ',' or '" + end + "' in JSON text: " + next);
+		}
+		skipWhitespace();
+		return true;
+	}
+
+	/**
+	 * Consumes a string, the cursor being on its opening quote
+	 *
+	 * @return the unescaped string
+	 */
+	String readString() {
+		char quote = next();
+		if (quote != '"') {
+			throw new IllegalArgumentException("Expected a string in JSON text: " + quote);
+		}
+		StringBuilder builder = new StringBuilder();
+		while (true) {
+			char next = next();
+			if (next == '"') {
+				return builder.toString();
+			} else if (next == '\\') {
+				char escaped = next();
+				switch (escaped) {
+				case 'b':
+					builder.append('\b');
+					break;
+				case 'f':
+					builder.append('\f');
+					break;
+				case 'n':
+					builder.append('\n');
+					break;
+				case 'r':
+					builder.append('\r');
+					break;
+				case 't':
+					builder.append('\t');
+					break;
+				case 'u':
+					// surrogate pairs are escaped as two successive characters
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(next(), 16);
+						if (digit < 0) {
+							throw new IllegalArgumentException("Invalid unicode escape in JSON text");
+						}
+						code = (code << 4) | digit;
+					}
+					builder.append((char) code);
+					break;
+				case '"':
+				case '\\':
+				case '/':
+					builder.append(escaped);
+					break;
+				default:
+					throw new IllegalArgumentException("Invalid escape in JSON text: \\" + escaped);
+				}
+			} else {
+				builder.append(next);
+			}
+		}
+	}
+}
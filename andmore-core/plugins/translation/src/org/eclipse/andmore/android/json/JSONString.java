@@ -29,44 +29,23 @@ public class JSONString extends JSONValue {
 		return value;
 	}
 
+	/**
+	 * Parses a string at the start of the given characters, and removes it
+	 * from them
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the characters do not start with a string
+	 */
 	public static JSONValue parseValues(List<Character> json) {
-		String value = null;
-		boolean parsed = false;
-		while (!parsed) {
-			Character next = json.get(0);
-			if (next == '"') {
-
-				value = parseName(json);
-				parsed = true;
-			}
-		}
-
-		return new JSONString(value);
+		JSONReader reader = new JSONReader(json);
+		reader.skipWhitespace();
+		JSONValue value = parseValues(reader);
+		reader.removeConsumed(json);
+		return value;
 	}
 
-	private static String parseName(List<Character> json) {
-		String name = null;
-		StringBuilder nameBuilder = new StringBuilder();
-		boolean specialChar = false;
-		Character next;
-		json.remove(0);
-		while (name == null) {
-			next = json.remove(0);
-			if (next == '"') {
-				if (specialChar) {
-					specialChar = false;
-					nameBuilder.append(next);
-				} else {
-					name = nameBuilder.toString();
-				}
-			} else if (next == '\\') {
-				specialChar = true;
-			} else {
-				specialChar = false;
-				nameBuilder.append(next);
-			}
-		}
-		return name;
+	static JSONValue parseValues(JSONReader json) {
+		return new JSONString(json.readString());
 	}
 
 	@Override
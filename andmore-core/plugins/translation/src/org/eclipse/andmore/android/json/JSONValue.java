@@ -15,12 +15,27 @@
  */
 package org.eclipse.andmore.android.json;
 
-import java.util.List;
-
 public abstract class JSONValue {
 	public abstract Object getValue();
 
-	static JSONValue parse(List<Character> json) {
-		return null;
+	/**
+	 * Parses the value the cursor is on, according to its first character
+	 */
+	static JSONValue parse(JSONReader json) {
+		char next = json.peek();
+		if (next == '{') {
+			return JSONObject.parseValues(json);
+		} else if (next == '[') {
+			return JSONArray.parseValues(json);
+		} else if (next == '"') {
+			return JSONString.parseValues(json);
+		} else if (next == 'n') {
+			return JSONNull.parseValues(json);
+		} else if ((next == 't') || (next == 'f')) {
+			return JSONBoolean.parseValues(json);
+		} else if ((next == '-') || ((next >= 48) && (next <= 57))) {
+			return JSONNumber.parseValues(json);
+		}
+		throw new IllegalArgumentException("Unexpected character in JSON text: " + next);
 	}
 }
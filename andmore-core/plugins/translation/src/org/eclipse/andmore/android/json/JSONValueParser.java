@@ -15,43 +15,12 @@
  */
 package org.eclipse.andmore.android.json;
 
-import java.util.List;
-
 public class JSONValueParser {
 	private JSONValueParser() {
 	};
 
-	static JSONValue parse(List<Character> json) {
-		JSONValue value = null;
-
-		boolean parsed = false;
-
-		while (!parsed) {
-			Character next = json.get(0);
-
-			if (next == '{') {
-				value = JSONValue.parse(json);
-				parsed = true;
-			} else if (next == '[') {
-				value = JSONValue.parse(json);
-				parsed = true;
-			} else if (next == '"') {
-				value = JSONValue.parse(json);
-				parsed = true;
-			} else if (next == 'n') {
-				value = JSONValue.parse(json);
-				parsed = true;
-			} else if (next == 't' || next == 'f') {
-				value = JSONValue.parse(json);
-				parsed = true;
-			} else if (next >= 48 && next <= 57) {
-				value = JSONValue.parse(json);
-				parsed = true;
-			} else if (next == ' ' || next == '\r' || next == '\n') {
-				json.remove(0);
-			}
-
-		}
-		return value;
+	static JSONValue parse(JSONReader json) {
+		json.skipWhitespace();
+		return JSONValue.parse(json);
 	}
 }
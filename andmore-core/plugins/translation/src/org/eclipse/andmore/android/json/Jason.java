@@ -16,10 +16,8 @@
 
 package org.eclipse.andmore.android.json;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -40,19 +38,19 @@ public class Jason {
 	}
 
 	private void stip(String value) {
-		List<Character> json = new ArrayList<Character>();
-		for (char c : value.toCharArray()) {
-			json.add(c);
-		}
-
-		while (json.size() > 0) {
-			Character next = json.get(0);
+		JSONReader json = new JSONReader(value);
+		while (json.hasNext()) {
+			json.skipWhitespace();
+			if (!json.hasNext()) {
+				break;
+			}
 
-			if (next == '{') {
+			if (json.peek() == '{') {
 				JSONObject object = (JSONObject) JSONValue.parse(json);
 				objects.add(object);
-			} else if ((next == ' ') || (next == '\r') || (next == '\n') || (next == ',')) {
-				json.remove(0);
+			} else {
+				// not part of a JSON object, ignore it
+				json.next();
 			}
 		}
 	}
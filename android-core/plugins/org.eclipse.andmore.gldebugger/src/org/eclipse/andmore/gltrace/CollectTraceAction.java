@@ -50,12 +50,13 @@ import org.eclipse.ui.WorkbenchException;
 import org.eclipse.ui.ide.IDE;
 
 import java.io.Closeable;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -69,6 +70,12 @@ public class CollectTraceAction implements IWorkbenchWindowActionDelegate {
 	 */
 	private static final int LOCAL_FORWARDED_PORT = 6039;
 
+	/**
+	 * Size of the socket receive buffer for trace data, large enough to absorb
+	 * bursts of framebuffer data without throttling the device.
+	 */
+	private static final int SOCKET_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
 	/**
 	 * Activity name to use for a system activity that has already been
 	 * launched.
@@ -240,15 +247,20 @@ public class CollectTraceAction implements IWorkbenchWindowActionDelegate {
 			// input path is valid, so this cannot occur
 		}
 
-		Socket socket = new Socket();
-		DataInputStream traceDataStream = null;
+		SocketChannel traceDataChannel = null;
+		Socket socket = null;
 		DataOutputStream traceCommandsStream = null;
 		try {
-			socket.connect(new java.net.InetSocketAddress("127.0.0.1", port)); //$NON-NLS-1$
+			traceDataChannel = SocketChannel.open();
+			socket = traceDataChannel.socket();
+			socket.setReceiveBufferSize(SOCKET_RECEIVE_BUFFER_SIZE);
+			traceDataChannel.connect(new InetSocketAddress("127.0.0.1", port)); //$NON-NLS-1$
 			socket.setTcpNoDelay(true);
-			traceDataStream = new DataInputStream(socket.getInputStream());
 			traceCommandsStream = new DataOutputStream(socket.getOutputStream());
 		} catch (IOException e) {
+			if (traceDataChannel != null) {
+				closeQuietly(traceDataChannel);
+			}
 			MessageDialog.openError(shell, "OpenGL Trace",
 					"Unable to connect to remote GL Trace Server: " + e.getMessage());
 			closeQuietly(fos);
@@ -269,7 +281,7 @@ public class CollectTraceAction implements IWorkbenchWindowActionDelegate {
 		}
 
 		// create trace writer that writes to a trace file
-		TraceFileWriter traceFileWriter = new TraceFileWriter(fos, traceDataStream);
+		TraceFileWriter traceFileWriter = new TraceFileWriter(traceOptions.traceDestination, fos, traceDataChannel);
 		traceFileWriter.start();
 
 		GLTraceCollectorDialog dlg = new GLTraceCollectorDialog(shell, traceFileWriter, traceCommandWriter,
@@ -49,6 +49,9 @@ public class GLTraceCollectorDialog extends TitleAreaDialog {
 
 	private Label mFramesCollectedLabel;
 	private Label mTraceFileSizeLabel;
+	private Label mThroughputLabel;
+	private Label mBufferUsageLabel;
+	private Label mDroppedLabel;
 	private StatusRefreshTask mRefreshTask;
 
 	protected GLTraceCollectorDialog(Shell parentShell, TraceFileWriter traceFileWriter,
@@ -137,6 +140,15 @@ public class GLTraceCollectorDialog extends TitleAreaDialog {
 		createLabel(statusGroup, "Trace File Size:");
 		mTraceFileSizeLabel = createLabel(statusGroup, "");
 
+		createLabel(statusGroup, "Throughput:");
+		mThroughputLabel = createLabel(statusGroup, "");
+
+		createLabel(statusGroup, "Buffer Usage:");
+		mBufferUsageLabel = createLabel(statusGroup, "");
+
+		createLabel(statusGroup, "Data Dropped:");
+		mDroppedLabel = createLabel(statusGroup, "");
+
 		ProgressBar pb = new ProgressBar(statusGroup, SWT.INDETERMINATE);
 		GridData gd = new GridData(GridData.FILL_HORIZONTAL);
 		gd.horizontalSpan = 2;
@@ -188,12 +200,24 @@ public class GLTraceCollectorDialog extends TitleAreaDialog {
 				return;
 			}
 
+			long lastBytesReceived = mTraceFileWriter.getBytesReceived();
+			long lastTime = System.nanoTime();
+
 			while (!mIsCancelled) {
 				final String frameCount = Integer.toString(mTraceFileWriter.getCurrentFrameCount());
+				final String frameSize = formatSize(mTraceFileWriter.getCurrentFileSize());
 
-				double fileSize = mTraceFileWriter.getCurrentFileSize();
-				fileSize /= (1024 * 1024); // convert to size in MB
-				final String frameSize = SIZE_FORMATTER.format(fileSize) + " MB";
+				long bytesReceived = mTraceFileWriter.getBytesReceived();
+				long time = System.nanoTime();
+				double seconds = (time - lastTime) / 1e9;
+				double throughput = seconds > 0 ? (bytesReceived - lastBytesReceived) / seconds : 0;
+				lastBytesReceived = bytesReceived;
+				lastTime = time;
+
+				final String throughputText = formatSize(throughput) + "/s";
+				final String bufferUsage = String.format("%d%%", //$NON-NLS-1$
+						Math.round(mTraceFileWriter.getBufferUsage() * 100));
+				final String dropped = formatSize(mTraceFileWriter.getBytesDropped());
 
 				Display.getDefault().syncExec(new Runnable() {
 					@Override
@@ -204,9 +228,15 @@ public class GLTraceCollectorDialog extends TitleAreaDialog {
 
 						mFramesCollectedLabel.setText(frameCount);
 						mTraceFileSizeLabel.setText(frameSize);
+						mThroughputLabel.setText(throughputText);
+						mBufferUsageLabel.setText(bufferUsage);
+						mDroppedLabel.setText(dropped);
 
 						mFramesCollectedLabel.pack();
 						mTraceFileSizeLabel.pack();
+						mThroughputLabel.pack();
+						mBufferUsageLabel.pack();
+						mDroppedLabel.pack();
 					}
 				});
 
@@ -221,5 +251,9 @@ public class GLTraceCollectorDialog extends TitleAreaDialog {
 		public void cancel() {
 			mIsCancelled = true;
 		}
+
+		private String formatSize(double bytes) {
+			return SIZE_FORMATTER.format(bytes / (1024 * 1024)) + " MB";
+		}
 	}
 }
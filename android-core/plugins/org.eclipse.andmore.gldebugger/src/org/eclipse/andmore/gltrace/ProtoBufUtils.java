@@ -25,7 +25,7 @@ import org.liblzf.CLZF;
 
 /** Utilities to deal with protobuf encoded {@link GLMessage}. */
 public class ProtoBufUtils {
-	private static ImageData getImageData(GLMessage glMsg) {
+	private static ImageData decompressImageData(GLMessage glMsg) {
 		int width = glMsg.getFb().getWidth();
 		int height = glMsg.getFb().getHeight();
 
@@ -56,20 +56,29 @@ public class ProtoBufUtils {
 		return imageData;
 	}
 
-	/** Obtains the image stored in provided protocol buffer message. */
-	public static Image getImage(Display display, GLMessage glMsg) {
+	/**
+	 * Obtains the device independent image data stored in provided protocol
+	 * buffer message.
+	 * 
+	 * @return the image data, or null if the message does not contain a valid
+	 *         framebuffer
+	 */
+	public static ImageData getImageData(GLMessage glMsg) {
 		if (!glMsg.hasFb()) {
 			return null;
 		}
 
-		ImageData imageData = null;
 		try {
-			imageData = getImageData(glMsg);
+			return decompressImageData(glMsg);
 		} catch (Exception e) {
 			GlTracePlugin.getDefault().logMessage("Unexpected error while retrieving framebuffer image: " + e);
 			return null;
 		}
+	}
 
+	/** Obtains the image stored in provided protocol buffer message. */
+	public static Image getImage(Display display, GLMessage glMsg) {
+		ImageData imageData = getImageData(glMsg);
 		if (imageData == null) {
 			return null;
 		}
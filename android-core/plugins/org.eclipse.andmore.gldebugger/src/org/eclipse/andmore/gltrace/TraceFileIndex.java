@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.gltrace;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage;
+import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage.Function;
+
+/**
+ * A compact sidecar index of a trace file.
+ *
+ * The index holds one fixed size record per message in the trace file (in file
+ * order) with the few fields that are required to display the list of calls:
+ * the offset of the message, its function, context id, start time, durations
+ * and whether it carried a framebuffer. Reopening a trace with a valid index
+ * only requires mapping the index, and the messages themselves are parsed
+ * lazily when required.
+ *
+ * An index is only valid for the exact trace file it was created from, which
+ * is checked against the size and modification time in {@link TraceFileInfo}.
+ */
+public class TraceFileIndex {
+	private static final String INDEX_FILE_SUFFIX = ".idx"; //$NON-NLS-1$
+	private static final String TEMP_FILE_SUFFIX = ".tmp"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x474c4958; // "GLIX"
+	private static final int VERSION = 1;
+
+	/** magic, version, trace file size, trace file mtime, entry count */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+	private static final int TRACE_FILE_INFO_OFFSET = 8;
+	private static final int ENTRY_COUNT_OFFSET = HEADER_SIZE - 4;
+
+	/**
+	 * offset, start time, function, context id, wall duration, thread duration,
+	 * flags
+	 */
+	private static final int ENTRY_SIZE = 8 + 8 + 4 + 4 + 4 + 4 + 1;
+
+	private static final int FLAG_HAS_FB = 1;
+	private static final int FLAG_HAS_ERRORS = 1 << 1;
+
+	private final MappedByteBuffer mBuffer;
+	private final int mEntryCount;
+
+	private TraceFileIndex(MappedByteBuffer buffer, int entryCount) {
+		mBuffer = buffer;
+		mEntryCount = entryCount;
+	}
+
+	/** Returns the location of the index file for the given trace file. */
+	public static File getIndexFile(String tracePath) {
+		return new File(tracePath + INDEX_FILE_SUFFIX);
+	}
+
+	/**
+	 * Open the index corresponding to the given trace file.
+	 *
+	 * @return the index, or null if there is no index for this trace, or if the
+	 *         index is stale or malformed
+	 */
+	public static TraceFileIndex open(TraceFileInfo traceFileInfo) {
+		File f = getIndexFile(traceFileInfo.getPath());
+		if (!f.isFile() || f.length() < HEADER_SIZE) {
+			return null;
+		}
+
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(f);
+			FileChannel channel = stream.getChannel();
+			MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION || b.getLong(8) != traceFileInfo.getSize()
+					|| b.getLong(16) != traceFileInfo.getLastModificationTime()) {
+				return null;
+			}
+
+			int entryCount = b.getInt(ENTRY_COUNT_OFFSET);
+			if (entryCount < 0 || HEADER_SIZE + (long) entryCount * ENTRY_SIZE != b.limit()) {
+				return null;
+			}
+
+			return new TraceFileIndex(b, entryCount);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					// ignore exception while closing file
+				}
+			}
+		}
+	}
+
+	/** Delete the index of the given trace file, if any. */
+	public static void delete(String tracePath) {
+		getIndexFile(tracePath).delete();
+	}
+
+	public int getEntryCount() {
+		return mEntryCount;
+	}
+
+	public long getOffset(int i) {
+		return mBuffer.getLong(position(i));
+	}
+
+	/** Returns the start time of the message as recorded on the device. */
+	public long getStartTime(int i) {
+		return mBuffer.getLong(position(i) + 8);
+	}
+
+	/** Returns the function, or null if it is not known to this version. */
+	public Function getFunction(int i) {
+		return Function.valueOf(mBuffer.getInt(position(i) + 16));
+	}
+
+	public int getContextId(int i) {
+		return mBuffer.getInt(position(i) + 20);
+	}
+
+	public int getWallDuration(int i) {
+		return mBuffer.getInt(position(i) + 24);
+	}
+
+	public int getThreadDuration(int i) {
+		return mBuffer.getInt(position(i) + 28);
+	}
+
+	public boolean hasFb(int i) {
+		return (getFlags(i) & FLAG_HAS_FB) != 0;
+	}
+
+	/**
+	 * Returns whether creating the state transformations for this message
+	 * failed when the index was created.
+	 */
+	public boolean hasErrors(int i) {
+		return (getFlags(i) & FLAG_HAS_ERRORS) != 0;
+	}
+
+	private int getFlags(int i) {
+		return mBuffer.get(position(i) + 32);
+	}
+
+	private int position(int i) {
+		return HEADER_SIZE + i * ENTRY_SIZE;
+	}
+
+	/**
+	 * Writes a new index for a trace file. Entries are appended in file order,
+	 * and the index only becomes visible once {@link #commit()} succeeds.
+	 */
+	public static class Writer {
+		private final TraceFileInfo mTraceFileInfo;
+		private final File mIndexFile;
+		private final File mTempFile;
+		private final DataOutputStream mStream;
+		private int mEntryCount;
+
+		/**
+		 * Start writing an index for the given trace file.
+		 *
+		 * @throws IOException
+		 *             if the index file cannot be created
+		 */
+		public Writer(TraceFileInfo traceFileInfo) throws IOException {
+			this(traceFileInfo.getPath(), traceFileInfo);
+		}
+
+		/**
+		 * Start writing an index for a trace file that is still being written.
+		 * The index must be committed with {@link #commit(TraceFileInfo)} once
+		 * the trace file is complete.
+		 *
+		 * @throws IOException
+		 *             if the index file cannot be created
+		 */
+		public Writer(String tracePath) throws IOException {
+			this(tracePath, null);
+		}
+
+		private Writer(String tracePath, TraceFileInfo traceFileInfo) throws IOException {
+			mTraceFileInfo = traceFileInfo;
+			mIndexFile = getIndexFile(tracePath);
+			mTempFile = new File(mIndexFile.getPath() + TEMP_FILE_SUFFIX);
+			mStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mTempFile), 64 * 1024));
+
+			mStream.writeInt(MAGIC);
+			mStream.writeInt(VERSION);
+			mStream.writeLong(0); // trace file size, updated on commit
+			mStream.writeLong(0); // trace file mtime, updated on commit
+			mStream.writeInt(0); // entry count, updated on commit
+		}
+
+		/**
+		 * Append the entry for a message.
+		 *
+		 * @param offset
+		 *            offset of the message in the trace file
+		 * @param msg
+		 *            the message
+		 * @param hasErrors
+		 *            whether the state transformations for this message could
+		 *            not be created
+		 */
+		public void add(long offset, GLMessage msg, boolean hasErrors) throws IOException {
+			int flags = 0;
+			if (msg.hasFb()) {
+				flags |= FLAG_HAS_FB;
+			}
+			if (hasErrors) {
+				flags |= FLAG_HAS_ERRORS;
+			}
+
+			mStream.writeLong(offset);
+			mStream.writeLong(msg.getStartTime());
+			mStream.writeInt(msg.getFunction().getNumber());
+			mStream.writeInt(msg.getContextId());
+			mStream.writeInt(msg.getDuration());
+			mStream.writeInt(msg.getThreadtime());
+			mStream.writeByte(flags);
+			mEntryCount++;
+		}
+
+		/** Finish writing the index and make it available to readers. */
+		public void commit() throws IOException {
+			commit(mTraceFileInfo);
+		}
+
+		/**
+		 * Finish writing the index for the given, now complete, trace file and
+		 * make it available to readers.
+		 */
+		public void commit(TraceFileInfo traceFileInfo) throws IOException {
+			mStream.close();
+
+			RandomAccessFile f = new RandomAccessFile(mTempFile, "rw"); //$NON-NLS-1$
+			try {
+				f.seek(TRACE_FILE_INFO_OFFSET);
+				f.writeLong(traceFileInfo.getSize());
+				f.writeLong(traceFileInfo.getLastModificationTime());
+				f.writeInt(mEntryCount);
+			} finally {
+				f.close();
+			}
+
+			mIndexFile.delete();
+			if (!mTempFile.renameTo(mIndexFile)) {
+				mTempFile.delete();
+				throw new IOException("Unable to create trace index " + mIndexFile.getPath());
+			}
+		}
+
+		/** Discard the partially written index. */
+		public void abort() {
+			try {
+				mStream.close();
+			} catch (IOException e) {
+				// ignore exception while closing file
+			}
+			mTempFile.delete();
+		}
+	}
+}
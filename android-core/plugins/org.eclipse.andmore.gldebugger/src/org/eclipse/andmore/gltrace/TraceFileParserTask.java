@@ -21,6 +21,7 @@ import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage.Function;
 import org.eclipse.andmore.gltrace.format.GLAPISpec;
 import org.eclipse.andmore.gltrace.format.GLMessageFormatter;
 import org.eclipse.andmore.gltrace.model.GLCall;
+import org.eclipse.andmore.gltrace.model.GLCallStore;
 import org.eclipse.andmore.gltrace.model.GLFrame;
 import org.eclipse.andmore.gltrace.model.GLTrace;
 import org.eclipse.andmore.gltrace.state.transforms.StateTransformFactory;
@@ -28,26 +29,48 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class TraceFileParserTask implements IRunnableWithProgress {
-	private static final TraceFileReader sReader = new TraceFileReader();
-
 	private static final GLMessageFormatter sGLMessageFormatter = new GLMessageFormatter(GLAPISpec.getSpecs());
 
+	/** Number of messages decoded together by a single worker task. */
+	private static final int BATCH_SIZE = 1024;
+
+	/**
+	 * Size in bytes of the encoded messages after which a batch is cut short,
+	 * so that batches of framebuffer messages stay small.
+	 */
+	private static final int MAX_BATCH_BYTES = 4 * 1024 * 1024;
+
+	/** Maximum number of batches in flight per worker thread. */
+	private static final int MAX_PENDING_BATCHES_PER_THREAD = 4;
+
+	/**
+	 * Maximum size in bytes of the encoded messages of the batches in flight.
+	 * Decoded messages hold their framebuffer and data payloads, so the memory
+	 * they use grows with the size of their encoding rather than their count.
+	 */
+	private static final long MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
 	private String mTraceFilePath;
-	private RandomAccessFile mFile;
+	private TraceFileReader mReader;
 
-	private List<GLCall> mGLCalls;
+	private GLCallStore mGLCalls;
 	private Set<Integer> mGLContextIds;
 
 	private GLTrace mTrace;
@@ -60,46 +83,72 @@ public class TraceFileParserTask implements IRunnableWithProgress {
 	 */
 	public TraceFileParserTask(String path) {
 		try {
-			mFile = new RandomAccessFile(path, "r"); //$NON-NLS-1$
-		} catch (FileNotFoundException e) {
+			mReader = new TraceFileReader(path);
+		} catch (IOException e) {
 			throw new IllegalArgumentException(e);
 		}
 
 		mTraceFilePath = path;
-		mGLCalls = new ArrayList<GLCall>();
 		mGLContextIds = new TreeSet<Integer>();
 	}
 
-	private void addMessage(int index, long traceFileOffset, GLMessage msg, long startTime) {
-		String formattedMsg;
-		try {
-			formattedMsg = sGLMessageFormatter.formatGLMessage(msg);
-		} catch (Exception e) {
-			formattedMsg = String.format("%s()", msg.getFunction().toString()); //$NON-NLS-1$
+	private GLCall addMessage(ParsedMessage p, long startTime) {
+		GLMessage msg = p.mMessage;
+		GLCall c = mGLCalls.add(startTime, p.mOffset, msg.getFunction(), msg.hasFb(), msg.getContextId(),
+				msg.getDuration(), msg.getThreadtime(), p.mHasTransformErrors);
+
+		// The details are not stored: they are reloaded from the trace file
+		// when first requested, so that only those of recently used calls
+		// are held in memory.
+		if (p.mHasTransformErrors) {
+			GlTracePlugin.getDefault().logMessage(
+					"Error while creating transformations for " + formatDisplayString(msg) + ":");
+			GlTracePlugin.getDefault().logMessage(p.mTransformError);
 		}
 
-		GLCall c = new GLCall(index, startTime, traceFileOffset, formattedMsg, msg.getFunction(), msg.hasFb(),
-				msg.getContextId(), msg.getDuration(), msg.getThreadtime());
-
-		addProperties(c, msg);
+		mGLContextIds.add(Integer.valueOf(c.getContextId()));
+		return c;
+	}
 
+	/** Returns the string displayed for a message. */
+	private static String formatDisplayString(GLMessage msg) {
 		try {
-			c.setStateTransformations(StateTransformFactory.getTransformsFor(msg));
+			return sGLMessageFormatter.formatGLMessage(msg);
 		} catch (Exception e) {
-			c.setStateTransformationCreationError(e.getMessage());
-			GlTracePlugin.getDefault().logMessage("Error while creating transformations for " + c.toString() + ":");
-			GlTracePlugin.getDefault().logMessage(e.getMessage());
+			return String.format("%s()", msg.getFunction().toString()); //$NON-NLS-1$
 		}
+	}
 
-		mGLCalls.add(c);
-		mGLContextIds.add(Integer.valueOf(c.getContextId()));
+	/**
+	 * A decoded message along with whether its state transformations can be
+	 * created. The transformations themselves are only created when the
+	 * details of the call are loaded. Decoding is independent of all other
+	 * messages, and can therefore be performed on any thread.
+	 */
+	private static class ParsedMessage {
+		private final long mOffset;
+		private final GLMessage mMessage;
+		private boolean mHasTransformErrors;
+		private String mTransformError;
+
+		public ParsedMessage(long offset, GLMessage msg) {
+			mOffset = offset;
+			mMessage = msg;
+
+			try {
+				StateTransformFactory.checkTransformsFor(msg);
+			} catch (Exception e) {
+				mHasTransformErrors = true;
+				mTransformError = e.getMessage();
+			}
+		}
 	}
 
 	/**
 	 * Save important values from the {@link GLMessage} in the {@link GLCall} as
 	 * properties.
 	 */
-	private void addProperties(GLCall c, GLMessage msg) {
+	private static void addProperties(GLCall c, GLMessage msg) {
 		switch (msg.getFunction()) {
 		case glPushGroupMarkerEXT:
 			// void PushGroupMarkerEXT(sizei length, const char *marker);
@@ -120,101 +169,352 @@ public class TraceFileParserTask implements IRunnableWithProgress {
 		}
 	}
 
+	/**
+	 * Loads the details and display strings of calls by parsing their message
+	 * from the trace file on demand.
+	 */
+	private static class LazyDetailsLoader implements GLCall.IDetailsLoader {
+		private final TraceFileReader mReader;
+
+		/**
+		 * Files the texture data of calls was extracted to, by offset of the
+		 * call in the trace file, so that it is extracted only once however
+		 * many times the details of a call are reloaded.
+		 */
+		private final Map<Long, File> mTextureDataFiles = new HashMap<Long, File>();
+
+		public LazyDetailsLoader(TraceFileReader reader) {
+			mReader = reader;
+		}
+
+		@Override
+		public void loadDetails(GLCall call) {
+			GLMessage msg = null;
+			String error = null;
+			try {
+				msg = mReader.getMessageAtOffset(call.getOffsetInTraceFile());
+			} catch (IOException e) {
+				error = e.getMessage();
+			}
+
+			if (msg == null) {
+				call.setStateTransformationCreationError(error != null ? error
+						: "Unable to read message from trace file.");
+				return;
+			}
+
+			addProperties(call, msg);
+
+			try {
+				File textureData = getTextureData(call.getOffsetInTraceFile(), msg);
+				call.setStateTransformations(StateTransformFactory.getTransformsFor(msg, textureData));
+			} catch (Exception e) {
+				call.setStateTransformationCreationError(e.getMessage());
+			}
+		}
+
+		/**
+		 * Returns the file holding the texture data of the message at the given
+		 * offset, extracting it on the first request.
+		 */
+		private File getTextureData(long offset, GLMessage msg) {
+			Long key = Long.valueOf(offset);
+			synchronized (mTextureDataFiles) {
+				File f = mTextureDataFiles.get(key);
+				if (f == null) {
+					f = StateTransformFactory.extractTextureData(msg);
+					if (f != null) {
+						mTextureDataFiles.put(key, f);
+					}
+				}
+				return f;
+			}
+		}
+
+		@Override
+		public String formatDisplayString(GLCall call) {
+			GLMessage msg = null;
+			try {
+				msg = mReader.getMessageAtOffset(call.getOffsetInTraceFile());
+			} catch (IOException e) {
+				// fall back to the function name
+			}
+
+			if (msg == null) {
+				return String.format("%s()", call.getFunction().toString()); //$NON-NLS-1$
+			}
+
+			return TraceFileParserTask.formatDisplayString(msg);
+		}
+	}
+
 	/**
 	 * Parse the entire file and create a {@link GLTrace} object that can be
-	 * retrieved using {@link #getTrace()}.
+	 * retrieved using {@link #getTrace()}. If a valid {@link TraceFileIndex}
+	 * exists for the file, the calls are created from the index and their
+	 * messages are only parsed when required. Otherwise, the index is created
+	 * while parsing the file.
 	 */
 	@Override
 	public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-		long fileLength;
+		File f = new File(mTraceFilePath);
+		TraceFileInfo fileInfo = new TraceFileInfo(mTraceFilePath, f.length(), f.lastModified());
+
+		List<GLFrame> glFrames = null;
+		boolean success = false;
+
 		try {
-			fileLength = mFile.length();
-		} catch (IOException e1) {
-			fileLength = 0;
+			TraceFileIndex index = TraceFileIndex.open(fileInfo);
+			mGLCalls = new GLCallStore(index != null ? index.getEntryCount() : 0, new LazyDetailsLoader(mReader));
+			if (index == null || !loadIndex(index, monitor)) {
+				parseTraceFile(fileInfo, monitor);
+			}
+			mGLCalls.trimToSize();
+
+			if (mGLContextIds.size() > 1) {
+				// if there are multiple contexts, then the calls may arrive at
+				// the
+				// host out of order. So we perform a sort based on the
+				// invocation time.
+				mGLCalls.sortByStartTime();
+			}
+
+			glFrames = createFrames(mGLCalls.asList());
+			success = true;
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new InvocationTargetException(e);
+		} finally {
+			if (!success) {
+				mReader.close();
+			}
+			monitor.done();
 		}
 
-		monitor.beginTask("Parsing OpenGL Trace File", fileLength > 0 ? 100 : IProgressMonitor.UNKNOWN);
+		mTrace = new GLTrace(fileInfo, glFrames, mGLCalls.asList(), new ArrayList<Integer>(mGLContextIds), mReader);
+	}
 
-		List<GLFrame> glFrames = null;
+	/**
+	 * Parse every message in the trace file, and write out the index for the
+	 * trace file on the way.
+	 *
+	 * Parsing is pipelined: the calling thread scans the file for message
+	 * boundaries and hands out batches of messages to a pool of worker threads
+	 * that decode, format and create the state transformations for each
+	 * message. The results are then merged back in file order by the calling
+	 * thread. At most {@link #MAX_PENDING_BATCHES_PER_THREAD} batches per
+	 * worker, holding at most {@link #MAX_PENDING_BYTES} of encoded messages,
+	 * are in flight at any time to bound the memory used by decoded messages.
+	 */
+	private void parseTraceFile(TraceFileInfo fileInfo, IProgressMonitor monitor) throws IOException,
+			InterruptedException {
+		long fileLength = mReader.getSize();
+		monitor.beginTask("Parsing OpenGL Trace File", fileLength > 0 ? 100 : IProgressMonitor.UNKNOWN);
 
+		TraceFileIndex.Writer indexWriter = null;
 		try {
-			GLMessage msg = null;
-			int msgCount = 0;
-			long filePointer = mFile.getFilePointer();
-			int percentParsed = 0;
+			indexWriter = new TraceFileIndex.Writer(fileInfo);
+		} catch (IOException e) {
+			// the trace can still be displayed, it just won't open any faster
+			// the next time around
+		}
+
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "GL Trace Parser"); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		});
 
-			// counters that maintain some statistics about the trace messages
-			long minTraceStartTime = Long.MAX_VALUE;
+		MergeState state = new MergeState(indexWriter, fileLength, monitor);
+		LinkedList<Future<ParsedMessage[]>> pending = new LinkedList<Future<ParsedMessage[]>>();
+		LinkedList<Long> pendingSizes = new LinkedList<Long>();
+		long pendingBytes = 0;
+		int maxPending = nThreads * MAX_PENDING_BATCHES_PER_THREAD;
 
-			while ((msg = sReader.getMessageAtOffset(mFile, -1)) != null) {
-				if (minTraceStartTime > msg.getStartTime()) {
-					minTraceStartTime = msg.getStartTime();
+		boolean success = false;
+		try {
+			long filePointer = 0;
+			while (true) {
+				long[] offsets = new long[BATCH_SIZE];
+				int[] lengths = new int[BATCH_SIZE];
+				int n = 0;
+				long batchBytes = 0;
+
+				int len;
+				while (n < BATCH_SIZE && batchBytes < MAX_BATCH_BYTES
+						&& (len = mReader.getMessageLength(filePointer)) >= 0) {
+					offsets[n] = filePointer;
+					lengths[n] = len;
+					n++;
+					batchBytes += len;
+					filePointer = mReader.getNextOffset(filePointer, len);
 				}
 
-				addMessage(msgCount, filePointer, msg, msg.getStartTime() - minTraceStartTime);
+				if (n == 0) {
+					break;
+				}
 
-				filePointer = mFile.getFilePointer();
-				msgCount++;
+				pending.add(executor.submit(new DecodeTask(mReader, offsets, lengths, n)));
+				pendingSizes.add(Long.valueOf(batchBytes));
+				pendingBytes += batchBytes;
+				while (pending.size() >= maxPending || pendingBytes > MAX_PENDING_BYTES) {
+					merge(pending.removeFirst(), state);
+					pendingBytes -= pendingSizes.removeFirst().longValue();
+				}
 
 				if (monitor.isCanceled()) {
 					throw new InterruptedException();
 				}
+			}
 
-				if (fileLength > 0) {
-					int percentParsedNow = (int) ((filePointer * 100) / fileLength);
-					monitor.worked(percentParsedNow - percentParsed);
-					percentParsed = percentParsedNow;
+			while (!pending.isEmpty()) {
+				merge(pending.removeFirst(), state);
+			}
+			success = true;
+		} finally {
+			executor.shutdownNow();
+
+			if (indexWriter != null) {
+				if (success) {
+					try {
+						indexWriter.commit();
+					} catch (IOException e) {
+						// ignore, the index is only an optimization
+					}
+				} else {
+					indexWriter.abort();
 				}
 			}
+		}
+	}
 
-			if (mGLContextIds.size() > 1) {
-				// if there are multiple contexts, then the calls may arrive at
-				// the
-				// host out of order. So we perform a sort based on the
-				// invocation time.
-				Collections.sort(mGLCalls, new Comparator<GLCall>() {
-					@Override
-					public int compare(GLCall c1, GLCall c2) {
-						long diff = (c1.getStartTime() - c2.getStartTime());
-
-						// We could return diff casted to an int. But in Java,
-						// casting
-						// from a long to an int truncates the bits and will not
-						// preserve
-						// the sign. So we resort to comparing the diff to 0 and
-						// returning
-						// the sign.
-						if (diff == 0) {
-							return 0;
-						} else if (diff > 0) {
-							return 1;
-						} else {
-							return -1;
-						}
-					}
-				});
+	/** Decodes a batch of consecutive messages. */
+	private static class DecodeTask implements Callable<ParsedMessage[]> {
+		private final TraceFileReader mReader;
+		private final long[] mOffsets;
+		private final int[] mLengths;
+		private final int mCount;
+
+		public DecodeTask(TraceFileReader reader, long[] offsets, int[] lengths, int count) {
+			mReader = reader;
+			mOffsets = offsets;
+			mLengths = lengths;
+			mCount = count;
+		}
 
-				// reassign indices after sorting
-				for (int i = 0; i < mGLCalls.size(); i++) {
-					mGLCalls.get(i).setIndex(i);
-				}
+		@Override
+		public ParsedMessage[] call() throws IOException {
+			ParsedMessage[] result = new ParsedMessage[mCount];
+			for (int i = 0; i < mCount; i++) {
+				byte[] data = mReader.getMessageBytes(mOffsets[i], mLengths[i]);
+				result[i] = new ParsedMessage(mOffsets[i], GLMessage.parseFrom(data));
 			}
+			return result;
+		}
+	}
 
-			glFrames = createFrames(mGLCalls);
-		} catch (Exception e) {
-			throw new InvocationTargetException(e);
-		} finally {
-			try {
-				mFile.close();
-			} catch (IOException e) {
-				// ignore exception while closing file
+	/** State carried across successive merges of decoded batches. */
+	private static class MergeState {
+		private final TraceFileIndex.Writer mIndexWriter;
+		private final long mFileLength;
+		private final IProgressMonitor mMonitor;
+
+		private int mPercentParsed;
+
+		// counters that maintain some statistics about the trace messages
+		private long mMinTraceStartTime = Long.MAX_VALUE;
+
+		public MergeState(TraceFileIndex.Writer indexWriter, long fileLength, IProgressMonitor monitor) {
+			mIndexWriter = indexWriter;
+			mFileLength = fileLength;
+			mMonitor = monitor;
+		}
+	}
+
+	/** Wait for a decoded batch, and append its calls to the trace. */
+	private void merge(Future<ParsedMessage[]> batch, MergeState state) throws IOException, InterruptedException {
+		ParsedMessage[] messages;
+		try {
+			messages = batch.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
 			}
-			monitor.done();
+			throw new IOException(cause.getMessage());
 		}
 
-		File f = new File(mTraceFilePath);
-		TraceFileInfo fileInfo = new TraceFileInfo(mTraceFilePath, f.length(), f.lastModified());
-		mTrace = new GLTrace(fileInfo, glFrames, mGLCalls, new ArrayList<Integer>(mGLContextIds));
+		for (ParsedMessage p : messages) {
+			long startTime = p.mMessage.getStartTime();
+			if (state.mMinTraceStartTime > startTime) {
+				state.mMinTraceStartTime = startTime;
+			}
+
+			GLCall c = addMessage(p, startTime - state.mMinTraceStartTime);
+			if (state.mIndexWriter != null) {
+				state.mIndexWriter.add(p.mOffset, p.mMessage, c.hasErrors());
+			}
+		}
+
+		if (state.mFileLength > 0 && messages.length > 0) {
+			long filePointer = messages[messages.length - 1].mOffset;
+			int percentParsedNow = (int) ((filePointer * 100) / state.mFileLength);
+			state.mMonitor.worked(percentParsedNow - state.mPercentParsed);
+			state.mPercentParsed = percentParsedNow;
+		}
+	}
+
+	/**
+	 * Create the calls from the entries in a trace file index. The messages in
+	 * the trace file are not parsed.
+	 *
+	 * @return false if the index could not be used
+	 */
+	private boolean loadIndex(TraceFileIndex index, IProgressMonitor monitor) throws InterruptedException {
+		int entryCount = index.getEntryCount();
+		monitor.beginTask("Loading OpenGL Trace File Index", entryCount > 0 ? 100 : IProgressMonitor.UNKNOWN);
+
+		long minTraceStartTime = Long.MAX_VALUE;
+		int percentLoaded = 0;
+
+		for (int i = 0; i < entryCount; i++) {
+			long startTime = index.getStartTime(i);
+			if (minTraceStartTime > startTime) {
+				minTraceStartTime = startTime;
+			}
+
+			Function function = index.getFunction(i);
+			if (function == null) {
+				// index was created by a different version of the tracer
+				mGLCalls.clear();
+				mGLContextIds.clear();
+				return false;
+			}
+
+			int contextId = index.getContextId(i);
+			mGLCalls.add(startTime - minTraceStartTime, index.getOffset(i), function, index.hasFb(i), contextId,
+					index.getWallDuration(i), index.getThreadDuration(i), index.hasErrors(i));
+			mGLContextIds.add(Integer.valueOf(contextId));
+
+			if ((i & 0xffff) == 0) {
+				if (monitor.isCanceled()) {
+					throw new InterruptedException();
+				}
+
+				int percentLoadedNow = (int) ((i * 100L) / entryCount);
+				monitor.worked(percentLoadedNow - percentLoaded);
+				percentLoaded = percentLoadedNow;
+			}
+		}
+
+		return true;
 	}
 
 	/** Assign GL calls to GL Frames. */
@@ -233,8 +533,8 @@ public class TraceFileParserTask implements IRunnableWithProgress {
 		}
 
 		// assign left over calls at the end to the last frame
-		if (startCallIndex != mGLCalls.size()) {
-			glFrames.add(new GLFrame(frameIndex, startCallIndex, mGLCalls.size()));
+		if (startCallIndex != calls.size()) {
+			glFrames.add(new GLFrame(frameIndex, startCallIndex, calls.size()));
 		}
 
 		return glFrames;
@@ -18,12 +18,24 @@ package org.eclipse.andmore.gltrace;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 
-import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage;
 
+/**
+ * Provides random access to the length prefixed protobuf messages in a trace
+ * file.
+ *
+ * The file is memory mapped in segments of at most {@link #SEGMENT_SIZE}
+ * bytes, so traces larger than 2GB can be read without copying them through
+ * the Java heap. Messages that straddle a segment boundary are read using a
+ * positional read on the underlying channel. Reads do not modify any shared
+ * state, so a single reader may be used concurrently from multiple threads.
+ */
 public class TraceFileReader {
 	/**
 	 * Maximum size for a protocol buffer message. The message size is dominated
@@ -33,39 +45,158 @@ public class TraceFileReader {
 	 */
 	private static final int MAX_PROTOBUF_SIZE = 1920 * 1080 * 100;
 
+	/** Maximum size of a single mapped region of the trace file. */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	/** Size of the length prefix preceding each message. */
+	private static final int LENGTH_SIZE = 4;
+
+	private final FileInputStream mStream;
+	private final FileChannel mChannel;
+	private final long mSize;
+	private final MappedByteBuffer[] mSegments;
+
+	/**
+	 * Map the given trace file for reading.
+	 *
+	 * @param path
+	 *            path to trace file
+	 * @throws IOException
+	 *             if the file cannot be opened or mapped
+	 */
+	public TraceFileReader(String path) throws IOException {
+		mStream = new FileInputStream(path);
+		mChannel = mStream.getChannel();
+
+		try {
+			mSize = mChannel.size();
+
+			int nSegments = (int) ((mSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			mSegments = new MappedByteBuffer[nSegments];
+			for (int i = 0; i < nSegments; i++) {
+				long start = i * SEGMENT_SIZE;
+				long len = Math.min(SEGMENT_SIZE, mSize - start);
+				mSegments[i] = mChannel.map(FileChannel.MapMode.READ_ONLY, start, len);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/** Returns the size of the mapped trace file. */
+	public long getSize() {
+		return mSize;
+	}
+
+	/**
+	 * Obtain the length of the protobuf message stored at the given offset.
+	 *
+	 * @param offset
+	 *            offset of the length prefix of a message
+	 * @return length of the message, or -1 if there is no complete message at
+	 *         the given offset
+	 * @throws IOException
+	 *             in case of file I/O errors, or if the message is unexpectedly
+	 *             large
+	 */
+	public int getMessageLength(long offset) throws IOException {
+		if (offset < 0 || offset + LENGTH_SIZE > mSize) {
+			return -1;
+		}
+
+		ByteBuffer b = read(offset, LENGTH_SIZE);
+		int len = b.getInt();
+		if (len < 0 || len > MAX_PROTOBUF_SIZE) {
+			String msg = String.format("Unexpectedly large (%d bytes) protocol buffer message encountered.", len);
+			throw new InvalidProtocolBufferException(msg);
+		}
+
+		if (offset + LENGTH_SIZE + len > mSize) {
+			return -1;
+		}
+
+		return len;
+	}
+
 	/**
-	 * Obtain the next protobuf message in this file.
-	 * 
-	 * @param file
-	 *            file to read from
+	 * Returns the offset of the message following the message at the given
+	 * offset.
+	 */
+	public long getNextOffset(long offset, int messageLength) {
+		return offset + LENGTH_SIZE + messageLength;
+	}
+
+	/**
+	 * Obtain the protobuf message at the given offset.
+	 *
 	 * @param offset
 	 *            offset to start reading from
-	 * @return protobuf message at given offset
+	 * @return protobuf message at given offset, or null if there is no complete
+	 *         message at that offset
 	 * @throws IOException
 	 *             in case of file I/O errors
 	 * @throws InvalidProtocolBufferException
 	 *             if protobuf is not well formed
 	 */
-	public GLMessage getMessageAtOffset(RandomAccessFile file, long offset) throws IOException {
-		int len;
-		byte[] b;
-		try {
-			if (offset != -1) {
-				file.seek(offset);
-			}
+	public GLMessage getMessageAtOffset(long offset) throws IOException {
+		int len = getMessageLength(offset);
+		if (len < 0) {
+			return null;
+		}
 
-			len = file.readInt();
-			if (len > MAX_PROTOBUF_SIZE) {
-				String msg = String.format("Unexpectedly large (%d bytes) protocol buffer message encountered.", len);
-				throw new InvalidProtocolBufferException(msg);
-			}
+		return GLMessage.parseFrom(getMessageBytes(offset, len));
+	}
 
-			b = new byte[len];
-			file.readFully(b);
-		} catch (EOFException e) {
-			return null;
+	/**
+	 * Obtain the raw bytes of the message at the given offset.
+	 *
+	 * @param offset
+	 *            offset of the length prefix of the message
+	 * @param len
+	 *            length of the message as returned by
+	 *            {@link #getMessageLength(long)}
+	 */
+	public byte[] getMessageBytes(long offset, int len) throws IOException {
+		ByteBuffer b = read(offset + LENGTH_SIZE, len);
+		byte[] data = new byte[len];
+		b.get(data);
+		return data;
+	}
+
+	/**
+	 * Returns a buffer positioned at the given file offset with at least len
+	 * bytes remaining.
+	 */
+	private ByteBuffer read(long offset, int len) throws IOException {
+		int segment = (int) (offset / SEGMENT_SIZE);
+		int start = (int) (offset % SEGMENT_SIZE);
+
+		ByteBuffer mapped = mSegments[segment];
+		if (start + len <= mapped.limit()) {
+			ByteBuffer b = mapped.duplicate();
+			b.position(start);
+			return b;
 		}
 
-		return GLMessage.parseFrom(b);
+		// the requested range crosses a segment boundary
+		ByteBuffer b = ByteBuffer.allocate(len);
+		while (b.hasRemaining()) {
+			int n = mChannel.read(b, offset + b.position());
+			if (n < 0) {
+				throw new IOException("Unexpected end of trace file.");
+			}
+		}
+		b.flip();
+		return b;
+	}
+
+	/** Release the file handle held by this reader. */
+	public void close() {
+		try {
+			mStream.close();
+		} catch (IOException e) {
+			// ignore exception while closing file
+		}
 	}
 }
@@ -16,145 +16,523 @@
 
 package org.eclipse.andmore.gltrace;
 
-import com.google.protobuf.InvalidProtocolBufferException;
-
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage;
 import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage.Function;
+import org.eclipse.andmore.gltrace.state.transforms.StateTransformFactory;
 
-/** A class that streams data received from a socket into the trace file. */
+/**
+ * A class that streams data received from a socket into the trace file.
+ *
+ * Receiving from the device and writing to disk are decoupled by a fixed size
+ * ring buffer, so that short stalls while writing to disk do not stall the
+ * application being traced:
+ * <ul>
+ * <li>The receiver thread reads from the socket into a large buffer, converts
+ * the little endian length prefix of each message to the big endian prefix
+ * used in trace files, and copies the messages into the ring buffer. When the
+ * ring buffer is full, the receiver blocks, which in turn throttles the device.
+ * </li>
+ * <li>The writer thread writes everything available in the ring buffer to the
+ * trace file with a single write to the file channel.</li>
+ * <li>The indexer thread follows the data written to the trace file, and
+ * writes the {@link TraceFileIndex} for the trace, so that the trace can be
+ * opened without parsing it once tracing stops.</li>
+ * </ul>
+ */
 public class TraceFileWriter {
-	private DataInputStream mInputStream;
-	private DataOutputStream mOutputStream;
+	/** Size of the buffer used to read from the socket. */
+	private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+	/** Size of the buffer between the socket and the trace file. */
+	private static final int RING_BUFFER_SIZE = 32 * 1024 * 1024;
+
+	/** Size of the length prefix preceding each message. */
+	private static final int LENGTH_SIZE = 4;
+
+	private final String mTracePath;
+	private final FileOutputStream mOutputStream;
+	private final ReadableByteChannel mInputChannel;
+	private final RingBuffer mRingBuffer = new RingBuffer(RING_BUFFER_SIZE);
+
 	private Thread mReceiverThread;
+	private Thread mWriterThread;
+	private Thread mIndexerThread;
+
+	private volatile long mBytesReceived = 0;
+
+	/** Number of bytes received up to the end of the last complete message. */
+	private volatile long mCompleteBytes = 0;
+	private volatile long mBytesDropped = 0;
+	private volatile int mFrameCount = 0;
 
-	private int mFileSize = 0;
-	private int mFrameCount = 0;
+	/** Number of bytes written to the trace file so far. */
+	private long mFileSize = 0;
+
+	/** Whether the trace file is complete and closed. */
+	private boolean mFileClosed = false;
+
+	/** Lock guarding {@link #mFileSize} and {@link #mFileClosed}. */
+	private final Object mFileLock = new Object();
 
 	/**
 	 * Construct a trace file writer.
-	 * 
+	 *
+	 * @param tracePath
+	 *            path to the trace file
 	 * @param fos
 	 *            output stream to write trace data to
 	 * @param is
-	 *            input stream from which trace data is read
+	 *            channel from which trace data is read
 	 */
-	public TraceFileWriter(FileOutputStream fos, DataInputStream is) {
-		mOutputStream = new DataOutputStream(fos);
-		mInputStream = is;
+	public TraceFileWriter(String tracePath, FileOutputStream fos, ReadableByteChannel is) {
+		mTracePath = tracePath;
+		mOutputStream = fos;
+		mInputChannel = is;
 	}
 
 	public void start() {
-		// launch thread
+		// launch threads
 		mReceiverThread = new Thread(new GLTraceReceiverTask());
 		mReceiverThread.setName("GL Trace Receiver");
 		mReceiverThread.start();
+
+		mWriterThread = new Thread(new GLTraceWriterTask());
+		mWriterThread.setName("GL Trace Writer");
+		mWriterThread.start();
+
+		mIndexerThread = new Thread(new GLTraceIndexerTask());
+		mIndexerThread.setName("GL Trace Indexer");
+		mIndexerThread.start();
 	}
 
 	public void stopTracing() {
 		// close socket to stop the receiver thread
 		try {
-			mInputStream.close();
+			mInputChannel.close();
 		} catch (IOException e) {
 			// ignore exception while closing socket
 		}
 
-		// wait for receiver to complete
-		try {
-			mReceiverThread.join();
-		} catch (InterruptedException e1) {
-			// ignore, this cannot be interrupted
-		}
+		// wait for the receiver, then for all received data to be written to
+		// the trace file and indexed
+		join(mReceiverThread);
+		join(mWriterThread);
+		join(mIndexerThread);
+	}
 
-		// close stream
+	private static void join(Thread t) {
 		try {
-			mOutputStream.close();
-		} catch (IOException e) {
-			// ignore error while closing stream
+			t.join();
+		} catch (InterruptedException e) {
+			// ignore, this cannot be interrupted
 		}
 	}
 
 	/**
-	 * The GLTraceReceiverTask collects trace data from the device and writes it
-	 * into a file while collecting some stats on the way.
+	 * The GLTraceReceiverTask collects trace data from the device and queues
+	 * it up for the writer.
 	 */
 	private class GLTraceReceiverTask implements Runnable {
+		private final ByteBuffer mLength = ByteBuffer.allocate(LENGTH_SIZE);
+
+		/** Number of bytes of the current message that are yet to be read. */
+		private int mRemaining = 0;
+
 		@Override
 		public void run() {
-			while (true) {
-				byte[] buffer = readTraceData(mInputStream);
-				if (buffer == null) {
-					break;
+			ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			try {
+				while (mInputChannel.read(buffer) >= 0) {
+					buffer.flip();
+					if (!processTraceData(buffer)) {
+						break;
+					}
+					buffer.compact();
+				}
+			} catch (IOException e) {
+				// socket closed
+			} catch (InterruptedException e) {
+				// stop receiving
+			} finally {
+				mRingBuffer.close();
+			}
+		}
+
+		/**
+		 * Queue up the trace data in the given buffer. Any incomplete length
+		 * prefix at the end of the buffer is left in the buffer.
+		 *
+		 * @return false if the stream is malformed
+		 */
+		private boolean processTraceData(ByteBuffer buffer) throws InterruptedException {
+			while (buffer.hasRemaining()) {
+				if (mRemaining == 0) {
+					if (buffer.remaining() < LENGTH_SIZE) {
+						break;
+					}
+
+					// the length is little endian on the wire, while trace
+					// files use big endian
+					int len = buffer.getInt();
+					if (len < 0) {
+						return false;
+					}
+
+					mLength.clear();
+					mLength.putInt(len);
+					mLength.flip();
+					queue(mLength);
+					mRemaining = len;
+				}
+
+				int n = Math.min(mRemaining, buffer.remaining());
+				ByteBuffer data = buffer.duplicate();
+				data.limit(data.position() + n);
+				queue(data);
+				buffer.position(buffer.position() + n);
+				mRemaining -= n;
+				if (mRemaining == 0) {
+					mCompleteBytes = mBytesReceived;
+				}
+			}
+
+			return true;
+		}
+
+		private void queue(ByteBuffer data) throws InterruptedException {
+			int len = data.remaining();
+			if (!mRingBuffer.put(data)) {
+				// the trace file can no longer be written
+				mBytesDropped += len;
+			}
+			mBytesReceived += len;
+		}
+	}
+
+	/** The GLTraceWriterTask writes queued up trace data to the trace file. */
+	private class GLTraceWriterTask implements Runnable {
+		@Override
+		public void run() {
+			FileChannel channel = mOutputStream.getChannel();
+			try {
+				ByteBuffer[] data;
+				while ((data = mRingBuffer.take()) != null) {
+					long len = 0;
+					for (ByteBuffer b : data) {
+						len += b.remaining();
+					}
+
+					try {
+						while (data[data.length - 1].hasRemaining()) {
+							channel.write(data);
+						}
+					} catch (IOException e) {
+						GlTracePlugin.getDefault().logMessage("Unable to write to trace file: " + e.getMessage());
+						mRingBuffer.abort();
+						return;
+					} finally {
+						mRingBuffer.release(len);
+					}
+
+					synchronized (mFileLock) {
+						mFileSize += len;
+						mFileLock.notifyAll();
+					}
 				}
+			} catch (InterruptedException e) {
+				mRingBuffer.abort();
+			} finally {
+				dropPartialMessage(channel);
 
 				try {
-					writeTraceData(buffer, mOutputStream);
+					mOutputStream.close();
 				} catch (IOException e) {
-					break;
+					// ignore error while closing stream
 				}
 
-				updateTraceStats(buffer);
+				synchronized (mFileLock) {
+					mFileClosed = true;
+					mFileLock.notifyAll();
+				}
 			}
 		}
-	}
 
-	private byte[] readTraceData(DataInputStream dis) {
-		int len;
-		try {
-			len = dis.readInt();
-		} catch (IOException e1) {
-			return null;
+		/**
+		 * Remove the partial message that was being received when tracing
+		 * stopped, so that the trace file only contains complete messages.
+		 */
+		private void dropPartialMessage(FileChannel channel) {
+			long complete = mCompleteBytes;
+			synchronized (mFileLock) {
+				if (mFileSize <= complete) {
+					return;
+				}
+
+				try {
+					channel.truncate(complete);
+					mFileSize = complete;
+				} catch (IOException e) {
+					GlTracePlugin.getDefault().logMessage("Unable to truncate trace file: " + e.getMessage());
+				}
+			}
 		}
-		len = Integer.reverseBytes(len); // readInt is big endian, we want
-											// little endian
+	}
+
+	/**
+	 * The GLTraceIndexerTask parses the messages written to the trace file,
+	 * collecting some stats and writing the trace file index on the way.
+	 */
+	private class GLTraceIndexerTask implements Runnable {
+		@Override
+		public void run() {
+			TraceFileIndex.delete(mTracePath);
+
+			TraceFileIndex.Writer indexWriter = null;
+			try {
+				indexWriter = new TraceFileIndex.Writer(mTracePath);
+			} catch (IOException e) {
+				// the trace will be indexed when it is first opened
+			}
 
-		byte[] buffer = new byte[len];
-		int readLen = 0;
-		while (readLen < len) {
+			RandomAccessFile file = null;
+			boolean success = false;
 			try {
-				int read = dis.read(buffer, readLen, len - readLen);
-				if (read < 0) {
-					return null;
-				} else {
-					readLen += read;
+				file = new RandomAccessFile(mTracePath, "r"); //$NON-NLS-1$
+				success = indexTraceFile(file, indexWriter);
+			} catch (Exception e) {
+				// stop indexing, but wait for the trace to be complete
+				waitForFileSize(Long.MAX_VALUE);
+			} finally {
+				if (file != null) {
+					try {
+						file.close();
+					} catch (IOException e) {
+						// ignore exception while closing file
+					}
 				}
+			}
+
+			if (indexWriter == null) {
+				return;
+			}
+
+			if (!success) {
+				indexWriter.abort();
+				return;
+			}
+
+			File f = new File(mTracePath);
+			try {
+				indexWriter.commit(new TraceFileInfo(mTracePath, f.length(), f.lastModified()));
 			} catch (IOException e) {
-				return null;
+				// ignore, the index is only an optimization
 			}
 		}
 
-		return buffer;
-	}
+		/** @return whether all messages in the complete trace file were indexed */
+		private boolean indexTraceFile(RandomAccessFile file, TraceFileIndex.Writer indexWriter) throws IOException {
+			long offset = 0;
 
-	private void writeTraceData(byte[] buffer, DataOutputStream stream) throws IOException {
-		stream.writeInt(buffer.length);
-		stream.write(buffer);
-	}
+			while (true) {
+				long available = waitForFileSize(offset + LENGTH_SIZE);
+				if (available < offset + LENGTH_SIZE) {
+					// the trace file is complete; a partial message that was
+					// being received when tracing stopped has been dropped
+					return true;
+				}
 
-	private void updateTraceStats(byte[] buffer) {
-		GLMessage msg = null;
-		try {
-			msg = GLMessage.parseFrom(buffer);
-		} catch (InvalidProtocolBufferException e) {
-			return;
+				file.seek(offset);
+				int len = file.readInt();
+
+				available = waitForFileSize(offset + LENGTH_SIZE + len);
+				if (available < offset + LENGTH_SIZE + len) {
+					return true;
+				}
+
+				byte[] data = new byte[len];
+				file.readFully(data);
+				GLMessage msg = GLMessage.parseFrom(data);
+
+				if (msg.getFunction() == Function.eglSwapBuffers) {
+					mFrameCount++;
+				}
+
+				if (indexWriter != null) {
+					indexWriter.add(offset, msg, StateTransformFactory.hasTransformErrors(msg));
+				}
+
+				offset += LENGTH_SIZE + len;
+			}
 		}
+	}
 
-		mFileSize += buffer.length;
+	/**
+	 * Wait until at least the given number of bytes have been written to the
+	 * trace file, or until the trace file is complete.
+	 *
+	 * @return the number of bytes written to the trace file
+	 */
+	private long waitForFileSize(long size) {
+		synchronized (mFileLock) {
+			while (mFileSize < size && !mFileClosed) {
+				try {
+					mFileLock.wait();
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
 
-		if (msg.getFunction() == Function.eglSwapBuffers) {
-			mFrameCount++;
+			return mFileSize;
 		}
 	}
 
-	public int getCurrentFileSize() {
-		return mFileSize;
+	public long getCurrentFileSize() {
+		synchronized (mFileLock) {
+			return mFileSize;
+		}
 	}
 
 	public int getCurrentFrameCount() {
 		return mFrameCount;
 	}
+
+	/** Returns the number of bytes received from the device. */
+	public long getBytesReceived() {
+		return mBytesReceived;
+	}
+
+	/**
+	 * Returns the number of bytes received from the device that could not be
+	 * written to the trace file.
+	 */
+	public long getBytesDropped() {
+		return mBytesDropped;
+	}
+
+	/**
+	 * Returns the fraction of the buffer between the device and the trace
+	 * file that is in use.
+	 */
+	public double getBufferUsage() {
+		return mRingBuffer.getUsage();
+	}
+
+	/**
+	 * A byte ring buffer shared by a single producer and a single consumer.
+	 * The producer blocks while the buffer is full. The consumer accesses the
+	 * buffered data in place, and releases it once it has been consumed.
+	 */
+	private static class RingBuffer {
+		private final byte[] mData;
+
+		/** Total number of bytes ever put into and taken out of the buffer. */
+		private long mPutCount;
+		private long mReleaseCount;
+
+		/** Set once the producer has put all its data. */
+		private boolean mClosed;
+
+		/** Set if the consumer stops consuming. */
+		private boolean mAborted;
+
+		public RingBuffer(int size) {
+			mData = new byte[size];
+		}
+
+		/**
+		 * Copy the remaining data in the given buffer into the ring buffer,
+		 * waiting for space as required.
+		 *
+		 * @return false if the data was discarded because the consumer aborted
+		 */
+		public boolean put(ByteBuffer src) throws InterruptedException {
+			while (src.hasRemaining()) {
+				int start, len;
+				synchronized (this) {
+					while (mPutCount - mReleaseCount == mData.length && !mAborted) {
+						wait();
+					}
+
+					if (mAborted) {
+						src.position(src.limit());
+						return false;
+					}
+
+					int used = (int) (mPutCount - mReleaseCount);
+					start = (int) (mPutCount % mData.length);
+					len = Math.min(src.remaining(), Math.min(mData.length - used, mData.length - start));
+				}
+
+				// the consumer never accesses this free region of the buffer
+				src.get(mData, start, len);
+
+				synchronized (this) {
+					mPutCount += len;
+					notifyAll();
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Wait for data to be available.
+		 *
+		 * @return one or two buffers with all the data currently available,
+		 *         which must be released with {@link #release(long)} once
+		 *         consumed, or null if the producer has closed the buffer and
+		 *         all data has been consumed
+		 */
+		public synchronized ByteBuffer[] take() throws InterruptedException {
+			while (mPutCount == mReleaseCount && !mClosed) {
+				wait();
+			}
+
+			int used = (int) (mPutCount - mReleaseCount);
+			if (used == 0) {
+				return null;
+			}
+
+			int start = (int) (mReleaseCount % mData.length);
+			int len = Math.min(used, mData.length - start);
+			if (len == used) {
+				return new ByteBuffer[] { ByteBuffer.wrap(mData, start, len) };
+			}
+
+			return new ByteBuffer[] { ByteBuffer.wrap(mData, start, len), ByteBuffer.wrap(mData, 0, used - len) };
+		}
+
+		/** Release data that was consumed. */
+		public synchronized void release(long len) {
+			mReleaseCount += len;
+			notifyAll();
+		}
+
+		/** Indicate that no more data will be put into the buffer. */
+		public synchronized void close() {
+			mClosed = true;
+			notifyAll();
+		}
+
+		/** Indicate that no more data will be consumed from the buffer. */
+		public synchronized void abort() {
+			mAborted = true;
+			notifyAll();
+		}
+
+		public synchronized double getUsage() {
+			return (double) (mPutCount - mReleaseCount) / mData.length;
+		}
+	}
 }
@@ -364,6 +364,10 @@ public class GLFunctionTraceViewer extends EditorPart implements ISelectionProvi
 			scheduleNewRefreshJob();
 		}
 
+		if (mTrace != null) {
+			mTrace.prefetchImagesForFrame(selectedFrame - 1);
+		}
+
 		// update minimap view
 		mDurationMinimap.setCallRangeForCurrentFrame(mCallStartIndex, mCallEndIndex);
 	}
@@ -582,6 +586,10 @@ public class GLFunctionTraceViewer extends EditorPart implements ISelectionProvi
 			@Override
 			public void callSelected(int selectedCallIndex) {
 				if (selectedCallIndex > 0 && selectedCallIndex < mTreeViewerNodes.size()) {
+					if (mTrace != null) {
+						mTrace.prefetchImagesAroundCall(mTreeViewerNodes.get(selectedCallIndex).getCall().getIndex());
+					}
+
 					TreeItem item = tree.getItem(selectedCallIndex);
 					tree.select(item);
 					tree.setTopItem(item);
@@ -625,6 +633,15 @@ public class GLFunctionTraceViewer extends EditorPart implements ISelectionProvi
 		mFrameTreeViewer.getTree().setFocus();
 	}
 
+	@Override
+	public void dispose() {
+		if (mTrace != null) {
+			mTrace.dispose();
+		}
+
+		super.dispose();
+	}
+
 	private static class GLFrameContentProvider implements ITreeContentProvider {
 		@Override
 		public void dispose() {
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.gltrace.editors;
+
+import org.eclipse.andmore.gltrace.model.GLCall;
+import org.eclipse.andmore.gltrace.state.GLState;
+import org.eclipse.andmore.gltrace.state.IGLProperty;
+import org.eclipse.andmore.gltrace.state.transforms.IStateTransform;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ILock;
+import org.eclipse.core.runtime.jobs.Job;
+
+import java.util.List;
+
+/**
+ * Periodic snapshots of the GL state of a trace, used to quickly compute the
+ * state as of an arbitrary call.
+ *
+ * A background job replays all the state transformations in the trace once,
+ * and records the state after every {@link #getInterval()} calls. The
+ * snapshots are taken with {@link GLState#fork(IGLProperty)}, so successive
+ * checkpoints share all the properties that did not change between them. The
+ * interval is chosen such that at most {@link #MAX_CHECKPOINTS} checkpoints
+ * are kept for a trace, which bounds the memory used by the checkpoints and
+ * the number of calls that have to be replayed when seeking to a call.
+ */
+public class GLStateCheckpoints {
+	/** Minimum number of calls between two checkpoints. */
+	private static final int MIN_INTERVAL = 1000;
+
+	/** Maximum number of checkpoints held for a single trace. */
+	private static final int MAX_CHECKPOINTS = 512;
+
+	private final List<GLCall> mGLCalls;
+	private final ILock mLock;
+	private final int mInterval;
+
+	/**
+	 * Checkpoint i holds the state after applying the transformations of all
+	 * calls with an index less than i * {@link #mInterval}.
+	 */
+	private final IGLProperty[] mCheckpoints;
+
+	/** Number of calls whose transformations have been applied by the job. */
+	private volatile int mReplayedCount;
+
+	private Job mJob;
+
+	/** A checkpointed state along with the index of the call it reflects. */
+	public static class Checkpoint {
+		private final int mCallIndex;
+		private final IGLProperty mState;
+
+		private Checkpoint(int callIndex, IGLProperty state) {
+			mCallIndex = callIndex;
+			mState = state;
+		}
+
+		/**
+		 * Returns the index of the last call applied to this state, or -1 for
+		 * the default state.
+		 */
+		public int getCallIndex() {
+			return mCallIndex;
+		}
+
+		/**
+		 * Reset the given state, which must have been obtained with
+		 * {@link GLState#fork(IGLProperty)}, to the checkpointed state.
+		 */
+		public void restore(IGLProperty state) {
+			GLState.reset(state, mState);
+		}
+	}
+
+	/**
+	 * Construct the checkpoints for the given calls.
+	 *
+	 * @param calls
+	 *            calls in the trace
+	 * @param lock
+	 *            lock that must be held while applying state transformations,
+	 *            since transformations are shared between all states
+	 */
+	public GLStateCheckpoints(List<GLCall> calls, ILock lock) {
+		mGLCalls = calls;
+		mLock = lock;
+		mInterval = Math.max(MIN_INTERVAL, (calls.size() + MAX_CHECKPOINTS - 1) / MAX_CHECKPOINTS);
+		mCheckpoints = new IGLProperty[calls.size() / mInterval + 1];
+		mCheckpoints[0] = GLState.createDefaultState();
+	}
+
+	public int getInterval() {
+		return mInterval;
+	}
+
+	/**
+	 * Returns the number of calls whose transformations have been applied by
+	 * the checkpointing job so far. Since transformations remember the values
+	 * they replaced, the transformations of these calls cannot be reverted on
+	 * any other state unless they were applied again afterwards. Must be called
+	 * with the lock held.
+	 */
+	public int getReplayedCount() {
+		return mReplayedCount;
+	}
+
+	/**
+	 * Obtain the closest checkpoint at or before the given call.
+	 *
+	 * @return the checkpoint, which is the default state if no checkpoint has
+	 *         been built yet for any of the previous calls
+	 */
+	public synchronized Checkpoint getCheckpoint(int callIndex) {
+		int i = Math.min((callIndex + 1) / mInterval, mCheckpoints.length - 1);
+		while (mCheckpoints[i] == null) {
+			i--;
+		}
+
+		return new Checkpoint(i * mInterval - 1, mCheckpoints[i]);
+	}
+
+	private synchronized void setCheckpoint(int i, IGLProperty state) {
+		mCheckpoints[i] = state;
+	}
+
+	/** Start building the checkpoints in the background. */
+	public void schedule() {
+		mJob = new Job("Building GL State Checkpoints") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				buildCheckpoints(monitor);
+				return Status.OK_STATUS;
+			}
+		};
+		mJob.setPriority(Job.DECORATE);
+		mJob.setSystem(true);
+		mJob.schedule();
+	}
+
+	/** Stop building checkpoints. */
+	public void cancel() {
+		if (mJob != null) {
+			mJob.cancel();
+		}
+	}
+
+	private void buildCheckpoints(IProgressMonitor monitor) {
+		IGLProperty state = GLState.fork(mCheckpoints[0]);
+
+		for (int checkpoint = 1; checkpoint < mCheckpoints.length; checkpoint++) {
+			if (monitor.isCanceled()) {
+				return;
+			}
+
+			int start = (checkpoint - 1) * mInterval;
+			int end = checkpoint * mInterval;
+
+			// The lock is only held for one call at a time so that the state
+			// view remains responsive while the checkpoints are built.
+			for (int i = start; i < end; i++) {
+				try {
+					mLock.acquire();
+					applyTransformations(mGLCalls.get(i), state);
+					mReplayedCount = i + 1;
+				} finally {
+					mLock.release();
+				}
+			}
+
+			setCheckpoint(checkpoint, state);
+			state = GLState.fork(state);
+		}
+	}
+
+	private void applyTransformations(GLCall call, IGLProperty state) {
+		for (IStateTransform f : call.getStateTransformations()) {
+			try {
+				f.apply(state);
+			} catch (Exception e) {
+				// errors are reported when the state view applies this call
+			}
+		}
+	}
+}
@@ -19,11 +19,25 @@ package org.eclipse.andmore.gltrace.editors;
 import org.eclipse.andmore.gltrace.state.GLCompositeProperty;
 import org.eclipse.andmore.gltrace.state.GLListProperty;
 import org.eclipse.andmore.gltrace.state.GLSparseArrayProperty;
+import org.eclipse.andmore.gltrace.state.GLState;
 import org.eclipse.andmore.gltrace.state.IGLProperty;
+import org.eclipse.core.runtime.jobs.ILock;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.Viewer;
 
 public class StateContentProvider implements ITreeContentProvider {
+	private final ILock mLock;
+
+	/**
+	 * Construct a content provider for a state that is modified while holding
+	 * the given lock. Reading the children of a property copies those that are
+	 * shared with another state (see {@link GLState#fork(IGLProperty)}), so
+	 * the lock is also held while reading them.
+	 */
+	public StateContentProvider(ILock lock) {
+		mLock = lock;
+	}
+
 	@Override
 	public void dispose() {
 	}
@@ -39,6 +53,15 @@ public class StateContentProvider implements ITreeContentProvider {
 
 	@Override
 	public Object[] getChildren(Object parentElement) {
+		try {
+			mLock.acquire();
+			return getChildrenLocked(parentElement);
+		} finally {
+			mLock.release();
+		}
+	}
+
+	private Object[] getChildrenLocked(Object parentElement) {
 		if (parentElement instanceof GLListProperty) {
 			return ((GLListProperty) parentElement).getList().toArray();
 		}
@@ -23,6 +23,8 @@ import org.eclipse.andmore.gltrace.GlTracePlugin;
 import org.eclipse.andmore.gltrace.editors.GLCallGroups.GLCallNode;
 import org.eclipse.andmore.gltrace.model.GLCall;
 import org.eclipse.andmore.gltrace.model.GLTrace;
+import org.eclipse.andmore.gltrace.state.GLListProperty;
+import org.eclipse.andmore.gltrace.state.GLSparseArrayProperty;
 import org.eclipse.andmore.gltrace.state.GLState;
 import org.eclipse.andmore.gltrace.state.IGLProperty;
 import org.eclipse.andmore.gltrace.state.StatePrettyPrinter;
@@ -36,6 +38,7 @@ import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IToolBarManager;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.jface.viewers.IElementComparer;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.ISelectionProvider;
@@ -60,9 +63,12 @@ import org.eclipse.ui.part.Page;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -82,9 +88,28 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 	private IGLProperty mState;
 	private int mCurrentStateIndex;
 
+	/** Periodic snapshots of the state used to seek to arbitrary calls. */
+	private GLStateCheckpoints mCheckpoints;
+
+	/**
+	 * Index of the earliest call that {@link #mState} can be reverted to. Calls
+	 * up to this index were either never applied to {@link #mState}, or their
+	 * transformations have since been applied to another state by
+	 * {@link #mCheckpoints} or released and reloaded by the call store, and can
+	 * therefore no longer be reverted.
+	 */
+	private int mRevertLimit;
+
+	/** Value of {@link GLStateCheckpoints#getReplayedCount()} at last update. */
+	private int mCheckpointReplayedCount;
+
+	/** Value of {@link GLCall#getDetailsEvictionCount()} at last update. */
+	private int mDetailsEvictionCount;
+
 	private String[] TREE_PROPERTIES = { "Name", "Value" };
 	private TreeViewer mTreeViewer;
 	private StateLabelProvider mLabelProvider;
+	private final StatePropertyComparer mComparer = new StatePropertyComparer();
 
 	public StateViewPage(GLTrace trace) {
 		setInput(trace);
@@ -98,10 +123,24 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 			mGLCalls = null;
 		}
 
-		mState = GLState.createDefaultState();
+		if (mCheckpoints != null) {
+			mCheckpoints.cancel();
+			mCheckpoints = null;
+		}
+
+		if (mGLCalls != null) {
+			mCheckpoints = new GLStateCheckpoints(mGLCalls, sGlStateLock);
+			mCheckpoints.schedule();
+		}
+
+		mState = GLState.fork(GLState.createDefaultState());
 		mCurrentStateIndex = -1;
+		mRevertLimit = -1;
+		mCheckpointReplayedCount = 0;
+		mDetailsEvictionCount = getDetailsEvictionCount();
 
 		if (mTreeViewer != null) {
+			mComparer.clearLocations();
 			mTreeViewer.setInput(mState);
 			mTreeViewer.refresh();
 		}
@@ -125,7 +164,8 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 		col2.setWidth(200);
 
 		mTreeViewer = new TreeViewer(tree);
-		mTreeViewer.setContentProvider(new StateContentProvider());
+		mTreeViewer.setComparer(mComparer);
+		mTreeViewer.setContentProvider(new StateContentProvider(sGlStateLock));
 		mLabelProvider = new StateLabelProvider();
 		mTreeViewer.setLabelProvider(mLabelProvider);
 		mTreeViewer.setInput(mState);
@@ -159,8 +199,11 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 
 		// export state to f
 		StatePrettyPrinter pp = new StatePrettyPrinter();
-		synchronized (sGlStateLock) {
+		try {
+			sGlStateLock.acquire();
 			mState.prettyPrint(pp);
+		} finally {
+			sGlStateLock.release();
 		}
 
 		try {
@@ -179,6 +222,10 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 
 	@Override
 	public void dispose() {
+		if (mCheckpoints != null) {
+			mCheckpoints.cancel();
+		}
+
 		getSite().getPage().removeSelectionListener(this);
 		super.dispose();
 	}
@@ -236,6 +283,7 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 					@Override
 					public void run() {
 						if (!mTreeViewer.getTree().isDisposed()) {
+							mComparer.clearLocations();
 							mTreeViewer.refresh();
 						}
 					}
@@ -268,12 +316,37 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 	 * (inclusive). If fromIndex > toIndex, the GL state will be updated by
 	 * reverting all the calls from fromIndex (inclusive) to (toIndex + 1).
 	 * 
+	 * If a checkpoint closer to toIndex is available, the state is first reset
+	 * to that checkpoint, and only the calls following the checkpoint are
+	 * applied. In that case, only the properties changed since the checkpoint
+	 * are reported.
+	 * 
 	 * @return GL state properties that changed as a result of this update.
 	 */
 	private Set<IGLProperty> updateState(int fromIndex, int toIndex) {
 		assert fromIndex >= -1 && fromIndex < mGLCalls.size();
 		assert toIndex >= 0 && toIndex < mGLCalls.size();
 
+		if (mCheckpoints != null) {
+			updateRevertLimit(fromIndex);
+
+			GLStateCheckpoints.Checkpoint checkpoint = mCheckpoints.getCheckpoint(toIndex);
+			int checkpointIndex = checkpoint.getCallIndex();
+
+			boolean restore;
+			if (fromIndex <= toIndex) {
+				restore = checkpointIndex > fromIndex;
+			} else {
+				restore = toIndex < mRevertLimit || fromIndex - toIndex > toIndex - checkpointIndex;
+			}
+
+			if (restore) {
+				checkpoint.restore(mState);
+				mRevertLimit = checkpointIndex;
+				fromIndex = checkpointIndex;
+			}
+		}
+
 		if (fromIndex < toIndex) {
 			return applyTransformations(fromIndex, toIndex);
 		} else if (fromIndex > toIndex) {
@@ -283,6 +356,39 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 		}
 	}
 
+	/**
+	 * Account for the calls that were replayed by {@link #mCheckpoints} since
+	 * the last update. Those of them that had been applied to {@link #mState}
+	 * can no longer be reverted. The same holds for all the applied calls if
+	 * the details of any call were released since the last update, since
+	 * their transformations are reloaded without the values they replaced.
+	 */
+	private void updateRevertLimit(int currentIndex) {
+		int replayedCount = mCheckpoints.getReplayedCount();
+
+		int first = Math.max(mCheckpointReplayedCount, mRevertLimit + 1);
+		int last = Math.min(replayedCount - 1, currentIndex);
+		if (first <= last) {
+			mRevertLimit = last;
+		}
+
+		mCheckpointReplayedCount = replayedCount;
+
+		int evictionCount = getDetailsEvictionCount();
+		if (evictionCount != mDetailsEvictionCount) {
+			mRevertLimit = Math.max(mRevertLimit, currentIndex);
+			mDetailsEvictionCount = evictionCount;
+		}
+	}
+
+	private int getDetailsEvictionCount() {
+		if (mGLCalls == null || mGLCalls.isEmpty()) {
+			return 0;
+		}
+
+		return mGLCalls.get(0).getDetailsEvictionCount();
+	}
+
 	private Set<IGLProperty> applyTransformations(int fromIndex, int toIndex) {
 		int setSizeHint = 3 * (toIndex - fromIndex) + 10;
 		Set<IGLProperty> changedProperties = new HashSet<IGLProperty>(setSizeHint);
@@ -346,6 +452,91 @@ public class StateViewPage extends Page implements ISelectionListener, ISelectio
 		return changedProperties;
 	}
 
+	/**
+	 * Compares properties by their location in the state rather than by
+	 * identity, so that the tree keeps its expansion state when the state is
+	 * reset to a checkpoint and the properties are replaced by copies.
+	 *
+	 * The location of a property is computed once and cached until
+	 * {@link #clearLocations()} is called, which must be done before the tree
+	 * is refreshed after the state was updated. Only used on the UI thread.
+	 */
+	private static class StatePropertyComparer implements IElementComparer {
+		/** Type ordinal and key of each level from a property up to the root. */
+		private final Map<IGLProperty, int[]> mLocations = new IdentityHashMap<IGLProperty, int[]>();
+
+		/** Forget the cached locations, which change when the state is updated. */
+		public void clearLocations() {
+			mLocations.clear();
+		}
+
+		@Override
+		public boolean equals(Object a, Object b) {
+			if (a == b) {
+				return true;
+			}
+
+			if (!(a instanceof IGLProperty) || !(b instanceof IGLProperty)) {
+				return a != null && a.equals(b);
+			}
+
+			return Arrays.equals(getLocation((IGLProperty) a), getLocation((IGLProperty) b));
+		}
+
+		@Override
+		public int hashCode(Object element) {
+			if (!(element instanceof IGLProperty)) {
+				return element.hashCode();
+			}
+
+			return Arrays.hashCode(getLocation((IGLProperty) element));
+		}
+
+		private int[] getLocation(IGLProperty property) {
+			int[] location = mLocations.get(property);
+			if (location == null) {
+				location = computeLocation(property);
+				mLocations.put(property, location);
+			}
+
+			return location;
+		}
+
+		private int[] computeLocation(IGLProperty property) {
+			try {
+				sGlStateLock.acquire();
+
+				int depth = 0;
+				for (IGLProperty p = property; p != null; p = p.getParent()) {
+					depth++;
+				}
+
+				int[] location = new int[2 * depth];
+				int i = 0;
+				for (IGLProperty p = property; p != null; p = p.getParent()) {
+					location[i++] = p.getType().ordinal();
+					location[i++] = getKey(p);
+				}
+
+				return location;
+			} finally {
+				sGlStateLock.release();
+			}
+		}
+
+		/** Returns the index or key of a member of a list or sparse array. */
+		private int getKey(IGLProperty p) {
+			IGLProperty parent = p.getParent();
+			if (parent instanceof GLListProperty) {
+				return ((GLListProperty) parent).indexOf(p);
+			} else if (parent instanceof GLSparseArrayProperty) {
+				return ((GLSparseArrayProperty) parent).keyFor(p);
+			}
+
+			return -1;
+		}
+	}
+
 	@Override
 	public void addSelectionChangedListener(ISelectionChangedListener listener) {
 		mTreeViewer.addSelectionChangedListener(listener);
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.gltrace.model;
+
+import org.eclipse.swt.graphics.ImageData;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of decompressed framebuffer images, keyed by the
+ * index of the call that captured the framebuffer. The cache is bounded by the
+ * total size of the cached pixel data rather than by the number of images, since
+ * framebuffer sizes vary widely between traces.
+ *
+ * The cache holds device independent {@link ImageData} so that it can be filled
+ * from any thread, and so that clients remain free to dispose the
+ * {@link org.eclipse.swt.graphics.Image}s they create from it.
+ */
+class FramebufferCache {
+	private final long mMaxSize;
+	private long mSize;
+
+	private final LinkedHashMap<Integer, ImageData> mImages = new LinkedHashMap<Integer, ImageData>(16, 0.75f, true);
+
+	/**
+	 * Construct a cache.
+	 *
+	 * @param maxSize
+	 *            maximum number of bytes of pixel data held by the cache
+	 */
+	public FramebufferCache(long maxSize) {
+		mMaxSize = maxSize;
+	}
+
+	public synchronized ImageData get(int callIndex) {
+		return mImages.get(Integer.valueOf(callIndex));
+	}
+
+	public synchronized boolean contains(int callIndex) {
+		return mImages.containsKey(Integer.valueOf(callIndex));
+	}
+
+	/**
+	 * Add an image to the cache, evicting the least recently used images if
+	 * necessary. Images larger than the cache are not cached.
+	 */
+	public synchronized void put(int callIndex, ImageData image) {
+		long size = getSize(image);
+		if (size > mMaxSize) {
+			return;
+		}
+
+		ImageData old = mImages.put(Integer.valueOf(callIndex), image);
+		if (old != null) {
+			mSize -= getSize(old);
+		}
+		mSize += size;
+
+		Iterator<Map.Entry<Integer, ImageData>> it = mImages.entrySet().iterator();
+		while (mSize > mMaxSize && it.hasNext()) {
+			Map.Entry<Integer, ImageData> e = it.next();
+			mSize -= getSize(e.getValue());
+			it.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		mImages.clear();
+		mSize = 0;
+	}
+
+	private static long getSize(ImageData image) {
+		long size = image.data.length;
+		if (image.alphaData != null) {
+			size += image.alphaData.length;
+		}
+		return size;
+	}
+}
@@ -16,9 +16,6 @@
 
 package org.eclipse.andmore.gltrace.model;
 
-import com.android.utils.SparseArray;
-
-import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.andmore.gltrace.GLProtoBuf;
@@ -34,6 +31,10 @@ import org.eclipse.andmore.gltrace.state.transforms.IStateTransform;
  * thumbnail image, and an offset into the trace file corresponding to original
  * protocol buffer message. If full image data is required, the protocol buffer
  * message can be recreated by reading the trace at the specified offset.
+ *
+ * A GLCall is a lightweight view on an entry in a {@link GLCallStore}, which
+ * holds the actual data for all calls in a trace. Two GLCall objects are equal
+ * if they refer to the same entry.
  */
 public class GLCall {
 	/** Marker name provided by a {@link Function#glPushGroupMarkerEXT} call. */
@@ -48,117 +49,105 @@ public class GLCall {
 	/** Data argument in a {@link Function#glVertexAttribPointerData} call. */
 	public static final int PROPERTY_VERTEX_ATTRIB_POINTER_DATA = 3;
 
-	/** Index of this call in the trace. */
-	private int mIndex;
+	/** Store holding the data for this call. */
+	private final GLCallStore mStore;
 
-	/** Time on device when this call was invoked. */
-	private final long mStartTime;
+	/** Index of this call in the trace. */
+	private final int mIndex;
 
 	/**
-	 * Offset of the protobuf message corresponding to this call in the trace
-	 * file.
+	 * Loads the parts of a call that are not held in the {@link GLCallStore}
+	 * by parsing its protocol buffer message.
 	 */
-	private final long mTraceFileOffset;
-
-	/** Flag indicating whether the original protobuf message included FB data. */
-	private final boolean mHasFb;
-
-	/** Full string representation of this call. */
-	private final String mDisplayString;
-
-	/** The actual GL Function called. */
-	private final Function mFunction;
-
-	/** GL Context identifier corresponding to the context of this call. */
-	private final int mContextId;
+	public interface IDetailsLoader {
+		/**
+		 * Populate the properties and state transformations of the given
+		 * call.
+		 */
+		void loadDetails(GLCall call);
 
-	/** Duration of this call (MONOTONIC/wall clock time). */
-	private final int mWallDuration;
-
-	/** Duration of this call (THREAD time). */
-	private final int mThreadDuration;
-
-	/** List of state transformations performed by this call. */
-	private List<IStateTransform> mStateTransforms = Collections.emptyList();
-
-	/** Error conditions while creating state transforms for this call. */
-	private String mStateTransformationCreationErrorMessage;
-
-	/** List of properties associated to this call. */
-	private SparseArray<Object> mProperties;
+		/** Returns the full string representation of the given call. */
+		String formatDisplayString(GLCall call);
+	}
 
-	public GLCall(int index, long startTime, long traceFileOffset, String displayString, Function function,
-			boolean hasFb, int contextId, int wallTime, int threadTime) {
+	GLCall(GLCallStore store, int index) {
+		mStore = store;
 		mIndex = index;
-		mStartTime = startTime;
-		mTraceFileOffset = traceFileOffset;
-		mDisplayString = displayString;
-		mFunction = function;
-		mHasFb = hasFb;
-		mContextId = contextId;
-		mWallDuration = wallTime;
-		mThreadDuration = threadTime;
 	}
 
 	public int getIndex() {
 		return mIndex;
 	}
 
-	public void setIndex(int i) {
-		mIndex = i;
-	}
-
 	public long getOffsetInTraceFile() {
-		return mTraceFileOffset;
+		return mStore.getOffset(mIndex);
 	}
 
 	public Function getFunction() {
-		return mFunction;
+		return mStore.getFunction(mIndex);
 	}
 
 	public int getContextId() {
-		return mContextId;
+		return mStore.getContextId(mIndex);
 	}
 
 	public boolean hasFb() {
-		return mHasFb;
+		return mStore.hasFb(mIndex);
 	}
 
+	/** Returns the time on device when this call was invoked. */
 	public long getStartTime() {
-		return mStartTime;
+		return mStore.getStartTime(mIndex);
 	}
 
+	/** Returns the duration of this call (MONOTONIC/wall clock time). */
 	public int getWallDuration() {
-		return mWallDuration;
+		return mStore.getWallDuration(mIndex);
 	}
 
+	/** Returns the duration of this call (THREAD time). */
 	public int getThreadDuration() {
-		return mThreadDuration;
+		return mStore.getThreadDuration(mIndex);
 	}
 
 	public void setStateTransformations(List<IStateTransform> transforms) {
-		mStateTransforms = transforms;
+		mStore.setStateTransformations(mIndex, transforms);
 	}
 
 	public void setStateTransformationCreationError(String errorMessage) {
-		mStateTransformationCreationErrorMessage = errorMessage;
+		mStore.setStateTransformationCreationError(mIndex, errorMessage);
 	}
 
+	/**
+	 * Returns whether there were errors creating the state transformations for
+	 * this call. This does not require the state transformations to be
+	 * loaded.
+	 */
 	public boolean hasErrors() {
-		return mStateTransformationCreationErrorMessage != null;
+		return mStore.hasErrors(mIndex);
 	}
 
 	public String getError() {
-		return mStateTransformationCreationErrorMessage;
+		return mStore.getStateTransformationCreationError(this);
 	}
 
 	public List<IStateTransform> getStateTransformations() {
-		return mStateTransforms;
+		return mStore.getStateTransformations(this);
+	}
+
+	/**
+	 * Returns the number of times the store holding this call released the
+	 * details of a call. State transformations reloaded after their details
+	 * were released cannot revert the values replaced by the released ones.
+	 * See {@link GLCallStore#getEvictionCount()}.
+	 */
+	public int getDetailsEvictionCount() {
+		return mStore.getEvictionCount();
 	}
 
 	@Override
 	public String toString() {
-		return mDisplayString;
+		return mStore.getDisplayString(this);
 	}
 
 	/**
@@ -166,11 +155,7 @@ public class GLCall {
 	 * defined as constants in {@link GLCall}.
 	 */
 	public void addProperty(int propertyName, Object value) {
-		if (mProperties == null) {
-			mProperties = new SparseArray<Object>(1);
-		}
-
-		mProperties.put(propertyName, value);
+		mStore.addProperty(mIndex, propertyName, value);
 	}
 
 	/**
@@ -178,10 +163,21 @@ public class GLCall {
 	 * is associated with this {@link GLCall}.
 	 */
 	public Object getProperty(int propertyName) {
-		if (mProperties == null) {
-			return null;
+		return mStore.getProperty(this, propertyName);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof GLCall)) {
+			return false;
 		}
 
-		return mProperties.get(propertyName);
+		GLCall other = (GLCall) obj;
+		return mStore == other.mStore && mIndex == other.mIndex;
+	}
+
+	@Override
+	public int hashCode() {
+		return mIndex;
 	}
 }
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.gltrace.model;
+
+import com.android.utils.SparseArray;
+
+import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage.Function;
+import org.eclipse.andmore.gltrace.state.transforms.IStateTransform;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Storage for the calls in a trace.
+ *
+ * The metadata of all calls is held in parallel primitive arrays, one entry
+ * per call, so that the cost of a call does not depend on the number of
+ * objects allocated for it. {@link GLCall}s are lightweight views on a single
+ * entry of the store, and are created on demand.
+ *
+ * The state transformations and properties of a call are only materialized
+ * when they are requested, by reloading the call's message through the
+ * {@link GLCall.IDetailsLoader}, and only those of the most recently used
+ * calls are retained. Since state transformations remember the state they
+ * replaced, the transformations of a call can no longer be reverted once its
+ * details have been released: users that revert transformations must check
+ * {@link #getEvictionCount()}. Display strings are formatted on demand, and
+ * only the most recently used ones are cached.
+ *
+ * Calls are only added while the trace is loaded, and the store must not be
+ * modified once it is shared with other threads.
+ */
+public class GLCallStore {
+	/** Number of display strings cached, enough to cover the visible rows. */
+	private static final int DISPLAY_STRING_CACHE_SIZE = 4096;
+
+	/**
+	 * Number of calls whose details are retained. This is larger than the
+	 * number of calls between two state checkpoints in all but the largest
+	 * traces, so that the state view can usually revert the calls it applied.
+	 */
+	private static final int DETAILS_CACHE_SIZE = 32 * 1024;
+
+	private static final int FLAG_HAS_FB = 1;
+	private static final int FLAG_HAS_ERRORS = 1 << 1;
+
+	private static final Function[] sFunctions = Function.values();
+
+	private final GLCall.IDetailsLoader mLoader;
+
+	private int mSize;
+	private long[] mStartTimes;
+	private long[] mOffsets;
+	private int[] mWallDurations;
+	private int[] mThreadDurations;
+	private int[] mContextIds;
+	private short[] mFunctions;
+	private byte[] mFlags;
+
+	/** Transformations and properties of the most recently used calls. */
+	@SuppressWarnings("serial")
+	private final Map<Integer, Details> mDetails = new LinkedHashMap<Integer, Details>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, Details> eldest) {
+			if (size() > DETAILS_CACHE_SIZE) {
+				mEvictionCount++;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/** Number of times the details of a call have been released. */
+	private volatile int mEvictionCount;
+
+	@SuppressWarnings("serial")
+	private final Map<Integer, String> mDisplayStrings = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+			return size() > DISPLAY_STRING_CACHE_SIZE;
+		}
+	};
+
+	private final List<GLCall> mCallList = new CallList();
+
+	/** Heavyweight state of a single call. */
+	private static class Details {
+		private List<IStateTransform> mStateTransforms = Collections.emptyList();
+		private String mStateTransformationCreationErrorMessage;
+		private SparseArray<Object> mProperties;
+	}
+
+	/**
+	 * Construct an empty store.
+	 *
+	 * @param initialCapacity
+	 *            expected number of calls
+	 * @param loader
+	 *            loader used to format display strings, and to load the
+	 *            details of calls that were not provided when they were added
+	 */
+	public GLCallStore(int initialCapacity, GLCall.IDetailsLoader loader) {
+		mLoader = loader;
+		allocate(Math.max(initialCapacity, 16));
+	}
+
+	private void allocate(int capacity) {
+		mStartTimes = Arrays.copyOf(mStartTimes == null ? new long[0] : mStartTimes, capacity);
+		mOffsets = Arrays.copyOf(mOffsets == null ? new long[0] : mOffsets, capacity);
+		mWallDurations = Arrays.copyOf(mWallDurations == null ? new int[0] : mWallDurations, capacity);
+		mThreadDurations = Arrays.copyOf(mThreadDurations == null ? new int[0] : mThreadDurations, capacity);
+		mContextIds = Arrays.copyOf(mContextIds == null ? new int[0] : mContextIds, capacity);
+		mFunctions = Arrays.copyOf(mFunctions == null ? new short[0] : mFunctions, capacity);
+		mFlags = Arrays.copyOf(mFlags == null ? new byte[0] : mFlags, capacity);
+	}
+
+	/**
+	 * Append a call to the store.
+	 *
+	 * @param hasErrors
+	 *            whether the state transformations for this call are known to
+	 *            have errors
+	 * @return the newly added call
+	 */
+	public synchronized GLCall add(long startTime, long traceFileOffset, Function function, boolean hasFb,
+			int contextId, int wallTime, int threadTime, boolean hasErrors) {
+		if (mSize == mStartTimes.length) {
+			allocate(mSize + (mSize >> 1));
+		}
+
+		int i = mSize++;
+		mStartTimes[i] = startTime;
+		mOffsets[i] = traceFileOffset;
+		mWallDurations[i] = wallTime;
+		mThreadDurations[i] = threadTime;
+		mContextIds[i] = contextId;
+		mFunctions[i] = (short) function.ordinal();
+		mFlags[i] = (byte) ((hasFb ? FLAG_HAS_FB : 0) | (hasErrors ? FLAG_HAS_ERRORS : 0));
+		return new GLCall(this, i);
+	}
+
+	/** Release the unused capacity of the store. */
+	public synchronized void trimToSize() {
+		if (mSize < mStartTimes.length) {
+			allocate(mSize);
+		}
+	}
+
+	/** Remove all calls from the store. */
+	public synchronized void clear() {
+		mSize = 0;
+		releaseDetails();
+		mDisplayStrings.clear();
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	/** Returns a view of the calls in this store. */
+	public List<GLCall> asList() {
+		return mCallList;
+	}
+
+	/**
+	 * Sort the calls by their start time. The order of calls with the same
+	 * start time is preserved.
+	 */
+	public synchronized void sortByStartTime() {
+		int[] order = new int[mSize];
+		for (int i = 0; i < mSize; i++) {
+			order[i] = i;
+		}
+		mergeSort(order, new int[mSize], 0, mSize);
+
+		long[] startTimes = new long[mSize];
+		long[] offsets = new long[mSize];
+		int[] wallDurations = new int[mSize];
+		int[] threadDurations = new int[mSize];
+		int[] contextIds = new int[mSize];
+		short[] functions = new short[mSize];
+		byte[] flags = new byte[mSize];
+		for (int i = 0; i < mSize; i++) {
+			int j = order[i];
+			startTimes[i] = mStartTimes[j];
+			offsets[i] = mOffsets[j];
+			wallDurations[i] = mWallDurations[j];
+			threadDurations[i] = mThreadDurations[j];
+			contextIds[i] = mContextIds[j];
+			functions[i] = mFunctions[j];
+			flags[i] = mFlags[j];
+		}
+
+		mStartTimes = startTimes;
+		mOffsets = offsets;
+		mWallDurations = wallDurations;
+		mThreadDurations = threadDurations;
+		mContextIds = contextIds;
+		mFunctions = functions;
+		mFlags = flags;
+		releaseDetails();
+		mDisplayStrings.clear();
+	}
+
+	private void releaseDetails() {
+		if (!mDetails.isEmpty()) {
+			mEvictionCount++;
+			mDetails.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of times the details of calls have been released so
+	 * far. If this changed since transformations were applied, they may no
+	 * longer be revertible.
+	 */
+	public int getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	/** Stable sort of the given range of call indices by start time. */
+	private void mergeSort(int[] order, int[] tmp, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		mergeSort(order, tmp, from, mid);
+		mergeSort(order, tmp, mid, to);
+
+		if (mStartTimes[order[mid - 1]] <= mStartTimes[order[mid]]) {
+			// already in order
+			return;
+		}
+
+		System.arraycopy(order, from, tmp, from, to - from);
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to) {
+			if (mStartTimes[tmp[j]] < mStartTimes[tmp[i]]) {
+				order[k++] = tmp[j++];
+			} else {
+				order[k++] = tmp[i++];
+			}
+		}
+		while (i < mid) {
+			order[k++] = tmp[i++];
+		}
+		while (j < to) {
+			order[k++] = tmp[j++];
+		}
+	}
+
+	long getStartTime(int i) {
+		return mStartTimes[i];
+	}
+
+	long getOffset(int i) {
+		return mOffsets[i];
+	}
+
+	int getWallDuration(int i) {
+		return mWallDurations[i];
+	}
+
+	int getThreadDuration(int i) {
+		return mThreadDurations[i];
+	}
+
+	int getContextId(int i) {
+		return mContextIds[i];
+	}
+
+	Function getFunction(int i) {
+		return sFunctions[mFunctions[i]];
+	}
+
+	boolean hasFb(int i) {
+		return (mFlags[i] & FLAG_HAS_FB) != 0;
+	}
+
+	boolean hasErrors(int i) {
+		return (mFlags[i] & FLAG_HAS_ERRORS) != 0;
+	}
+
+	String getDisplayString(GLCall call) {
+		Integer key = Integer.valueOf(call.getIndex());
+		synchronized (mDisplayStrings) {
+			String s = mDisplayStrings.get(key);
+			if (s != null) {
+				return s;
+			}
+		}
+
+		String s = mLoader.formatDisplayString(call);
+		synchronized (mDisplayStrings) {
+			mDisplayStrings.put(key, s);
+		}
+		return s;
+	}
+
+	/** Returns the details of the given call, loading them if necessary. */
+	private synchronized Details getDetails(GLCall call) {
+		int i = call.getIndex();
+		if (!mDetails.containsKey(Integer.valueOf(i))) {
+			mLoader.loadDetails(call);
+		}
+
+		return getOrCreateDetails(i);
+	}
+
+	private synchronized Details getOrCreateDetails(int i) {
+		Integer key = Integer.valueOf(i);
+		Details d = mDetails.get(key);
+		if (d == null) {
+			d = new Details();
+			mDetails.put(key, d);
+		}
+		return d;
+	}
+
+	synchronized void setStateTransformations(int i, List<IStateTransform> transforms) {
+		getOrCreateDetails(i).mStateTransforms = transforms;
+	}
+
+	synchronized void setStateTransformationCreationError(int i, String errorMessage) {
+		getOrCreateDetails(i).mStateTransformationCreationErrorMessage = errorMessage;
+		if (errorMessage != null) {
+			mFlags[i] |= FLAG_HAS_ERRORS;
+		} else {
+			mFlags[i] &= ~FLAG_HAS_ERRORS;
+		}
+	}
+
+	synchronized void addProperty(int i, int propertyName, Object value) {
+		Details d = getOrCreateDetails(i);
+		if (d.mProperties == null) {
+			d.mProperties = new SparseArray<Object>(1);
+		}
+
+		d.mProperties.put(propertyName, value);
+	}
+
+	synchronized List<IStateTransform> getStateTransformations(GLCall call) {
+		return getDetails(call).mStateTransforms;
+	}
+
+	synchronized String getStateTransformationCreationError(GLCall call) {
+		return getDetails(call).mStateTransformationCreationErrorMessage;
+	}
+
+	synchronized Object getProperty(GLCall call, int propertyName) {
+		SparseArray<Object> properties = getDetails(call).mProperties;
+		if (properties == null) {
+			return null;
+		}
+
+		return properties.get(propertyName);
+	}
+
+	/** List of flyweight {@link GLCall}s backed by this store. */
+	private class CallList extends AbstractList<GLCall> implements RandomAccess {
+		@Override
+		public GLCall get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException(Integer.toString(index));
+			}
+
+			return new GLCall(GLCallStore.this, index);
+		}
+
+		@Override
+		public int size() {
+			return GLCallStore.this.size();
+		}
+	}
+}
@@ -20,19 +20,35 @@ import org.eclipse.andmore.gltrace.ProtoBufUtils;
 import org.eclipse.andmore.gltrace.TraceFileInfo;
 import org.eclipse.andmore.gltrace.TraceFileReader;
 import org.eclipse.andmore.gltrace.GLProtoBuf.GLMessage;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.widgets.Display;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 /** GLTrace is the in memory model of a OpenGL trace file. */
 public class GLTrace {
-	private static final TraceFileReader sTraceFileReader = new TraceFileReader();
+	/** Upper bound on the memory used to cache decompressed framebuffers. */
+	private static final long MAX_IMAGE_CACHE_SIZE = 128 * 1024 * 1024;
+
+	/** Minimum time between checks of whether the trace file was modified. */
+	private static final long MODIFICATION_CHECK_INTERVAL_MS = 1000;
+
+	/** Number of frames on either side of a selected frame to prefetch. */
+	private static final int PREFETCH_FRAMES = 2;
+
+	/** Number of framebuffers on either side of a selected call to prefetch. */
+	private static final int PREFETCH_CALLS = 4;
+
+	/** Maximum distance from a selected call to look for framebuffers. */
+	private static final int PREFETCH_SEARCH_WINDOW = 1000;
 
 	/** Information regarding the trace file. */
 	private final TraceFileInfo mTraceFileInfo;
@@ -46,11 +62,39 @@ public class GLTrace {
 	/** List of context ids used by the application. */
 	private List<Integer> mContextIds;
 
-	public GLTrace(TraceFileInfo traceFileInfo, List<GLFrame> glFrames, List<GLCall> glCalls, List<Integer> contextIds) {
+	/** Reader used to obtain messages from the trace file on demand. */
+	private final TraceFileReader mTraceFileReader;
+
+	/** Recently used framebuffer images. */
+	private final FramebufferCache mImageCache;
+
+	private final Object mModificationCheckLock = new Object();
+	private long mLastModificationCheck;
+	private boolean mTraceFileModified;
+
+	/** Calls whose framebuffers should be loaded by {@link #mPrefetchJob}. */
+	private List<GLCall> mPrefetchQueue;
+	private final Object mPrefetchLock = new Object();
+	private final Job mPrefetchJob;
+
+	public GLTrace(TraceFileInfo traceFileInfo, List<GLFrame> glFrames, List<GLCall> glCalls,
+			List<Integer> contextIds, TraceFileReader traceFileReader) {
 		mTraceFileInfo = traceFileInfo;
 		mGLFrames = glFrames;
 		mGLCalls = glCalls;
 		mContextIds = contextIds;
+		mTraceFileReader = traceFileReader;
+
+		mImageCache = new FramebufferCache(Math.min(MAX_IMAGE_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 8));
+
+		mPrefetchJob = new Job("Prefetch GL Framebuffers") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				return prefetchImages(monitor);
+			}
+		};
+		mPrefetchJob.setPriority(Job.DECORATE);
+		mPrefetchJob.setSystem(true);
 	}
 
 	public List<GLFrame> getFrames() {
@@ -75,43 +119,176 @@ public class GLTrace {
 	}
 
 	public Image getImage(GLCall c) {
-		if (!c.hasFb()) {
+		ImageData imageData = getImageData(c);
+		if (imageData == null) {
 			return null;
 		}
 
-		if (isTraceFileModified()) {
+		return new Image(Display.getCurrent(), imageData);
+	}
+
+	private ImageData getImageData(GLCall c) {
+		if (!c.hasFb()) {
 			return null;
 		}
 
-		RandomAccessFile file;
-		try {
-			file = new RandomAccessFile(mTraceFileInfo.getPath(), "r"); //$NON-NLS-1$
-		} catch (FileNotFoundException e1) {
+		ImageData imageData = mImageCache.get(c.getIndex());
+		if (imageData != null) {
+			return imageData;
+		}
+
+		if (isTraceFileModified()) {
 			return null;
 		}
 
 		GLMessage m = null;
 		try {
-			m = sTraceFileReader.getMessageAtOffset(file, c.getOffsetInTraceFile());
+			m = mTraceFileReader.getMessageAtOffset(c.getOffsetInTraceFile());
 		} catch (Exception e) {
 			return null;
-		} finally {
-			try {
-				file.close();
-			} catch (IOException e) {
-				// ignore exception while closing file
-			}
 		}
 
-		return ProtoBufUtils.getImage(Display.getCurrent(), m);
+		if (m == null) {
+			return null;
+		}
+
+		imageData = ProtoBufUtils.getImageData(m);
+		if (imageData != null) {
+			mImageCache.put(c.getIndex(), imageData);
+		}
+		return imageData;
 	}
 
+	/**
+	 * Returns whether the trace file has changed since it was loaded. The file
+	 * is checked at most once every {@link #MODIFICATION_CHECK_INTERVAL_MS}.
+	 */
 	private boolean isTraceFileModified() {
-		File f = new File(mTraceFileInfo.getPath());
-		return f.length() != mTraceFileInfo.getSize() || f.lastModified() != mTraceFileInfo.getLastModificationTime();
+		synchronized (mModificationCheckLock) {
+			long now = System.currentTimeMillis();
+			if (now - mLastModificationCheck >= MODIFICATION_CHECK_INTERVAL_MS) {
+				File f = new File(mTraceFileInfo.getPath());
+				mTraceFileModified = f.length() != mTraceFileInfo.getSize()
+						|| f.lastModified() != mTraceFileInfo.getLastModificationTime();
+				mLastModificationCheck = now;
+			}
+
+			return mTraceFileModified;
+		}
+	}
+
+	/**
+	 * Load the framebuffers displayed for the given frame and its neighbouring
+	 * frames in the background.
+	 */
+	public void prefetchImagesForFrame(int frameIndex) {
+		List<GLCall> calls = new ArrayList<GLCall>(2 * PREFETCH_FRAMES + 1);
+		for (int i = 0; i <= PREFETCH_FRAMES; i++) {
+			addLastCallInFrame(frameIndex + i, calls);
+			if (i > 0) {
+				addLastCallInFrame(frameIndex - i, calls);
+			}
+		}
+
+		prefetch(calls);
+	}
+
+	private void addLastCallInFrame(int frameIndex, List<GLCall> calls) {
+		if (frameIndex < 0 || frameIndex >= mGLFrames.size()) {
+			return;
+		}
+
+		int lastCallIndex = mGLFrames.get(frameIndex).getEndIndex() - 1;
+		if (lastCallIndex >= 0 && lastCallIndex < mGLCalls.size()) {
+			calls.add(mGLCalls.get(lastCallIndex));
+		}
+	}
+
+	/**
+	 * Load the framebuffers of the given call and of the calls with
+	 * framebuffers closest to it in the background.
+	 */
+	public void prefetchImagesAroundCall(int callIndex) {
+		if (callIndex < 0 || callIndex >= mGLCalls.size()) {
+			return;
+		}
+
+		List<GLCall> calls = new ArrayList<GLCall>(2 * PREFETCH_CALLS + 1);
+		calls.add(mGLCalls.get(callIndex));
+
+		int end = Math.min(mGLCalls.size(), callIndex + PREFETCH_SEARCH_WINDOW);
+		for (int i = callIndex + 1, n = 0; i < end && n < PREFETCH_CALLS; i++) {
+			GLCall c = mGLCalls.get(i);
+			if (c.hasFb()) {
+				calls.add(c);
+				n++;
+			}
+		}
+
+		int start = Math.max(0, callIndex - PREFETCH_SEARCH_WINDOW);
+		for (int i = callIndex - 1, n = 0; i >= start && n < PREFETCH_CALLS; i--) {
+			GLCall c = mGLCalls.get(i);
+			if (c.hasFb()) {
+				calls.add(c);
+				n++;
+			}
+		}
+
+		prefetch(calls);
+	}
+
+	/**
+	 * Replace any pending prefetch request with the given calls, so that only
+	 * the most recent selection is prefetched while the user scrubs.
+	 */
+	private void prefetch(List<GLCall> calls) {
+		synchronized (mPrefetchLock) {
+			mPrefetchQueue = calls;
+		}
+		mPrefetchJob.schedule();
+	}
+
+	private IStatus prefetchImages(IProgressMonitor monitor) {
+		List<GLCall> calls;
+		synchronized (mPrefetchLock) {
+			calls = mPrefetchQueue;
+			mPrefetchQueue = null;
+		}
+
+		while (calls != null) {
+			List<GLCall> next = null;
+			for (GLCall c : calls) {
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+
+				synchronized (mPrefetchLock) {
+					next = mPrefetchQueue;
+					mPrefetchQueue = null;
+				}
+				if (next != null) {
+					break;
+				}
+
+				if (c.hasFb() && !mImageCache.contains(c.getIndex())) {
+					getImageData(c);
+				}
+			}
+
+			calls = next;
+		}
+
+		return Status.OK_STATUS;
 	}
 
 	public List<Integer> getContexts() {
 		return mContextIds;
 	}
+
+	/** Release the resources held by this trace. */
+	public void dispose() {
+		mPrefetchJob.cancel();
+		mImageCache.clear();
+		mTraceFileReader.close();
+	}
 }
@@ -23,6 +23,7 @@ package org.eclipse.andmore.gltrace.state;
 public abstract class GLAbstractAtomicProperty implements IGLProperty {
 	private final GLStateType mType;
 	private IGLProperty mParent;
+	private Object mOwner;
 
 	public GLAbstractAtomicProperty(GLStateType type) {
 		mType = type;
@@ -57,6 +58,18 @@ public abstract class GLAbstractAtomicProperty implements IGLProperty {
 		}
 	}
 
+	@Override
+	public IGLProperty copy(Object owner) {
+		GLAbstractAtomicProperty p = (GLAbstractAtomicProperty) clone();
+		p.mOwner = owner;
+		return p;
+	}
+
+	@Override
+	public Object getOwner() {
+		return mOwner;
+	}
+
 	@Override
 	public void prettyPrint(StatePrettyPrinter pp) {
 		pp.prettyPrint(mType, getStringValue());
@@ -28,6 +28,7 @@ public class GLCompositeProperty implements IGLProperty {
 	private final GLStateType mType;
 	private final Map<GLStateType, IGLProperty> mPropertiesMap;
 	private IGLProperty mParent;
+	private final Object mOwner;
 
 	/**
 	 * Construct a composite property given a list of {@link IGLProperty}
@@ -41,14 +42,42 @@ public class GLCompositeProperty implements IGLProperty {
 			mPropertiesMap.put(p.getType(), p);
 			p.setParent(this);
 		}
+
+		mOwner = null;
+	}
+
+	private GLCompositeProperty(GLStateType type, Map<GLStateType, IGLProperty> properties, Object owner) {
+		mType = type;
+		mPropertiesMap = new EnumMap<GLStateType, IGLProperty>(properties);
+		mOwner = owner;
 	}
 
 	public Collection<IGLProperty> getProperties() {
+		for (Map.Entry<GLStateType, IGLProperty> e : mPropertiesMap.entrySet()) {
+			IGLProperty p = e.getValue();
+			if (p.getOwner() != mOwner) {
+				e.setValue(own(p));
+			}
+		}
+
 		return mPropertiesMap.values();
 	}
 
 	public IGLProperty getProperty(GLStateType name) {
-		return mPropertiesMap.get(name);
+		IGLProperty p = mPropertiesMap.get(name);
+		if (p != null && p.getOwner() != mOwner) {
+			p = own(p);
+			mPropertiesMap.put(name, p);
+		}
+
+		return p;
+	}
+
+	/** Obtain a private copy of a property shared with another state tree. */
+	private IGLProperty own(IGLProperty p) {
+		IGLProperty copy = p.copy(mOwner);
+		copy.setParent(this);
+		return copy;
 	}
 
 	@Override
@@ -63,6 +92,16 @@ public class GLCompositeProperty implements IGLProperty {
 		return new GLCompositeProperty(getType(), props);
 	}
 
+	@Override
+	public GLCompositeProperty copy(Object owner) {
+		return new GLCompositeProperty(mType, mPropertiesMap, owner);
+	}
+
+	@Override
+	public Object getOwner() {
+		return mOwner;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
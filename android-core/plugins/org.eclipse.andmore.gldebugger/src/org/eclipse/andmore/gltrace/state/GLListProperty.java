@@ -28,6 +28,7 @@ public class GLListProperty implements IGLProperty {
 	private final GLStateType mType;
 	private IGLProperty mParent;
 	private IGLProperty mTemplate;
+	private final Object mOwner;
 
 	/**
 	 * Construct a list of properties of given size from the provided template.
@@ -48,26 +49,52 @@ public class GLListProperty implements IGLProperty {
 
 			p.setParent(this);
 		}
+
+		mOwner = null;
 	}
 
 	private GLListProperty(GLStateType type, List<IGLProperty> props) {
 		mList = props;
 		mType = type;
+		mOwner = null;
 
 		for (IGLProperty p : mList) {
 			p.setParent(this);
 		}
 	}
 
+	private GLListProperty(GLStateType type, IGLProperty template, List<IGLProperty> props, Object owner) {
+		mList = props;
+		mType = type;
+		mTemplate = template;
+		mOwner = owner;
+	}
+
 	public List<IGLProperty> getList() {
+		for (int i = 0; i < mList.size(); i++) {
+			get(i);
+		}
+
 		return mList;
 	}
 
 	public IGLProperty get(int index) {
-		return mList.get(index);
+		IGLProperty p = mList.get(index);
+		if (p != null && p.getOwner() != mOwner) {
+			// obtain a private copy of a property shared with another state
+			p = p.copy(mOwner);
+			p.setParent(this);
+			mList.set(index, p);
+		}
+
+		return p;
 	}
 
 	public boolean add(IGLProperty property) {
+		if (property.getOwner() != mOwner) {
+			property = property.copy(mOwner);
+		}
+
 		property.setParent(this);
 		return mList.add(property);
 	}
@@ -76,6 +103,22 @@ public class GLListProperty implements IGLProperty {
 		return mList.remove(property);
 	}
 
+	public IGLProperty remove(int index) {
+		return mList.remove(index);
+	}
+
+	/**
+	 * Replace the contents of this list with the contents of the given list.
+	 * The elements are shared with the given list until they are accessed
+	 * through this list, so this list must have a different owner.
+	 */
+	public void setContents(GLListProperty other) {
+		assert mOwner != other.mOwner;
+
+		mList.clear();
+		mList.addAll(other.mList);
+	}
+
 	public void set(int index, IGLProperty property) {
 		ensureCapacity(index + 1);
 		mList.set(index, property);
@@ -99,6 +142,16 @@ public class GLListProperty implements IGLProperty {
 		return new GLListProperty(getType(), props);
 	}
 
+	@Override
+	public GLListProperty copy(Object owner) {
+		return new GLListProperty(mType, mTemplate, new ArrayList<IGLProperty>(mList), owner);
+	}
+
+	@Override
+	public Object getOwner() {
+		return mOwner;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
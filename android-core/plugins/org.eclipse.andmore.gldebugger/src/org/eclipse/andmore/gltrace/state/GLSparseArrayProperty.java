@@ -28,6 +28,7 @@ public class GLSparseArrayProperty implements IGLProperty {
 	private final boolean mCreateOnAccess;
 	private final SparseArray<IGLProperty> mSparseArray;
 	private IGLProperty mParent;
+	private final Object mOwner;
 
 	public GLSparseArrayProperty(GLStateType type, IGLProperty defaultValue) {
 		this(type, defaultValue, false);
@@ -48,32 +49,54 @@ public class GLSparseArrayProperty implements IGLProperty {
 		mDefaultValue = defaultValue;
 		mCreateOnAccess = createOnAccess;
 		mSparseArray = new SparseArray<IGLProperty>(20);
+		mOwner = null;
 	}
 
 	private GLSparseArrayProperty(GLStateType type, IGLProperty defaultValue, boolean createOnAccess,
-			SparseArray<IGLProperty> contents) {
+			SparseArray<IGLProperty> contents, Object owner) {
 		mType = type;
 		mDefaultValue = defaultValue;
 		mCreateOnAccess = createOnAccess;
 		mSparseArray = contents;
+		mOwner = owner;
 	}
 
 	public List<IGLProperty> getValues() {
 		List<IGLProperty> values = new ArrayList<IGLProperty>(mSparseArray.size());
 
 		for (int i = 0; i < mSparseArray.size(); i++) {
-			values.add(mSparseArray.valueAt(i));
+			values.add(ownValueAt(i));
 		}
 
 		return values;
 	}
 
 	public IGLProperty getProperty(int key) {
-		IGLProperty p = mSparseArray.get(key);
-		if (p == null && mCreateOnAccess) {
+		int index = mSparseArray.indexOfKey(key);
+		if (index < 0) {
+			if (!mCreateOnAccess) {
+				return null;
+			}
+
 			add(key);
-			p = mSparseArray.get(key);
+			index = mSparseArray.indexOfKey(key);
+		}
+
+		return ownValueAt(index);
+	}
+
+	/**
+	 * Obtain the value at the given index, copying it first if it is shared
+	 * with another state tree.
+	 */
+	private IGLProperty ownValueAt(int index) {
+		IGLProperty p = mSparseArray.valueAt(index);
+		if (p != null && p.getOwner() != mOwner) {
+			p = p.copy(mOwner);
+			p.setParent(this);
+			mSparseArray.setValueAt(index, p);
 		}
+
 		return p;
 	}
 
@@ -131,7 +154,22 @@ public class GLSparseArrayProperty implements IGLProperty {
 			copy.put(key, value);
 		}
 
-		return new GLSparseArrayProperty(mType, mDefaultValue, mCreateOnAccess, copy);
+		return new GLSparseArrayProperty(mType, mDefaultValue, mCreateOnAccess, copy, null);
+	}
+
+	@Override
+	public GLSparseArrayProperty copy(Object owner) {
+		SparseArray<IGLProperty> copy = new SparseArray<IGLProperty>(mSparseArray.size());
+		for (int i = 0; i < mSparseArray.size(); i++) {
+			copy.append(mSparseArray.keyAt(i), mSparseArray.valueAt(i));
+		}
+
+		return new GLSparseArrayProperty(mType, mDefaultValue, mCreateOnAccess, copy, owner);
+	}
+
+	@Override
+	public Object getOwner() {
+		return mOwner;
 	}
 
 	@Override
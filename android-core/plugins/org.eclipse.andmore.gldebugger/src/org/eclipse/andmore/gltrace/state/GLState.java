@@ -292,4 +292,25 @@ public class GLState {
 	public static IGLProperty createDefaultState() {
 		return new GLListProperty(GLStateType.GL_STATE, null, 0);
 	}
+
+	/**
+	 * Create a modifiable copy of the given state. The copy initially shares
+	 * all of its properties with the given state, and only copies the
+	 * properties that are accessed through it, so forking a state is cheap
+	 * and large values such as buffer data are never duplicated. The given
+	 * state must not be modified after it has been forked.
+	 */
+	public static IGLProperty fork(IGLProperty state) {
+		return state.copy(new Object());
+	}
+
+	/**
+	 * Reset a state created with {@link #fork(IGLProperty)} to the given
+	 * state. As with a fork, the properties are shared with the given state
+	 * until they are accessed, and the given state must not be modified
+	 * afterwards.
+	 */
+	public static void reset(IGLProperty state, IGLProperty from) {
+		((GLListProperty) state).setContents((GLListProperty) from);
+	}
 }
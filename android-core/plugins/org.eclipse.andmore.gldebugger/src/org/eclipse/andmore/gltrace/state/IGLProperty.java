@@ -61,6 +61,24 @@ public interface IGLProperty extends Cloneable {
 	/** Deep clone this property. */
 	IGLProperty clone();
 
+	/**
+	 * Obtain a copy of this property that shares its children with this
+	 * property. The children are only copied when they are first accessed
+	 * through the copy, so unmodified parts of the state are shared between
+	 * all copies. See {@link GLState#fork(IGLProperty)}.
+	 *
+	 * @param owner
+	 *            token identifying the state tree the copy belongs to
+	 */
+	IGLProperty copy(Object owner);
+
+	/**
+	 * Get the token identifying the state tree this property belongs to.
+	 * Children with a different owner are shared with other trees and must be
+	 * copied before they are modified.
+	 */
+	Object getOwner();
+
 	/** Pretty print current property value to the given writer. */
 	void prettyPrint(StatePrettyPrinter pp);
 }
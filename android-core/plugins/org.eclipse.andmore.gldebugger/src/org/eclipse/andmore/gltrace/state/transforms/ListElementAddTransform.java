@@ -26,6 +26,7 @@ import org.eclipse.andmore.gltrace.state.IGLProperty;
 public class ListElementAddTransform implements IStateTransform {
 	private final IGLPropertyAccessor mAccessor;
 	private final IGLProperty mElement;
+	private int mIndex = -1;
 
 	public ListElementAddTransform(IGLPropertyAccessor accessor, IGLProperty element) {
 		mAccessor = accessor;
@@ -36,6 +37,9 @@ public class ListElementAddTransform implements IStateTransform {
 	public void apply(IGLProperty currentState) {
 		GLListProperty list = getList(currentState);
 		if (list != null) {
+			// the list may hold a copy of the element rather than the element
+			// itself, so remember where it was added
+			mIndex = list.size();
 			list.add(mElement);
 		}
 	}
@@ -43,8 +47,9 @@ public class ListElementAddTransform implements IStateTransform {
 	@Override
 	public void revert(IGLProperty currentState) {
 		GLListProperty list = getList(currentState);
-		if (list != null) {
-			list.remove(mElement);
+		if (list != null && mIndex >= 0 && mIndex < list.size()) {
+			list.remove(mIndex);
+			mIndex = -1;
 		}
 	}
 
@@ -37,13 +37,87 @@ import org.eclipse.andmore.gltrace.state.IGLProperty;
 public class StateTransformFactory {
 	private static final String TEXTURE_DATA_FILE_PREFIX = "tex"; //$NON-NLS-1$
 	private static final String TEXTURE_DATA_FILE_SUFFIX = ".dat"; //$NON-NLS-1$
-	private static EnumSet<GLEnum> sTexParameterPnameValues;
+	private static final EnumSet<GLEnum> sTexParameterPnameValues = EnumSet.of(GLEnum.GL_TEXTURE_BASE_LEVEL,
+			GLEnum.GL_TEXTURE_COMPARE_FUNC, GLEnum.GL_TEXTURE_COMPARE_MODE, GLEnum.GL_TEXTURE_MIN_FILTER,
+			GLEnum.GL_TEXTURE_MAG_FILTER, GLEnum.GL_TEXTURE_MIN_LOD, GLEnum.GL_TEXTURE_MAX_LOD,
+			GLEnum.GL_TEXTURE_MAX_LEVEL, GLEnum.GL_TEXTURE_SWIZZLE_R, GLEnum.GL_TEXTURE_SWIZZLE_G,
+			GLEnum.GL_TEXTURE_SWIZZLE_B, GLEnum.GL_TEXTURE_SWIZZLE_A, GLEnum.GL_TEXTURE_WRAP_S,
+			GLEnum.GL_TEXTURE_WRAP_T, GLEnum.GL_TEXTURE_WRAP_R);
 
 	/**
 	 * Construct a list of transformations to be applied for the provided OpenGL
-	 * call.
+	 * call. The texture data of the call, if any, is extracted to a new file in
+	 * the cache folder.
 	 */
 	public static List<IStateTransform> getTransformsFor(GLMessage msg) {
+		return getTransformsFor(msg, extractTextureData(msg));
+	}
+
+	/**
+	 * Returns whether constructing the transformations for the provided OpenGL
+	 * call fails. Unlike {@link #getTransformsFor(GLMessage)}, this does not
+	 * extract texture data into the cache folder, so it has no side effects.
+	 */
+	public static boolean hasTransformErrors(GLMessage msg) {
+		try {
+			checkTransformsFor(msg);
+			return false;
+		} catch (Exception e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Construct the transformations for the provided OpenGL call without
+	 * extracting its texture data, and throw the error raised if that fails.
+	 * Has no side effects.
+	 */
+	public static void checkTransformsFor(GLMessage msg) {
+		getTransformsFor(msg, (File) null);
+	}
+
+	/**
+	 * Extract the texture data of the provided OpenGL call to a new file in the
+	 * cache folder.
+	 *
+	 * @return the file holding the texture data, or null if the call does not
+	 *         specify texture data
+	 */
+	public static File extractTextureData(GLMessage msg) {
+		switch (msg.getFunction()) {
+		case glTexImage2D:
+		case glTexSubImage2D:
+			break;
+		default:
+			return null;
+		}
+
+		// the data is the last argument of both calls
+		if (!msg.getArgs(8).getIsArray()) {
+			return null;
+		}
+
+		ByteString data = msg.getArgs(8).getRawBytes(0);
+		File f = FileUtils.createTempFile(TEXTURE_DATA_FILE_PREFIX, TEXTURE_DATA_FILE_SUFFIX);
+		try {
+			Files.write(data.toByteArray(), f);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return f;
+	}
+
+	/**
+	 * Construct a list of transformations to be applied for the provided OpenGL
+	 * call, given the file its texture data was extracted to with
+	 * {@link #extractTextureData(GLMessage)}. This allows the data of a call
+	 * whose transformations are constructed again to be extracted only once.
+	 *
+	 * @param textureData
+	 *            file holding the texture data of the call, or null if the
+	 *            call does not specify texture data
+	 */
+	public static List<IStateTransform> getTransformsFor(GLMessage msg, File textureData) {
 		switch (msg.getFunction()) {
 		case eglCreateContext:
 			return transformsForEglCreateContext(msg);
@@ -130,9 +204,9 @@ public class StateTransformFactory {
 		case glBindTexture:
 			return transformsForGlBindTexture(msg);
 		case glTexImage2D:
-			return transformsForGlTexImage2D(msg);
+			return transformsForGlTexImage2D(msg, textureData);
 		case glTexSubImage2D:
-			return transformsForGlTexSubImage2D(msg);
+			return transformsForGlTexSubImage2D(msg, textureData);
 		case glTexParameteri:
 			return transformsForGlTexParameter(msg);
 
@@ -800,11 +874,11 @@ public class StateTransformFactory {
 
 	/**
 	 * Utility function used by both
-	 * {@link #transformsForGlTexImage2D(GLMessage) and {
-	 * @link #transformsForGlTexSubImage2D(GLMessage)}.
+	 * {@link #transformsForGlTexImage2D(GLMessage, File) and {
+	 * @link #transformsForGlTexSubImage2D(GLMessage, File)}.
 	 */
 	private static List<IStateTransform> transformsForGlTexImage(GLMessage msg, int widthArgIndex, int heightArgIndex,
-			int xOffsetIndex, int yOffsetIndex) {
+			int xOffsetIndex, int yOffsetIndex, File textureData) {
 		GLEnum target = GLEnum.valueOf(msg.getArgs(0).getIntValue(0));
 		int level = msg.getArgs(1).getIntValue(0);
 		Integer width = Integer.valueOf(msg.getArgs(widthArgIndex).getIntValue(0));
@@ -822,19 +896,6 @@ public class StateTransformFactory {
 		transforms.add(new PropertyChangeTransform(new TexturePropertyAccessor(msg.getContextId(),
 				getTextureUnitTargetName(target), level, GLStateType.TEXTURE_IMAGE_TYPE), type));
 
-		// if texture data is available, extract and store it in the cache
-		// folder
-		File f = null;
-		if (msg.getArgs(8).getIsArray()) {
-			ByteString data = msg.getArgs(8).getRawBytes(0);
-			f = FileUtils.createTempFile(TEXTURE_DATA_FILE_PREFIX, TEXTURE_DATA_FILE_SUFFIX);
-			try {
-				Files.write(data.toByteArray(), f);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-		}
-
 		int xOffset = 0;
 		int yOffset = 0;
 
@@ -847,26 +908,26 @@ public class StateTransformFactory {
 		}
 
 		transforms.add(new TexImageTransform(new TexturePropertyAccessor(msg.getContextId(),
-				getTextureUnitTargetName(target), level, GLStateType.TEXTURE_IMAGE), f, format, type, xOffset, yOffset,
-				width, height));
+				getTextureUnitTargetName(target), level, GLStateType.TEXTURE_IMAGE), textureData, format, type, xOffset,
+				yOffset, width, height));
 
 		return transforms;
 	}
 
-	private static List<IStateTransform> transformsForGlTexImage2D(GLMessage msg) {
+	private static List<IStateTransform> transformsForGlTexImage2D(GLMessage msg, File textureData) {
 		// void glTexImage2D(GLenum target, GLint level, GLint internalformat,
 		// GLsizei width,
 		// GLsizei height, GLint border, GLenum format, GLenum type, const
 		// GLvoid *data);
-		return transformsForGlTexImage(msg, 3, 4, -1, -1);
+		return transformsForGlTexImage(msg, 3, 4, -1, -1, textureData);
 	}
 
-	private static List<IStateTransform> transformsForGlTexSubImage2D(GLMessage msg) {
+	private static List<IStateTransform> transformsForGlTexSubImage2D(GLMessage msg, File textureData) {
 		// void glTexSubImage2D(GLenum target, GLint level, GLint xoffset, GLint
 		// yoffset,
 		// GLsizei width, GLsizei height, GLenum format, GLenum type, const
 		// GLvoid *data);
-		return transformsForGlTexImage(msg, 4, 5, 2, 3);
+		return transformsForGlTexImage(msg, 4, 5, 2, 3, textureData);
 	}
 
 	private static List<IStateTransform> transformsForGlTexParameter(GLMessage msg) {
@@ -875,16 +936,6 @@ public class StateTransformFactory {
 		GLEnum pname = GLEnum.valueOf(msg.getArgs(1).getIntValue(0));
 		GLEnum pvalue = GLEnum.valueOf(msg.getArgs(2).getIntValue(0));
 
-		if (sTexParameterPnameValues == null) {
-			GLEnum[] pnameValues = new GLEnum[] { GLEnum.GL_TEXTURE_BASE_LEVEL, GLEnum.GL_TEXTURE_COMPARE_FUNC,
-					GLEnum.GL_TEXTURE_COMPARE_MODE, GLEnum.GL_TEXTURE_MIN_FILTER, GLEnum.GL_TEXTURE_MAG_FILTER,
-					GLEnum.GL_TEXTURE_MIN_LOD, GLEnum.GL_TEXTURE_MAX_LOD, GLEnum.GL_TEXTURE_MAX_LEVEL,
-					GLEnum.GL_TEXTURE_SWIZZLE_R, GLEnum.GL_TEXTURE_SWIZZLE_G, GLEnum.GL_TEXTURE_SWIZZLE_B,
-					GLEnum.GL_TEXTURE_SWIZZLE_A, GLEnum.GL_TEXTURE_WRAP_S, GLEnum.GL_TEXTURE_WRAP_T,
-					GLEnum.GL_TEXTURE_WRAP_R };
-			sTexParameterPnameValues = EnumSet.copyOf(Arrays.asList(pnameValues));
-		}
-
 		if (!sTexParameterPnameValues.contains(pname)) {
 			throw new IllegalArgumentException(String.format("Unsupported parameter (%s) for glTexParameter()", pname));
 		}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import static org.eclipse.andmore.internal.editors.layout.gle2.ImageTileCache.TILE_SIZE;
+import static org.junit.Assert.*;
+
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+public class ImageTileCacheTest {
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics g = image.getGraphics();
+        g.setColor(new Color(0xFF112233, true));
+        g.fillRect(0, 0, width, height);
+        g.setColor(new Color(0xFFAA6600, true));
+        g.fillRect(width / 3, height / 4, width / 2, height / 3);
+        g.dispose();
+
+        return image;
+    }
+
+    @Test
+    public void testPaintUnscaled() throws Exception {
+        BufferedImage source = createImage(600, 700);
+        Display display = new Shell().getDisplay();
+        ImageTileCache cache = new ImageTileCache(display);
+        Image target = new Image(display, 650, 750);
+        GC gc = new GC(target);
+        try {
+            cache.paint(gc, source, false, 10, 20, 600, 700);
+        } finally {
+            gc.dispose();
+        }
+
+        ImageData data = target.getImageData();
+        PaletteData palette = SwtUtils.getAwtPaletteData(source.getType());
+        for (int y = 0; y < source.getHeight(); y += 7) {
+            for (int x = 0; x < source.getWidth(); x += 7) {
+                RGB expected = palette.getRGB(source.getRGB(x, y) & 0xFFFFFF);
+                RGB actual = data.palette.getRGB(data.getPixel(x + 10, y + 20));
+                assertEquals(expected, actual);
+            }
+        }
+
+        int columns = (600 + TILE_SIZE - 1) / TILE_SIZE;
+        int rows = (700 + TILE_SIZE - 1) / TILE_SIZE;
+        assertEquals(columns * rows, cache.getTileCount());
+
+        cache.dispose();
+        target.dispose();
+    }
+
+    @Test
+    public void testPaintClipped() throws Exception {
+        BufferedImage source = createImage(1440, 2560);
+        Display display = new Shell().getDisplay();
+        ImageTileCache cache = new ImageTileCache(display);
+        Image target = new Image(display, 800, 600);
+        GC gc = new GC(target);
+        try {
+            // Only the tiles intersecting the clip are created
+            gc.setClipping(100, 100, 2 * TILE_SIZE, 50);
+            cache.paint(gc, source, true, 0, 0, 2160, 3840);
+            assertEquals(3, cache.getTileCount());
+
+            // Painting again reuses them
+            cache.paint(gc, source, true, 0, 0, 2160, 3840);
+            assertEquals(3, cache.getTileCount());
+
+            // Only the tiles of the last zoom levels are kept
+            cache.paint(gc, source, true, 0, 0, 720, 1280);
+            cache.paint(gc, source, true, 0, 0, 1440, 2560);
+            assertEquals(6, cache.getTileCount());
+
+            cache.clear();
+            assertEquals(0, cache.getTileCount());
+        } finally {
+            gc.dispose();
+        }
+
+        cache.dispose();
+        target.dispose();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.editors.manifest;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.andmore.internal.editors.manifest.LayoutActivityIndex.Reference;
+import org.junit.Test;
+
+import java.util.List;
+
+public class LayoutActivityIndexTest {
+
+    @Test
+    public void testFindReferences() throws Exception {
+        String source =
+                "package com.example.app;\n" +
+                "\n" +
+                "public class MainActivity extends Activity {\n" +
+                "    public void onCreate(Bundle savedInstanceState) {\n" +
+                "        super.onCreate(savedInstanceState);\n" +
+                "        setContentView(R.layout.main);\n" +
+                "        int title = R.string.title;\n" +
+                "        int frameworkLayout = android.R.layout.simple_list_item_1;\n" +
+                "    }\n" +
+                "\n" +
+                "    static class Holder {\n" +
+                "        View create(LayoutInflater inflater) {\n" +
+                "            return inflater.inflate(com.example.app.R.layout.row, null);\n" +
+                "        }\n" +
+                "\n" +
+                "        int getLayout() {\n" +
+                "            return R.layout.other;\n" +
+                "        }\n" +
+                "    }\n" +
+                "}\n";
+
+        List<Reference> references = LayoutActivityIndex.findReferences(
+                source.toCharArray(), null);
+        assertEquals(3, references.size());
+
+        Reference main = references.get(0);
+        assertEquals("main", main.layout);
+        assertNull(main.rPackage);
+        assertEquals("com.example.app.MainActivity", main.type);
+        assertEquals(Reference.RANK_CONTENT_VIEW, main.getRank());
+
+        Reference row = references.get(1);
+        assertEquals("row", row.layout);
+        assertEquals("com.example.app", row.rPackage);
+        assertEquals("com.example.app.MainActivity$Holder", row.type);
+        assertEquals(Reference.RANK_INFLATE, row.getRank());
+
+        Reference other = references.get(2);
+        assertEquals("other", other.layout);
+        assertEquals("com.example.app.MainActivity$Holder", other.type);
+        assertEquals(Reference.RANK_OTHER, other.getRank());
+    }
+
+    @Test
+    public void testFindNoReferences() throws Exception {
+        String source =
+                "package com.example.app;\n" +
+                "\n" +
+                "public class Util {\n" +
+                "    static int getLayout() {\n" +
+                "        return android.R.layout.simple_list_item_1;\n" +
+                "    }\n" +
+                "}\n";
+
+        assertTrue(LayoutActivityIndex.findReferences(source.toCharArray(), null).isEmpty());
+    }
+}
@@ -41,6 +41,7 @@ import org.eclipse.andmore.internal.editors.AndroidXmlEditor;
 import org.eclipse.andmore.internal.editors.IconFactory;
 import org.eclipse.andmore.internal.editors.common.CommonXmlEditor;
 import org.eclipse.andmore.internal.editors.layout.gle2.IncludeFinder;
+import org.eclipse.andmore.internal.editors.manifest.LayoutActivityIndex;
 import org.eclipse.andmore.internal.lint.LintDeltaProcessor;
 import org.eclipse.andmore.internal.preferences.AdtPrefs;
 import org.eclipse.andmore.internal.preferences.AdtPrefs.BuildVerbosity;
@@ -1570,6 +1571,7 @@ public class AndmoreAndroidPlugin extends AbstractUIPlugin implements ILogger {
         IconFactory.getInstance().dispose();
 
         LintDeltaProcessor.stopListening(mResourceMonitor);
+        LayoutActivityIndex.dispose();
 
         // Remove the resource listener that handles compiled resources.
         IWorkspace ws = ResourcesPlugin.getWorkspace();
@@ -50,6 +50,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -145,21 +151,12 @@ public class AidlProcessor extends SourceProcessor {
                     new SubProgressMonitor(monitor, 10));
         }
 
-        boolean success = false;
-
-        // loop until we've compile them all
+        // prepare the command line and the output files of each source file. This touches
+        // the workspace, so it is done on the builder thread before running aidl.
+        int count = sources.size();
+        List<String[]> fileCommands = new ArrayList<String[]>(count);
+        List<IFile> aidlOutFiles = new ArrayList<IFile>(count);
         for (IFile sourceFile : sources) {
-            if (verbose) {
-                String name = sourceFile.getName();
-                IPath sourceFolderPath = getSourceFolderFor(sourceFile);
-                if (sourceFolderPath != null) {
-                    // make a path to the source file relative to the source folder.
-                    IPath relative = sourceFile.getFullPath().makeRelativeTo(sourceFolderPath);
-                    name = relative.toString();
-                }
-                AndmoreAndroidPlugin.printToConsole(project, "AIDL: " + name);
-            }
-
             // Remove the AIDL error markers from the aidl file
             builder.removeMarkersFromResource(sourceFile, AndmoreAndroidConstants.MARKER_AIDL);
 
@@ -182,35 +179,62 @@ public class AidlProcessor extends SourceProcessor {
             }
 
             // finish to set the command line.
-            commands[index] = quote(osSourcePath);
-            commands[index + 1] = quote(data.getOutput().getLocation().toOSString());
+            String[] fileCommand = commands.clone();
+            fileCommand[index] = quote(osSourcePath);
+            fileCommand[index + 1] = quote(data.getOutput().getLocation().toOSString());
+            fileCommands.add(fileCommand);
+
+            aidlOutFiles.add(getAidlOutputFile(sourceFile, aidlOutFolder,
+                    false /*replaceExt*/, true /*createFolders*/, monitor));
+        }
+
+        // launch the processes
+        List<AidlResult> results = runAidl(project, fileCommands, verbose);
+
+        // handle the results in the order of the source files so that the console output
+        // and the markers do not depend on the order in which the processes completed.
+        for (int i = 0; i < count; i++) {
+            IFile sourceFile = sources.get(i);
+            AidlResult result = results.get(i);
+
+            if (verbose) {
+                String name = sourceFile.getName();
+                IPath sourceFolderPath = getSourceFolderFor(sourceFile);
+                if (sourceFolderPath != null) {
+                    // make a path to the source file relative to the source folder.
+                    IPath relative = sourceFile.getFullPath().makeRelativeTo(sourceFolderPath);
+                    name = relative.toString();
+                }
+                AndmoreAndroidPlugin.printToConsole(project,
+                        String.format("AIDL: %1$s (%2$d ms)", name, result.mTime)); //$NON-NLS-1$
+                AndmoreAndroidPlugin.printToConsole(project, result.mCommandLine);
+            }
 
-            // launch the process
-            if (execAidl(builder, project, commands, sourceFile, verbose) == false) {
+            if (handleAidlResult(project, fileCommands.get(i), result, sourceFile,
+                    verbose) == false) {
                 // aidl failed. File should be marked. We add the file to the list
                 // of file that will need compilation again.
                 notCompiledOut.add(sourceFile);
             } else {
                 // Success. we'll return that we generated code
                 setCompilationStatus(COMPILE_STATUS_CODE);
-                success = true;
+
+                // only refresh the generated file rather than the whole gen folder.
+                IFile javaFile = getFileData(sourceFile).getOutput();
+                javaFile.refreshLocal(IResource.DEPTH_ZERO, monitor);
 
                 // Also copy the file to the bin folder.
-                IFile aidlOutFile = getAidlOutputFile(sourceFile, aidlOutFolder,
-                        false /*replaceExt*/, true /*createFolders*/, monitor);
+                IFile aidlOutFile = aidlOutFiles.get(i);
 
                 FileOp op = new FileOp();
                 try {
                     op.copyFile(sourceFile.getLocation().toFile(),
                             aidlOutFile.getLocation().toFile());
+                    aidlOutFile.refreshLocal(IResource.DEPTH_ZERO, monitor);
                 } catch (IOException e) {
                 }
             }
         }
-
-        if (success) {
-            aidlOutFolder.refreshLocal(IResource.DEPTH_INFINITE, monitor);
-        }
     }
 
     @Override
@@ -231,75 +255,127 @@ public class AidlProcessor extends SourceProcessor {
         }
     }
 
+    /** The outcome of a single aidl process. */
+    private static final class AidlResult {
+        /** The command line, for display in the console. */
+        String mCommandLine;
+        int mReturnCode;
+        ArrayList<String> mStdErr = new ArrayList<String>();
+        /** The exception thrown when running aidl, if any. */
+        Exception mException;
+        /** The time taken by the process, in milliseconds. */
+        long mTime;
+    }
+
     /**
-     * Execute the aidl command line, parse the output, and mark the aidl file
-     * with any reported errors.
-     * @param command the String array containing the command line to execute.
-     * @param file The IFile object representing the aidl file being
-     *      compiled.
+     * Runs aidl for each of the given command lines. The processes are run concurrently, with
+     * at most one process per processor.
+     * @param project the project being built.
+     * @param commands the command lines to execute.
      * @param verbose the build verbosity
-     * @return false if the exec failed, and build needs to be aborted.
+     * @return the results, in the same order as the command lines.
      */
-    private boolean execAidl(BaseBuilder builder, IProject project, String[] command, IFile file,
-            boolean verbose) {
-        // do the exec
-        try {
-            if (verbose) {
-                StringBuilder sb = new StringBuilder();
-                for (String c : command) {
-                    sb.append(c);
-                    sb.append(' ');
-                }
-                String cmd_line = sb.toString();
-                AndmoreAndroidPlugin.printToConsole(project, cmd_line);
-            }
+    private List<AidlResult> runAidl(final IProject project, List<String[]> commands,
+            final boolean verbose) {
+        List<AidlResult> results = new ArrayList<AidlResult>(commands.size());
+        if (commands.size() == 1) {
+            results.add(execAidl(project, commands.get(0), verbose));
+            return results;
+        }
 
-            Process p = Runtime.getRuntime().exec(command);
+        int threads = Math.min(commands.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int mCount;
 
-            // list to store each line of stderr
-            ArrayList<String> stdErr = new ArrayList<String>();
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AIDL #" + (++mCount)); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            }
+        });
 
-            // get the output and return code from the process
-            int returnCode = BuildHelper.grabProcessOutput(project, p, stdErr);
-
-            if (stdErr.size() > 0) {
-                // attempt to parse the error output
-                boolean parsingError = parseAidlOutput(stdErr, file);
-
-                // If the process failed and we couldn't parse the output
-                // we print a message, mark the project and exit
-                if (returnCode != 0) {
-
-                    if (parsingError || verbose) {
-                        // display the message in the console.
-                        if (parsingError) {
-                            AndmoreAndroidPlugin.printErrorToConsole(project, stdErr.toArray());
-
-                            // mark the project
-                            BaseProjectHelper.markResource(project, AndmoreAndroidConstants.MARKER_AIDL,
-                                    Messages.Unparsed_AIDL_Errors, IMarker.SEVERITY_ERROR);
-                        } else {
-                            AndmoreAndroidPlugin.printToConsole(project, stdErr.toArray());
-                        }
+        try {
+            List<Future<AidlResult>> futures = new ArrayList<Future<AidlResult>>(commands.size());
+            for (final String[] command : commands) {
+                futures.add(executor.submit(new Callable<AidlResult>() {
+                    @Override
+                    public AidlResult call() {
+                        return execAidl(project, command, verbose);
                     }
-                    return false;
+                }));
+            }
+
+            for (Future<AidlResult> future : futures) {
+                AidlResult result;
+                try {
+                    result = future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result = new AidlResult();
+                    result.mException = e;
+                } catch (ExecutionException e) {
+                    result = new AidlResult();
+                    result.mException = e;
                 }
-            } else if (returnCode != 0) {
-                // no stderr output but exec failed.
-                String msg = String.format(Messages.AIDL_Exec_Error_d, returnCode);
+                results.add(result);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
 
-                BaseProjectHelper.markResource(project, AndmoreAndroidConstants.MARKER_AIDL,
-                       msg, IMarker.SEVERITY_ERROR);
+        return results;
+    }
 
-                return false;
+    /**
+     * Execute the aidl command line and collect its output. This does not access the
+     * workspace, and can be called from any thread.
+     * @param command the String array containing the command line to execute.
+     * @param verbose the build verbosity
+     * @return the result of the process.
+     */
+    private static AidlResult execAidl(IProject project, String[] command, boolean verbose) {
+        AidlResult result = new AidlResult();
+        long start = System.currentTimeMillis();
+
+        if (verbose) {
+            StringBuilder sb = new StringBuilder();
+            for (String c : command) {
+                sb.append(c);
+                sb.append(' ');
             }
+            result.mCommandLine = sb.toString();
+        }
+
+        // do the exec
+        try {
+            Process p = Runtime.getRuntime().exec(command);
+
+            // get the output and return code from the process
+            result.mReturnCode = BuildHelper.grabProcessOutput(project, p, result.mStdErr);
         } catch (IOException e) {
-            // mark the project and exit
-            String msg = String.format(Messages.AIDL_Exec_Error_s, command[0]);
-            BaseProjectHelper.markResource(project, AndmoreAndroidConstants.MARKER_AIDL, msg,
-                    IMarker.SEVERITY_ERROR);
-            return false;
+            result.mException = e;
         } catch (InterruptedException e) {
+            result.mException = e;
+        }
+
+        result.mTime = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * Parse the output of an aidl process, and mark the aidl file
+     * with any reported errors.
+     * @param command the String array containing the command line that was executed.
+     * @param result the result of the process.
+     * @param file The IFile object representing the aidl file being
+     *      compiled.
+     * @param verbose the build verbosity
+     * @return false if the exec failed, and build needs to be aborted.
+     */
+    private boolean handleAidlResult(IProject project, String[] command, AidlResult result,
+            IFile file, boolean verbose) {
+        if (result.mException != null) {
             // mark the project and exit
             String msg = String.format(Messages.AIDL_Exec_Error_s, command[0]);
             BaseProjectHelper.markResource(project, AndmoreAndroidConstants.MARKER_AIDL, msg,
@@ -307,6 +383,41 @@ public class AidlProcessor extends SourceProcessor {
             return false;
         }
 
+        ArrayList<String> stdErr = result.mStdErr;
+        int returnCode = result.mReturnCode;
+
+        if (stdErr.size() > 0) {
+            // attempt to parse the error output
+            boolean parsingError = parseAidlOutput(stdErr, file);
+
+            // If the process failed and we couldn't parse the output
+            // we print a message, mark the project and exit
+            if (returnCode != 0) {
+
+                if (parsingError || verbose) {
+                    // display the message in the console.
+                    if (parsingError) {
+                        AndmoreAndroidPlugin.printErrorToConsole(project, stdErr.toArray());
+
+                        // mark the project
+                        BaseProjectHelper.markResource(project, AndmoreAndroidConstants.MARKER_AIDL,
+                                Messages.Unparsed_AIDL_Errors, IMarker.SEVERITY_ERROR);
+                    } else {
+                        AndmoreAndroidPlugin.printToConsole(project, stdErr.toArray());
+                    }
+                }
+                return false;
+            }
+        } else if (returnCode != 0) {
+            // no stderr output but exec failed.
+            String msg = String.format(Messages.AIDL_Exec_Error_d, returnCode);
+
+            BaseProjectHelper.markResource(project, AndmoreAndroidConstants.MARKER_AIDL,
+                   msg, IMarker.SEVERITY_ERROR);
+
+            return false;
+        }
+
         return true;
     }
 
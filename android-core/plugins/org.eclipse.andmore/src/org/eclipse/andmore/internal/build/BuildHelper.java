@@ -21,18 +21,27 @@ import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.nio.charset.Charset;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.andmore.AndmoreAndroidConstants;
 import org.eclipse.andmore.AndmoreAndroidPlugin;
@@ -78,9 +87,6 @@ import com.android.sdklib.internal.build.DebugKeyProvider.KeytoolException;
 import com.android.utils.GrabProcessOutput;
 import com.android.utils.GrabProcessOutput.IProcessOutput;
 import com.android.utils.GrabProcessOutput.Wait;
-import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 
 /**
  * Helper with methods for the last 3 steps of the generation of an APK.
@@ -106,6 +112,11 @@ import com.google.common.hash.Hashing;
 public class BuildHelper {
 
     private static final String CONSOLE_PREFIX_DX = "Dx";   //$NON-NLS-1$
+
+    /** Maximum number of libraries pre-dexed concurrently. */
+    private static final int MAX_PRE_DEX_THREADS = 4;
+    /** Heap reserved for each concurrent run of dx when pre-dexing libraries. */
+    private static final long PRE_DEX_MEMORY_PER_THREAD = 256L * 1024 * 1024;
     private final static String TEMP_PREFIX = "android_";   //$NON-NLS-1$
 
     private static final String COMMAND_CRUNCH = "crunch";  //$NON-NLS-1$
@@ -781,18 +792,16 @@ public class BuildHelper {
                     Messages.ApkBuilder_UnableBuild_Dex_Not_loaded));
         }
 
+        // keys of all the pre-dexed libraries used by this build, which are held in the
+        // cache until the build is done, so that other builds adding entries do not evict them.
+        PreDexCache cache = null;
+        Set<String> usedKeys = new HashSet<String>();
+
         try {
             // set a temporary prefix on the print streams.
             mOutStream.setPrefix(CONSOLE_PREFIX_DX);
             mErrStream.setPrefix(CONSOLE_PREFIX_DX);
 
-            IFolder binFolder = BaseProjectHelper.getAndroidOutputFolder(javaProject.getProject());
-            File binFile = binFolder.getLocation().toFile();
-            File dexedLibs = new File(binFile, "dexedLibs");
-            if (dexedLibs.exists() == false) {
-                dexedLibs.mkdir();
-            }
-
             boolean multiDexEnabled = false;
             String mainDexListFileLocation = null;
             
@@ -822,47 +831,68 @@ public class BuildHelper {
                 finalInputPaths.addAll(inputPaths);
             } else {
 
+                cache = PreDexCache.getInstance();
+                String buildToolsRevision = mBuildToolInfo.getRevision().toString();
+                int cacheHits = 0;
+                int cacheMisses = 0;
+
+                // libraries that must be pre-dexed, by cache key, and the key of the pre-dexed
+                // version of each entry of finalInputPaths that is not known yet.
+                Map<String, String> staleLibs = new LinkedHashMap<String, String>();
+                List<String> pendingKeys = new ArrayList<String>(inputPaths.size());
+
                 for (String input : inputPaths) {
                     File inputFile = new File(input);
                     if (inputFile.isDirectory()) {
                         finalInputPaths.add(input);
+                        pendingKeys.add(null);
                     } else if (inputFile.isFile()) {
-                        String fileName = getDexFileName(inputFile);
-
-                        File dexedLib = new File(dexedLibs, fileName);
-                        String dexedLibPath = dexedLib.getAbsolutePath();
-
-                        if (dexedLib.isFile() == false ||
-                                dexedLib.lastModified() < inputFile.lastModified()) {
-
-                            if (mVerbose) {
-                                mOutStream.println(
-                                        String.format("Pre-Dexing %1$s -> %2$s", input, fileName));
-                            }
-
-                            if (dexedLib.isFile()) {
-                                dexedLib.delete();
-                            }
-
-                            int res = wrapper.run(dexedLibPath, Collections.singleton(input),
-                                    mForceJumbo, false, null, false, mVerbose, mOutStream, mErrStream);
+                        String key = cache.getKey(inputFile, mForceJumbo, buildToolsRevision);
+                        if (usedKeys.add(key)) {
+                            cache.acquire(key);
+                        }
+                        File dexedLib = cache.get(key);
 
-                            if (res != 0) {
-                                // output error message and mark the project.
-                                String message = String.format(Messages.Dalvik_Error_d, res);
-                                throw new DexException(message);
+                        if (dexedLib == null) {
+                            cacheMisses++;
+                            if (!staleLibs.containsKey(key)) {
+                                staleLibs.put(key, input);
                             }
+                            finalInputPaths.add(null);
+                            pendingKeys.add(key);
                         } else {
+                            cacheHits++;
                             if (mVerbose) {
                                 mOutStream.println(
                                         String.format("Using Pre-Dexed %1$s <- %2$s",
-                                                fileName, input));
+                                                key, input));
                             }
+                            finalInputPaths.add(dexedLib.getAbsolutePath());
+                            pendingKeys.add(null);
                         }
+                    }
+                }
 
-                        finalInputPaths.add(dexedLibPath);
+                if (!staleLibs.isEmpty()) {
+                    Map<String, File> dexedLibs = preDexLibraries(wrapper, cache, staleLibs);
+
+                    // fill in the pre-dexed libraries in the order of the inputs, regardless of
+                    // the order in which they were dexed. Libraries that could not be added to
+                    // the cache are dexed as part of the final dx run instead.
+                    for (int i = 0; i < finalInputPaths.size(); i++) {
+                        String key = pendingKeys.get(i);
+                        if (key != null) {
+                            File dexedLib = dexedLibs.get(key);
+                            finalInputPaths.set(i, dexedLib != null
+                                    ? dexedLib.getAbsolutePath() : staleLibs.get(key));
+                        }
                     }
                 }
+
+                if (mVerbose) {
+                    mOutStream.println(String.format("Pre-dex cache: %1$d hits, %2$d misses",
+                            cacheHits, cacheMisses));
+                }
             }
 
             if (mVerbose) {
@@ -898,23 +928,134 @@ public class BuildHelper {
             message = String.format(Messages.Dalvik_Error_s, message);
 
             throw new DexException(message, t);
+        } finally {
+            if (cache != null) {
+                cache.release(usedKeys);
+            }
+        }
+    }
+
+    /**
+     * Pre-dexes library jars into the pre-dex cache.
+     * <p/>
+     * The libraries are dexed concurrently, each with its own copy of the dex library. The
+     * number of concurrent runs is bounded by the number of processors and by the memory
+     * available to the in-process dx.
+     *
+     * @param wrapper the dex wrapper
+     * @param cache the pre-dex cache
+     * @param libraries the paths of the libraries to pre-dex, by cache key
+     * @return the pre-dexed libraries, by cache key, with null for the libraries that could
+     *         not be added to the cache
+     */
+    private Map<String, File> preDexLibraries(DexWrapper wrapper, final PreDexCache cache,
+            Map<String, String> libraries)
+            throws CoreException, DexException, IOException {
+        int maxThreads = Math.min(libraries.size(), getMaxPreDexThreads());
+        final BlockingQueue<DexWrapper> wrappers = new LinkedBlockingQueue<DexWrapper>(
+                wrapper.getConcurrentWrappers(maxThreads));
+
+        ExecutorService executor = Executors.newFixedThreadPool(wrappers.size(),
+                new ThreadFactory() {
+                    private int mCount;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Pre-Dexing #" + (++mCount)); //$NON-NLS-1$
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        try {
+            Map<String, Future<File>> futures = new LinkedHashMap<String, Future<File>>();
+            for (Map.Entry<String, String> entry : libraries.entrySet()) {
+                final String key = entry.getKey();
+                final String input = entry.getValue();
+                futures.put(key, executor.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        DexWrapper w = wrappers.take();
+                        try {
+                            return preDexLibrary(w, cache, key, input);
+                        } finally {
+                            wrappers.put(w);
+                        }
+                    }
+                }));
+            }
+
+            Map<String, File> dexedLibs = new HashMap<String, File>();
+            for (Map.Entry<String, Future<File>> entry : futures.entrySet()) {
+                try {
+                    dexedLibs.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof DexException) {
+                        throw (DexException) cause;
+                    } else if (cause instanceof CoreException) {
+                        throw (CoreException) cause;
+                    } else if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+
+                    String message = cause.getMessage();
+                    if (message == null) {
+                        message = cause.getClass().getCanonicalName();
+                    }
+                    throw new DexException(String.format(Messages.Dalvik_Error_s, message),
+                            cause);
+                }
+            }
+
+            return dexedLibs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DexException(String.format(Messages.Dalvik_Error_s, e.toString()), e);
+        } finally {
+            // stop pre-dexing the other libraries if one of them failed.
+            executor.shutdownNow();
         }
     }
 
-    private String getDexFileName(File inputFile) {
-        // get the filename
-        String name = inputFile.getName();
-        // remove the extension
-        int pos = name.lastIndexOf('.');
-        if (pos != -1) {
-            name = name.substring(0, pos);
+    /**
+     * Pre-dexes a single library jar into the pre-dex cache.
+     *
+     * @return the pre-dexed library, or null if it could not be added to the cache
+     */
+    private File preDexLibrary(DexWrapper wrapper, PreDexCache cache, String key, String input)
+            throws CoreException, DexException, IOException {
+        File tempFile = cache.createTempFile(key);
+
+        if (mVerbose) {
+            mOutStream.println(String.format("Pre-Dexing %1$s -> %2$s", input, key));
         }
 
-        // add a hash of the original file path
-        HashFunction hashFunction = Hashing.md5();
-        HashCode hashCode = hashFunction.hashString(inputFile.getAbsolutePath(), Charset.defaultCharset());
+        int res = wrapper.run(tempFile.getAbsolutePath(), Collections.singleton(input),
+                mForceJumbo, false, null, false, mVerbose, mOutStream, mErrStream);
+
+        if (res != 0) {
+            tempFile.delete();
 
-        return name + "-" + hashCode.toString() + ".jar";
+            // output error message and mark the project.
+            String message = String.format(Messages.Dalvik_Error_d, res);
+            throw new DexException(message);
+        }
+
+        return cache.put(key, tempFile);
+    }
+
+    /**
+     * Returns the maximum number of libraries to pre-dex concurrently.
+     * <p/>
+     * Each run of dx holds the whole library in memory, so the number of runs is limited to
+     * what the heap of the IDE can accommodate, as well as to the number of processors.
+     */
+    private static int getMaxPreDexThreads() {
+        Runtime runtime = Runtime.getRuntime();
+        int byMemory = (int) (runtime.maxMemory() / PRE_DEX_MEMORY_PER_THREAD);
+        int threads = Math.min(runtime.availableProcessors(), byMemory);
+        return Math.max(1, Math.min(threads, MAX_PRE_DEX_THREADS));
     }
 
     /**
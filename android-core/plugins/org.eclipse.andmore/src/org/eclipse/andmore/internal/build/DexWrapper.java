@@ -26,6 +26,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Future;
 
 import org.eclipse.andmore.AndmoreAndroidPlugin;
@@ -82,6 +83,12 @@ public final class DexWrapper {
     private Field mConsoleOut;
     private Field mConsoleErr;
 
+    /** The location of the dx.jar file loaded by this wrapper. */
+    private String mOsFilepath;
+
+    /** Wrappers with their own copy of the dex library, see {@link #getConcurrentWrappers(int)}. */
+    private final List<DexWrapper> mWorkers = new ArrayList<DexWrapper>();
+
     /**
      * Loads the dex library from a file path.
      *
@@ -135,6 +142,8 @@ public final class DexWrapper {
                 mConsoleOut = consoleClass.getField("out"); //$NON-NLS-1$
                 mConsoleErr = consoleClass.getField("err"); //$NON-NLS-1$
 
+                mOsFilepath = osFilepath;
+
             } catch (SecurityException e) {
                 return createErrorStatus(Messages.DexWrapper_SecuryEx_Unable_To_Find_API, e);
             } catch (NoSuchMethodException e) {
@@ -179,9 +188,44 @@ public final class DexWrapper {
         mArgMinimalMainDex = null;
         mConsoleOut = null;
         mConsoleErr = null;
+
+        mOsFilepath = null;
+        for (DexWrapper worker : mWorkers) {
+            worker.unload();
+        }
+        mWorkers.clear();
         System.gc();
     }
 
+    /**
+     * Returns wrappers that can run dex commands concurrently with each other.
+     * <p/>
+     * The dex library keeps the state of a run in static fields, so a single wrapper can only
+     * run one command at a time. Each of the returned wrappers uses its own copy of the library,
+     * loaded in a separate class loader. The first one is this wrapper, and the other copies
+     * are kept until {@link #unload()} is called.
+     *
+     * @param count the number of wrappers needed.
+     * @return at most <var>count</var> wrappers, fewer if a copy of the library could not be
+     * loaded.
+     */
+    public synchronized List<DexWrapper> getConcurrentWrappers(int count) {
+        while (mOsFilepath != null && mWorkers.size() < count - 1) {
+            DexWrapper worker = new DexWrapper();
+            IStatus res = worker.loadDex(mOsFilepath);
+            if (res != Status.OK_STATUS) {
+                AndmoreAndroidPlugin.log(null, res.getMessage());
+                break;
+            }
+            mWorkers.add(worker);
+        }
+
+        List<DexWrapper> wrappers = new ArrayList<DexWrapper>(count);
+        wrappers.add(this);
+        wrappers.addAll(mWorkers.subList(0, Math.min(mWorkers.size(), count - 1)));
+        return wrappers;
+    }
+
     /**
      * Since we are not running Main.java from the command-line we have to reset some values when building.
      * 
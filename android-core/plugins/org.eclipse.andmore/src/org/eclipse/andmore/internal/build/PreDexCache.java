@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.build;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A workspace-wide cache of pre-dexed library jars.
+ * <p/>
+ * Entries are keyed by a hash of the content of the library jar and of the dx options that
+ * affect the output, so identical jars used by several projects are only dexed once, and
+ * touching a jar without changing it does not cause it to be dexed again.
+ * <p/>
+ * The cache is bounded in size. When it grows beyond {@link #MAX_CACHE_SIZE}, the least
+ * recently used entries are deleted, except for the entries used by the builds in progress,
+ * which hold them with {@link #acquire(String)} until they are done.
+ */
+class PreDexCache {
+
+    private static final String CACHE_FOLDER = "predex";    //$NON-NLS-1$
+    private static final String DOT_JAR = ".jar";           //$NON-NLS-1$
+    private static final String DOT_TMP = ".tmp";           //$NON-NLS-1$
+
+    /** Maximum total size of the cached pre-dexed jars. */
+    private static final long MAX_CACHE_SIZE = 512L * 1024 * 1024;
+
+    private static PreDexCache sInstance;
+
+    private final File mCacheFolder;
+
+    /** Number of builds in progress using each entry, by key. */
+    private final Map<String, Integer> mUseCounts = new HashMap<String, Integer>();
+
+    /** Content hashes of library jars, to avoid hashing unchanged jars again. */
+    private final Map<String, ContentHash> mContentHashes = new HashMap<String, ContentHash>();
+
+    private static class ContentHash {
+        final long mLength;
+        final long mLastModified;
+        final HashCode mHash;
+
+        ContentHash(long length, long lastModified, HashCode hash) {
+            mLength = length;
+            mLastModified = lastModified;
+            mHash = hash;
+        }
+    }
+
+    /** Returns the cache for the current workspace. */
+    @NonNull
+    public static synchronized PreDexCache getInstance() {
+        if (sInstance == null) {
+            File folder = AndmoreAndroidPlugin.getDefault().getStateLocation().append(CACHE_FOLDER)
+                    .toFile();
+            sInstance = new PreDexCache(folder);
+        }
+
+        return sInstance;
+    }
+
+    private PreDexCache(@NonNull File cacheFolder) {
+        mCacheFolder = cacheFolder;
+    }
+
+    /**
+     * Returns the key identifying the pre-dexed version of a library jar.
+     *
+     * @param inputFile the library jar
+     * @param forceJumbo whether dx is run with --force-jumbo
+     * @param buildToolsRevision the revision of the build tools providing dx
+     * @throws IOException if the library jar cannot be read
+     */
+    @NonNull
+    public String getKey(@NonNull File inputFile, boolean forceJumbo,
+            @NonNull String buildToolsRevision) throws IOException {
+        return Hashing.sha1().newHasher()
+                .putBytes(getContentHash(inputFile).asBytes())
+                .putBoolean(forceJumbo)
+                .putString(buildToolsRevision, Charsets.UTF_8)
+                .hash().toString();
+    }
+
+    @NonNull
+    private HashCode getContentHash(@NonNull File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        synchronized (mContentHashes) {
+            ContentHash hash = mContentHashes.get(path);
+            if (hash != null && hash.mLength == length && hash.mLastModified == lastModified) {
+                return hash.mHash;
+            }
+        }
+
+        HashCode hash = Files.hash(file, Hashing.sha1());
+        synchronized (mContentHashes) {
+            mContentHashes.put(path, new ContentHash(length, lastModified, hash));
+        }
+        return hash;
+    }
+
+    /**
+     * Marks the entry for the given key as used by a build, whether it exists yet or not, so
+     * that it is not evicted until the build releases it with {@link #release(Collection)}.
+     * Must be called before the entry is looked up with {@link #get(String)}.
+     */
+    public synchronized void acquire(@NonNull String key) {
+        Integer count = mUseCounts.get(key);
+        mUseCounts.put(key, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Releases the entries acquired by a build with {@link #acquire(String)}.
+     */
+    public synchronized void release(@NonNull Collection<String> keys) {
+        for (String key : keys) {
+            Integer count = mUseCounts.get(key);
+            if (count == null) {
+                continue;
+            }
+
+            if (count > 1) {
+                mUseCounts.put(key, count - 1);
+            } else {
+                mUseCounts.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the cached pre-dexed jar for the given key, or null if there is none.
+     */
+    @Nullable
+    public synchronized File get(@NonNull String key) {
+        File file = new File(mCacheFolder, key + DOT_JAR);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        // record the use of this entry for the LRU eviction
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Returns a new file to which dx should write the pre-dexed jar for the given key. The
+     * file must then be added to the cache with {@link #put(String, File)}.
+     *
+     * @throws IOException if the cache folder cannot be created
+     */
+    @NonNull
+    public File createTempFile(@NonNull String key) throws IOException {
+        if (!mCacheFolder.isDirectory() && !mCacheFolder.mkdirs()) {
+            throw new IOException("Unable to create " + mCacheFolder.getPath());
+        }
+
+        File file = File.createTempFile(key, DOT_TMP, mCacheFolder);
+        // dx expects to create the file itself
+        file.delete();
+        return file;
+    }
+
+    /**
+     * Adds a pre-dexed jar created by dx to the cache.
+     *
+     * @param key the key of the pre-dexed jar
+     * @param tempFile the file returned by {@link #createTempFile(String)}
+     * @return the location of the pre-dexed jar in the cache, or null if it could not be
+     *         added to the cache
+     */
+    @Nullable
+    public synchronized File put(@NonNull String key, @NonNull File tempFile) {
+        File file = new File(mCacheFolder, key + DOT_JAR);
+        if (file.isFile()) {
+            // another build added the same entry in the meantime
+            tempFile.delete();
+            return file;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            return null;
+        }
+
+        // keep the entries in use by any build, not just the one adding this entry
+        Set<File> keep = new HashSet<File>();
+        for (String k : mUseCounts.keySet()) {
+            keep.add(new File(mCacheFolder, k + DOT_JAR));
+        }
+        keep.add(file);
+
+        evict(keep);
+        return file;
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in {@link #MAX_CACHE_SIZE}.
+     * The cache may remain larger if the entries to keep alone do not fit.
+     *
+     * @param keep the entries that must not be deleted
+     */
+    private void evict(@NonNull Set<File> keep) {
+        File[] files = mCacheFolder.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                // ignore the temporary files of pre-dexing in progress
+                return name.endsWith(DOT_JAR);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File f : files) {
+            size += f.length();
+        }
+
+        if (size <= MAX_CACHE_SIZE) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        for (File f : files) {
+            if (size <= MAX_CACHE_SIZE) {
+                break;
+            }
+
+            if (!keep.contains(f)) {
+                long length = f.length();
+                if (f.delete()) {
+                    size -= length;
+                }
+            }
+        }
+    }
+}
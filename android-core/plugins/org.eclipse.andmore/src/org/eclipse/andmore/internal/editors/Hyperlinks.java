@@ -57,7 +57,6 @@ import com.android.ide.common.resources.ResourceUrl;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.io.FileWrapper;
 import com.android.io.IAbstractFile;
-import com.android.io.IAbstractFolder;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
 import com.android.sdklib.IAndroidTarget;
@@ -79,19 +78,18 @@ import org.eclipse.andmore.internal.editors.manifest.ManifestInfo;
 import org.eclipse.andmore.internal.project.BaseProjectHelper;
 import org.eclipse.andmore.internal.resources.ResourceHelper;
 import org.eclipse.andmore.internal.resources.manager.ProjectResources;
+import org.eclipse.andmore.internal.resources.manager.ResourceFileIndex;
 import org.eclipse.andmore.internal.resources.manager.ResourceManager;
 import org.eclipse.andmore.internal.sdk.AndroidTargetData;
 import org.eclipse.andmore.internal.sdk.ProjectState;
 import org.eclipse.andmore.internal.sdk.Sdk;
 import org.eclipse.andmore.io.IFileWrapper;
-import org.eclipse.andmore.io.IFolderWrapper;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -835,69 +833,53 @@ public class Hyperlinks {
             }
         }
 
-        // Look in the configuration folder: Search compatible configurations
-        ResourceRepository resources = getResources(project, false /* isFramework */);
-        FolderConfiguration configuration = getConfiguration();
-        if (configuration != null) { // Not the case when searching from Java files for example
-            List<ResourceFolder> folders = resources.getFolders(ResourceFolderType.LAYOUT);
-            if (folders != null) {
-                for (ResourceFolder folder : folders) {
-                    if (folder.getConfiguration().isMatchFor(configuration)) {
-                        IAbstractFolder wrapper = folder.getFolder();
-                        if (wrapper instanceof IFolderWrapper) {
-                            IFolder iFolder = ((IFolderWrapper) wrapper).getIFolder();
-                            Pair<IFile, IRegion> target = findIdInFolder(iFolder, id);
-                            if (target != null) {
-                                return target;
-                            }
-                        }
-                    }
-                }
-                return null;
+        // Only look in the layouts which the resource file index says define the id, and
+        // in the layouts with unsaved edits, which the index does not know about,
+        // searching compatible configurations if we know the current one
+        List<IFile> files = ResourceFileIndex.findIdDefinitions(project, id);
+        for (IFile file : ResourceFileIndex.getXmlFiles(project)) {
+            if (!files.contains(file) && hasUnsavedEdits(file)) {
+                files.add(file);
             }
         }
-
-        // Ugh. Search ALL layout files in the project!
-        List<ResourceFolder> folders = resources.getFolders(ResourceFolderType.LAYOUT);
-        if (folders != null) {
-            for (ResourceFolder folder : folders) {
-                IAbstractFolder wrapper = folder.getFolder();
-                if (wrapper instanceof IFolderWrapper) {
-                    IFolder iFolder = ((IFolderWrapper) wrapper).getIFolder();
-                    Pair<IFile, IRegion> target = findIdInFolder(iFolder, id);
-                    if (target != null) {
-                        return target;
-                    }
+        FolderConfiguration configuration = getConfiguration();
+        for (IFile file : files) {
+            if (file.equals(self)) {
+                continue;
+            }
+            String folderName = file.getParent().getName();
+            if (ResourceFolderType.getFolderType(folderName) != ResourceFolderType.LAYOUT) {
+                continue;
+            }
+            if (configuration != null) { // Not the case when searching from Java files for example
+                FolderConfiguration folderConfig =
+                        FolderConfiguration.getConfigForFolder(folderName);
+                if (folderConfig == null || !folderConfig.isMatchFor(configuration)) {
+                    continue;
                 }
             }
+            Pair<IFile, IRegion> target = findIdInXml(id, file);
+            if (target != null) {
+                return target;
+            }
         }
 
         return null;
     }
 
-    /**
-     * Finds a definition of an id attribute in a particular layout folder.
-     */
-    private static Pair<IFile, IRegion> findIdInFolder(IContainer f, String id) {
-        try {
-            // Check XML files in values/
-            for (IResource resource : f.members()) {
-                if (resource.exists() && !resource.isDerived() && resource instanceof IFile) {
-                    IFile file = (IFile) resource;
-                    // Must have an XML extension
-                    if (EXT_XML.equals(file.getFileExtension())) {
-                        Pair<IFile, IRegion> target = findIdInXml(id, file);
-                        if (target != null) {
-                            return target;
-                        }
-                    }
-                }
-            }
-        } catch (CoreException e) {
-            AndmoreAndroidPlugin.log(e, ""); //$NON-NLS-1$
+    /** Returns true if the given file is open in an editor with unsaved edits */
+    private static boolean hasUnsavedEdits(IFile file) {
+        IStructuredModel model =
+                StructuredModelManager.getModelManager().getExistingModelForRead(file);
+        if (model == null) {
+            return false;
         }
 
-        return null;
+        try {
+            return model.isDirty();
+        } finally {
+            model.releaseFromRead();
+        }
     }
 
     /** Parses the given file and locates a definition of the given resource */
@@ -907,10 +889,21 @@ public class Hyperlinks {
         try {
             model = StructuredModelManager.getModelManager().getExistingModelForRead(file);
             if (model == null) {
-                // There is no open or cached model for the file; see if the file looks
-                // like it's interesting (content contains the String name we are looking for)
-                if (AndmoreAndroidPlugin.fileContains(file, name)) {
-                    // Yes, so parse content
+                // There is no open or cached model for the file, so the saved content is
+                // current: look up the definition in the resource file index instead of
+                // parsing the file
+                int[] range = ResourceFileIndex.findValueDefinition(file, getTagName(type),
+                        name);
+                if (range != null) {
+                    return Pair.<IFile, IRegion>of(file, new Region(range[0],
+                            range[1] - range[0]));
+                }
+                boolean mayDefine = ResourceFileIndex.isIndexed(file)
+                        ? ResourceFileIndex.mayReference(file, name)
+                        : AndmoreAndroidPlugin.fileContains(file, name);
+                if (mayDefine) {
+                    // Not found by the index, but the file mentions the name, for example
+                    // in a form the index does not recognize; parse content
                     model = StructuredModelManager.getModelManager().getModelForRead(file);
                 }
             }
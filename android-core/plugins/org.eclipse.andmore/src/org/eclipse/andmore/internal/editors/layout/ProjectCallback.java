@@ -186,7 +186,7 @@ public final class ProjectCallback extends LayoutlibCallback {
                 // RenderSecurityManager
                 boolean token = RenderSecurityManager.enterSafeRegion(mCredential);
                 try {
-                  mLoader = new ProjectClassLoader(mParentClassLoader, mProject);
+                  mLoader = ProjectClassLoader.getSharedLoader(mParentClassLoader, mProject);
                 } finally {
                     RenderSecurityManager.exitSafeRegion(token);
                 }
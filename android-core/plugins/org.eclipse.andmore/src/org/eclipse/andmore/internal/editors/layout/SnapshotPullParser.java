@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.editors.layout;
+
+import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_LAYOUT;
+import static com.android.SdkConstants.ATTR_PADDING;
+import static com.android.SdkConstants.AUTO_URI;
+
+import com.android.ide.common.rendering.api.ILayoutPullParser;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ILayoutPullParser} replaying the tags read beforehand from another parser.
+ * <p/>
+ * This is used to render a layout outside of the UI thread: the {@link UiElementPullParser}
+ * reading the editor model is drained on the UI thread, where the model can safely be read,
+ * and the rendering then reads the snapshot, while the model may be edited. The view cookies
+ * are the ones of the original parser, so the rendered views still map to the model nodes.
+ */
+public class SnapshotPullParser extends BasePullParser {
+    /**
+     * Attributes queried by the layout inflater which the original parser may compute even
+     * when they are not in the XML, such as the padding of exploded views or the layout of
+     * fragments, which are rendered as includes.
+     */
+    private static final String[][] COMPUTED_ATTRIBUTES = new String[][] {
+        { ANDROID_URI, ATTR_PADDING },
+        { null, ATTR_LAYOUT },
+    };
+
+    private final List<Tag> mTags;
+    private final List<Integer> mEvents;
+    private int mIndex = -1;
+
+    /** A tag read from the original parser, and its attributes */
+    private static final class Tag {
+        String name;
+        String namespace;
+        String prefix;
+        Object cookie;
+        int depth;
+        boolean empty;
+        final List<String[]> attributes = new ArrayList<String[]>();
+        final Map<String, String> values = new HashMap<String, String>();
+    }
+
+    private SnapshotPullParser(List<Tag> tags, List<Integer> events) {
+        mTags = tags;
+        mEvents = events;
+    }
+
+    /**
+     * Reads all the tags of a parser, and returns a parser replaying them. This must be called
+     * from a thread where the input of the given parser can be read.
+     *
+     * @param parser the parser to read, which must be at the start of the document
+     * @return a new parser returning the same tags, attributes and view cookies
+     * @throws XmlPullParserException if the parser fails
+     */
+    public static SnapshotPullParser create(ILayoutPullParser parser)
+            throws XmlPullParserException {
+        List<Tag> tags = new ArrayList<Tag>();
+        List<Integer> events = new ArrayList<Integer>();
+        List<Tag> openTags = new ArrayList<Tag>();
+
+        int type;
+        while ((type = parser.next()) != END_DOCUMENT) {
+            if (type == START_TAG) {
+                Tag tag = new Tag();
+                tag.name = parser.getName();
+                tag.namespace = parser.getNamespace();
+                tag.prefix = parser.getPrefix();
+                tag.cookie = parser.getViewCookie();
+                tag.depth = parser.getDepth();
+                tag.empty = parser.isEmptyElementTag();
+
+                // UiElementPullParser counts the attributes of the descriptor, which may
+                // be fewer than the XML attributes: read until there are no more names
+                int count = parser.getAttributeCount();
+                for (int i = 0; ; i++) {
+                    String name;
+                    try {
+                        name = parser.getAttributeName(i);
+                    } catch (IndexOutOfBoundsException e) {
+                        break;
+                    }
+                    if (name == null) {
+                        if (i >= count) {
+                            break;
+                        }
+                        continue;
+                    }
+                    String namespace = parser.getAttributeNamespace(i);
+                    tag.attributes.add(new String[] {
+                        namespace, name, parser.getAttributePrefix(i), parser.getAttributeValue(i)
+                    });
+                    tag.values.put(getKey(namespace, name),
+                            parser.getAttributeValue(namespace, name));
+                }
+                for (String[] attribute : COMPUTED_ATTRIBUTES) {
+                    String value = parser.getAttributeValue(attribute[0], attribute[1]);
+                    if (value != null) {
+                        tag.values.put(getKey(attribute[0], attribute[1]), value);
+                    }
+                }
+
+                openTags.add(tag);
+                tags.add(tag);
+                events.add(START_TAG);
+            } else if (type == END_TAG && !openTags.isEmpty()) {
+                tags.add(openTags.remove(openTags.size() - 1));
+                events.add(END_TAG);
+            }
+        }
+
+        return new SnapshotPullParser(tags, events);
+    }
+
+    private static String getKey(String namespace, String name) {
+        return namespace != null ? namespace + ':' + name : name;
+    }
+
+    private Tag getCurrentTag() {
+        if (mParsingState != START_TAG && mParsingState != END_TAG) {
+            return null;
+        }
+
+        return mTags.get(mIndex);
+    }
+
+    private String[] getAttribute(int i) {
+        if (mParsingState != START_TAG) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return mTags.get(mIndex).attributes.get(i);
+    }
+
+    // ------------- ILayoutPullParser --------
+
+    @Override
+    public Object getViewCookie() {
+        Tag tag = getCurrentTag();
+        return tag != null ? tag.cookie : null;
+    }
+
+    /**
+     * Legacy method required by {@link com.android.layoutlib.api.IXmlPullParser}
+     */
+    @Override
+    public Object getViewKey() {
+        return getViewCookie();
+    }
+
+    @Override
+    public ILayoutPullParser getParser(String layoutName) {
+        return null;
+    }
+
+    // ------------- XmlPullParser --------
+
+    @Override
+    public String getPositionDescription() {
+        return "XML DOM element depth:" + getDepth();
+    }
+
+    @Override
+    public int getAttributeCount() {
+        Tag tag = getCurrentTag();
+        return tag != null ? tag.attributes.size() : 0;
+    }
+
+    @Override
+    public String getAttributeName(int i) {
+        return getAttribute(i)[1];
+    }
+
+    @Override
+    public String getAttributeNamespace(int i) {
+        return getAttribute(i)[0];
+    }
+
+    @Override
+    public String getAttributePrefix(int i) {
+        return getAttribute(i)[2];
+    }
+
+    @Override
+    public String getAttributeValue(int i) {
+        return getAttribute(i)[3];
+    }
+
+    @Override
+    public String getAttributeValue(String namespace, String localName) {
+        Tag tag = getCurrentTag();
+        if (tag == null) {
+            return null;
+        }
+
+        String value = tag.values.get(getKey(namespace, localName));
+
+        // Same fallback as UiElementPullParser for the attributes of library projects
+        if (value == null && namespace != null && !namespace.equals(ANDROID_URI)) {
+            value = tag.values.get(getKey(AUTO_URI, localName));
+        }
+
+        return value;
+    }
+
+    @Override
+    public int getDepth() {
+        Tag tag = getCurrentTag();
+        return tag != null ? tag.depth : 0;
+    }
+
+    @Override
+    public String getName() {
+        Tag tag = getCurrentTag();
+        return tag != null ? tag.name : null;
+    }
+
+    @Override
+    public String getNamespace() {
+        Tag tag = getCurrentTag();
+        return tag != null ? tag.namespace : null;
+    }
+
+    @Override
+    public String getPrefix() {
+        Tag tag = getCurrentTag();
+        return tag != null ? tag.prefix : null;
+    }
+
+    @Override
+    public boolean isEmptyElementTag() throws XmlPullParserException {
+        if (mParsingState == START_TAG) {
+            return mTags.get(mIndex).empty;
+        }
+
+        throw new XmlPullParserException("Call to isEmptyElementTag while not in START_TAG",
+                this, null);
+    }
+
+    @Override
+    public void onNextFromStartDocument() {
+        onNextFromStartTag();
+    }
+
+    @Override
+    public void onNextFromStartTag() {
+        mIndex++;
+        if (mIndex < mEvents.size()) {
+            mParsingState = mEvents.get(mIndex);
+        } else {
+            mParsingState = END_DOCUMENT;
+        }
+    }
+
+    @Override
+    public void onNextFromEndTag() {
+        onNextFromStartTag();
+    }
+}
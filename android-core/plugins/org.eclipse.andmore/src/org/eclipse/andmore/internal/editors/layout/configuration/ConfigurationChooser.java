@@ -73,6 +73,7 @@ import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.ToolBar;
 import org.eclipse.swt.widgets.ToolItem;
 import org.eclipse.ui.IEditorPart;
@@ -176,6 +177,9 @@ public class ConfigurationChooser extends Composite
     /** Whether the SDK has changed since the last model reload; if so we must reload targets */
     private boolean mSdkChanged = true;
 
+    /** Whether the activity is looked up again once the sources of the project are indexed */
+    private boolean mWaitingForActivityIndex;
+
     /**
      * Creates a new {@linkplain ConfigurationChooser} and adds it to the
      * parent. The method also receives custom buttons to set into the
@@ -1584,6 +1588,22 @@ public class ConfigurationChooser extends Composite
             return;
         }
 
+        selectActivityTheme(activity);
+
+        // Persist in XML
+        if (mClient != null) {
+            mClient.setActivity(activity);
+        }
+
+        saveConstraints();
+    }
+
+    /**
+     * Switches to the theme assigned to the given activity in the manifest, if any
+     *
+     * @param activity the fully qualified name of the activity
+     */
+    private void selectActivityTheme(@NonNull String activity) {
         // See if there is a default theme assigned to this activity, and if so, use it
         ManifestInfo manifest = ManifestInfo.get(mEditedFile.getProject());
         String preferred = null;
@@ -1596,13 +1616,6 @@ public class ConfigurationChooser extends Composite
             selectTheme(preferred);
             onThemeChange();
         }
-
-        // Persist in XML
-        if (mClient != null) {
-            mClient.setActivity(activity);
-        }
-
-        saveConstraints();
     }
 
     /**
@@ -1989,6 +2002,13 @@ public class ConfigurationChooser extends Composite
             }
         }
 
+        if (!ManifestInfo.isActivityIndexComplete(project)) {
+            // The guess only reflects the sources indexed so far: show it, but don't
+            // store it, and look up the activity again once the project is indexed
+            updateActivityWhenIndexed(project);
+            return activity;
+        }
+
         if (activity != null) {
             mConfiguration.setActivity(activity);
             saveConstraints();
@@ -2002,6 +2022,47 @@ public class ConfigurationChooser extends Composite
         return null;
     }
 
+    /**
+     * Looks up the activity of the edited layout again once the sources of the given
+     * project have been indexed, and switches to the theme of that activity, unless an
+     * activity has been chosen meanwhile
+     *
+     * @param project the project of the edited layout
+     */
+    private void updateActivityWhenIndexed(@NonNull IProject project) {
+        if (mWaitingForActivityIndex) {
+            return;
+        }
+        mWaitingForActivityIndex = true;
+
+        final Display display = getDisplay();
+        final IFile file = mEditedFile;
+        ManifestInfo.runWhenActivityIndexComplete(project, new Runnable() {
+            @Override
+            public void run() {
+                if (display.isDisposed()) {
+                    return;
+                }
+                display.asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        mWaitingForActivityIndex = false;
+                        if (isDisposed() || file != mEditedFile
+                                || mConfiguration.getActivity() != null) {
+                            return;
+                        }
+
+                        String activity = getPreferredActivity(file);
+                        selectActivity(activity);
+                        if (activity != null) {
+                            selectActivityTheme(activity);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Returns whether the given <var>style</var> is a theme.
      * This is done by making sure the parent is a theme.
@@ -292,6 +292,7 @@ public class GraphicalEditorPart extends EditorPart
     private PropertyFactory mPropertyFactory;
     private boolean mRenderedOnce;
     private final Object mCredential = new Object();
+    private final LayoutRenderScheduler mRenderScheduler = new LayoutRenderScheduler(this);
 
     /**
      * Flags which tracks whether this editor is currently active which is set whenever
@@ -622,6 +623,7 @@ public class GraphicalEditorPart extends EditorPart
 
     @Override
     public void dispose() {
+        mRenderScheduler.cancel();
         getSite().getPage().removeSelectionListener(this);
         getSite().setSelectionProvider(null);
 
@@ -1265,7 +1267,9 @@ public class GraphicalEditorPart extends EditorPart
         // TODO find a way to really query whether the pane is visible, not just active.
 
         if (mEditorDelegate.isGraphicalEditorActive()) {
-            recomputeLayout();
+            // Typing in the XML pane must not wait for the rendering: render in the
+            // background once the model stops changing
+            mRenderScheduler.schedule();
         } else {
             // Remember we want to recompute as soon as the editor becomes active.
             mNeedsRecompute = true;
@@ -1273,43 +1277,28 @@ public class GraphicalEditorPart extends EditorPart
     }
 
     /**
-     * Recomputes the layout
+     * Recomputes the layout. While the layout is being rendered in the background, it is
+     * rendered again in the background instead, so that the UI thread does not wait for
+     * the out of date rendering.
      */
     public void recomputeLayout() {
-        try {
-            if (!ensureFileValid()) {
-                return;
-            }
-
-            UiDocumentNode model = getModel();
-            LayoutCanvas canvas = mCanvasViewer.getCanvas();
-            if (!ensureModelValid(model)) {
-                // Although we display an error, we still treat an empty document as a
-                // successful layout result so that we can drop new elements in it.
-                //
-                // For that purpose, create a special LayoutScene that has no image,
-                // no root view yet indicates success and then update the canvas with it.
-
-                canvas.setSession(
-                        new StaticRenderSession(
-                                Result.Status.SUCCESS.createResult(),
-                                null /*rootViewInfo*/, null /*image*/),
-                        null /*explodeNodes*/, true /* layoutlib5 */);
-                return;
-            }
+        if (mRenderScheduler.isRendering()) {
+            // Rendering now would block the UI thread until layoutlib is done with the
+            // background rendering, which is out of date: render again in the background
+            mRenderScheduler.schedule();
+            return;
+        }
 
-            LayoutLibrary layoutLib = getReadyLayoutLib(true /*displayError*/);
+        // A pending background rendering would be out of date
+        mRenderScheduler.cancel();
 
+        try {
+            LayoutLibrary layoutLib = prepareRecompute();
             if (layoutLib != null) {
-                // if drawing in real size, (re)set the scaling factor.
-                if (mActionBar.isZoomingRealSize()) {
-                    mActionBar.computeAndSetRealScale(false /* redraw */);
-                }
-
                 IProject project = mEditedFile.getProject();
-                renderWithBridge(project, model, layoutLib);
+                renderWithBridge(project, getModel(), layoutLib);
 
-                canvas.getPreviewManager().renderPreviews();
+                getCanvasControl().getPreviewManager().renderPreviews();
             }
         } finally {
             // no matter the result, we are done doing the recompute based on the latest
@@ -1318,6 +1307,101 @@ public class GraphicalEditorPart extends EditorPart
         }
     }
 
+    /**
+     * Checks whether the layout can be rendered, and returns the layout library to render
+     * it with. When the document is empty, an empty session is set on the canvas instead.
+     *
+     * @return the layout library, or null if the layout should not be rendered
+     */
+    @Nullable
+    private LayoutLibrary prepareRecompute() {
+        if (!ensureFileValid()) {
+            return null;
+        }
+
+        UiDocumentNode model = getModel();
+        LayoutCanvas canvas = mCanvasViewer.getCanvas();
+        if (!ensureModelValid(model)) {
+            // Although we display an error, we still treat an empty document as a
+            // successful layout result so that we can drop new elements in it.
+            //
+            // For that purpose, create a special LayoutScene that has no image,
+            // no root view yet indicates success and then update the canvas with it.
+
+            canvas.setSession(
+                    new StaticRenderSession(
+                            Result.Status.SUCCESS.createResult(),
+                            null /*rootViewInfo*/, null /*image*/),
+                    null /*explodeNodes*/, true /* layoutlib5 */);
+            return null;
+        }
+
+        LayoutLibrary layoutLib = getReadyLayoutLib(true /*displayError*/);
+
+        // if drawing in real size, (re)set the scaling factor.
+        if (layoutLib != null && mActionBar.isZoomingRealSize()) {
+            mActionBar.computeAndSetRealScale(false /* redraw */);
+        }
+
+        return layoutLib;
+    }
+
+    /**
+     * Prepares a background rendering of the layout, on behalf of the
+     * {@link LayoutRenderScheduler}: takes a snapshot of the model, which is then rendered
+     * outside of the UI thread. Must be called from the UI thread.
+     *
+     * @return the rendering to perform, or null if the layout should not be rendered
+     */
+    @Nullable
+    LayoutRenderScheduler.Render prepareBackgroundRender() {
+        LayoutLibrary layoutLib = prepareRecompute();
+        if (layoutLib == null) {
+            mNeedsRecompute = false;
+            return null;
+        }
+
+        UiDocumentNode model = getModel();
+        Set<UiElementNode> explodeNodes = getCanvasControl().getNodesToExplode();
+        RenderLogger logger = createRenderLogger(mEditedFile.getName());
+        RenderService renderService = createRenderService(model, logger, explodeNodes)
+            .setImageFactory(getCanvasControl().getImageOverlay().getRenderImageFactory())
+            .snapshotModel();
+
+        return new LayoutRenderScheduler.Render(layoutLib, model, explodeNodes, logger,
+                renderService);
+    }
+
+    /**
+     * Shows the result of a background rendering, on behalf of the
+     * {@link LayoutRenderScheduler}. Must be called from the UI thread.
+     *
+     * @param render the rendering prepared by {@link #prepareBackgroundRender()}
+     * @param session the resulting session, or null if the rendering failed
+     */
+    void finishBackgroundRender(LayoutRenderScheduler.Render render,
+            @Nullable RenderSession session) {
+        try {
+            showRenderSession(mEditedFile.getProject(), render.model, render.layoutLib,
+                    session, render.logger, render.explodeNodes);
+
+            getCanvasControl().getPreviewManager().renderPreviews();
+        } finally {
+            mNeedsRecompute = false;
+        }
+    }
+
+    /**
+     * Returns the scheduler of the background renderings of this editor, which records
+     * their timings
+     *
+     * @return the render scheduler
+     */
+    @NonNull
+    public LayoutRenderScheduler getRenderScheduler() {
+        return mRenderScheduler;
+    }
+
     /**
      * Reloads the palette
      */
@@ -1568,6 +1652,14 @@ public class GraphicalEditorPart extends EditorPart
         LayoutCanvas canvas = getCanvasControl();
         Set<UiElementNode> explodeNodes = canvas.getNodesToExplode();
         RenderLogger logger = createRenderLogger(mEditedFile.getName());
+        RenderSession session = createRenderService(model, logger, explodeNodes)
+            .createRenderSession();
+
+        showRenderSession(iProject, model, layoutLib, session, logger, explodeNodes);
+    }
+
+    private RenderService createRenderService(UiDocumentNode model, RenderLogger logger,
+            Set<UiElementNode> explodeNodes) {
         RenderingMode renderingMode = RenderingMode.NORMAL;
         // FIXME set the rendering mode using ViewRule or something.
         List<UiElementNode> children = model.getUiChildren();
@@ -1576,14 +1668,22 @@ public class GraphicalEditorPart extends EditorPart
             renderingMode = RenderingMode.V_SCROLL;
         }
 
-        RenderSession session = RenderService.create(this, mCredential)
+        return RenderService.create(this, mCredential)
             .setModel(model)
             .setLog(logger)
             .setRenderingMode(renderingMode)
             .setIncludedWithin(mIncludedWithin)
-            .setNodesToExpand(explodeNodes)
-            .createRenderSession();
+            .setNodesToExpand(explodeNodes);
+    }
 
+    /**
+     * Shows a rendered session in the canvas, along with the problems found while
+     * rendering it
+     */
+    private void showRenderSession(IProject iProject, UiDocumentNode model,
+            LayoutLibrary layoutLib, RenderSession session, RenderLogger logger,
+            Set<UiElementNode> explodeNodes) {
+        LayoutCanvas canvas = getCanvasControl();
         boolean layoutlib5 = layoutLib.supports(Capability.EMBEDDED_LAYOUT);
         canvas.setSession(session, explodeNodes, layoutlib5);
 
@@ -1814,6 +1914,9 @@ public class GraphicalEditorPart extends EditorPart
             }
 
             if (recompute) {
+                // the cached preview thumbnails may depend on the changed resources or code
+                RenderPreviewCache.clear();
+
                 if (mEditorDelegate.isGraphicalEditorActive()) {
                     recomputeLayout();
                 } else {
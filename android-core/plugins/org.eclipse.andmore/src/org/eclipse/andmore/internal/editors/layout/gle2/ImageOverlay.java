@@ -16,8 +16,6 @@
 
 package org.eclipse.andmore.internal.editors.layout.gle2;
 
-import static org.eclipse.andmore.internal.editors.layout.gle2.ImageUtils.SHADOW_SIZE;
-
 import com.android.SdkConstants;
 import com.android.annotations.Nullable;
 import com.android.ide.common.api.Rect;
@@ -30,6 +28,7 @@ import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.Rectangle;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
@@ -54,8 +53,8 @@ public class ImageOverlay extends Overlay implements IImageFactory {
     /** Current background image. Null when there's no image. */
     private Image mImage;
 
-    /** A pre-scaled version of the image */
-    private Image mPreScaledImage;
+    /** The tiles of the pre-scaled versions of the image, created lazily */
+    private ImageTileCache mTileCache;
 
     /** Whether the rendered image should have a drop shadow */
     private boolean mShowDropShadow;
@@ -67,13 +66,20 @@ public class ImageOverlay extends Overlay implements IImageFactory {
     /**
      * Strong reference to the image in the above soft reference, to prevent
      * garbage collection when {@link PRESCALE} is set, until the scaled image
-     * is created (lazily as part of the next paint call, where this strong
-     * reference is nulled out and the above soft reference becomes eligible to
-     * be reclaimed when memory is low.)
+     * tiles are created (lazily as part of the paint calls; tiles may need to be
+     * created again when scrolling or zooming, so the image is kept for as
+     * long as it is the current image.)
      */
     @SuppressWarnings("unused") // Used by the garbage collector to keep mAwtImage non-soft
     private BufferedImage mAwtImageStrongRef;
 
+    /**
+     * AWT image the background renderings draw into. This is created by the factory
+     * returned by {@link #getRenderImageFactory()}, and swapped with {@link #mAwtImage}
+     * when it is set as the current image.
+     */
+    private SoftReference<BufferedImage> mRenderAwtImage = new SoftReference<BufferedImage>(null);
+
     /** The associated {@link LayoutCanvas}. */
     private LayoutCanvas mCanvas;
 
@@ -107,9 +113,9 @@ public class ImageOverlay extends Overlay implements IImageFactory {
             mImage.dispose();
             mImage = null;
         }
-        if (mPreScaledImage != null) {
-            mPreScaledImage.dispose();
-            mPreScaledImage = null;
+        if (mTileCache != null) {
+            mTileCache.dispose();
+            mTileCache = null;
         }
     }
 
@@ -128,6 +134,17 @@ public class ImageOverlay extends Overlay implements IImageFactory {
         mShowDropShadow = !isAlphaChannelImage;
 
         BufferedImage oldAwtImage = mAwtImage.get();
+        if (awtImage != null && awtImage != oldAwtImage && awtImage == mRenderAwtImage.get()) {
+            // The image of a background rendering becomes the current image, and the
+            // next background rendering will draw into the previous one
+            mRenderAwtImage = mAwtImage;
+            mAwtImage = new SoftReference<BufferedImage>(awtImage);
+            if (PRESCALE) {
+                mAwtImageStrongRef = awtImage;
+            }
+            oldAwtImage = awtImage;
+        }
+
         if (awtImage != oldAwtImage || awtImage == null) {
             mAwtImage.clear();
             mAwtImageStrongRef = null;
@@ -160,10 +177,9 @@ public class ImageOverlay extends Overlay implements IImageFactory {
             }
         }
 
-        if (mPreScaledImage != null) {
-            // Force refresh on next paint
-            mPreScaledImage.dispose();
-            mPreScaledImage = null;
+        if (mTileCache != null) {
+            // Force refresh on next paint: the image may have been rendered again in place
+            mTileCache.clear();
         }
 
         return mImage;
@@ -217,56 +233,20 @@ public class ImageOverlay extends Overlay implements IImageFactory {
             CanvasTransform vi = mVScale;
 
             // On some platforms, dynamic image scaling is very slow (see issue #19447) so
-            // compute a pre-scaled version of the image once and render that instead.
-            // This is done lazily in paint rather than when the image changes because
-            // the image must be rescaled each time the zoom level changes, which varies
-            // independently from when the image changes.
+            // paint tiles of a pre-scaled version of the image instead. The tiles are
+            // created lazily as they are painted rather than when the image changes, since
+            // only the visible ones are needed, and the image must be rescaled each time the
+            // zoom level changes, which varies independently from when the image changes.
             BufferedImage awtImage = mAwtImage.get();
             if (PRESCALE && awtImage != null) {
-                int imageWidth = (mPreScaledImage == null) ? 0
-                        : mPreScaledImage.getImageData().width
-                            - (mShowDropShadow ? SHADOW_SIZE : 0);
-                if (mPreScaledImage == null || imageWidth != hi.getScaledImgSize()) {
-                    double xScale = hi.getScaledImgSize() / (double) awtImage.getWidth();
-                    double yScale = vi.getScaledImgSize() / (double) awtImage.getHeight();
-                    BufferedImage scaledAwtImage;
-
-                    // NOTE: == comparison on floating point numbers is okay
-                    // here because we normalize the scaling factor
-                    // to an exact 1.0 in the zooming code when the value gets
-                    // near 1.0 to make painting more efficient in the presence
-                    // of rounding errors.
-                    if (xScale == 1.0 && yScale == 1.0) {
-                        // Scaling to 100% is easy!
-                        scaledAwtImage = awtImage;
-
-                        if (mShowDropShadow) {
-                            // Just need to draw drop shadows
-                            scaledAwtImage = ImageUtils.createRectangularDropShadow(awtImage);
-                        }
-                    } else {
-                        if (mShowDropShadow) {
-                            scaledAwtImage = ImageUtils.scale(awtImage, xScale, yScale,
-                                    SHADOW_SIZE, SHADOW_SIZE);
-                            ImageUtils.drawRectangleShadow(scaledAwtImage, 0, 0,
-                                    scaledAwtImage.getWidth() - SHADOW_SIZE,
-                                    scaledAwtImage.getHeight() - SHADOW_SIZE);
-                        } else {
-                            scaledAwtImage = ImageUtils.scale(awtImage, xScale, yScale);
-                        }
-                    }
-
-                    if (mPreScaledImage != null && !mPreScaledImage.isDisposed()) {
-                        mPreScaledImage.dispose();
-                    }
-                    mPreScaledImage = SwtUtils.convertToSwt(mCanvas.getDisplay(), scaledAwtImage,
-                            true /*transferAlpha*/, -1);
-                    // We can't just clear the mAwtImageStrongRef here, because if the
-                    // zooming factor changes, we may need to use it again
+                if (mTileCache == null) {
+                    mTileCache = new ImageTileCache(mCanvas.getDisplay());
                 }
+                mTileCache.paint(gc, awtImage, mShowDropShadow, hi.translate(0), vi.translate(0),
+                        hi.getScaledImgSize(), vi.getScaledImgSize());
 
-                if (mPreScaledImage != null) {
-                    gc.drawImage(mPreScaledImage, hi.translate(0), vi.translate(0));
+                if (!valid) {
+                    gc_setAlpha(gc, 255); // opaque
                 }
                 return;
             }
@@ -416,7 +396,7 @@ public class ImageOverlay extends Overlay implements IImageFactory {
      * Implementation of {@link IImageFactory#getImage(int, int)}.
      */
     @Override
-    public BufferedImage getImage(int w, int h) {
+    public synchronized BufferedImage getImage(int w, int h) {
         BufferedImage awtImage = mAwtImage.get();
         if (awtImage == null ||
                 awtImage.getWidth() != w ||
@@ -432,6 +412,33 @@ public class ImageOverlay extends Overlay implements IImageFactory {
         return awtImage;
     }
 
+    /**
+     * Returns an image factory for the renderings running outside of the UI thread. Its
+     * images are never the one returned by {@link #getImage(int, int)}, which the renderings
+     * of the UI thread draw into, and {@link #setImage} converts them as efficiently.
+     *
+     * @return an image factory for background renderings
+     */
+    public IImageFactory getRenderImageFactory() {
+        return new IImageFactory() {
+            @Override
+            public BufferedImage getImage(int w, int h) {
+                synchronized (ImageOverlay.this) {
+                    BufferedImage awtImage = mRenderAwtImage.get();
+                    if (awtImage == null ||
+                            awtImage == mAwtImage.get() ||
+                            awtImage.getWidth() != w ||
+                            awtImage.getHeight() != h) {
+                        awtImage = SwtReadyBufferedImage.createImage(w, h, getDevice());
+                        mRenderAwtImage = new SoftReference<BufferedImage>(awtImage);
+                    }
+
+                    return awtImage;
+                }
+            }
+        };
+    }
+
     /**
      * Returns the bounds of the current image, or null
      *
@@ -442,6 +449,7 @@ public class ImageOverlay extends Overlay implements IImageFactory {
             return null;
         }
 
-        return new Rect(0, 0, mImage.getImageData().width, mImage.getImageData().height);
+        Rectangle bounds = mImage.getBounds();
+        return new Rect(0, 0, bounds.width, bounds.height);
     }
 }
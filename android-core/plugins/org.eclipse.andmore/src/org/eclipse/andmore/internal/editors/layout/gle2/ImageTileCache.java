@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.KEY_RENDERING;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static java.awt.RenderingHints.VALUE_RENDER_QUALITY;
+import static org.eclipse.andmore.internal.editors.layout.gle2.ImageUtils.SHADOW_SIZE;
+
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.Rectangle;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of the tiles of an AWT image scaled to the zoom level, as SWT images.
+ * <p/>
+ * This is used to paint the rendered layout where dynamic image scaling is slow (see
+ * issue #19447). Rather than scaling and converting the whole image whenever the zoom
+ * changes, the scaled image is split into tiles which are scaled and converted the first
+ * time they are painted, so only the visible part of the image is ever converted, and
+ * painting only draws the tiles intersecting the clipping area, without any scaling. The
+ * tiles of the last few zoom levels are kept, so that toggling between zoom levels does
+ * not convert them again.
+ * <p/>
+ * The tiles are scaled into a single AWT buffer whose pixels are copied into a single SWT
+ * {@link ImageData}, which are reused for all the tiles.
+ */
+class ImageTileCache {
+    /** Width and height of the tiles */
+    static final int TILE_SIZE = 256;
+
+    /** Number of zoom levels whose tiles are kept */
+    private static final int MAX_ZOOM_LEVELS = 2;
+
+    private final Device mDevice;
+
+    /** The image the tiles are created from */
+    private BufferedImage mSource;
+
+    /** Whether the tiles include a drop shadow */
+    private boolean mShowDropShadow;
+
+    /** The tiles of the most recently painted zoom levels, the current one last */
+    private final List<TileSet> mTileSets = new ArrayList<TileSet>(MAX_ZOOM_LEVELS + 1);
+
+    /** Buffer the tiles are scaled into */
+    private BufferedImage mTileBuffer;
+
+    /** Buffer the tiles are converted into */
+    private ImageData mTileData;
+
+    /**
+     * Creates a new tile cache
+     *
+     * @param device the device the tiles are painted on
+     */
+    ImageTileCache(Device device) {
+        mDevice = device;
+    }
+
+    /**
+     * Paints an image scaled to the given size, only drawing the tiles which intersect
+     * the clipping area of the given graphics context
+     *
+     * @param gc the graphics context to paint into
+     * @param source the image to paint
+     * @param showDropShadow whether a drop shadow should be painted around the image
+     * @param x the left coordinate of the scaled image
+     * @param y the top coordinate of the scaled image
+     * @param width the width of the scaled image, excluding its drop shadow
+     * @param height the height of the scaled image, excluding its drop shadow
+     */
+    void paint(GC gc, BufferedImage source, boolean showDropShadow, int x, int y,
+            int width, int height) {
+        if (source != mSource || showDropShadow != mShowDropShadow) {
+            clear();
+            mSource = source;
+            mShowDropShadow = showDropShadow;
+        }
+
+        TileSet tiles = getTileSet(width, height);
+
+        Rectangle clip = gc.getClipping();
+        int left = Math.max(clip.x - x, 0);
+        int top = Math.max(clip.y - y, 0);
+        int right = Math.min(clip.x + clip.width - x, tiles.extentWidth);
+        int bottom = Math.min(clip.y + clip.height - y, tiles.extentHeight);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        for (int row = top / TILE_SIZE; row <= (bottom - 1) / TILE_SIZE; row++) {
+            for (int column = left / TILE_SIZE; column <= (right - 1) / TILE_SIZE; column++) {
+                int tileX = column * TILE_SIZE;
+                int tileY = row * TILE_SIZE;
+                int tileWidth = Math.min(TILE_SIZE, tiles.extentWidth - tileX);
+                int tileHeight = Math.min(TILE_SIZE, tiles.extentHeight - tileY);
+
+                int index = row * tiles.columns + column;
+                Image tile = tiles.tiles[index];
+                if (tile == null) {
+                    tile = createTile(tiles, tileX, tileY, tileWidth, tileHeight);
+                    tiles.tiles[index] = tile;
+                }
+
+                // The tiles are already scaled, so they are drawn at their size, which is
+                // much cheaper than scaling while painting
+                gc.drawImage(tile, 0, 0, tileWidth, tileHeight,
+                        x + tileX, y + tileY, tileWidth, tileHeight);
+            }
+        }
+    }
+
+    /**
+     * Disposes the tiles, as the image has changed
+     */
+    void clear() {
+        for (TileSet tiles : mTileSets) {
+            tiles.dispose();
+        }
+        mTileSets.clear();
+        mSource = null;
+    }
+
+    /**
+     * Disposes the tiles and the buffers
+     */
+    void dispose() {
+        clear();
+        mTileBuffer = null;
+        mTileData = null;
+    }
+
+    /**
+     * Returns the number of tiles currently cached, for all zoom levels
+     *
+     * @return the number of tiles
+     */
+    int getTileCount() {
+        int count = 0;
+        for (TileSet tiles : mTileSets) {
+            for (Image tile : tiles.tiles) {
+                if (tile != null) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private TileSet getTileSet(int width, int height) {
+        int last = mTileSets.size() - 1;
+        for (int i = last; i >= 0; i--) {
+            TileSet tiles = mTileSets.get(i);
+            if (tiles.width == width && tiles.height == height) {
+                if (i != last) {
+                    mTileSets.remove(i);
+                    mTileSets.add(tiles);
+                }
+                return tiles;
+            }
+        }
+
+        TileSet tiles = new TileSet(width, height, mShowDropShadow ? SHADOW_SIZE : 0);
+        mTileSets.add(tiles);
+        if (mTileSets.size() > MAX_ZOOM_LEVELS) {
+            mTileSets.remove(0).dispose();
+        }
+
+        return tiles;
+    }
+
+    /**
+     * Scales a tile of the image into the tile buffer, and converts it into an SWT image
+     */
+    private Image createTile(TileSet tiles, int x, int y, int width, int height) {
+        if (mTileBuffer == null) {
+            mTileBuffer = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+            mTileData = new ImageData(TILE_SIZE, TILE_SIZE, 32,
+                    SwtUtils.getAwtPaletteData(BufferedImage.TYPE_INT_ARGB));
+            mTileData.alphaData = new byte[TILE_SIZE * TILE_SIZE];
+        }
+
+        Graphics2D g2 = mTileBuffer.createGraphics();
+        try {
+            g2.setComposite(AlphaComposite.Src);
+            g2.setColor(new Color(0, true));
+            g2.fillRect(0, 0, width, height);
+            g2.clipRect(0, 0, width, height);
+            g2.translate(-x, -y);
+
+            BufferedImage source = tiles.getScaledSource(mSource);
+            if (source.getWidth() == tiles.width && source.getHeight() == tiles.height) {
+                g2.drawImage(source, 0, 0, null);
+            } else {
+                g2.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+                g2.setRenderingHint(KEY_RENDERING, VALUE_RENDER_QUALITY);
+                g2.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+                g2.drawImage(source, 0, 0, tiles.width, tiles.height,
+                        0, 0, source.getWidth(), source.getHeight(), null);
+            }
+
+            if (mShowDropShadow) {
+                g2.setComposite(AlphaComposite.SrcOver);
+                ImageUtils.drawRectangleShadow(g2, 0, 0, tiles.width, tiles.height);
+            }
+        } finally {
+            g2.dispose();
+        }
+
+        // The buffer and the image data have the same width, so the rows are copied at once
+        int[] pixels = ((DataBufferInt) mTileBuffer.getRaster().getDataBuffer()).getData();
+        mTileData.setPixels(0, 0, TILE_SIZE * height, pixels, 0);
+        byte[] alphaData = mTileData.alphaData;
+        for (int row = 0; row < height; row++) {
+            int offset = row * TILE_SIZE;
+            for (int column = 0; column < width; column++) {
+                alphaData[offset + column] = (byte) (pixels[offset + column] >>> 24);
+            }
+        }
+
+        return new Image(mDevice, mTileData);
+    }
+
+    /** The tiles of the image at a given zoom level */
+    private static final class TileSet {
+        /** Size of the scaled image, excluding its drop shadow */
+        final int width;
+        final int height;
+        /** Size of the scaled image, including its drop shadow */
+        final int extentWidth;
+        final int extentHeight;
+        final int columns;
+        final Image[] tiles;
+
+        /**
+         * The image the tiles are scaled from, when reducing it by more than half, or
+         * null if scaled from the image itself
+         */
+        private BufferedImage mScaledSource;
+
+        TileSet(int width, int height, int shadowSize) {
+            this.width = width;
+            this.height = height;
+            extentWidth = width + shadowSize;
+            extentHeight = height + shadowSize;
+            columns = (extentWidth + TILE_SIZE - 1) / TILE_SIZE;
+            int rows = (extentHeight + TILE_SIZE - 1) / TILE_SIZE;
+            tiles = new Image[columns * rows];
+        }
+
+        /**
+         * Returns the image to scale the tiles from. Bilinear scaling skips pixels when
+         * reducing an image by more than half, so in that case the whole image is reduced
+         * once by {@link ImageUtils#scale}, which averages them; this is cheap since the
+         * result is small.
+         */
+        BufferedImage getScaledSource(BufferedImage source) {
+            double xScale = width / (double) source.getWidth();
+            double yScale = height / (double) source.getHeight();
+            if (xScale > 0.5 && yScale > 0.5) {
+                return source;
+            }
+
+            if (mScaledSource == null) {
+                mScaledSource = ImageUtils.scale(source, xScale, yScale);
+            }
+
+            return mScaledSource;
+        }
+
+        void dispose() {
+            for (int i = 0; i < tiles.length; i++) {
+                if (tiles[i] != null) {
+                    tiles[i].dispose();
+                    tiles[i] = null;
+                }
+            }
+            mScaledSource = null;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.ide.common.rendering.LayoutLibrary;
+import com.android.ide.common.rendering.api.RenderSession;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.andmore.internal.editors.uimodel.UiDocumentNode;
+import org.eclipse.andmore.internal.editors.uimodel.UiElementNode;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.SWTException;
+
+import java.util.Set;
+
+/**
+ * Renders the layout of a {@link GraphicalEditorPart} in the background while its XML
+ * model is being edited.
+ * <p/>
+ * Model changes are coalesced: the layout is rendered once the model has not changed for a
+ * delay, which adapts to the time recent renderings took, so that small layouts are updated
+ * while typing and large ones are not rendered for every keystroke. The model is read on the
+ * UI thread into a snapshot, which layoutlib inflates and draws in a job, and the resulting
+ * session is handed to the {@link LayoutCanvas} on the UI thread. A rendering is dropped
+ * when the model changes while it runs, since its views may no longer match the model.
+ * <p/>
+ * The time spent in each {@link Stage} is recorded, to measure the editing latency, and
+ * logged for each rendering when running with {@code -Dadt.renderTimings=true}.
+ */
+public class LayoutRenderScheduler {
+    /** Minimum delay between a model change and the rendering, in milliseconds */
+    private static final long MIN_DELAY = 10;
+
+    /** Maximum delay between a model change and the rendering, in milliseconds */
+    private static final long MAX_DELAY = 500;
+
+    /**
+     * Whether the timings of each rendering should be logged, which is enabled by running
+     * Eclipse with -Dadt.renderTimings=true
+     */
+    private static final boolean DUMP_TIMINGS =
+            Boolean.getBoolean("adt.renderTimings"); //$NON-NLS-1$
+
+    /** The stages of a background rendering */
+    public enum Stage {
+        /** Waiting for the model to stop changing */
+        QUEUE,
+        /** Reading the model into a snapshot, on the UI thread */
+        MODEL_SYNC,
+        /** Inflating, measuring and drawing the views, in layoutlib */
+        INFLATE,
+        /** Converting the image and updating the canvas, on the UI thread */
+        IMAGE_CONVERT,
+        /** From the first model change to the updated canvas */
+        TOTAL
+    }
+
+    private final GraphicalEditorPart mEditor;
+    private final RenderJob mJob = new RenderJob();
+
+    /** Incremented on the UI thread whenever the rendered model becomes out of date */
+    private volatile int mGeneration;
+
+    /** Time of the first model change not rendered yet, or 0 */
+    private volatile long mRequestTime;
+
+    /** Whether layoutlib is currently rendering the layout for this scheduler */
+    private volatile boolean mInflating;
+
+    /** Moving average of the layoutlib rendering times, in milliseconds */
+    private volatile long mAverageInflateTime;
+
+    private final long[] mLastTimes = new long[Stage.values().length];
+    private final long[] mTotalTimes = new long[Stage.values().length];
+    private final long[] mMaxTimes = new long[Stage.values().length];
+    private int mRenderCount;
+    private int mDroppedCount;
+
+    /**
+     * Creates a scheduler for the given editor
+     *
+     * @param editor the editor whose layout is rendered
+     */
+    LayoutRenderScheduler(GraphicalEditorPart editor) {
+        mEditor = editor;
+    }
+
+    /**
+     * Schedules a rendering of the layout, as the model has changed. Must be called from the
+     * UI thread.
+     */
+    void schedule() {
+        mGeneration++;
+        if (mRequestTime == 0) {
+            mRequestTime = System.currentTimeMillis();
+        }
+
+        // Cancelling makes a running rendering stop at the end of its current stage, and
+        // restarts the delay of a sleeping one
+        mJob.cancel();
+        mJob.schedule(Math.max(MIN_DELAY, Math.min(MAX_DELAY, mAverageInflateTime / 2)));
+    }
+
+    /**
+     * Cancels the scheduled rendering, e.g. because the layout is being rendered
+     * synchronously. Must be called from the UI thread.
+     */
+    void cancel() {
+        mGeneration++;
+        mRequestTime = 0;
+        mJob.cancel();
+    }
+
+    /**
+     * Returns whether a rendering of the layout is scheduled or running, and has not been
+     * shown yet. Must be called from the UI thread.
+     *
+     * @return true if a rendering is pending
+     */
+    boolean isPending() {
+        return mRequestTime != 0;
+    }
+
+    /**
+     * Returns whether layoutlib is rendering the layout in the background. A rendering
+     * started meanwhile would have to wait for it to finish, since renderings are
+     * serialized.
+     *
+     * @return true if the layout is being rendered in the background
+     */
+    boolean isRendering() {
+        return mInflating;
+    }
+
+    /**
+     * Returns the time the given stage took for the last rendering
+     *
+     * @param stage the rendering stage
+     * @return the time in milliseconds
+     */
+    public synchronized long getLastTime(Stage stage) {
+        return mLastTimes[stage.ordinal()];
+    }
+
+    /**
+     * Returns the average time the given stage took for the renderings shown so far
+     *
+     * @param stage the rendering stage
+     * @return the time in milliseconds
+     */
+    public synchronized long getAverageTime(Stage stage) {
+        return mRenderCount > 0 ? mTotalTimes[stage.ordinal()] / mRenderCount : 0;
+    }
+
+    /**
+     * Returns the longest time the given stage took for the renderings shown so far
+     *
+     * @param stage the rendering stage
+     * @return the time in milliseconds
+     */
+    public synchronized long getMaxTime(Stage stage) {
+        return mMaxTimes[stage.ordinal()];
+    }
+
+    /**
+     * Returns the number of background renderings shown so far
+     *
+     * @return the number of renderings
+     */
+    public synchronized int getRenderCount() {
+        return mRenderCount;
+    }
+
+    /**
+     * Returns the number of background renderings dropped because the model changed
+     * while they were running
+     *
+     * @return the number of dropped renderings
+     */
+    public synchronized int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /** Clears the recorded timings */
+    public synchronized void resetTimings() {
+        for (int i = 0; i < mLastTimes.length; i++) {
+            mLastTimes[i] = 0;
+            mTotalTimes[i] = 0;
+            mMaxTimes[i] = 0;
+        }
+        mRenderCount = 0;
+        mDroppedCount = 0;
+    }
+
+    private synchronized void recordTimings(long[] times) {
+        mRenderCount++;
+        for (int i = 0; i < times.length; i++) {
+            mLastTimes[i] = times[i];
+            mTotalTimes[i] += times[i];
+            mMaxTimes[i] = Math.max(mMaxTimes[i], times[i]);
+        }
+
+        if (DUMP_TIMINGS) {
+            StringBuilder sb = new StringBuilder("Rendered layout in background:"); //$NON-NLS-1$
+            for (Stage stage : Stage.values()) {
+                sb.append(' ').append(stage).append('=').append(times[stage.ordinal()]);
+            }
+            sb.append(" (average ").append(mAverageInflateTime) //$NON-NLS-1$
+                    .append(" ms to inflate, ").append(mDroppedCount) //$NON-NLS-1$
+                    .append(" dropped)"); //$NON-NLS-1$
+            AndmoreAndroidPlugin.log(IStatus.INFO, sb.toString());
+        }
+    }
+
+    private synchronized void recordDropped() {
+        mDroppedCount++;
+    }
+
+    private boolean isCanvasDisposed() {
+        LayoutCanvas canvas = mEditor.getCanvasControl();
+        return canvas == null || canvas.isDisposed();
+    }
+
+    /**
+     * Runs the given runnable on the UI thread, and waits for it to finish
+     *
+     * @return false if the canvas has been disposed
+     */
+    private boolean syncExec(Runnable runnable) {
+        if (isCanvasDisposed()) {
+            return false;
+        }
+        try {
+            mEditor.getCanvasControl().getDisplay().syncExec(runnable);
+        } catch (SWTException e) {
+            // The display has been disposed
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * A rendering prepared on the UI thread by
+     * {@link GraphicalEditorPart#prepareBackgroundRender()}
+     */
+    static final class Render {
+        final LayoutLibrary layoutLib;
+        final UiDocumentNode model;
+        final Set<UiElementNode> explodeNodes;
+        final RenderLogger logger;
+        final RenderService service;
+
+        Render(LayoutLibrary layoutLib, UiDocumentNode model, Set<UiElementNode> explodeNodes,
+                RenderLogger logger, RenderService service) {
+            this.layoutLib = layoutLib;
+            this.model = model;
+            this.explodeNodes = explodeNodes;
+            this.logger = logger;
+            this.service = service;
+        }
+    }
+
+    /** Job rendering the layout, one rendering per run */
+    private final class RenderJob extends Job {
+        public RenderJob() {
+            super("Render layout");
+            setSystem(true);
+            setUser(false);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            final int generation = mGeneration;
+            final long[] times = new long[Stage.values().length];
+            final Render[] render = new Render[1];
+
+            // Snapshot the model on the UI thread
+            boolean alive = syncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (generation != mGeneration || isCanvasDisposed()) {
+                        return;
+                    }
+                    long start = System.currentTimeMillis();
+                    times[Stage.QUEUE.ordinal()] = start - mRequestTime;
+                    render[0] = mEditor.prepareBackgroundRender();
+                    times[Stage.MODEL_SYNC.ordinal()] = System.currentTimeMillis() - start;
+                    if (render[0] == null) {
+                        // Nothing to render, or rendered synchronously
+                        mRequestTime = 0;
+                    }
+                }
+            });
+            if (!alive || render[0] == null) {
+                return Status.CANCEL_STATUS;
+            }
+            if (monitor.isCanceled() || generation != mGeneration) {
+                recordDropped();
+                return Status.CANCEL_STATUS;
+            }
+
+            // Inflate and draw in this thread
+            long start = System.currentTimeMillis();
+            RenderSession session = null;
+            mInflating = true;
+            try {
+                session = render[0].service.createRenderSession();
+            } catch (RuntimeException e) {
+                // Already reported to the render logger, which is displayed below
+                AndmoreAndroidPlugin.log(e, null);
+            } finally {
+                mInflating = false;
+            }
+            long inflateTime = System.currentTimeMillis() - start;
+            times[Stage.INFLATE.ordinal()] = inflateTime;
+            mAverageInflateTime = mAverageInflateTime == 0 ? inflateTime
+                    : (3 * mAverageInflateTime + inflateTime) / 4;
+
+            // Show the result on the UI thread, unless the model changed meanwhile
+            final RenderSession renderSession = session;
+            final boolean[] shown = new boolean[1];
+            syncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (generation != mGeneration || isCanvasDisposed()) {
+                        return;
+                    }
+                    long convertStart = System.currentTimeMillis();
+                    mEditor.finishBackgroundRender(render[0], renderSession);
+                    long end = System.currentTimeMillis();
+                    times[Stage.IMAGE_CONVERT.ordinal()] = end - convertStart;
+                    times[Stage.TOTAL.ordinal()] = end - mRequestTime;
+                    mRequestTime = 0;
+                    shown[0] = true;
+                }
+            });
+
+            if (!shown[0]) {
+                if (session != null) {
+                    RenderService.disposeSession(session);
+                }
+                recordDropped();
+                return Status.CANCEL_STATUS;
+            }
+
+            recordTimings(times);
+            return Status.OK_STATUS;
+        }
+    }
+}
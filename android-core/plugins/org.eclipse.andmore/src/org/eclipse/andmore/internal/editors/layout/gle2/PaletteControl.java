@@ -1085,7 +1085,7 @@ public class PaletteControl extends Composite {
                     }
                 }
 
-                session.dispose();
+                RenderService.disposeSession(session);
             }
 
             return null;
@@ -361,7 +361,7 @@ public class PreviewIconFactory {
                     }
                 }
 
-                session.dispose();
+                RenderService.disposeSession(session);
             }
         }
 
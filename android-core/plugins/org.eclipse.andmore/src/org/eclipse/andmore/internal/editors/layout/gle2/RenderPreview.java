@@ -44,6 +44,8 @@ import com.android.sdklib.devices.Device;
 import com.android.sdklib.devices.Screen;
 import com.android.sdklib.devices.State;
 import com.android.utils.SdkUtils;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 
 import org.eclipse.andmore.AndmoreAndroidPlugin;
 import org.eclipse.andmore.AdtUtils;
@@ -83,6 +85,10 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.progress.UIJob;
+import org.eclipse.wst.sse.core.StructuredModelManager;
+import org.eclipse.wst.sse.core.internal.provisional.IModelManager;
+import org.eclipse.wst.sse.core.internal.provisional.IStructuredModel;
+import org.eclipse.wst.sse.core.internal.provisional.text.IStructuredDocument;
 import org.w3c.dom.Document;
 
 import java.awt.Graphics2D;
@@ -422,6 +428,7 @@ public class RenderPreview implements IJobChangeListener {
      */
     public void dispose() {
         disposeThumbnail();
+        mManager.cancelRender(this);
 
         if (mJob != null) {
             mJob.cancel();
@@ -502,6 +509,21 @@ public class RenderPreview implements IJobChangeListener {
         mJob = job;
     }
 
+    /**
+     * Renders immediately, on behalf of the render queue of the {@link RenderPreviewManager}.
+     * Must be called from the UI thread.
+     */
+    void renderNow() {
+        if (mJob != null) {
+            mJob.cancel();
+            mJob = null;
+        }
+        if (!mCanvas.isDisposed()) {
+            renderSync();
+            mCanvas.redraw();
+        }
+    }
+
     /** Render immediately */
     private void renderSync() {
         GraphicalEditorPart editor = mCanvas.getEditorDelegate().getGraphicalEditor();
@@ -516,6 +538,18 @@ public class RenderPreview implements IJobChangeListener {
         Configuration configuration =
                 mAlternateInput != null && mAlternateConfiguration != null
                 ? mAlternateConfiguration : mConfiguration;
+
+        String cacheKey = getCacheKey(editor, configuration);
+        if (cacheKey != null) {
+            BufferedImage cached = RenderPreviewCache.get(cacheKey);
+            if (cached != null) {
+                mError = null;
+                mThumbnail = SwtUtils.convertToSwt(mCanvas.getDisplay(), cached,
+                        true /* transferAlpha */, -1);
+                return;
+            }
+        }
+
         ResourceResolver resolver = getResourceResolver(configuration);
         RenderService renderService = RenderService.create(editor, configuration, resolver);
 
@@ -589,7 +623,17 @@ public class RenderPreview implements IJobChangeListener {
         if (render.isSuccess()) {
             BufferedImage image = session.getImage();
             if (image != null) {
-                createThumbnail(image);
+                BufferedImage thumbnail = createThumbnail(image);
+                if (cacheKey != null && thumbnail != null && mError == null
+                        && !log.hasProblems()) {
+                    if (thumbnail == image) {
+                        // The rendered image is owned by the image factory and is reused
+                        // by subsequent renderings: keep a copy
+                        thumbnail = ImageUtils.subImage(thumbnail, 0, 0,
+                                thumbnail.getWidth(), thumbnail.getHeight());
+                    }
+                    RenderPreviewCache.put(cacheKey, thumbnail);
+                }
             }
         }
 
@@ -598,6 +642,89 @@ public class RenderPreview implements IJobChangeListener {
         }
     }
 
+    /**
+     * Returns a key identifying the inputs of a rendering of this preview for the
+     * {@link RenderPreviewCache}
+     *
+     * @param editor the associated editor
+     * @param configuration the configuration to render
+     * @return the key, or null if the rendering should not be cached
+     */
+    @Nullable
+    private String getCacheKey(
+            @NonNull GraphicalEditorPart editor,
+            @NonNull Configuration configuration) {
+        IAndroidTarget target = editor.getRenderingTarget();
+        if (target == null) {
+            return null;
+        }
+
+        String source;
+        if (mAlternateInput != null) {
+            // The layout is rendered from its model, which includes the unsaved edits of an
+            // editor the file is open in, if any
+            String content = getUnsavedContent(mAlternateInput);
+            if (content != null) {
+                source = mAlternateInput.getFullPath().toString() + ':'
+                        + Hashing.sha1().hashString(content, Charsets.UTF_8);
+            } else {
+                source = mAlternateInput.getFullPath().toString() + ':'
+                        + mAlternateInput.getModificationStamp();
+            }
+        } else {
+            IFile file = editor.getEditedFile();
+            IStructuredDocument document =
+                    mCanvas.getEditorDelegate().getEditor().getStructuredDocument();
+            if (file == null || document == null) {
+                return null;
+            }
+            source = file.getFullPath().toString() + ':'
+                    + Hashing.sha1().hashString(document.get(), Charsets.UTF_8);
+        }
+
+        ImageOverlay imageOverlay = mCanvas.getImageOverlay();
+        boolean drawShadows = imageOverlay == null || imageOverlay.getShowDropShadow();
+
+        StringBuilder sb = new StringBuilder(200);
+        sb.append(source).append('|');
+        sb.append(target.hashString()).append('|');
+        sb.append(configuration.toPersistentString()).append('|');
+        sb.append(configuration.getFullConfig().toString()).append('|');
+        sb.append(configuration.getActivity()).append('|');
+        if (mIncludedWithin != null) {
+            sb.append(mIncludedWithin.getId());
+        }
+        sb.append('|');
+        sb.append(getWidth()).append('x').append(getHeight());
+        sb.append(drawShadows ? 's' : 'n');
+        return sb.toString();
+    }
+
+    /**
+     * Returns the content of the model of the given file if it has unsaved edits
+     *
+     * @param file the file
+     * @return the unsaved content, or null if the model of the file matches the file
+     */
+    @Nullable
+    private static String getUnsavedContent(@NonNull IFile file) {
+        IModelManager modelManager = StructuredModelManager.getModelManager();
+        if (modelManager == null) {
+            return null;
+        }
+
+        IStructuredModel model = modelManager.getExistingModelForRead(file);
+        if (model == null) {
+            return null;
+        }
+
+        try {
+            return model.isDirty() ? model.getStructuredDocument().get() : null;
+        } finally {
+            model.releaseFromRead();
+        }
+    }
+
     private ResourceResolver getResourceResolver(Configuration configuration) {
         ResourceResolver resourceResolver = mResourceResolver.get();
         if (resourceResolver != null) {
@@ -661,11 +788,13 @@ public class RenderPreview implements IJobChangeListener {
      * Sets the new image of the preview and generates a thumbnail
      *
      * @param image the full size image
+     * @return the thumbnail image, which is the given image if it did not need to be
+     *         scaled down, or null
      */
-    void createThumbnail(BufferedImage image) {
+    BufferedImage createThumbnail(BufferedImage image) {
         if (image == null) {
             mThumbnail = null;
-            return;
+            return null;
         }
 
         ImageOverlay imageOverlay = mCanvas.getImageOverlay();
@@ -699,6 +828,7 @@ public class RenderPreview implements IJobChangeListener {
 
         mThumbnail = SwtUtils.convertToSwt(mCanvas.getDisplay(), image,
                 true /* transferAlpha */, -1);
+        return image;
     }
 
     void createErrorThumbnail() {
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the thumbnails rendered by the {@link RenderPreview}s, shared by all the layout
+ * editors.
+ * <p/>
+ * Thumbnails are keyed by a string describing the inputs of the rendering that belong to the
+ * preview: the layout source, including unsaved edits, the configuration, the target and the
+ * size of the thumbnail. The resources and code the rendering depends on are not part of the
+ * key; instead, the cache is cleared with {@link #clear()} whenever they change (see
+ * {@link RenderPreviewManager#bumpRevision()}). Entries are evicted, least recently used
+ * first, when the total size of the cached images exceeds {@link #MAX_SIZE}.
+ */
+final class RenderPreviewCache {
+    /** Maximum number of bytes of image data held by the cache */
+    private static final long MAX_SIZE = 32 * 1024 * 1024;
+
+    private static final Map<String, BufferedImage> sImages =
+            new LinkedHashMap<String, BufferedImage>(16, 0.75f, true /*accessOrder*/);
+    private static long sSize;
+
+    private RenderPreviewCache() {
+    }
+
+    /**
+     * Returns the cached thumbnail for the given key
+     *
+     * @param key the key of the rendering
+     * @return the thumbnail, or null if not cached
+     */
+    @Nullable
+    static BufferedImage get(@NonNull String key) {
+        synchronized (sImages) {
+            return sImages.get(key);
+        }
+    }
+
+    /**
+     * Adds a thumbnail to the cache. The image must not be modified afterwards.
+     *
+     * @param key the key of the rendering
+     * @param image the thumbnail
+     */
+    static void put(@NonNull String key, @NonNull BufferedImage image) {
+        long size = getSize(image);
+        if (size > MAX_SIZE / 4) {
+            // Don't let a single large zoomed preview flush the cache
+            return;
+        }
+
+        synchronized (sImages) {
+            BufferedImage old = sImages.put(key, image);
+            if (old != null) {
+                sSize -= getSize(old);
+            }
+            sSize += size;
+
+            Iterator<BufferedImage> iterator = sImages.values().iterator();
+            while (sSize > MAX_SIZE && iterator.hasNext()) {
+                sSize -= getSize(iterator.next());
+                iterator.remove();
+            }
+        }
+    }
+
+    /** Removes all the cached thumbnails */
+    static void clear() {
+        synchronized (sImages) {
+            sImages.clear();
+            sSize = 0;
+        }
+    }
+
+    private static long getSize(@NonNull BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
@@ -33,6 +33,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -51,6 +52,9 @@ import org.eclipse.andmore.internal.editors.layout.gle2.IncludeFinder.Reference;
 import org.eclipse.andmore.internal.preferences.AdtPrefs;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.dialogs.InputDialog;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
@@ -59,10 +63,12 @@ import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.ScrollBar;
 import org.eclipse.ui.IWorkbenchPartSite;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.ide.IDE;
+import org.eclipse.ui.progress.UIJob;
 
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
@@ -134,6 +140,7 @@ public class RenderPreviewManager {
      */
     public static void bumpRevision() {
         sRevision++;
+        RenderPreviewCache.clear();
     }
 
     /**
@@ -1211,26 +1218,122 @@ public class RenderPreviewManager {
         mNeedRender = false;
     }
 
-    private int mPendingRenderCount;
+    /** The previews waiting to be rendered, in request order */
+    private final Set<RenderPreview> mRenderQueue = new LinkedHashSet<RenderPreview>();
+
+    /** The job rendering the previews of {@link #mRenderQueue}, if scheduled */
+    private RenderQueueJob mRenderQueueJob;
 
     /**
-     * Reset rendering scheduling. The next render request will be scheduled
-     * after a single delay unit.
+     * Reset rendering scheduling. The pending renders are postponed until a single
+     * delay unit after the last request, such that a burst of changes only renders
+     * each preview once.
      */
     public void beginRenderScheduling() {
-        mPendingRenderCount = 0;
+        if (mRenderQueueJob != null && !mRenderQueue.isEmpty()) {
+            mRenderQueueJob.cancel();
+            mRenderQueueJob.schedule(RENDER_DELAY);
+        }
     }
 
     /**
-     * Schedule rendering the given preview. Each successive call will add an additional
-     * delay unit to the schedule from the previous {@link #scheduleRender(RenderPreview)}
-     * call, until {@link #beginRenderScheduling()} is called again.
+     * Schedule rendering the given preview. Previews are rendered one at a time on the
+     * UI thread, yielding to other UI events between previews, and are postponed while a
+     * rendering of the main layout is pending, so that the canvas is updated first.
+     * Zoomed previews are rendered first, then the previews in the order they were
+     * requested. Requesting a render for a preview which is already waiting to be
+     * rendered does not render it again.
      *
      * @param preview the preview to render
      */
     public void scheduleRender(@NonNull RenderPreview preview) {
-        mPendingRenderCount++;
-        preview.render(mPendingRenderCount * RENDER_DELAY);
+        mRenderQueue.add(preview);
+        if (mRenderQueueJob == null) {
+            mRenderQueueJob = new RenderQueueJob();
+            mRenderQueueJob.schedule(RENDER_DELAY);
+        }
+    }
+
+    /**
+     * Cancels a pending render of the given preview, if any
+     *
+     * @param preview the preview which should no longer be rendered
+     */
+    void cancelRender(@NonNull RenderPreview preview) {
+        mRenderQueue.remove(preview);
+    }
+
+    /**
+     * Removes and returns the next preview to be rendered from the render queue
+     *
+     * @return the next preview to render, or null if the queue is empty
+     */
+    @Nullable
+    private RenderPreview pollRenderQueue() {
+        for (RenderPreview preview : mRenderQueue) {
+            if (preview.getScale() > 1.2) {
+                mRenderQueue.remove(preview);
+                return preview;
+            }
+        }
+
+        Iterator<RenderPreview> iterator = mRenderQueue.iterator();
+        if (iterator.hasNext()) {
+            RenderPreview preview = iterator.next();
+            iterator.remove();
+            return preview;
+        }
+
+        return null;
+    }
+
+    /** Job rendering the queued previews, one preview per run */
+    private final class RenderQueueJob extends UIJob {
+        public RenderQueueJob() {
+            super("RenderPreview");
+            setSystem(true);
+            setUser(false);
+        }
+
+        @Override
+        public IStatus runInUIThread(IProgressMonitor monitor) {
+            if (mCanvas.isDisposed()) {
+                mRenderQueue.clear();
+                mRenderQueueJob = null;
+                return Status.CANCEL_STATUS;
+            }
+
+            // The main layout takes precedence over the previews: renderings are
+            // serialized, so a preview rendered now would delay it
+            LayoutRenderScheduler scheduler =
+                    mCanvas.getEditorDelegate().getGraphicalEditor().getRenderScheduler();
+            if (scheduler.isPending()) {
+                schedule(RENDER_DELAY);
+                return Status.OK_STATUS;
+            }
+
+            RenderPreview preview = pollRenderQueue();
+            if (preview != null) {
+                preview.renderNow();
+            }
+
+            if (mRenderQueue.isEmpty()) {
+                mRenderQueueJob = null;
+            } else {
+                // Run again after the UI events queued in the meantime
+                schedule();
+            }
+
+            return Status.OK_STATUS;
+        }
+
+        @Override
+        public Display getDisplay() {
+            if (mCanvas.isDisposed()) {
+                return null;
+            }
+            return mCanvas.getDisplay();
+        }
     }
 
     /**
@@ -47,6 +47,7 @@ import org.eclipse.andmore.AndmoreAndroidPlugin;
 import org.eclipse.andmore.AdtUtils;
 import org.eclipse.andmore.internal.editors.layout.ContextPullParser;
 import org.eclipse.andmore.internal.editors.layout.ProjectCallback;
+import org.eclipse.andmore.internal.editors.layout.SnapshotPullParser;
 import org.eclipse.andmore.internal.editors.layout.UiElementPullParser;
 import org.eclipse.andmore.internal.editors.layout.configuration.Configuration;
 import org.eclipse.andmore.internal.editors.layout.configuration.ConfigurationChooser;
@@ -81,8 +82,14 @@ import java.util.Set;
  * Android layouts. This is a wrapper around the layout library.
  */
 public class RenderService {
+    /**
+     * Lock serializing all the calls into layoutlib. The render security manager installs
+     * itself as the security manager of the JVM for the duration of a rendering, and the
+     * bridge keeps static state, so renderings must not overlap, even with different layout
+     * libraries. Rendering is therefore never concurrent: the load of the previews is handled
+     * by scheduling them instead, see {@link RenderPreviewManager#scheduleRender}.
+     */
     private static final Object RENDERING_LOCK = new Object();
-
     /** Reference to the file being edited. Can also be used to access the {@link IProject}. */
     private final GraphicalEditorPart mEditor;
 
@@ -95,7 +102,6 @@ public class RenderService {
     private final int mMinSdkVersion;
     private final int mTargetSdkVersion;
     private final LayoutLibrary mLayoutLib;
-    private final IImageFactory mImageFactory;
     private final HardwareConfigHelper mHardwareConfigHelper;
     private final Locale mLocale;
 
@@ -109,6 +115,8 @@ public class RenderService {
     private Integer mOverrideBgColor;
     private boolean mShowDecorations = true;
     private Set<UiElementNode> mExpandNodes = Collections.<UiElementNode>emptySet();
+    private IImageFactory mImageFactory;
+    private ILayoutPullParser mModelSnapshot;
     private final Object mCredential;
 
     /** Use the {@link #create} factory instead */
@@ -393,6 +401,39 @@ public class RenderService {
         return this;
     }
 
+    /**
+     * Sets the factory of the image the layout is rendered into. The default is the
+     * {@link ImageOverlay} of the editor canvas.
+     *
+     * @param imageFactory the image factory
+     * @return this (such that chains of setters can be stringed together)
+     */
+    public RenderService setImageFactory(IImageFactory imageFactory) {
+        mImageFactory = imageFactory;
+        return this;
+    }
+
+    /**
+     * Takes a snapshot of the model, which {@link #createRenderSession()} then renders
+     * instead of the model itself. This allows rendering outside of the UI thread while the
+     * model is being edited. Must be called from the UI thread, once the model and the
+     * nodes to expand are set.
+     *
+     * @return this (such that chains of setters can be stringed together)
+     */
+    public RenderService snapshotModel() {
+        assert mModel != null : "Incomplete service config";
+        HardwareConfig hardwareConfig = mHardwareConfigHelper.getConfig();
+        try {
+            mModelSnapshot = SnapshotPullParser.create(new UiElementPullParser(mModel,
+                    false, mExpandNodes, hardwareConfig.getDensity(), mProject));
+        } catch (XmlPullParserException e) {
+            // The model itself will be rendered
+            AndmoreAndroidPlugin.log(e, null);
+        }
+        return this;
+    }
+
     /** Initializes any remaining optional fields after all setters have been called */
     private void finishConfiguration() {
         if (mLogger == null) {
@@ -416,13 +457,16 @@ public class RenderService {
 
         HardwareConfig hardwareConfig = mHardwareConfigHelper.getConfig();
 
-        UiElementPullParser modelParser = new UiElementPullParser(mModel,
-                false, mExpandNodes, hardwareConfig.getDensity(), mProject);
+        ILayoutPullParser modelParser = mModelSnapshot;
+        if (modelParser == null) {
+            modelParser = new UiElementPullParser(mModel,
+                    false, mExpandNodes, hardwareConfig.getDensity(), mProject);
+        }
         ILayoutPullParser topParser = modelParser;
 
         // Code to support editing included layout
-        // first reset the layout parser just in case.
-        mProjectCallback.setLayoutParser(null, null);
+        String embeddedLayoutName = null;
+        ILayoutPullParser embeddedParser = null;
 
         if (mIncludedWithin != null) {
             // Outer layout name:
@@ -437,8 +481,8 @@ public class RenderService {
                     try {
                         // Get the name of the layout actually being edited, without the extension
                         // as it's what IXmlPullParser.getParser(String) will receive.
-                        String queryLayoutName = mEditor.getLayoutResourceName();
-                        mProjectCallback.setLayoutParser(queryLayoutName, modelParser);
+                        embeddedLayoutName = mEditor.getLayoutResourceName();
+                        embeddedParser = modelParser;
                         topParser = new ContextPullParser(mProjectCallback, layoutFile);
                         topParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
                         String xmlText = Files.toString(layoutFile, Charsets.UTF_8);
@@ -508,22 +552,45 @@ public class RenderService {
         // set the Image Overlay as the image factory.
         params.setImageFactory(mImageFactory);
 
-        mProjectCallback.setLogger(mLogger);
-        mProjectCallback.setResourceResolver(mResourceResolver);
         RenderSecurityManager securityManager = createSecurityManager();
-        try {
-            securityManager.setActive(true, mCredential);
-            synchronized (RENDERING_LOCK) {
-                return mLayoutLib.createSession(params);
+        // The project callback is shared by the renderings using the same layout library,
+        // which may run in the background, so it is only set up while holding the lock of
+        // the library. The rendering itself is serialized with all the other renderings.
+        synchronized (mLayoutLib) {
+            // reset the layout parser, unless editing an included layout
+            mProjectCallback.setLayoutParser(embeddedLayoutName, embeddedParser);
+            mProjectCallback.setLogger(mLogger);
+            mProjectCallback.setResourceResolver(mResourceResolver);
+            try {
+                synchronized (RENDERING_LOCK) {
+                    try {
+                        securityManager.setActive(true, mCredential);
+                        return mLayoutLib.createSession(params);
+                    } finally {
+                        securityManager.dispose(mCredential);
+                    }
+                }
+            } catch (RuntimeException t) {
+                // Exceptions from the bridge
+                mLogger.error(null, t.getLocalizedMessage(), t, null);
+                throw t;
+            } finally {
+                mProjectCallback.setLogger(null);
+                mProjectCallback.setResourceResolver(null);
             }
-        } catch (RuntimeException t) {
-            // Exceptions from the bridge
-            mLogger.error(null, t.getLocalizedMessage(), t, null);
-            throw t;
-        } finally {
-            securityManager.dispose(mCredential);
-            mProjectCallback.setLogger(null);
-            mProjectCallback.setResourceResolver(null);
+        }
+    }
+
+    /**
+     * Disposes of a session created by layoutlib. Disposing of a session runs in layoutlib
+     * as well, so it must not overlap with a rendering, which may be running in the
+     * background.
+     *
+     * @param session the session to dispose of
+     */
+    static void disposeSession(@NonNull RenderSession session) {
+        synchronized (RENDERING_LOCK) {
+            session.dispose();
         }
     }
 
@@ -621,41 +688,47 @@ public class RenderService {
         params.setForceNoDecor();
 
         RenderSession session = null;
-        mProjectCallback.setLogger(mLogger);
-        mProjectCallback.setResourceResolver(mResourceResolver);
         RenderSecurityManager securityManager = createSecurityManager();
-        try {
-            securityManager.setActive(true, mCredential);
-            synchronized (RENDERING_LOCK) {
-                session = mLayoutLib.createSession(params);
-            }
-            if (session.getResult().isSuccess()) {
-                assert session.getRootViews().size() == 1;
-                ViewInfo root = session.getRootViews().get(0);
-                List<ViewInfo> children = root.getChildren();
-                Map<INode, Rect> map = new HashMap<INode, Rect>(children.size());
-                for (ViewInfo info : children) {
-                    if (info.getCookie() instanceof UiViewElementNode) {
-                        UiViewElementNode uiNode = (UiViewElementNode) info.getCookie();
-                        NodeProxy node = mNodeFactory.create(uiNode);
-                        map.put(node, new Rect(info.getLeft(), info.getTop(),
-                                info.getRight() - info.getLeft(),
-                                info.getBottom() - info.getTop()));
+        synchronized (mLayoutLib) {
+            mProjectCallback.setLogger(mLogger);
+            mProjectCallback.setResourceResolver(mResourceResolver);
+            try {
+                synchronized (RENDERING_LOCK) {
+                    try {
+                        securityManager.setActive(true, mCredential);
+                        session = mLayoutLib.createSession(params);
+                    } finally {
+                        securityManager.dispose(mCredential);
                     }
                 }
 
-                return map;
-            }
-        } catch (RuntimeException t) {
-            // Exceptions from the bridge
-            mLogger.error(null, t.getLocalizedMessage(), t, null);
-            throw t;
-        } finally {
-            securityManager.dispose(mCredential);
-            mProjectCallback.setLogger(null);
-            mProjectCallback.setResourceResolver(null);
-            if (session != null) {
-                session.dispose();
+                if (session.getResult().isSuccess()) {
+                    assert session.getRootViews().size() == 1;
+                    ViewInfo root = session.getRootViews().get(0);
+                    List<ViewInfo> children = root.getChildren();
+                    Map<INode, Rect> map = new HashMap<INode, Rect>(children.size());
+                    for (ViewInfo info : children) {
+                        if (info.getCookie() instanceof UiViewElementNode) {
+                            UiViewElementNode uiNode = (UiViewElementNode) info.getCookie();
+                            NodeProxy node = mNodeFactory.create(uiNode);
+                            map.put(node, new Rect(info.getLeft(), info.getTop(),
+                                    info.getRight() - info.getLeft(),
+                                    info.getBottom() - info.getTop()));
+                        }
+                    }
+
+                    return map;
+                }
+            } catch (RuntimeException t) {
+                // Exceptions from the bridge
+                mLogger.error(null, t.getLocalizedMessage(), t, null);
+                throw t;
+            } finally {
+                mProjectCallback.setLogger(null);
+                mProjectCallback.setResourceResolver(null);
+                if (session != null) {
+                    disposeSession(session);
+                }
             }
         }
 
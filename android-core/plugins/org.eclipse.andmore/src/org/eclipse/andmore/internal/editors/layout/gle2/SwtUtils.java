@@ -157,20 +157,33 @@ public class SwtUtils {
 
         if (transferAlpha) {
             byte[] alphaData = new byte[height * width];
-            for (int y = 0; y < height; y++) {
-                byte[] alphaRow = new byte[width];
-                for (int x = 0; x < width; x++) {
-                    int alpha = awtImage.getRGB(x, y) >>> 24;
-
-                    // We have to multiply in the alpha now since if we
-                    // set ImageData.alpha, it will ignore the alphaData.
+            if (awtImage.getType() == BufferedImage.TYPE_INT_ARGB
+                    && dataBuffer instanceof DataBufferInt) {
+                // Read the alpha straight from the pixels rather than through getRGB,
+                // which converts every pixel through the color model
+                int[] pixels = ((DataBufferInt) dataBuffer).getData();
+                for (int i = 0; i < alphaData.length; i++) {
+                    int alpha = pixels[i] >>> 24;
                     if (globalAlpha != -1) {
                         alpha = alpha * globalAlpha >> 8;
                     }
-
-                    alphaRow[x] = (byte) alpha;
+                    alphaData[i] = (byte) alpha;
+                }
+            } else {
+                for (int y = 0; y < height; y++) {
+                    int offset = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int alpha = awtImage.getRGB(x, y) >>> 24;
+
+                        // We have to multiply in the alpha now since if we
+                        // set ImageData.alpha, it will ignore the alphaData.
+                        if (globalAlpha != -1) {
+                            alpha = alpha * globalAlpha >> 8;
+                        }
+
+                        alphaData[offset + x] = (byte) alpha;
+                    }
                 }
-                System.arraycopy(alphaRow, 0, alphaData, y * width, width);
             }
 
             imageData.alphaData = alphaData;
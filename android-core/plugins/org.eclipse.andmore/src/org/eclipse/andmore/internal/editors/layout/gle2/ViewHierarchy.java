@@ -128,7 +128,7 @@ public class ViewHierarchy {
      */
     public void dispose() {
         if (mSession != null) {
-            mSession.dispose();
+            RenderService.disposeSession(mSession);
             mSession = null;
         }
     }
@@ -153,7 +153,7 @@ public class ViewHierarchy {
             boolean layoutlib5) {
         // replace the previous scene, so the previous scene must be disposed.
         if (mSession != null) {
-            mSession.dispose();
+            RenderService.disposeSession(mSession);
         }
 
         mSession = session;
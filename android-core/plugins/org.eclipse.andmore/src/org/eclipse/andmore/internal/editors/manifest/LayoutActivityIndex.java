@@ -0,0 +1,641 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.manifest;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the Java types referencing each layout of the projects, used by
+ * {@link ManifestInfo} to guess the activity associated with a layout.
+ * <p/>
+ * Searching for the references of an {@code R.layout} field requires a JDT search over
+ * the sources of the project, which is slow on large projects and was repeated for every
+ * layout opened. Instead, the source compilation units of a project are parsed once, in a
+ * background job started the first time a layout of the project is looked up, and the
+ * {@code R.layout.name} references found are stored by layout name. Lookups never wait for
+ * the job: they answer with what has been indexed so far, since they are made on the UI
+ * thread. When a Java element delta shows that a compilation unit has changed, only that
+ * unit is parsed again, in the background the next time the project is looked up; the
+ * index of a project is discarded when its classpath or packages change. Callers storing
+ * a guess can check {@link #isIndexed(IJavaProject)}, and look up again once notified by
+ * {@link #runWhenIndexed(IJavaProject, Runnable)}.
+ */
+public final class LayoutActivityIndex implements IElementChangedListener {
+    private static final String R_LAYOUT = "R.layout";                      //$NON-NLS-1$
+    private static final String ANDROID_PKG = "android";                    //$NON-NLS-1$
+    private static final String SET_CONTENT_VIEW = "setContentView";        //$NON-NLS-1$
+    private static final String INFLATE = "inflate";                        //$NON-NLS-1$
+    private static final String ON_CREATE = "onCreate";                     //$NON-NLS-1$
+    private static final String ACTIVITY_SUFFIX = "Activity";               //$NON-NLS-1$
+
+    private static LayoutActivityIndex sInstance;
+
+    /**
+     * The indices of the projects looked up so far, by project name. The indices are
+     * guarded by this object, which is only held briefly, so that neither lookups nor Java
+     * element changes are blocked by the parsing.
+     */
+    private final Map<String, ProjectIndex> mProjects = new HashMap<String, ProjectIndex>();
+
+    /** The projects whose index must be updated by {@link #mUpdateJob} */
+    private final Set<IJavaProject> mPendingProjects = new LinkedHashSet<IJavaProject>();
+
+    /** The runnables to run once a project is indexed, by project name */
+    private final Map<String, List<Runnable>> mIndexedListeners =
+            new HashMap<String, List<Runnable>>();
+
+    /** The job updating the indices of the pending projects, one at a time */
+    private final Job mUpdateJob = new Job("Indexing layout references") {
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            while (!monitor.isCanceled()) {
+                IJavaProject javaProject;
+                synchronized (LayoutActivityIndex.this) {
+                    Iterator<IJavaProject> iterator = mPendingProjects.iterator();
+                    if (!iterator.hasNext()) {
+                        return Status.OK_STATUS;
+                    }
+                    javaProject = iterator.next();
+                    iterator.remove();
+                }
+                update(javaProject, monitor);
+                notifyIndexed(javaProject);
+            }
+
+            return Status.CANCEL_STATUS;
+        }
+    };
+
+    private LayoutActivityIndex() {
+        mUpdateJob.setSystem(true);
+        mUpdateJob.setPriority(Job.DECORATE);
+    }
+
+    /**
+     * Returns the index, listening to Java element changes to keep it up to date
+     *
+     * @return the index
+     */
+    @NonNull
+    static synchronized LayoutActivityIndex get() {
+        if (sInstance == null) {
+            sInstance = new LayoutActivityIndex();
+            JavaCore.addElementChangedListener(sInstance, ElementChangedEvent.POST_CHANGE);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Discards the index, and stops listening to Java element changes
+     */
+    public static synchronized void dispose() {
+        if (sInstance != null) {
+            JavaCore.removeElementChangedListener(sInstance);
+            sInstance.mUpdateJob.cancel();
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Returns the types referencing the given layout, the most likely activities first:
+     * activities calling {@code setContentView} with the layout, then other activities or
+     * {@code onCreate} methods referencing it, then types inflating it, then other types.
+     * While the sources of the project are being indexed, only the types indexed so far
+     * are returned.
+     *
+     * @param javaProject the project to look up the references in
+     * @param layoutName the name of the layout
+     * @param pkg the package of the R class of the layout, or null to accept any package
+     * @param contentViewOnly if true, only return the types passing the layout to
+     *            {@code setContentView} or {@code inflate}
+     * @return the fully qualified names of the types, never null
+     */
+    @NonNull
+    List<String> getTypes(@NonNull IJavaProject javaProject, @NonNull String layoutName,
+            @Nullable String pkg, boolean contentViewOnly) {
+        List<Reference> references = getReferences(javaProject, layoutName);
+        if (references.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<String> types = new LinkedHashSet<String>();
+        for (int rank = Reference.RANK_CONTENT_VIEW; rank <= Reference.RANK_OTHER; rank++) {
+            for (Reference reference : references) {
+                if (reference.getRank() == rank
+                        && (!contentViewOnly || reference.contentView)
+                        && (pkg == null || reference.rPackage == null
+                                || pkg.equals(reference.rPackage))) {
+                    types.add(reference.type);
+                }
+            }
+        }
+
+        return new ArrayList<String>(types);
+    }
+
+    /**
+     * Returns whether the sources of the given project have been fully indexed, such that
+     * {@link #getTypes} returns all the types referencing a layout rather than those
+     * indexed so far
+     *
+     * @param javaProject the project to check
+     * @return true if the project is indexed and none of its sources changed since
+     */
+    synchronized boolean isIndexed(@NonNull IJavaProject javaProject) {
+        ProjectIndex index = mProjects.get(javaProject.getElementName());
+        return index != null && index.isComplete();
+    }
+
+    /**
+     * Runs the given runnable once the sources of the given project have been fully
+     * indexed, starting the indexing if needed. The runnable is run in the indexing job,
+     * or immediately if the project is already indexed.
+     *
+     * @param javaProject the project to index
+     * @param runnable the runnable to run once {@link #isIndexed(IJavaProject)} is true
+     */
+    void runWhenIndexed(@NonNull IJavaProject javaProject, @NonNull Runnable runnable) {
+        synchronized (this) {
+            if (!getIndex(javaProject).isComplete()) {
+                String projectName = javaProject.getElementName();
+                List<Runnable> listeners = mIndexedListeners.get(projectName);
+                if (listeners == null) {
+                    listeners = new ArrayList<Runnable>(1);
+                    mIndexedListeners.put(projectName, listeners);
+                }
+                listeners.add(runnable);
+                return;
+            }
+        }
+
+        runnable.run();
+    }
+
+    @NonNull
+    private synchronized List<Reference> getReferences(@NonNull IJavaProject javaProject,
+            @NonNull String layoutName) {
+        return getIndex(javaProject).getReferences(layoutName);
+    }
+
+    /** Returns the index of a project, scheduling its update if it is not complete */
+    @NonNull
+    private ProjectIndex getIndex(@NonNull IJavaProject javaProject) {
+        assert Thread.holdsLock(this);
+        String projectName = javaProject.getElementName();
+        ProjectIndex index = mProjects.get(projectName);
+        if (index == null) {
+            // Empty until the job has parsed the sources of the project
+            index = new ProjectIndex();
+            mProjects.put(projectName, index);
+        }
+        if (index.needsScan || !index.dirtyUnits.isEmpty()) {
+            mPendingProjects.add(javaProject);
+            mUpdateJob.schedule();
+        }
+
+        return index;
+    }
+
+    /**
+     * Runs the runnables waiting for the given project once it is indexed, or updates
+     * its index again if its sources changed while it was parsed. Called by
+     * {@link #mUpdateJob} only.
+     */
+    private void notifyIndexed(@NonNull IJavaProject javaProject) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            String projectName = javaProject.getElementName();
+            if (!mIndexedListeners.containsKey(projectName)
+                    || !getIndex(javaProject).isComplete()) {
+                return;
+            }
+            listeners = mIndexedListeners.remove(projectName);
+        }
+
+        for (Runnable runnable : listeners) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Parses the sources of the project if they have not been parsed yet, or the changed
+     * compilation units otherwise. Called by {@link #mUpdateJob} only.
+     */
+    private void update(@NonNull IJavaProject javaProject, @NonNull IProgressMonitor monitor) {
+        String projectName = javaProject.getElementName();
+        ProjectIndex index;
+        List<ICompilationUnit> units = null;
+        synchronized (this) {
+            index = mProjects.get(projectName);
+            if (index == null) {
+                // Discarded meanwhile: indexed again on the next lookup
+                return;
+            }
+            if (index.needsScan) {
+                index.needsScan = false;
+                index.dirtyUnits.clear();
+            } else if (!index.dirtyUnits.isEmpty()) {
+                units = new ArrayList<ICompilationUnit>(index.dirtyUnits);
+                index.dirtyUnits.clear();
+            } else {
+                return;
+            }
+            index.parsing = true;
+        }
+
+        // Parse without holding the index lock, and add the references of each unit as
+        // soon as it is parsed, so that lookups meanwhile see what is indexed so far
+        if (units == null) {
+            units = getSourceUnits(javaProject);
+        }
+        for (int i = 0; i < units.size(); i++) {
+            if (monitor.isCanceled()) {
+                synchronized (this) {
+                    // Parse the remaining units the next time the project is looked up
+                    index.dirtyUnits.addAll(units.subList(i, units.size()));
+                    index.parsing = false;
+                }
+                return;
+            }
+
+            ICompilationUnit unit = units.get(i);
+            List<Reference> references = findReferences(unit);
+            synchronized (this) {
+                index.setReferences(unit.getHandleIdentifier(), references);
+            }
+        }
+
+        synchronized (this) {
+            index.parsing = false;
+        }
+    }
+
+    @NonNull
+    private static List<ICompilationUnit> getSourceUnits(@NonNull IJavaProject javaProject) {
+        List<ICompilationUnit> units = new ArrayList<ICompilationUnit>();
+        try {
+            for (IPackageFragmentRoot root : javaProject.getPackageFragmentRoots()) {
+                if (root.getKind() != IPackageFragmentRoot.K_SOURCE) {
+                    continue;
+                }
+                for (IJavaElement child : root.getChildren()) {
+                    if (child instanceof IPackageFragment) {
+                        Collections.addAll(units,
+                                ((IPackageFragment) child).getCompilationUnits());
+                    }
+                }
+            }
+        } catch (JavaModelException e) {
+            AndmoreAndroidPlugin.log(e, "Can't list the sources of %1$s",
+                    javaProject.getElementName());
+        }
+
+        return units;
+    }
+
+    @NonNull
+    private static List<Reference> findReferences(@NonNull ICompilationUnit unit) {
+        if (!unit.exists()) {
+            return Collections.emptyList();
+        }
+
+        // Opening a unit to get its source would build its Java model structure, which is
+        // not needed here, so the file is read directly unless the unit is already open
+        String source = null;
+        if (unit.isOpen()) {
+            try {
+                source = unit.getSource();
+            } catch (JavaModelException e) {
+                // The unit is being removed, or cannot be read
+            }
+        } else if (unit.getResource() instanceof IFile) {
+            source = AndmoreAndroidPlugin.readFile((IFile) unit.getResource());
+        }
+
+        // Most units don't reference layouts: don't parse them
+        if (source == null || !source.contains(R_LAYOUT)) {
+            return Collections.emptyList();
+        }
+
+        return findReferences(source.toCharArray(), unit.getJavaProject());
+    }
+
+    /**
+     * Parses the given Java source, and returns its references to layouts
+     *
+     * @param source the contents of a compilation unit
+     * @param javaProject the project whose compiler options should be used, or null
+     * @return the references found, never null
+     */
+    @NonNull
+    static List<Reference> findReferences(@NonNull char[] source,
+            @Nullable IJavaProject javaProject) {
+        ASTParser parser = ASTParser.newParser(AST.JLS3);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        if (javaProject != null) {
+            parser.setCompilerOptions(javaProject.getOptions(true));
+        }
+        parser.setSource(source);
+        parser.setResolveBindings(false);
+        ASTNode node = parser.createAST(null);
+        if (!(node instanceof CompilationUnit)) {
+            return Collections.emptyList();
+        }
+
+        CompilationUnit unit = (CompilationUnit) node;
+        String pkg = unit.getPackage() != null
+                ? unit.getPackage().getName().getFullyQualifiedName() : null;
+        LayoutReferenceVisitor visitor = new LayoutReferenceVisitor(pkg);
+        unit.accept(visitor);
+
+        return visitor.mReferences;
+    }
+
+    // ---- Implements IElementChangedListener ----
+
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        synchronized (this) {
+            if (!mProjects.isEmpty()) {
+                processDelta(event.getDelta());
+            }
+        }
+    }
+
+    /** Marks the changed compilation units as dirty, or discards the changed projects */
+    private void processDelta(IJavaElementDelta delta) {
+        IJavaElement element = delta.getElement();
+        int kind = delta.getKind();
+        int flags = delta.getFlags();
+        switch (element.getElementType()) {
+            case IJavaElement.JAVA_MODEL:
+                break;
+            case IJavaElement.JAVA_PROJECT:
+                if (kind != IJavaElementDelta.CHANGED
+                        || (flags & (IJavaElementDelta.F_CLASSPATH_CHANGED
+                                | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+                                | IJavaElementDelta.F_OPENED
+                                | IJavaElementDelta.F_CLOSED)) != 0) {
+                    mProjects.remove(element.getElementName());
+                    return;
+                }
+                break;
+            case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+            case IJavaElement.PACKAGE_FRAGMENT:
+                if (kind != IJavaElementDelta.CHANGED
+                        || (flags & (IJavaElementDelta.F_ADDED_TO_CLASSPATH
+                                | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH)) != 0) {
+                    // The units of an added or removed package are not all listed
+                    mProjects.remove(element.getJavaProject().getElementName());
+                    return;
+                }
+                break;
+            case IJavaElement.COMPILATION_UNIT:
+                ProjectIndex index = mProjects.get(element.getJavaProject().getElementName());
+                if (index != null) {
+                    index.dirtyUnits.add(((ICompilationUnit) element).getPrimary());
+                }
+                return;
+            default:
+                return;
+        }
+
+        for (IJavaElementDelta child : delta.getAffectedChildren()) {
+            processDelta(child);
+        }
+    }
+
+    /** The references to layouts in the sources of a project */
+    private static final class ProjectIndex {
+        /** Whether the sources of the project have yet to be parsed */
+        boolean needsScan = true;
+
+        /** The references by layout name */
+        private final Map<String, List<Reference>> mLayouts =
+                new HashMap<String, List<Reference>>();
+
+        /** The references by compilation unit handle */
+        private final Map<String, List<Reference>> mUnits =
+                new HashMap<String, List<Reference>>();
+
+        /** Compilation units changed since they were last parsed */
+        final Set<ICompilationUnit> dirtyUnits = new HashSet<ICompilationUnit>();
+
+        /** Whether the job is parsing units of the project */
+        boolean parsing;
+
+        /** Returns whether all the sources of the project have been parsed */
+        boolean isComplete() {
+            return !needsScan && !parsing && dirtyUnits.isEmpty();
+        }
+
+        @NonNull
+        List<Reference> getReferences(@NonNull String layoutName) {
+            List<Reference> references = mLayouts.get(layoutName);
+            if (references == null) {
+                return Collections.emptyList();
+            }
+
+            return new ArrayList<Reference>(references);
+        }
+
+        /** Replaces the references of a compilation unit */
+        void setReferences(@NonNull String unit, @NonNull List<Reference> references) {
+            List<Reference> previous = references.isEmpty()
+                    ? mUnits.remove(unit) : mUnits.put(unit, references);
+            if (previous != null) {
+                for (Reference reference : previous) {
+                    List<Reference> layoutReferences = mLayouts.get(reference.layout);
+                    if (layoutReferences != null) {
+                        layoutReferences.remove(reference);
+                        if (layoutReferences.isEmpty()) {
+                            mLayouts.remove(reference.layout);
+                        }
+                    }
+                }
+            }
+
+            for (Reference reference : references) {
+                List<Reference> layoutReferences = mLayouts.get(reference.layout);
+                if (layoutReferences == null) {
+                    layoutReferences = new ArrayList<Reference>(2);
+                    mLayouts.put(reference.layout, layoutReferences);
+                }
+                layoutReferences.add(reference);
+            }
+        }
+    }
+
+    /** A reference to a layout field from a type */
+    static final class Reference {
+        static final int RANK_CONTENT_VIEW = 0;
+        static final int RANK_ACTIVITY = 1;
+        static final int RANK_INFLATE = 2;
+        static final int RANK_OTHER = 3;
+
+        /** The name of the layout */
+        final String layout;
+        /** The package of the R class, or null if the R class is not qualified */
+        final String rPackage;
+        /** The fully qualified name of the referencing type */
+        final String type;
+        /** Whether the layout is passed to {@code setContentView} or {@code inflate} */
+        final boolean contentView;
+        /** Whether the type looks like an activity, or references it from onCreate */
+        final boolean activity;
+
+        Reference(String layout, String rPackage, String type, boolean contentView,
+                boolean activity) {
+            this.layout = layout;
+            this.rPackage = rPackage;
+            this.type = type;
+            this.contentView = contentView;
+            this.activity = activity;
+        }
+
+        int getRank() {
+            if (activity) {
+                return contentView ? RANK_CONTENT_VIEW : RANK_ACTIVITY;
+            } else {
+                return contentView ? RANK_INFLATE : RANK_OTHER;
+            }
+        }
+    }
+
+    /** Visitor collecting the {@code R.layout.name} references of a compilation unit */
+    private static final class LayoutReferenceVisitor extends ASTVisitor {
+        private final String mPackage;
+        private final List<Reference> mReferences = new ArrayList<Reference>();
+
+        LayoutReferenceVisitor(String pkg) {
+            mPackage = pkg;
+        }
+
+        @Override
+        public boolean visit(QualifiedName node) {
+            String qualifier = node.getQualifier().getFullyQualifiedName();
+            String rPackage;
+            if (qualifier.equals(R_LAYOUT)) {
+                rPackage = null;
+            } else if (qualifier.endsWith('.' + R_LAYOUT)) {
+                rPackage = qualifier.substring(0, qualifier.length() - R_LAYOUT.length() - 1);
+                if (rPackage.equals(ANDROID_PKG)) {
+                    // Framework layouts
+                    return false;
+                }
+            } else {
+                return true;
+            }
+
+            boolean contentView = false;
+            if (node.getLocationInParent() == MethodInvocation.ARGUMENTS_PROPERTY) {
+                String method = ((MethodInvocation) node.getParent()).getName().getIdentifier();
+                contentView = method.equals(SET_CONTENT_VIEW) || method.equals(INFLATE);
+            }
+
+            String methodName = null;
+            AbstractTypeDeclaration declaration = null;
+            for (ASTNode parent = node.getParent(); parent != null;
+                    parent = parent.getParent()) {
+                if (parent instanceof MethodDeclaration && methodName == null) {
+                    methodName = ((MethodDeclaration) parent).getName().getIdentifier();
+                } else if (parent instanceof AbstractTypeDeclaration) {
+                    declaration = (AbstractTypeDeclaration) parent;
+                    break;
+                }
+            }
+            if (declaration == null) {
+                return false;
+            }
+
+            boolean activity = ON_CREATE.equals(methodName);
+            if (declaration instanceof TypeDeclaration) {
+                Type superclass = ((TypeDeclaration) declaration).getSuperclassType();
+                if (superclass != null) {
+                    String superName = superclass.toString();
+                    int typeArguments = superName.indexOf('<');
+                    if (typeArguments != -1) {
+                        superName = superName.substring(0, typeArguments);
+                    }
+                    activity |= superName.endsWith(ACTIVITY_SUFFIX);
+                }
+            }
+
+            mReferences.add(new Reference(node.getName().getIdentifier(), rPackage,
+                    getFullyQualifiedName(declaration), contentView, activity));
+
+            return false;
+        }
+
+        /** Returns the name of the given type, with {@code $} separating member types */
+        private String getFullyQualifiedName(AbstractTypeDeclaration declaration) {
+            StringBuilder sb = new StringBuilder(declaration.getName().getIdentifier());
+            for (ASTNode parent = declaration.getParent(); parent != null;
+                    parent = parent.getParent()) {
+                if (parent instanceof AbstractTypeDeclaration) {
+                    sb.insert(0, '$');
+                    sb.insert(0, ((AbstractTypeDeclaration) parent).getName().getIdentifier());
+                }
+            }
+            if (mPackage != null) {
+                sb.insert(0, '.');
+                sb.insert(0, mPackage);
+            }
+
+            return sb.toString();
+        }
+    }
+}
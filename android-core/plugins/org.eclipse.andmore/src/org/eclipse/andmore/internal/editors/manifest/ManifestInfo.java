@@ -34,7 +34,6 @@ import static com.android.xml.AndroidManifest.NODE_ACTIVITY;
 import static com.android.xml.AndroidManifest.NODE_METADATA;
 import static com.android.xml.AndroidManifest.NODE_USES_SDK;
 import static com.android.xml.AndroidManifest.VALUE_PARENT_ACTIVITY;
-import static org.eclipse.jdt.core.search.IJavaSearchConstants.REFERENCES;
 
 import com.android.SdkConstants;
 import com.android.annotations.NonNull;
@@ -58,26 +57,13 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.QualifiedName;
-import org.eclipse.jdt.core.IField;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.ITypeHierarchy;
-import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
-import org.eclipse.jdt.core.search.SearchMatch;
-import org.eclipse.jdt.core.search.SearchParticipant;
-import org.eclipse.jdt.core.search.SearchPattern;
-import org.eclipse.jdt.core.search.SearchRequestor;
 import org.eclipse.jdt.internal.core.BinaryType;
-import org.eclipse.jface.text.IDocument;
-import org.eclipse.ui.editors.text.TextFileDocumentProvider;
-import org.eclipse.ui.texteditor.IDocumentProvider;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -87,11 +73,8 @@ import org.xml.sax.SAXException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -221,13 +204,6 @@ public class ManifestInfo {
         }
     }
 
-    /**
-     * The maximum number of milliseconds to search for an activity in the codebase when
-     * attempting to associate layouts with activities in
-     * {@link #guessActivity(IFile, String)}
-     */
-    private static final int SEARCH_TIMEOUT_MS = 3000;
-
     private final IProject mProject;
     private String mPackage;
     private String mManifestTheme;
@@ -623,8 +599,10 @@ public class ManifestInfo {
 
     /**
      * Returns the activities associated with the given layout file. Makes an educated guess
-     * by peeking at the usages of the R.layout.name field corresponding to the layout and
-     * if it finds a usage.
+     * by peeking at the usages of the R.layout.name field corresponding to the layout, in
+     * the sources of the project, preferring the activities passing it to setContentView.
+     * The sources are indexed in the background: until the project has been indexed, the
+     * result may be incomplete or empty, rather than blocking the caller.
      *
      * @param project the project containing the layout
      * @param layoutName the layout whose activity we want to look up
@@ -633,57 +611,59 @@ public class ManifestInfo {
      */
     @NonNull
     public static List<String> guessActivities(IProject project, String layoutName, String pkg) {
-        final LinkedList<String> activities = new LinkedList<String>();
-        SearchRequestor requestor = new SearchRequestor() {
-            @Override
-            public void acceptSearchMatch(SearchMatch match) throws CoreException {
-                Object element = match.getElement();
-                if (element instanceof IMethod) {
-                    IMethod method = (IMethod) element;
-                    IType declaringType = method.getDeclaringType();
-                    String fqcn = declaringType.getFullyQualifiedName();
-
-                    if ((declaringType.getSuperclassName() != null &&
-                            declaringType.getSuperclassName().endsWith("Activity")) //$NON-NLS-1$
-                        || method.getElementName().equals("onCreate")) { //$NON-NLS-1$
-                        activities.addFirst(fqcn);
-                    } else {
-                        activities.addLast(fqcn);
-                    }
-                }
-            }
-        };
         try {
             IJavaProject javaProject = BaseProjectHelper.getJavaProject(project);
-            if (javaProject == null) {
-                return Collections.emptyList();
+            if (javaProject != null) {
+                return LayoutActivityIndex.get().getTypes(javaProject, layoutName, pkg, false);
             }
-            // TODO - look around a bit more and see if we can figure out whether the
-            // call if from within a setContentView call!
+        } catch (CoreException e) {
+            AndmoreAndroidPlugin.log(e, null);
+        }
+
+        return Collections.emptyList();
+    }
 
-            // Search for which java classes call setContentView(R.layout.layoutname);
-            String typeFqcn = "R.layout"; //$NON-NLS-1$
-            if (pkg != null) {
-                typeFqcn = pkg + '.' + typeFqcn;
+    /**
+     * Returns whether the sources of the given project have been fully indexed, in which
+     * case {@link #guessActivities(IProject, String, String)} is final, rather than based
+     * on the sources indexed so far
+     *
+     * @param project the project containing the layouts
+     * @return true if the guesses made for the project are final
+     */
+    public static boolean isActivityIndexComplete(IProject project) {
+        try {
+            IJavaProject javaProject = BaseProjectHelper.getJavaProject(project);
+            if (javaProject != null) {
+                return LayoutActivityIndex.get().isIndexed(javaProject);
             }
+        } catch (CoreException e) {
+            AndmoreAndroidPlugin.log(e, null);
+        }
 
-            IType type = javaProject.findType(typeFqcn);
-            if (type != null) {
-                IField field = type.getField(layoutName);
-                if (field.exists()) {
-                    SearchPattern pattern = SearchPattern.createPattern(field, REFERENCES);
-                    try {
-                        search(requestor, javaProject, pattern);
-                    } catch (OperationCanceledException canceled) {
-                        // pass
-                    }
-                }
+        return true;
+    }
+
+    /**
+     * Runs the given runnable once {@link #isActivityIndexComplete(IProject)} is true for
+     * the given project. The runnable is run from a background job, or immediately if the
+     * project is already indexed.
+     *
+     * @param project the project containing the layouts
+     * @param runnable the runnable to run once the project is indexed
+     */
+    public static void runWhenActivityIndexComplete(IProject project, Runnable runnable) {
+        try {
+            IJavaProject javaProject = BaseProjectHelper.getJavaProject(project);
+            if (javaProject != null) {
+                LayoutActivityIndex.get().runWhenIndexed(javaProject, runnable);
+                return;
             }
         } catch (CoreException e) {
             AndmoreAndroidPlugin.log(e, null);
         }
 
-        return activities;
+        runnable.run();
     }
 
     /**
@@ -726,157 +706,36 @@ public class ManifestInfo {
     /**
      * Returns the activity associated with the given layout file.
      * <p>
-     * This is an alternative to {@link #guessActivity(IFile, String)}. Whereas
-     * guessActivity simply looks for references to "R.layout.foo", this method searches
-     * for all usages of Activity#setContentView(int), and for each match it looks up the
-     * corresponding call text (such as "setContentView(R.layout.foo)"). From this it uses
-     * a regexp to pull out "foo" from this, and stores the association that layout "foo"
-     * is associated with the activity class that contained the setContentView call.
-     * <p>
-     * This has two potential advantages:
-     * <ol>
-     * <li>It can be faster. We do the reference search -once-, and we've built a map of
-     * all the layout-to-activity mappings which we can then immediately look up other
-     * layouts for, which is particularly useful at startup when we have to compute the
-     * layout activity associations to populate the theme choosers.
-     * <li>It can be more accurate. Just because an activity references an "R.layout.foo"
-     * field doesn't mean it's setting it as a content view.
-     * </ol>
-     * However, this second advantage is also its chief problem. There are some common
-     * code constructs which means that the associated layout is not explicitly referenced
-     * in a direct setContentView call; on a couple of sample projects I tested I found
-     * patterns like for example "setContentView(v)" where "v" had been computed earlier.
-     * Therefore, for now we're going to stick with the more general approach of just
-     * looking up each field when needed. We're keeping the code around, though statically
-     * compiled out with the "if (false)" construct below in case we revisit this.
+     * This is an alternative to {@link #guessActivity(IProject, String, String)}. Whereas
+     * guessActivity accepts any reference to "R.layout.foo", this method only considers
+     * the types passing the layout to a setContentView or inflate call, such as
+     * "setContentView(R.layout.foo)", which is more accurate. However, there are some
+     * common code constructs which means that the associated layout is not explicitly
+     * referenced in a direct setContentView call, for example "setContentView(v)" where
+     * "v" had been computed earlier, in which case no activity is found.
      *
-     * @param layoutFile the layout whose activity we want to look up
+     * @param layoutName the layout whose activity we want to look up
      * @return the activity name
      */
-    @SuppressWarnings("all")
     @Nullable
     public String guessActivityBySetContentView(String layoutName) {
-        if (false) {
-            // These should be fields
-            final Pattern LAYOUT_FIELD_PATTERN =
-                Pattern.compile("R\\.layout\\.([a-z0-9_]+)"); //$NON-NLS-1$
-            Map<String, String> mUsages = null;
-
-            sync();
-            if (mUsages == null) {
-                final Map<String, String> usages = new HashMap<String, String>();
-                mUsages = usages;
-                SearchRequestor requestor = new SearchRequestor() {
-                    @Override
-                    public void acceptSearchMatch(SearchMatch match) throws CoreException {
-                        Object element = match.getElement();
-                        if (element instanceof IMethod) {
-                            IMethod method = (IMethod) element;
-                            IType declaringType = method.getDeclaringType();
-                            String fqcn = declaringType.getFullyQualifiedName();
-                            IDocumentProvider provider = new TextFileDocumentProvider();
-                            IResource resource = match.getResource();
-                            try {
-                                provider.connect(resource);
-                                IDocument document = provider.getDocument(resource);
-                                if (document != null) {
-                                    String matchText = document.get(match.getOffset(),
-                                            match.getLength());
-                                    Matcher matcher = LAYOUT_FIELD_PATTERN.matcher(matchText);
-                                    if (matcher.find()) {
-                                        usages.put(matcher.group(1), fqcn);
-                                    }
-                                }
-                            } catch (Exception e) {
-                                AndmoreAndroidPlugin.log(e, "Can't find range information for %1$s",
-                                        resource.getName());
-                            } finally {
-                                provider.disconnect(resource);
-                            }
-                        }
-                    }
-                };
-                try {
-                    IJavaProject javaProject = BaseProjectHelper.getJavaProject(mProject);
-                    if (javaProject == null) {
-                        return null;
-                    }
-
-                    // Search for which java classes call setContentView(R.layout.layoutname);
-                    String typeFqcn = "R.layout"; //$NON-NLS-1$
-                    if (mPackage != null) {
-                        typeFqcn = mPackage + '.' + typeFqcn;
-                    }
-
-                    IType activityType = javaProject.findType(CLASS_ACTIVITY);
-                    if (activityType != null) {
-                        IMethod method = activityType.getMethod(
-                                "setContentView", new String[] {"I"}); //$NON-NLS-1$ //$NON-NLS-2$
-                        if (method.exists()) {
-                            SearchPattern pattern = SearchPattern.createPattern(method,
-                                    REFERENCES);
-                            search(requestor, javaProject, pattern);
-                        }
-                    }
-                } catch (CoreException e) {
-                    AndmoreAndroidPlugin.log(e, null);
+        sync();
+        try {
+            IJavaProject javaProject = BaseProjectHelper.getJavaProject(mProject);
+            if (javaProject != null) {
+                List<String> types = LayoutActivityIndex.get().getTypes(javaProject,
+                        layoutName, mPackage, true);
+                if (!types.isEmpty()) {
+                    return types.get(0);
                 }
             }
-
-            return mUsages.get(layoutName);
+        } catch (CoreException e) {
+            AndmoreAndroidPlugin.log(e, null);
         }
 
         return null;
     }
 
-    /**
-     * Performs a search using the given pattern, scope and handler. The search will abort
-     * if it takes longer than {@link #SEARCH_TIMEOUT_MS} milliseconds.
-     */
-    private static void search(SearchRequestor requestor, IJavaProject javaProject,
-            SearchPattern pattern) throws CoreException {
-        // Find the package fragment specified in the manifest; the activities should
-        // live there.
-        IJavaSearchScope scope = createPackageScope(javaProject);
-
-        SearchParticipant[] participants = new SearchParticipant[] {
-            SearchEngine.getDefaultSearchParticipant()
-        };
-        SearchEngine engine = new SearchEngine();
-
-        final long searchStart = System.currentTimeMillis();
-        NullProgressMonitor monitor = new NullProgressMonitor() {
-            private boolean mCancelled;
-            @Override
-            public void internalWorked(double work) {
-                long searchEnd = System.currentTimeMillis();
-                if (searchEnd - searchStart > SEARCH_TIMEOUT_MS) {
-                    mCancelled = true;
-                }
-            }
-
-            @Override
-            public boolean isCanceled() {
-                return mCancelled;
-            }
-        };
-        engine.search(pattern, participants, scope, requestor, monitor);
-    }
-
-    /** Creates a package search scope for the first package root in the given java project */
-    private static IJavaSearchScope createPackageScope(IJavaProject javaProject) {
-        IPackageFragmentRoot packageRoot = getSourcePackageRoot(javaProject);
-
-        IJavaSearchScope scope;
-        if (packageRoot != null) {
-            IJavaElement[] scopeElements = new IJavaElement[] { packageRoot };
-            scope = SearchEngine.createJavaSearchScope(scopeElements);
-        } else {
-            scope = SearchEngine.createWorkspaceScope();
-        }
-        return scope;
-    }
-
     /**
      * Returns the first package root for the given java project
      *
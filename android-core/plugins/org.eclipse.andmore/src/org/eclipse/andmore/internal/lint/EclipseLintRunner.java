@@ -131,7 +131,14 @@ public class EclipseLintRunner {
                 resources = addLibraries(resources);
             }
 
-            cancelCurrentJobs(false);
+            if (source != null) {
+                // Checking a single file, e.g. on save: only supersede the pending checks
+                // of the same file. Cancelling a full check would lose the results of its
+                // project wide detectors, which single file checks do not run again.
+                cancelCurrentFileJobs(source);
+            } else {
+                cancelCurrentJobs(false);
+            }
 
             LintJob job = new LintJob(client, resources, source);
             job.schedule();
@@ -193,6 +200,15 @@ public class EclipseLintRunner {
         }
     }
 
+    /** Cancels the current lint jobs checking the given file on its own, if any */
+    private static void cancelCurrentFileJobs(@NonNull IResource source) {
+        for (Job job : LintJob.getCurrentJobs()) {
+            if (job instanceof LintJob && source.equals(((LintJob) job).getSource())) {
+                job.cancel();
+            }
+        }
+    }
+
     /** If the resource list contains projects, add in any library projects as well */
     private static List<? extends IResource> addLibraries(List<? extends IResource> resources) {
         if (resources != null && !resources.isEmpty()) {
@@ -184,6 +184,10 @@ public class LintDeltaProcessor implements Runnable {
             }
         };
         resourceMonitor.addFileListener(sListener, IResourceDelta.ADDED | IResourceDelta.CHANGED);
+
+        // Incremental lint looks up super classes through JDT, which is expensive, so they
+        // are cached until the Java model reports a change
+        SuperTypeCache.get();
     }
 
     /**
@@ -195,6 +199,7 @@ public class LintDeltaProcessor implements Runnable {
         assert sListener != null;
         resourceMonitor.removeFileListener(sListener);
         sListener = null;
+        SuperTypeCache.dispose();
     }
 
     private static IFileListener sListener;
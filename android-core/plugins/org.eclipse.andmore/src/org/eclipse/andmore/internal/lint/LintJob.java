@@ -24,7 +24,9 @@ import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.tools.lint.client.api.IssueRegistry;
 import com.android.tools.lint.client.api.LintDriver;
+import com.android.tools.lint.client.api.LintListener;
 import com.android.tools.lint.client.api.LintRequest;
+import com.android.tools.lint.detector.api.Context;
 import com.android.tools.lint.detector.api.Issue;
 import com.android.tools.lint.detector.api.Scope;
 import com.android.utils.SdkUtils;
@@ -44,18 +46,28 @@ import org.eclipse.core.runtime.jobs.Job;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Job to check lint on a set of resources */
 public final class LintJob extends Job {
     /** Job family */
     private static final Object FAMILY_RUN_LINT = new Object();
+    /**
+     * Lock held while a job updates markers and analyzes files, such that a single file
+     * check does not interleave with a full check of its project
+     */
+    private static final Object RUN_LOCK = new Object();
     private final EclipseLintClient mClient;
     private final List<? extends IResource> mResources;
     private final IResource mSource;
     private final IssueRegistry mRegistry;
     private LintDriver mLint;
     private boolean mFatal;
+    /** Time spent in each kind of check, in milliseconds, in the order they were run */
+    private final Map<String, Long> mTimings = new LinkedHashMap<String, Long>();
+    private long mDuration;
 
     public LintJob(
             @NonNull EclipseLintClient client,
@@ -140,27 +152,36 @@ public final class LintJob extends Job {
             if (mSource == null) {
                 assert !Scope.checkSingleFile(scope) : scope + " with " + mResources;
             }
-            // Check single file?
-            if (mSource != null) {
-                // Delete specific markers
-                IMarker[] markers = EclipseLintClient.getMarkers(mSource);
-                for (IMarker marker : markers) {
-                    String id = marker.getAttribute(EclipseLintRunner.MARKER_CHECKID_PROPERTY, "");
-                    Issue issue = mRegistry.getIssue(id);
-                    if (issue == null) {
-                        continue;
-                    }
-                    if (issue.getImplementation().isAdequate(scope)) {
-                        marker.delete();
+            synchronized (RUN_LOCK) {
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+
+                // Check single file?
+                if (mSource != null) {
+                    // Delete specific markers: only the detectors applicable to the file
+                    // run, so the markers of the project wide checks are kept
+                    IMarker[] markers = EclipseLintClient.getMarkers(mSource);
+                    for (IMarker marker : markers) {
+                        String id = marker.getAttribute(
+                                EclipseLintRunner.MARKER_CHECKID_PROPERTY, "");
+                        Issue issue = mRegistry.getIssue(id);
+                        if (issue == null) {
+                            continue;
+                        }
+                        if (issue.getImplementation().isAdequate(scope)) {
+                            marker.delete();
+                        }
                     }
+                    mClient.setSearchForSuperClasses(true);
+                } else {
+                    EclipseLintClient.clearMarkers(mResources);
                 }
-                mClient.setSearchForSuperClasses(true);
-            } else {
-                EclipseLintClient.clearMarkers(mResources);
-            }
 
-            mLint = new LintDriver(mRegistry, mClient);
-            mLint.analyze(new LintRequest(mClient, files).setScope(scope));
+                mLint = new LintDriver(mRegistry, mClient);
+                mLint.addLintListener(new TimingListener());
+                mLint.analyze(new LintRequest(mClient, files).setScope(scope));
+            }
             mFatal = mClient.hasFatalErrors();
             return Status.OK_STATUS;
         } catch (Exception e) {
@@ -182,6 +203,41 @@ public final class LintJob extends Job {
         return mFatal;
     }
 
+    /**
+     * Returns the resource checked on its own, if this job checks a single file
+     *
+     * @return the checked source file, or null
+     */
+    @Nullable
+    public IResource getSource() {
+        return mSource;
+    }
+
+    /**
+     * Returns the time spent in each kind of check, such as scanning the Java sources or
+     * the resource files, in the order they were run. The time spent in the project wide
+     * checks run after the files of a kind are scanned is included in that kind.
+     *
+     * @return the times in milliseconds, by kind of check
+     */
+    @NonNull
+    public Map<String, Long> getTimings() {
+        synchronized (mTimings) {
+            return new LinkedHashMap<String, Long>(mTimings);
+        }
+    }
+
+    /**
+     * Returns the time spent analyzing the files
+     *
+     * @return the time in milliseconds
+     */
+    public long getDuration() {
+        synchronized (mTimings) {
+            return mDuration;
+        }
+    }
+
     /**
      * Returns the associated lint client
      *
@@ -198,4 +254,51 @@ public final class LintJob extends Job {
         IJobManager jobManager = Job.getJobManager();
         return jobManager.find(LintJob.FAMILY_RUN_LINT);
     }
+
+    /** Charges the time between the events of the lint driver to the kind of check run */
+    private final class TimingListener implements LintListener {
+        private String mCheck = "Setup";
+        private long mStart = System.currentTimeMillis();
+
+        @Override
+        public void update(@NonNull LintDriver driver, @NonNull EventType type,
+                @Nullable Context context) {
+            long now = System.currentTimeMillis();
+            synchronized (mTimings) {
+                Long time = mTimings.get(mCheck);
+                mTimings.put(mCheck, (time != null ? time.longValue() : 0) + now - mStart);
+                mDuration += now - mStart;
+            }
+            mStart = now;
+
+            switch (type) {
+                case SCANNING_PROJECT:
+                case SCANNING_LIBRARY_PROJECT:
+                case NEW_PHASE:
+                    mCheck = "Project checks";
+                    break;
+                case SCANNING_FILE:
+                    if (context != null) {
+                        mCheck = getCheck(context.file.getName());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String getCheck(String name) {
+            if (name.endsWith(DOT_JAVA)) {
+                return "Java sources";
+            } else if (name.endsWith(DOT_CLASS)) {
+                return "Class files";
+            } else if (name.equals(SdkConstants.FN_ANDROID_MANIFEST_XML)) {
+                return "Manifest";
+            } else if (SdkUtils.endsWithIgnoreCase(name, DOT_XML)) {
+                return "Resource files";
+            } else {
+                return "Other files";
+            }
+        }
+    }
 }
@@ -75,6 +75,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -116,6 +117,9 @@ public class LintViewPart extends ViewPart implements SelectionListener, IJobCha
     private Action mConfigureColumns;
     private Action mOptions;
 
+    /** The last lint job which completed, whose timings are shown, or null */
+    private volatile LintJob mLastJob;
+
     /**
      * Initial projects to show: this field is only briefly not null during the
      * construction initiated by {@link #show(List)}
@@ -390,6 +394,10 @@ public class LintViewPart extends ViewPart implements SelectionListener, IJobCha
         mRefreshAction.setImageDescriptor(
                 IconFactory.getInstance().getImageDescriptor(REFRESH_ICON));
 
+        if (event.getJob() instanceof LintJob && event.getResult().isOK()) {
+            mLastJob = (LintJob) event.getJob();
+        }
+
         if (!mLintView.isDisposed()) {
             mLintView.getDisplay().asyncExec(new Runnable()  {
                 @Override
@@ -405,7 +413,24 @@ public class LintViewPart extends ViewPart implements SelectionListener, IJobCha
     private void updateIssueCount() {
         int errors = mLintView.getErrorCount();
         int warnings = mLintView.getWarningCount();
-        mErrorLabel.setText(String.format("%1$d errors, %2$d warnings", errors, warnings));
+        String text = String.format("%1$d errors, %2$d warnings", errors, warnings);
+
+        // Show how long the last check took, and in which kind of check
+        LintJob job = mLastJob;
+        String tooltip = null;
+        if (job != null) {
+            text += String.format(" (checked in %1$d ms)", job.getDuration());
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Long> entry : job.getTimings().entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(String.format("%1$s: %2$d ms", entry.getKey(), entry.getValue()));
+            }
+            tooltip = sb.toString();
+        }
+        mErrorLabel.setText(text);
+        mErrorLabel.setToolTipText(tooltip);
     }
 
     @Override
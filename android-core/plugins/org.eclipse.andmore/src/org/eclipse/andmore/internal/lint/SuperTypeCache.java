@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.lint;
+
+import static com.android.SdkConstants.DOT_CLASS;
+import static com.android.SdkConstants.DOT_JAVA;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.tools.lint.detector.api.ClassContext;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the super classes of the Java types of the workspace, used by
+ * {@link EclipseLintClient} to look up super classes during incremental lint.
+ * <p/>
+ * Building a JDT supertype hierarchy is expensive, and the Java detectors look up the
+ * super classes of every class they visit, so the super class chain of each type is
+ * computed once and kept across lint runs, until a Java element delta shows that it may
+ * have changed: when a compilation unit declaring the type or one of its super classes
+ * changes, or when the classpath of a project changes.
+ */
+final class SuperTypeCache implements IElementChangedListener {
+    private static SuperTypeCache sInstance;
+
+    /**
+     * Chain stored for the types which could not be found. This is compared by identity,
+     * since the chain of {@code java/lang/Object} is empty as well.
+     */
+    private static final String[] NOT_FOUND = new String[0];
+
+    /** Super class chains, in bottom-up order, by project name and internal class name */
+    private final Map<String, Map<String, String[]>> mChains =
+            new HashMap<String, Map<String, String[]>>();
+
+    /** Incremented whenever chains are invalidated, to not cache chains computed before */
+    private int mGeneration;
+
+    private SuperTypeCache() {
+    }
+
+    /**
+     * Returns the cache, listening to Java element changes to keep it up to date
+     *
+     * @return the cache
+     */
+    @NonNull
+    static synchronized SuperTypeCache get() {
+        if (sInstance == null) {
+            sInstance = new SuperTypeCache();
+            JavaCore.addElementChangedListener(sInstance, ElementChangedEvent.POST_CHANGE);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Discards the cache, and stops listening to Java element changes
+     */
+    static synchronized void dispose() {
+        if (sInstance != null) {
+            JavaCore.removeElementChangedListener(sInstance);
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Returns the super classes of the given class, as seen from the given project
+     *
+     * @param javaProject the project to look up the class from
+     * @param name the internal name of the class
+     * @return the internal names of the super classes, from the direct super class to
+     *         {@code java/lang/Object}, or null if the class could not be found
+     * @throws JavaModelException if the type hierarchy cannot be computed
+     */
+    @Nullable
+    String[] getSuperClasses(@NonNull IJavaProject javaProject, @NonNull String name)
+            throws JavaModelException {
+        String projectName = javaProject.getElementName();
+        int generation;
+        synchronized (this) {
+            Map<String, String[]> chains = mChains.get(projectName);
+            if (chains != null) {
+                String[] chain = chains.get(name);
+                if (chain != null) {
+                    return chain != NOT_FOUND ? chain : null;
+                }
+            }
+            generation = mGeneration;
+        }
+
+        // Compute the hierarchy without holding the lock, since this may take a while and
+        // Java element changes are notified meanwhile
+        String[] chain = NOT_FOUND;
+        IType type = javaProject.findType(ClassContext.getFqcn(name));
+        if (type != null) {
+            ITypeHierarchy hierarchy = type.newSupertypeHierarchy(new NullProgressMonitor());
+            IType[] superClasses = hierarchy.getAllSuperclasses(type);
+            chain = new String[superClasses.length];
+            for (int i = 0; i < superClasses.length; i++) {
+                chain[i] = getInternalName(superClasses[i]);
+            }
+        }
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                Map<String, String[]> chains = mChains.get(projectName);
+                if (chains == null) {
+                    chains = new HashMap<String, String[]>();
+                    mChains.put(projectName, chains);
+                }
+                chains.put(name, chain);
+
+                // The chains of the super classes come for free
+                for (int i = 0; i < chain.length; i++) {
+                    if (!chains.containsKey(chain[i])) {
+                        chains.put(chain[i], Arrays.copyOfRange(chain, i + 1, chain.length));
+                    }
+                }
+            }
+        }
+
+        return chain != NOT_FOUND ? chain : null;
+    }
+
+    @NonNull
+    private static String getInternalName(@NonNull IType type) {
+        String key = type.getKey();
+        if (!key.isEmpty()
+                && key.charAt(0) == 'L'
+                && key.charAt(key.length() - 1) == ';') {
+            return key.substring(1, key.length() - 1);
+        } else {
+            String fqcn = type.getFullyQualifiedName();
+            return ClassContext.getInternalName(fqcn);
+        }
+    }
+
+    // ---- Implements IElementChangedListener ----
+
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        List<String> changedTypes = new ArrayList<String>();
+        if (processDelta(event.getDelta(), changedTypes)) {
+            synchronized (this) {
+                mGeneration++;
+                mChains.clear();
+            }
+        } else if (!changedTypes.isEmpty()) {
+            synchronized (this) {
+                mGeneration++;
+                for (Map<String, String[]> chains : mChains.values()) {
+                    invalidate(chains, changedTypes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the internal names (or package prefixes, ending with a slash) of the types
+     * which may have changed in the given delta
+     *
+     * @return true if the whole cache should be invalidated instead
+     */
+    private static boolean processDelta(IJavaElementDelta delta, List<String> changedTypes) {
+        IJavaElement element = delta.getElement();
+        int kind = delta.getKind();
+        int flags = delta.getFlags();
+        switch (element.getElementType()) {
+            case IJavaElement.JAVA_MODEL:
+                break;
+            case IJavaElement.JAVA_PROJECT:
+                if (kind != IJavaElementDelta.CHANGED
+                        || (flags & (IJavaElementDelta.F_CLASSPATH_CHANGED
+                                | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED
+                                | IJavaElementDelta.F_OPENED
+                                | IJavaElementDelta.F_CLOSED)) != 0) {
+                    // Other projects may see its types through their classpath
+                    return true;
+                }
+                break;
+            case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+                if (kind != IJavaElementDelta.CHANGED
+                        || (flags & (IJavaElementDelta.F_ADDED_TO_CLASSPATH
+                                | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH
+                                | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED)) != 0) {
+                    return true;
+                }
+                break;
+            case IJavaElement.PACKAGE_FRAGMENT:
+                if (kind != IJavaElementDelta.CHANGED) {
+                    changedTypes.add(getPackagePrefix(element));
+                    return false;
+                }
+                break;
+            case IJavaElement.COMPILATION_UNIT:
+            case IJavaElement.CLASS_FILE:
+                addTypes(element, changedTypes);
+                return false;
+            default:
+                return false;
+        }
+
+        for (IJavaElementDelta child : delta.getAffectedChildren()) {
+            if (processDelta(child, changedTypes)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String getPackagePrefix(IJavaElement packageFragment) {
+        String packageName = packageFragment.getElementName();
+        return packageName.isEmpty() ? "" : packageName.replace('.', '/') + '/'; //$NON-NLS-1$
+    }
+
+    /** Adds the names of the types declared by the given compilation unit or class file */
+    private static void addTypes(IJavaElement element, List<String> changedTypes) {
+        String prefix = getPackagePrefix(element.getParent());
+        String name = element.getElementName();
+        if (name.endsWith(DOT_JAVA)) {
+            name = name.substring(0, name.length() - DOT_JAVA.length());
+        } else if (name.endsWith(DOT_CLASS)) {
+            name = name.substring(0, name.length() - DOT_CLASS.length());
+        }
+        changedTypes.add(prefix + name);
+
+        // Secondary types don't match the compilation unit name
+        if (element instanceof ICompilationUnit && element.exists()) {
+            try {
+                for (IType type : ((ICompilationUnit) element).getTypes()) {
+                    if (!type.getElementName().equals(name)) {
+                        changedTypes.add(prefix + type.getElementName());
+                    }
+                }
+            } catch (JavaModelException e) {
+                // The unit is being removed or cannot be parsed: its primary type is enough
+            }
+        }
+    }
+
+    /**
+     * Removes the chains of the changed types, and of their subclasses
+     */
+    private static void invalidate(Map<String, String[]> chains, List<String> changedTypes) {
+        Iterator<Map.Entry<String, String[]>> iterator = chains.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String[]> entry = iterator.next();
+            boolean changed = matches(entry.getKey(), changedTypes);
+            for (String superClass : entry.getValue()) {
+                if (changed) {
+                    break;
+                }
+                changed = matches(superClass, changedTypes);
+            }
+            if (changed) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given class is one of the changed types, one of their inner
+     * classes, or in a changed package
+     */
+    private static boolean matches(String name, List<String> changedTypes) {
+        for (String changed : changedTypes) {
+            if (name.startsWith(changed)) {
+                int length = changed.length();
+                if (name.length() == length
+                        || changed.isEmpty()
+                        || changed.charAt(length - 1) == '/'
+                        || name.charAt(length) == '$') {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
@@ -44,6 +44,7 @@ import org.eclipse.andmore.AdtUtils;
 import org.eclipse.andmore.internal.editors.manifest.ManifestInfo;
 import org.eclipse.andmore.internal.project.BaseProjectHelper;
 import org.eclipse.andmore.internal.resources.ResourceNameValidator;
+import org.eclipse.andmore.internal.resources.manager.ResourceFileIndex;
 import org.eclipse.andmore.internal.sdk.ProjectState;
 import org.eclipse.andmore.internal.sdk.Sdk;
 import org.eclipse.core.resources.IFile;
@@ -499,6 +500,11 @@ public class RenameResourceParticipant extends RenameParticipant {
         try {
             model = modelManager.getExistingModelForRead(file);
             if (model == null) {
+                // Not open in an editor, so the saved content is current: don't bother
+                // parsing files which never mention the old name
+                if (!ResourceFileIndex.mayReference(file, mOldName)) {
+                    return true;
+                }
                 model = modelManager.getModelForRead(file);
             }
             if (model != null) {
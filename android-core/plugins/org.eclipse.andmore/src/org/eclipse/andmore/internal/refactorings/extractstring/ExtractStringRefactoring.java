@@ -25,16 +25,15 @@ import com.android.ide.common.xml.ManifestData;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
 
-import org.eclipse.andmore.AndmoreAndroidConstants;
 import org.eclipse.andmore.internal.editors.AndroidXmlEditor;
 import org.eclipse.andmore.internal.editors.descriptors.AttributeDescriptor;
 import org.eclipse.andmore.internal.editors.descriptors.ReferenceAttributeDescriptor;
 import org.eclipse.andmore.internal.editors.uimodel.UiAttributeNode;
 import org.eclipse.andmore.internal.editors.uimodel.UiElementNode;
 import org.eclipse.andmore.internal.project.AndroidManifestHelper;
+import org.eclipse.andmore.internal.resources.manager.ResourceFileIndex;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ResourceAttributes;
@@ -89,14 +88,10 @@ import org.w3c.dom.Node;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 /**
  * This refactoring extracts a string from a file and replaces it by an Android resource ID
@@ -994,107 +989,46 @@ public class ExtractStringRefactoring extends Refactoring {
     // --- XML changes ---
 
     /**
-     * Returns a foreach-compatible iterator over all XML files in the project's
-     * /res folder, excluding the target XML file (the one where we'll write/edit
-     * the string id).
+     * Returns all XML files in the project's /res folder, as well as the manifest,
+     * excluding the target XML file (the one where we'll write/edit the string id).
      */
-    private Iterable<IFile> findAllResXmlFiles() {
-        return new Iterable<IFile>() {
-            @Override
-            public Iterator<IFile> iterator() {
-                return new Iterator<IFile>() {
-                    final Queue<IFile> mFiles = new LinkedList<IFile>();
-                    final Queue<IResource> mFolders = new LinkedList<IResource>();
-                    IPath mFilterPath1 = null;
-                    IPath mFilterPath2 = null;
-                    {
-                        // Filter out the XML file where we'll be writing the XML string id.
-                        IResource filterRes = mProject.findMember(mTargetXmlFileWsPath);
-                        if (filterRes != null) {
-                            mFilterPath1 = filterRes.getFullPath();
-                        }
-                        // Filter out the XML source file, if any (e.g. typically a layout)
-                        if (mFile != null) {
-                            mFilterPath2 = mFile.getFullPath();
-                        }
-
-                        // We want to process the manifest
-                        IResource man = mProject.findMember("AndroidManifest.xml"); // TODO find a constant
-                        if (man.exists() && man instanceof IFile && !man.equals(mFile)) {
-                            mFiles.add((IFile) man);
-                        }
-
-                        // Add all /res folders (technically we don't need to process /res/values
-                        // XML files that contain resources/string elements, but it's easier to
-                        // not filter them out.)
-                        IFolder f = mProject.getFolder(AndmoreAndroidConstants.WS_RESOURCES);
-                        if (f.exists()) {
-                            try {
-                                mFolders.addAll(
-                                        Arrays.asList(f.members(IContainer.EXCLUDE_DERIVED)));
-                            } catch (CoreException e) {
-                                // pass
-                            }
-                        }
-                    }
-
-                    @Override
-                    public boolean hasNext() {
-                        if (!mFiles.isEmpty()) {
-                            return true;
-                        }
-
-                        while (!mFolders.isEmpty()) {
-                            IResource res = mFolders.poll();
-                            if (res.exists() && res instanceof IFolder) {
-                                IFolder f = (IFolder) res;
-                                try {
-                                    getFileList(f);
-                                    if (!mFiles.isEmpty()) {
-                                        return true;
-                                    }
-                                } catch (CoreException e) {
-                                    // pass
-                                }
-                            }
-                        }
-                        return false;
-                    }
-
-                    private void getFileList(IFolder folder) throws CoreException {
-                        for (IResource res : folder.members(IContainer.EXCLUDE_DERIVED)) {
-                            // Only accept file resources which are not derived and actually exist
-                            if (res.exists() && !res.isDerived() && res instanceof IFile) {
-                                IFile file = (IFile) res;
-                                // Must have an XML extension
-                                if (SdkConstants.EXT_XML.equals(file.getFileExtension())) {
-                                    IPath p = file.getFullPath();
-                                    // And not be either paths we want to filter out
-                                    if ((mFilterPath1 != null && mFilterPath1.equals(p)) ||
-                                            (mFilterPath2 != null && mFilterPath2.equals(p))) {
-                                        continue;
-                                    }
-                                    mFiles.add(file);
-                                }
-                            }
-                        }
-                    }
+    private List<IFile> findAllResXmlFiles() {
+        List<IFile> files = new ArrayList<IFile>();
+
+        // Filter out the XML file where we'll be writing the XML string id.
+        IPath filterPath1 = null;
+        IResource filterRes = mProject.findMember(mTargetXmlFileWsPath);
+        if (filterRes != null) {
+            filterPath1 = filterRes.getFullPath();
+        }
+        // Filter out the XML source file, if any (e.g. typically a layout)
+        IPath filterPath2 = null;
+        if (mFile != null) {
+            filterPath2 = mFile.getFullPath();
+        }
 
-                    @Override
-                    public IFile next() {
-                        IFile file = mFiles.poll();
-                        hasNext();
-                        return file;
-                    }
+        // We want to process the manifest
+        IResource man = mProject.findMember(SdkConstants.ANDROID_MANIFEST_XML);
+        if (man != null && man.exists() && man instanceof IFile && !man.equals(mFile)) {
+            files.add((IFile) man);
+        }
 
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException(
-                            "This iterator does not support removal");  //$NON-NLS-1$
-                    }
-                };
+        // Add all XML files in the /res folders (technically we don't need to process
+        // /res/values XML files that contain resources/string elements, but it's easier to
+        // not filter them out.) The resource file index already lists them, so there is
+        // no need to walk the folders.
+        for (IFile file : ResourceFileIndex.getXmlFiles(mProject)) {
+            IPath p = file.getFullPath();
+            // Only accept files which actually exist and are not either paths we want
+            // to filter out
+            if (!file.exists() || (filterPath1 != null && filterPath1.equals(p)) ||
+                    (filterPath2 != null && filterPath2.equals(p))) {
+                continue;
             }
-        };
+            files.add(file);
+        }
+
+        return files;
     }
 
     /**
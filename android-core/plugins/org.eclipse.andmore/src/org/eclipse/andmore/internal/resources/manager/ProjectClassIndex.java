@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.resources.manager;
+
+import com.android.SdkConstants;
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IFileListener;
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IProjectListener;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the class files in the output folder of projects, used by
+ * {@link ProjectClassLoader} to find classes without walking the output folder on every lookup.
+ * <p/>
+ * The index of a project is built the first time a class is looked up in it, and is then kept
+ * up to date from the resource deltas of the output folder. Any change to a class file or to a
+ * jar file also discards the shared {@link ProjectClassLoader}s, since classes that were already
+ * defined cannot be reloaded.
+ */
+public final class ProjectClassIndex implements IFileListener, IProjectListener {
+
+    private final static ProjectClassIndex sThis = new ProjectClassIndex();
+
+    /** The index of each project, by project. */
+    private final Map<IProject, OutputIndex> mIndexes = new HashMap<IProject, OutputIndex>();
+
+    /** The class files of an output folder. */
+    private static final class OutputIndex {
+        /** The workspace path of the output folder. */
+        final IPath mOutputPath;
+        /** The class files, by binary class name. */
+        final Map<String, File> mClassFiles = new HashMap<String, File>();
+
+        OutputIndex(IPath outputPath) {
+            mOutputPath = outputPath;
+        }
+    }
+
+    /**
+     * Sets up the monitoring system.
+     * @param monitor The main Resource Monitor.
+     */
+    public static void setupMonitor(GlobalProjectMonitor monitor) {
+        monitor.addFileListener(sThis, IResourceDelta.ADDED | IResourceDelta.REMOVED
+                | IResourceDelta.CHANGED);
+        monitor.addProjectListener(sThis);
+    }
+
+    /**
+     * Returns the class file for the given class in the output folder of a project.
+     * <p/>
+     * Nested classes can be referred to either by their binary name (<code>a.b.C$D</code>)
+     * or by their canonical name (<code>a.b.C.D</code>).
+     *
+     * @param javaProject the project
+     * @param name the name of the class
+     * @return the class file, or null if the project output does not contain the class.
+     */
+    @Nullable
+    public static File findClassFile(@NonNull IJavaProject javaProject, @NonNull String name) {
+        return sThis.find(javaProject, name);
+    }
+
+    /**
+     * private constructor to prevent construction.
+     */
+    private ProjectClassIndex() {
+    }
+
+    @Nullable
+    private synchronized File find(@NonNull IJavaProject javaProject, @NonNull String name) {
+        OutputIndex index = getIndex(javaProject);
+        if (index == null) {
+            return null;
+        }
+
+        File file = index.mClassFiles.get(name);
+
+        // try again with the canonical name of a nested class.
+        int pos = name.length();
+        StringBuilder sb = null;
+        while (file == null && (pos = name.lastIndexOf('.', pos - 1)) != -1) {
+            if (sb == null) {
+                sb = new StringBuilder(name);
+            }
+            sb.setCharAt(pos, '$');
+            file = index.mClassFiles.get(sb.toString());
+        }
+
+        return file;
+    }
+
+    /**
+     * Returns the index of the given project, building it if needed.
+     */
+    @Nullable
+    private OutputIndex getIndex(@NonNull IJavaProject javaProject) {
+        IPath outputPath;
+        try {
+            outputPath = javaProject.getOutputLocation();
+        } catch (JavaModelException e) {
+            return null;
+        }
+
+        IProject project = javaProject.getProject();
+        OutputIndex index = mIndexes.get(project);
+        if (index != null && index.mOutputPath.equals(outputPath)) {
+            return index;
+        }
+
+        IResource outRes = ResourcesPlugin.getWorkspace().getRoot().findMember(outputPath);
+        if (outRes == null || outRes.getLocation() == null) {
+            mIndexes.remove(project);
+            return null;
+        }
+
+        index = new OutputIndex(outputPath);
+        addFolder(index, outRes.getLocation().toFile(), ""); //$NON-NLS-1$
+        mIndexes.put(project, index);
+        return index;
+    }
+
+    private static void addFolder(OutputIndex index, File folder, String packagePrefix) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                addFolder(index, file, packagePrefix + name + '.');
+            } else if (name.endsWith(SdkConstants.DOT_CLASS)) {
+                String className = packagePrefix
+                        + name.substring(0, name.length() - SdkConstants.DOT_CLASS.length());
+                index.mClassFiles.put(className, file);
+            }
+        }
+    }
+
+    /**
+     * Sent when a file changed: class files added or removed in an output folder are
+     * added to or removed from the index of the project.
+     */
+    @Override
+    public void fileChanged(@NonNull IFile file, @NonNull IMarkerDelta[] markerDeltas,
+            int kind, @Nullable String extension, int flags, boolean isAndroidProject) {
+        if (flags == IResourceDelta.MARKERS) {
+            // only the markers changed: not relevant
+            return;
+        }
+
+        if (SdkConstants.EXT_CLASS.equals(extension)) {
+            synchronized (this) {
+                OutputIndex index = mIndexes.get(file.getProject());
+                IPath path = file.getFullPath();
+                if (index != null && index.mOutputPath.isPrefixOf(path)) {
+                    String className = path.removeFirstSegments(index.mOutputPath.segmentCount())
+                            .removeFileExtension().toString().replace('/', '.');
+                    if (kind == IResourceDelta.REMOVED) {
+                        index.mClassFiles.remove(className);
+                    } else if (file.getLocation() != null) {
+                        index.mClassFiles.put(className, file.getLocation().toFile());
+                    }
+                }
+            }
+
+            // the code of the project, or of a project depending on it, changed.
+            ProjectClassLoader.clearSharedLoaders();
+        } else if (SdkConstants.EXT_JAR.equals(extension)) {
+            ProjectClassLoader.clearSharedLoaders();
+        }
+    }
+
+    @Override
+    public void projectClosed(IProject project) {
+        removeProject(project);
+    }
+
+    @Override
+    public void projectDeleted(IProject project) {
+        removeProject(project);
+    }
+
+    @Override
+    public void projectOpened(IProject project) {
+        // nothing to do, the index is built on demand.
+    }
+
+    @Override
+    public void projectOpenedWithWorkspace(IProject project) {
+        // nothing to do, the index is built on demand.
+    }
+
+    @Override
+    public void allProjectsOpenedWithWorkspace() {
+        // nothing to do.
+    }
+
+    @Override
+    public void projectRenamed(IProject project, IPath from) {
+        // renamed projects also trigger delete/open event,
+        // so nothing to be done here.
+    }
+
+    private void removeProject(IProject project) {
+        synchronized (this) {
+            mIndexes.remove(project);
+        }
+        ProjectClassLoader.clearSharedLoaders();
+    }
+}
@@ -17,6 +17,7 @@
 package org.eclipse.andmore.internal.resources.manager;
 
 import com.android.SdkConstants;
+import com.google.common.io.Files;
 
 import org.eclipse.andmore.AndmoreAndroidPlugin;
 import org.eclipse.andmore.internal.build.BuildHelper;
@@ -24,7 +25,6 @@ import org.eclipse.andmore.internal.sdk.ProjectState;
 import org.eclipse.andmore.internal.sdk.Sdk;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -39,29 +39,86 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * ClassLoader able to load class from output of an Eclipse project.
+ * <p/>
+ * Class files are found through the {@link ProjectClassIndex} of the project output folders,
+ * and classes that could not be found are remembered so that repeated lookups fail fast.
  */
 public final class ProjectClassLoader extends ClassLoader {
 
+    /**
+     * Loaders shared by the layout editors, by project and then by parent class loader, as
+     * editors rendering with different layout libraries use different parents.
+     */
+    private static final Map<IProject, Map<ClassLoader, ProjectClassLoader>> sSharedLoaders =
+            new HashMap<IProject, Map<ClassLoader, ProjectClassLoader>>();
+
     private final IJavaProject mJavaProject;
     private URLClassLoader mJarClassLoader;
     private boolean mInsideJarClassLoader = false;
 
+    /** The library projects of the project, computed on first use. */
+    private List<IJavaProject> mLibraryProjects;
+
+    /** Classes that could not be found in the project. */
+    private final Set<String> mMissingClasses = new HashSet<String>();
+
     public ProjectClassLoader(ClassLoader parentClassLoader, IProject project) {
         super(parentClassLoader);
         mJavaProject = JavaCore.create(project);
     }
 
+    /**
+     * Returns a class loader for the given project, shared with the other callers using the
+     * same parent class loader. The loader is discarded as soon as the compiled code of any
+     * project changes, so callers should not hold on to it across builds.
+     *
+     * @param parentClassLoader the parent class loader
+     * @param project the project
+     * @return a class loader for the project
+     */
+    public static ProjectClassLoader getSharedLoader(ClassLoader parentClassLoader,
+            IProject project) {
+        synchronized (sSharedLoaders) {
+            Map<ClassLoader, ProjectClassLoader> loaders = sSharedLoaders.get(project);
+            if (loaders == null) {
+                // typically a single layout library is in use, rarely more than a few
+                loaders = new HashMap<ClassLoader, ProjectClassLoader>(4);
+                sSharedLoaders.put(project, loaders);
+            }
+
+            ProjectClassLoader loader = loaders.get(parentClassLoader);
+            if (loader == null) {
+                loader = new ProjectClassLoader(parentClassLoader, project);
+                loaders.put(parentClassLoader, loader);
+            }
+
+            return loader;
+        }
+    }
+
+    /**
+     * Discards the shared class loaders, so that the next calls to
+     * {@link #getSharedLoader(ClassLoader, IProject)} load the classes again.
+     */
+    static void clearSharedLoaders() {
+        synchronized (sSharedLoaders) {
+            sSharedLoaders.clear();
+        }
+    }
+
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
         // if we are here through a child classloader, throw an exception.
@@ -69,6 +126,12 @@ public final class ProjectClassLoader extends ClassLoader {
             throw new ClassNotFoundException(name);
         }
 
+        synchronized (mMissingClasses) {
+            if (mMissingClasses.contains(name)) {
+                throw new ClassNotFoundException(name);
+            }
+        }
+
         // attempt to load the class from the main project
         Class<?> clazz = loadFromProject(mJavaProject, name);
 
@@ -83,30 +146,41 @@ public final class ProjectClassLoader extends ClassLoader {
         }
 
         // attempt to load the class from the libraries
-        try {
-            // get the project info
-            ProjectState projectState = Sdk.getProjectState(mJavaProject.getProject());
+        for (IJavaProject javaProject : getLibraryProjects()) {
+            clazz = loadFromProject(javaProject, name);
 
-            // this can happen if the project has no project.properties.
-            if (projectState != null) {
+            if (clazz != null) {
+                return clazz;
+            }
+        }
 
-                List<IProject> libProjects = projectState.getFullLibraryProjects();
-                List<IJavaProject> referencedJavaProjects = BuildHelper.getJavaProjects(
-                        libProjects);
+        synchronized (mMissingClasses) {
+            mMissingClasses.add(name);
+        }
+        throw new ClassNotFoundException(name);
+    }
 
-                for (IJavaProject javaProject : referencedJavaProjects) {
-                    clazz = loadFromProject(javaProject, name);
+    /**
+     * Returns the library projects of the project.
+     */
+    private synchronized List<IJavaProject> getLibraryProjects() {
+        if (mLibraryProjects == null) {
+            mLibraryProjects = Collections.emptyList();
+            try {
+                // get the project info
+                ProjectState projectState = Sdk.getProjectState(mJavaProject.getProject());
 
-                    if (clazz != null) {
-                        return clazz;
-                    }
+                // this can happen if the project has no project.properties.
+                if (projectState != null) {
+                    List<IProject> libProjects = projectState.getFullLibraryProjects();
+                    mLibraryProjects = BuildHelper.getJavaProjects(libProjects);
                 }
+            } catch (CoreException e) {
+                // log exception?
             }
-        } catch (CoreException e) {
-            // log exception?
         }
 
-        throw new ClassNotFoundException(name);
+        return mLibraryProjects;
     }
 
     /**
@@ -117,51 +191,27 @@ public final class ProjectClassLoader extends ClassLoader {
      */
     private Class<?> loadFromProject(IJavaProject project, String name) {
         try {
-            // get the project output folder.
-            IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-            IPath outputLocation = project.getOutputLocation();
-            IResource outRes = root.findMember(outputLocation);
-            if (outRes == null) {
-                return null;
-            }
-
-            File outFolder = new File(outRes.getLocation().toOSString());
-
-            // get the class name segments
-            String[] segments = name.split("\\."); //$NON-NLS-1$
-
-            // try to load the class from the bin folder of the project.
-            File classFile = getFile(outFolder, segments, 0);
+            // find the class in the output folder of the project.
+            File classFile = ProjectClassIndex.findClassFile(project, name);
             if (classFile == null) {
                 return null;
             }
 
             // load the content of the file and create the class.
-            FileInputStream fis = new FileInputStream(classFile);
-            byte[] data = new byte[(int)classFile.length()];
-            int read = 0;
+            byte[] data = Files.toByteArray(classFile);
             try {
-                read = fis.read(data);
-            } catch (IOException e) {
-                data = null;
-            }
-            fis.close();
-
-            if (data != null) {
+                Class<?> clazz = defineClass(null, data, 0, data.length);
+                if (clazz != null) {
+                    return clazz;
+                }
+            } catch (UnsupportedClassVersionError e) {
+                // Attempt to reload on lower version
+                int maxVersion = 50; // JDK 1.6
                 try {
-                    Class<?> clazz = defineClass(null, data, 0, read);
-                    if (clazz != null) {
-                        return clazz;
-                    }
-                } catch (UnsupportedClassVersionError e) {
-                    // Attempt to reload on lower version
-                    int maxVersion = 50; // JDK 1.6
-                    try {
-                        byte[] rewritten = rewriteClass(data, maxVersion, 0);
-                        return defineClass(null, rewritten, 0, rewritten.length);
-                    } catch (UnsupportedClassVersionError e2) {
-                        throw e; // throw *original* exception, not attempt to rewrite
-                    }
+                    byte[] rewritten = rewriteClass(data, maxVersion, 0);
+                    return defineClass(null, rewritten, 0, rewritten.length);
+                } catch (UnsupportedClassVersionError e2) {
+                    throw e; // throw *original* exception, not attempt to rewrite
                 }
             }
         } catch (Exception e) {
@@ -195,71 +245,6 @@ public final class ProjectClassLoader extends ClassLoader {
         return classWriter.toByteArray();
     }
 
-    /**
-     * Returns the File matching the a certain path from a root {@link File}.
-     * <p/>The methods checks that the file ends in .class even though the last segment
-     * does not.
-     * @param parent the root of the file.
-     * @param segments the segments containing the path of the file
-     * @param index the offset at which to start looking into segments.
-     * @throws FileNotFoundException
-     */
-    private File getFile(File parent, String[] segments, int index)
-            throws FileNotFoundException {
-        // reached the end with no match?
-        if (index == segments.length) {
-            throw new FileNotFoundException();
-        }
-
-        String toMatch = segments[index];
-        File[] files = parent.listFiles();
-
-        // we're at the last segments. we look for a matching <file>.class
-        if (index == segments.length - 1) {
-            toMatch = toMatch + ".class";
-
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().equals(toMatch)) {
-                        return file;
-                    }
-                }
-            }
-
-            // no match? abort.
-            throw new FileNotFoundException();
-        }
-
-        String innerClassName = null;
-
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    if (toMatch.equals(file.getName())) {
-                        return getFile(file, segments, index+1);
-                    }
-                } else if (file.getName().startsWith(toMatch)) {
-                    if (innerClassName == null) {
-                        StringBuilder sb = new StringBuilder(segments[index]);
-                        for (int i = index + 1 ; i < segments.length ; i++) {
-                            sb.append('$');
-                            sb.append(segments[i]);
-                        }
-                        sb.append(".class");
-
-                        innerClassName = sb.toString();
-                    }
-
-                    if (file.getName().equals(innerClassName)) {
-                        return file;
-                    }
-                }
-            }
-        }
-
-        return null;
-    }
-
     /**
      * Loads a class from the 3rd party jar present in the project
      *
@@ -34,7 +34,11 @@ import org.eclipse.andmore.io.IFolderWrapper;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -64,6 +68,59 @@ public class ProjectResources extends ResourceRepository {
     /** Map of (int[], name) for styleable resources coming from R.java */
     private Map<IntArrayWrapper, String> mStyleableValueToNameMap;
 
+    /** Maximum number of configurations for which the configured resources are cached */
+    private final static int MAX_CONFIGURED_RESOURCES = 8;
+
+    /** The configured resources of the most recently used configurations */
+    private final Map<FolderConfiguration, ConfiguredResources> mConfiguredResources =
+            new LinkedHashMap<FolderConfiguration, ConfiguredResources>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<FolderConfiguration, ConfiguredResources> eldest) {
+                    return size() > MAX_CONFIGURED_RESOURCES;
+                }
+            };
+    private int mConfiguredResourcesHits;
+    private int mConfiguredResourcesMisses;
+
+    /** Incremented each time the resources of this project change */
+    private volatile int mGeneration;
+
+    /**
+     * Configured resources merged from a project and its libraries, along with the
+     * generation of each of the merged repositories.
+     */
+    private static final class ConfiguredResources {
+        private final List<ProjectResources> mSources;
+        private final int[] mGenerations;
+        private final Map<ResourceType, Map<String, ResourceValue>> mResources;
+
+        ConfiguredResources(List<ProjectResources> sources, int[] generations,
+                Map<ResourceType, Map<String, ResourceValue>> resources) {
+            mSources = sources;
+            mGenerations = generations;
+            mResources = resources;
+        }
+
+        /**
+         * Returns true if this was computed from the same repositories, none of which
+         * changed since.
+         */
+        boolean isValid(List<ProjectResources> sources, int[] generations) {
+            if (sources.size() != mSources.size()) {
+                return false;
+            }
+            for (int i = 0; i < generations.length; i++) {
+                if (sources.get(i) != mSources.get(i) || generations[i] != mGenerations[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private final DynamicIdMap mDynamicIdMap = new DynamicIdMap(DYNAMIC_ID_SEED_START);
     private final IntArrayWrapper mWrapper = new IntArrayWrapper(null);
     private final IProject mProject;
@@ -86,6 +143,10 @@ public class ProjectResources extends ResourceRepository {
     /**
      * Returns the resources values matching a given {@link FolderConfiguration}, this will
      * include library dependency.
+     * <p/>
+     * The merged values are cached for the most recently used configurations, and reused as
+     * long as neither the resources of the project nor those of its libraries changed. The
+     * returned maps must not be modified.
      *
      * @param referenceConfig the configuration that each value must match.
      * @return a map with guaranteed to contain an entry for each {@link ResourceType}
@@ -96,11 +157,12 @@ public class ProjectResources extends ResourceRepository {
             @NonNull FolderConfiguration referenceConfig) {
         ensureInitialized();
 
-        Map<ResourceType, Map<String, ResourceValue>> resultMap =
-            new EnumMap<ResourceType, Map<String, ResourceValue>>(ResourceType.class);
-
-        // if the project contains libraries, we need to add the libraries resources here
-        // so that they are accessible to the layout rendering.
+        // gather the repositories contributing to the result, in increasing priority order:
+        // because aapt put all the library in their order in this array, the first
+        // one will have priority over the 2nd one. So it's better to loop in the inverse
+        // order and fill the map with resources that will be overwritten by higher
+        // priority resources
+        List<ProjectResources> sources = new ArrayList<ProjectResources>();
         if (mProject != null) {
             ProjectState state = Sdk.getProjectState(mProject);
             if (state != null) {
@@ -108,61 +170,97 @@ public class ProjectResources extends ResourceRepository {
 
                 ResourceManager resMgr = ResourceManager.getInstance();
 
-                // because aapt put all the library in their order in this array, the first
-                // one will have priority over the 2nd one. So it's better to loop in the inverse
-                // order and fill the map with resources that will be overwritten by higher
-                // priority resources
                 for (int i = libraries.size() - 1 ; i >= 0 ; i--) {
-                    IProject library = libraries.get(i);
-
-                    ProjectResources libRes = resMgr.getProjectResources(library);
+                    ProjectResources libRes = resMgr.getProjectResources(libraries.get(i));
                     if (libRes != null) {
-                        // get the library resources, and only the library, not the dependencies
-                        // so call doGetConfiguredResources() directly.
-                        Map<ResourceType, Map<String, ResourceValue>> libMap =
-                                libRes.doGetConfiguredResources(referenceConfig);
-
-                        // we don't want to simply replace the whole map, but instead merge the
-                        // content of any sub-map
-                        for (Entry<ResourceType, Map<String, ResourceValue>> libEntry :
-                                libMap.entrySet()) {
-
-                            // get the map currently in the result map for this resource type
-                            Map<String, ResourceValue> tempMap = resultMap.get(libEntry.getKey());
-                            if (tempMap == null) {
-                                // since there's no current map for this type, just add the map
-                                // directly coming from the library resources
-                                resultMap.put(libEntry.getKey(), libEntry.getValue());
-                            } else {
-                                // already a map for this type. add the resources from the
-                                // library, this will override existing value, which is why
-                                // we loop in a specific library order.
-                                tempMap.putAll(libEntry.getValue());
-                            }
-                        }
+                        sources.add(libRes);
                     }
                 }
             }
         }
+        sources.add(this);
+
+        int[] generations = new int[sources.size()];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = sources.get(i).mGeneration;
+        }
 
-        // now the project resources themselves.
-        Map<ResourceType, Map<String, ResourceValue>> thisProjectMap =
-                doGetConfiguredResources(referenceConfig);
-
-        // now merge the maps.
-        for (Entry<ResourceType, Map<String, ResourceValue>> entry : thisProjectMap.entrySet()) {
-            ResourceType type = entry.getKey();
-            Map<String, ResourceValue> typeMap = resultMap.get(type);
-            if (typeMap == null) {
-                resultMap.put(type, entry.getValue());
-            } else {
-                typeMap.putAll(entry.getValue());
+        synchronized (mConfiguredResources) {
+            ConfiguredResources cached = mConfiguredResources.get(referenceConfig);
+            if (cached != null && cached.isValid(sources, generations)) {
+                mConfiguredResourcesHits++;
+                return cached.mResources;
             }
+            mConfiguredResourcesMisses++;
+        }
+
+        Map<ResourceType, Map<String, ResourceValue>> resultMap =
+            new EnumMap<ResourceType, Map<String, ResourceValue>>(ResourceType.class);
+
+        for (ProjectResources source : sources) {
+            // get the resources of the project, and only the project, not the dependencies
+            // so call doGetConfiguredResources() directly.
+            Map<ResourceType, Map<String, ResourceValue>> sourceMap =
+                    source.doGetConfiguredResources(referenceConfig);
+
+            // we don't want to simply replace the whole map, but instead merge the
+            // content of any sub-map. This will override existing value, which is why
+            // we loop in a specific library order.
+            for (Entry<ResourceType, Map<String, ResourceValue>> entry : sourceMap.entrySet()) {
+                ResourceType type = entry.getKey();
+                Map<String, ResourceValue> typeMap = resultMap.get(type);
+                if (typeMap == null) {
+                    resultMap.put(type, new HashMap<String, ResourceValue>(entry.getValue()));
+                } else {
+                    typeMap.putAll(entry.getValue());
+                }
+            }
+        }
+
+        for (Entry<ResourceType, Map<String, ResourceValue>> entry : resultMap.entrySet()) {
+            entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+        }
+        resultMap = Collections.unmodifiableMap(resultMap);
+
+        // the configuration can be modified by the caller after this call: use a copy as key.
+        FolderConfiguration key = new FolderConfiguration();
+        key.set(referenceConfig);
+        synchronized (mConfiguredResources) {
+            mConfiguredResources.put(key,
+                    new ConfiguredResources(sources, generations, resultMap));
         }
 
         return resultMap;
     }
 
+    /**
+     * Notifies this repository that its resources changed, which invalidates the configured
+     * resources cached by this project and by the projects using it as a library.
+     */
+    void resourcesChanged() {
+        mGeneration++;
+    }
+
+    /**
+     * Returns the number of calls to {@link #getConfiguredResources(FolderConfiguration)}
+     * which were answered from the cache.
+     */
+    public int getConfiguredResourcesHitCount() {
+        synchronized (mConfiguredResources) {
+            return mConfiguredResourcesHits;
+        }
+    }
+
+    /**
+     * Returns the number of calls to {@link #getConfiguredResources(FolderConfiguration)}
+     * which had to merge the resources of the project and its libraries.
+     */
+    public int getConfiguredResourcesMissCount() {
+        synchronized (mConfiguredResources) {
+            return mConfiguredResourcesMisses;
+        }
+    }
+
     /**
      * Returns the {@link ResourceFolder} associated with a {@link IFolder}.
      * @param folder The {@link IFolder} object.
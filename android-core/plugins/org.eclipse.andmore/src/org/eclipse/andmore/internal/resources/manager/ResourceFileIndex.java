@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.resources.manager;
+
+import static com.android.SdkConstants.ATTR_NAME;
+import static com.android.SdkConstants.NEW_ID_PREFIX;
+
+import com.android.SdkConstants;
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.resources.ResourceFolderType;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IFileListener;
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IProjectListener;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An index of the XML files in the resource folders of projects, recording where ids and
+ * value resources are defined and which names each file mentions.
+ * <p/>
+ * This lets hyperlinks and refactorings go straight to the few files that matter instead of
+ * walking the resource folders and parsing every XML file. The list of files of a project is
+ * built the first time the project is queried, and each file is scanned (as text, not as a
+ * DOM) the first time its content is needed. The index is then kept up to date from the
+ * resource deltas: changed files are simply scanned again on the next query.
+ * <p/>
+ * Offsets are those of the saved content of the files. Callers should prefer an existing
+ * structured model when the file is open in an editor, since it may have unsaved changes.
+ */
+public final class ResourceFileIndex implements IFileListener, IProjectListener {
+
+    private final static ResourceFileIndex sThis = new ResourceFileIndex();
+
+    private static final Pattern NAME_PATTERN =
+            Pattern.compile("\\s" + ATTR_NAME + "\\s*=\\s*[\"']([^\"']*)[\"']"); //$NON-NLS-1$ //$NON-NLS-2$
+
+    /** The index of each project, by project. */
+    private final Map<IProject, Map<IFile, FileIndex>> mIndexes =
+            new HashMap<IProject, Map<IFile, FileIndex>>();
+
+    /** The content of a resource XML file. */
+    private static final class FileIndex {
+        /** The ids defined in the file, with the range of the defining element start tag */
+        Map<String, int[]> mIds;
+        /** The values defined in the file, by tag and name */
+        Map<String, int[]> mValues;
+        /** The identifier tokens found in the file */
+        Set<String> mTokens;
+
+        boolean isScanned() {
+            return mTokens != null;
+        }
+    }
+
+    /**
+     * Sets up the monitoring system.
+     * @param monitor The main Resource Monitor.
+     */
+    public static void setupMonitor(GlobalProjectMonitor monitor) {
+        monitor.addFileListener(sThis, IResourceDelta.ADDED | IResourceDelta.REMOVED
+                | IResourceDelta.CHANGED);
+        monitor.addProjectListener(sThis);
+    }
+
+    /**
+     * Returns the XML files in the resource folders of the given project.
+     *
+     * @param project the project
+     * @return the XML files, never null
+     */
+    @NonNull
+    public static List<IFile> getXmlFiles(@NonNull IProject project) {
+        synchronized (sThis) {
+            return new ArrayList<IFile>(sThis.getIndex(project).keySet());
+        }
+    }
+
+    /**
+     * Returns the resource XML files of the given project which define the given id with
+     * an {@code @+id/} attribute value.
+     *
+     * @param project the project
+     * @param id the name of the id
+     * @return the files defining the id, never null
+     */
+    @NonNull
+    public static List<IFile> findIdDefinitions(@NonNull IProject project, @NonNull String id) {
+        List<IFile> result = new ArrayList<IFile>();
+        synchronized (sThis) {
+            for (Map.Entry<IFile, FileIndex> entry : sThis.getIndex(project).entrySet()) {
+                FileIndex index = getScannedIndex(entry.getKey(), entry.getValue());
+                if (index.mIds.containsKey(id)) {
+                    result.add(entry.getKey());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the range of the start tag of the element defining the given value in a
+     * values XML file.
+     *
+     * @param file the file
+     * @param tag the tag of the element defining the value, such as "string"
+     * @param name the name of the value
+     * @return an array with the start and end offset of the start tag, or null if the file
+     *         is not a known values file or does not define the value.
+     */
+    @Nullable
+    public static int[] findValueDefinition(@NonNull IFile file, @NonNull String tag,
+            @NonNull String name) {
+        synchronized (sThis) {
+            FileIndex index = sThis.getIndex(file.getProject()).get(file);
+            if (index == null) {
+                return null;
+            }
+            index = getScannedIndex(file, index);
+            return index.mValues.get(tag + ':' + name);
+        }
+    }
+
+    /**
+     * Returns whether the given file is a resource XML file known to the index.
+     *
+     * @param file the file
+     * @return true if the file is indexed
+     */
+    public static boolean isIndexed(@NonNull IFile file) {
+        synchronized (sThis) {
+            return sThis.getIndex(file.getProject()).containsKey(file);
+        }
+    }
+
+    /**
+     * Returns whether the given file may refer to the given name. This returns false only if
+     * the name does not appear as an identifier in the saved content of the file.
+     *
+     * @param file the file
+     * @param name a resource name
+     * @return false if the file certainly does not mention the name
+     */
+    public static boolean mayReference(@NonNull IFile file, @NonNull String name) {
+        synchronized (sThis) {
+            FileIndex index = sThis.getIndex(file.getProject()).get(file);
+            if (index == null) {
+                return true;
+            }
+            index = getScannedIndex(file, index);
+            for (String token : getTokens(name)) {
+                if (!index.mTokens.contains(token)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * private constructor to prevent construction.
+     */
+    private ResourceFileIndex() {
+    }
+
+    /**
+     * Returns the index of the given project, listing its files if needed.
+     */
+    @NonNull
+    private Map<IFile, FileIndex> getIndex(@NonNull IProject project) {
+        Map<IFile, FileIndex> index = mIndexes.get(project);
+        if (index == null) {
+            index = new LinkedHashMap<IFile, FileIndex>();
+            IFolder resFolder = project.getFolder(SdkConstants.FD_RESOURCES);
+            if (resFolder.exists()) {
+                try {
+                    for (IResource folder : resFolder.members(IContainer.EXCLUDE_DERIVED)) {
+                        if (folder instanceof IFolder) {
+                            for (IResource member :
+                                    ((IFolder) folder).members(IContainer.EXCLUDE_DERIVED)) {
+                                if (member instanceof IFile && isResourceXmlFile((IFile) member)) {
+                                    index.put((IFile) member, new FileIndex());
+                                }
+                            }
+                        }
+                    }
+                } catch (CoreException e) {
+                    AndmoreAndroidPlugin.log(e, "Failed to index resources of %1$s", //$NON-NLS-1$
+                            project.getName());
+                }
+            }
+            mIndexes.put(project, index);
+        }
+
+        return index;
+    }
+
+    /** Returns true if the given file is an XML file directly within a resource folder */
+    private static boolean isResourceXmlFile(@NonNull IFile file) {
+        IPath path = file.getProjectRelativePath();
+        return path.segmentCount() == 3
+                && SdkConstants.FD_RESOURCES.equals(path.segment(0))
+                && SdkConstants.EXT_XML.equals(file.getFileExtension())
+                && !file.isDerived();
+    }
+
+    @NonNull
+    private static FileIndex getScannedIndex(@NonNull IFile file, @NonNull FileIndex index) {
+        if (!index.isScanned()) {
+            String text = AndmoreAndroidPlugin.readFile(file);
+            if (text == null) {
+                text = ""; //$NON-NLS-1$
+            }
+            ResourceFolderType folderType =
+                    ResourceFolderType.getFolderType(file.getParent().getName());
+            scan(index, text, folderType == ResourceFolderType.VALUES);
+        }
+
+        return index;
+    }
+
+    private static void scan(@NonNull FileIndex index, @NonNull String text, boolean values) {
+        index.mIds = new HashMap<String, int[]>();
+        index.mValues = new HashMap<String, int[]>();
+        index.mTokens = new HashSet<String>(getTokens(text));
+
+        // ids
+        int offset = 0;
+        while ((offset = text.indexOf(NEW_ID_PREFIX, offset)) != -1) {
+            offset += NEW_ID_PREFIX.length();
+            int end = offset;
+            while (end < text.length() && isNameChar(text.charAt(end))) {
+                end++;
+            }
+            String id = text.substring(offset, end);
+            int tagStart = text.lastIndexOf('<', offset);
+            int tagEnd = text.indexOf('>', end);
+            if (id.length() > 0 && tagStart != -1 && tagEnd != -1 && !index.mIds.containsKey(id)) {
+                index.mIds.put(id, new int[] { tagStart, tagEnd + 1 });
+            }
+            offset = end;
+        }
+
+        if (!values) {
+            return;
+        }
+
+        // values, preferring the definitions closest to the root
+        Map<String, Integer> depths = new HashMap<String, Integer>();
+        int depth = 0;
+        offset = 0;
+        while ((offset = text.indexOf('<', offset)) != -1) {
+            if (text.startsWith("<!--", offset)) { //$NON-NLS-1$
+                int end = text.indexOf("-->", offset); //$NON-NLS-1$
+                if (end == -1) {
+                    break;
+                }
+                offset = end + 3;
+                continue;
+            }
+            int tagEnd = text.indexOf('>', offset);
+            if (tagEnd == -1) {
+                break;
+            }
+            char next = offset + 1 < text.length() ? text.charAt(offset + 1) : 0;
+            if (next == '/') {
+                depth--;
+            } else if (next != '?' && next != '!') {
+                int nameEnd = offset + 1;
+                while (nameEnd < tagEnd && !Character.isWhitespace(text.charAt(nameEnd))
+                        && text.charAt(nameEnd) != '/') {
+                    nameEnd++;
+                }
+                String tag = text.substring(offset + 1, nameEnd);
+                Matcher matcher = NAME_PATTERN.matcher(text.substring(nameEnd, tagEnd));
+                if (matcher.find()) {
+                    String key = tag + ':' + matcher.group(1);
+                    Integer previous = depths.get(key);
+                    if (previous == null || previous.intValue() > depth) {
+                        depths.put(key, depth);
+                        index.mValues.put(key, new int[] { offset, tagEnd + 1 });
+                    }
+                }
+                if (text.charAt(tagEnd - 1) != '/') {
+                    depth++;
+                }
+            }
+            offset = tagEnd + 1;
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isJavaIdentifierPart(c) || c == '.';
+    }
+
+    /** Splits the given text into identifier tokens */
+    @NonNull
+    private static List<String> getTokens(@NonNull String text) {
+        List<String> tokens = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            if (i < n && Character.isJavaIdentifierPart(text.charAt(i))) {
+                if (start == -1) {
+                    start = i;
+                }
+            } else if (start != -1) {
+                tokens.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Sent when a file changed: resource XML files are added to, removed from or marked for
+     * rescanning in the index of their project.
+     */
+    @Override
+    public void fileChanged(@NonNull IFile file, @NonNull IMarkerDelta[] markerDeltas,
+            int kind, @Nullable String extension, int flags, boolean isAndroidProject) {
+        if (flags == IResourceDelta.MARKERS || !SdkConstants.EXT_XML.equals(extension)) {
+            // only the markers changed, or not a resource file: not relevant
+            return;
+        }
+
+        synchronized (this) {
+            Map<IFile, FileIndex> index = mIndexes.get(file.getProject());
+            if (index == null) {
+                // not indexed yet: will be listed on the first query.
+                return;
+            }
+
+            if (kind == IResourceDelta.REMOVED) {
+                index.remove(file);
+            } else if (isResourceXmlFile(file)) {
+                index.put(file, new FileIndex());
+            }
+        }
+    }
+
+    @Override
+    public void projectClosed(IProject project) {
+        removeProject(project);
+    }
+
+    @Override
+    public void projectDeleted(IProject project) {
+        removeProject(project);
+    }
+
+    @Override
+    public void projectOpened(IProject project) {
+        // nothing to do, the index is built on demand.
+    }
+
+    @Override
+    public void projectOpenedWithWorkspace(IProject project) {
+        // nothing to do, the index is built on demand.
+    }
+
+    @Override
+    public void allProjectsOpenedWithWorkspace() {
+        // nothing to do.
+    }
+
+    @Override
+    public void projectRenamed(IProject project, IPath from) {
+        // renamed projects also trigger delete/open event,
+        // so nothing to be done here.
+    }
+
+    private synchronized void removeProject(IProject project) {
+        mIndexes.remove(project);
+    }
+}
@@ -117,6 +117,9 @@ public final class ResourceManager {
         monitor.addProjectListener(sThis.mProjectListener);
         monitor.addRawDeltaListener(sThis.mRawDeltaListener);
 
+        // the class index must be updated before the R class is reloaded.
+        ProjectClassIndex.setupMonitor(monitor);
+        ResourceFileIndex.setupMonitor(monitor);
         CompiledResourcesMonitor.setupMonitor(monitor);
     }
 
@@ -259,6 +262,7 @@ public final class ResourceManager {
 
                         ResourceFolder newFolder = resources.processFolder(
                                 new IFolderWrapper(folder));
+                        resources.resourcesChanged();
                         if (newFolder != null) {
                             notifyListenerOnFolderChange(project, newFolder, kind);
                         }
@@ -290,6 +294,7 @@ public final class ResourceManager {
                     ResourceFolder removedFolder = resources.removeFolder(type,
                             new IFolderWrapper(folder), context);
                     context.finishScanning(folder);
+                    resources.resourcesChanged();
                     if (removedFolder != null) {
                         notifyListenerOnFolderChange(project, removedFolder, kind);
                     }
@@ -351,6 +356,7 @@ public final class ResourceManager {
                         ResourceFile resFile = folder.processFile(
                                 new IFileWrapper(file),
                                 ResourceHelper.getResourceDeltaKind(kind), context);
+                        resources.resourcesChanged();
                         notifyListenerOnFileChange(project, resFile, kind);
                     }
                 }
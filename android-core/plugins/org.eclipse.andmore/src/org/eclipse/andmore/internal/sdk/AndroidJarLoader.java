@@ -17,23 +17,32 @@
 package org.eclipse.andmore.internal.sdk;
 
 import com.android.SdkConstants;
+import com.android.sdklib.IAndroidTarget;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import javax.management.InvalidAttributeValueException;
 
 /**
  * Custom class loader able to load a class from the SDK jar file.
+ * <p/>
+ * The jar file is accessed through its central directory, so looking up a class does not
+ * require scanning the archive, and class data can be read by several threads at once.
  */
 public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader {
 
@@ -105,8 +114,26 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
 
     }
 
+    /**
+     * The loaders currently in use, by OS path of the framework jar. Loaders are only kept
+     * while parses use them, so that the classes they define are not pinned for the whole
+     * session.
+     */
+    private final static Map<String, AndroidJarLoader> sLoaders =
+            new HashMap<String, AndroidJarLoader>();
+
     private String mOsFrameworkLocation;
 
+    /** The number of users of this loader, guarded by {@link #sLoaders}. */
+    private int mUseCount;
+
+    /** The size and modification time of the framework jar when this loader was created. */
+    private final long mJarLength;
+    private final long mJarLastModified;
+
+    /** The framework jar, opened on first use. */
+    private ZipFile mZipFile;
+
     /** A cache for binary data extracted from the zip */
     private final HashMap<String, byte[]> mEntryCache = new HashMap<String, byte[]>();
     /** A cache for already defined Classes */
@@ -120,6 +147,107 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
     public AndroidJarLoader(String osFrameworkLocation) {
         super();
         mOsFrameworkLocation = osFrameworkLocation;
+
+        File jar = new File(osFrameworkLocation);
+        mJarLength = jar.length();
+        mJarLastModified = jar.lastModified();
+    }
+
+    /**
+     * Returns the class loader for the framework jar of the given target. The loader is
+     * shared by all the targets parsed at the same time using the same jar, and must be
+     * released with {@link #releaseLoader(AndroidJarLoader)} once the caller is done with it.
+     *
+     * @param target the target
+     * @return the class loader for the framework jar of the target
+     */
+    public static AndroidJarLoader acquireLoader(IAndroidTarget target) {
+        String osFrameworkLocation = target.getPath(IAndroidTarget.ANDROID_JAR);
+        synchronized (sLoaders) {
+            AndroidJarLoader loader = sLoaders.get(osFrameworkLocation);
+            if (loader != null) {
+                File jar = new File(osFrameworkLocation);
+                if (jar.length() != loader.mJarLength
+                        || jar.lastModified() != loader.mJarLastModified) {
+                    // the jar changed: the users of the old loader keep it until they
+                    // release it.
+                    sLoaders.remove(osFrameworkLocation);
+                    loader = null;
+                }
+            }
+
+            if (loader == null) {
+                loader = new AndroidJarLoader(osFrameworkLocation);
+                sLoaders.put(osFrameworkLocation, loader);
+            }
+
+            loader.mUseCount++;
+            return loader;
+        }
+    }
+
+    /**
+     * Releases a loader returned by {@link #acquireLoader(IAndroidTarget)}. The loader is
+     * closed and forgotten once it is no longer used.
+     *
+     * @param loader the loader to release
+     */
+    public static void releaseLoader(AndroidJarLoader loader) {
+        synchronized (sLoaders) {
+            if (--loader.mUseCount > 0) {
+                return;
+            }
+
+            if (sLoaders.get(loader.mOsFrameworkLocation) == loader) {
+                sLoaders.remove(loader.mOsFrameworkLocation);
+            }
+        }
+
+        loader.close();
+    }
+
+    /**
+     * Forgets the shared loaders, so that the framework jars can be replaced. Loaders that
+     * are not in use are closed right away, the others when they are released.
+     */
+    public static void disposeLoaders() {
+        List<AndroidJarLoader> unused = new ArrayList<AndroidJarLoader>();
+        synchronized (sLoaders) {
+            for (AndroidJarLoader loader : sLoaders.values()) {
+                if (loader.mUseCount == 0) {
+                    unused.add(loader);
+                }
+            }
+            sLoaders.clear();
+        }
+
+        for (AndroidJarLoader loader : unused) {
+            loader.close();
+        }
+    }
+
+    /**
+     * Closes the framework jar. It is opened again if more classes need to be loaded.
+     */
+    public synchronized void close() {
+        if (mZipFile != null) {
+            try {
+                mZipFile.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            mZipFile = null;
+        }
+    }
+
+    /**
+     * Returns the framework jar, opening it if needed.
+     */
+    private synchronized ZipFile getZipFile() throws IOException {
+        if (mZipFile == null) {
+            mZipFile = new ZipFile(mOsFrameworkLocation);
+        }
+        return mZipFile;
     }
 
     @Override
@@ -155,11 +283,12 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
 
         SubMonitor progress = SubMonitor.convert(monitor, taskLabel == null ? "" : taskLabel, 100);
 
-        // create streams to read the intermediary archive
-        FileInputStream fis = new FileInputStream(mOsFrameworkLocation);
-        ZipInputStream zis = new ZipInputStream(fis);
-        ZipEntry entry;
-        while ((entry = zis.getNextEntry()) != null) {
+        // walk the central directory of the archive
+        ZipFile zipFile = getZipFile();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+
             // get the name of the entry.
             String entryPath = entry.getName();
 
@@ -174,13 +303,15 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
             }
             String className = entryPathToClassName(entryPath);
 
-            if (!mEntryCache.containsKey(className)) {
-                long entrySize = entry.getSize();
-                if (entrySize > Integer.MAX_VALUE) {
-                    throw new InvalidAttributeValueException();
+            boolean cached;
+            synchronized (mEntryCache) {
+                cached = mEntryCache.containsKey(className);
+            }
+            if (!cached && getCachedClass(className) == null) {
+                byte[] data = readZipData(zipFile, entry);
+                synchronized (mEntryCache) {
+                    mEntryCache.put(className, data);
                 }
-                byte[] data = readZipData(zis, (int)entrySize);
-                mEntryCache.put(className, data);
             }
 
             // advance 5% of whatever is allocated on the progress bar
@@ -206,7 +337,6 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
      * @throws InvalidAttributeValueException
      * @throws ClassFormatError
      */
-    @SuppressWarnings("resource") // Eclipse doesn't understand Closeables.closeQuietly
     @Override
     public HashMap<String, ArrayList<IClassDescriptor>> findClassesDerivingFrom(
             String packageFilter,
@@ -222,59 +352,58 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
             mClassesFound.put(className, new ArrayList<IClassDescriptor>());
         }
 
-        // create streams to read the intermediary archive
-        FileInputStream fis = new FileInputStream(mOsFrameworkLocation);
-        ZipInputStream zis = new ZipInputStream(fis);
-        try {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                // get the name of the entry and convert to a class binary name
-                String entryPath = entry.getName();
-                if (!entryPath.endsWith(SdkConstants.DOT_CLASS)) {
-                    // only accept class files
-                    continue;
+        // walk the central directory of the archive
+        ZipFile zipFile = getZipFile();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+
+            // get the name of the entry and convert to a class binary name
+            String entryPath = entry.getName();
+            if (!entryPath.endsWith(SdkConstants.DOT_CLASS)) {
+                // only accept class files
+                continue;
+            }
+            if (packageFilter.length() > 0 && !entryPath.startsWith(packageFilter)) {
+                // only accept stuff from the requested root package.
+                continue;
+            }
+            String className = entryPathToClassName(entryPath);
+
+            Class<?> loaded_class = getCachedClass(className);
+            if (loaded_class == ClassNotFoundException.class) {
+                continue;
+            }
+            if (loaded_class == null) {
+                byte[] data;
+                synchronized (mEntryCache) {
+                    data = mEntryCache.get(className);
                 }
-                if (packageFilter.length() > 0 && !entryPath.startsWith(packageFilter)) {
-                    // only accept stuff from the requested root package.
-                    continue;
+                if (data == null) {
+                    // Get the class and cache it
+                    data = readZipData(zipFile, entry);
                 }
-                String className = entryPathToClassName(entryPath);
-
-                Class<?> loaded_class = mClassCache.get(className);
-                if (loaded_class == null) {
-                    byte[] data = mEntryCache.get(className);
-                    if (data == null) {
-                        // Get the class and cache it
-                        long entrySize = entry.getSize();
-                        if (entrySize > Integer.MAX_VALUE) {
-                            throw new InvalidAttributeValueException();
-                        }
-                        data = readZipData(zis, (int)entrySize);
-                    }
-                    try {
-                        loaded_class = defineAndCacheClass(className, data);
-                    } catch (NoClassDefFoundError error) {
-                        if (error.getMessage().startsWith("java/")) {
-                            // Can't define these; we just need to stop
-                            // iteration here
-                            continue;
-                        }
-                        throw error;
+                try {
+                    loaded_class = defineAndCacheClass(className, data);
+                } catch (NoClassDefFoundError error) {
+                    if (error.getMessage().startsWith("java/")) {
+                        // Can't define these; we just need to stop
+                        // iteration here
+                        continue;
                     }
+                    throw error;
                 }
+            }
 
-                for (Class<?> superClass = loaded_class.getSuperclass();
-                        superClass != null;
-                        superClass = superClass.getSuperclass()) {
-                    String superName = superClass.getCanonicalName();
-                    if (mClassesFound.containsKey(superName)) {
-                        mClassesFound.get(superName).add(new ClassWrapper(loaded_class));
-                        break;
-                    }
+            for (Class<?> superClass = loaded_class.getSuperclass();
+                    superClass != null;
+                    superClass = superClass.getSuperclass()) {
+                String superName = superClass.getCanonicalName();
+                if (mClassesFound.containsKey(superName)) {
+                    mClassesFound.get(superName).add(new ClassWrapper(loaded_class));
+                    break;
                 }
             }
-        } finally {
-            Closeables.closeQuietly(zis);
         }
 
         return mClassesFound;
@@ -298,7 +427,7 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
     protected Class<?> findClass(String name) throws ClassNotFoundException {
         try {
             // try to find the class in the cache
-            Class<?> cached_class = mClassCache.get(name);
+            Class<?> cached_class = getCachedClass(name);
             if (cached_class == ClassNotFoundException.class) {
                 // we already know we can't find this class, don't try again
                 throw new ClassNotFoundException(name);
@@ -313,7 +442,9 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
             } else {
                 // if the class can't be found, record a CNFE class in the map so
                 // that we don't try to reload it next time
-                mClassCache.put(name, ClassNotFoundException.class);
+                synchronized (mClassCache) {
+                    mClassCache.put(name, ClassNotFoundException.class);
+                }
                 throw new ClassNotFoundException(name);
             }
         } catch (ClassNotFoundException e) {
@@ -323,6 +454,12 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
         }
     }
 
+    private Class<?> getCachedClass(String name) {
+        synchronized (mClassCache) {
+            return mClassCache.get(name);
+        }
+    }
+
     /**
      * Defines a class based on its binary data and caches the resulting class object.
      *
@@ -331,14 +468,24 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
      * @return The class defined
      * @throws ClassFormatError if defineClass failed.
      */
-    private Class<?> defineAndCacheClass(String name, byte[] data) throws ClassFormatError {
-        Class<?> cached_class;
+    private synchronized Class<?> defineAndCacheClass(String name, byte[] data)
+            throws ClassFormatError {
+        // the class may have been defined by another thread in the meantime.
+        Class<?> cached_class = getCachedClass(name);
+        if (cached_class != null && cached_class != ClassNotFoundException.class) {
+            return cached_class;
+        }
+
         cached_class = defineClass(null, data, 0, data.length);
 
         if (cached_class != null) {
             // Add new class to the cache class and remove it from the zip entry data cache
-            mClassCache.put(name, cached_class);
-            mEntryCache.remove(name);
+            synchronized (mClassCache) {
+                mClassCache.put(name, cached_class);
+            }
+            synchronized (mEntryCache) {
+                mEntryCache.remove(name);
+            }
         }
         return cached_class;
     }
@@ -354,92 +501,50 @@ public class AndroidJarLoader extends ClassLoader implements IAndroidClassLoader
      * @throws InvalidAttributeValueException
      * @throws IOException
      */
-    private synchronized byte[] loadClassData(String className)
+    private byte[] loadClassData(String className)
             throws InvalidAttributeValueException, IOException {
 
-        byte[] data = mEntryCache.get(className);
-        if (data != null) {
-            return data;
+        synchronized (mEntryCache) {
+            byte[] data = mEntryCache.get(className);
+            if (data != null) {
+                return data;
+            }
         }
 
         // The name is a binary name. Something like "android.R", or "android.R$id".
         // Make a path out of it.
-        String entryName = className.replaceAll("\\.", "/") + SdkConstants.DOT_CLASS; //$NON-NLS-1$ //$NON-NLS-2$
-
-       // create streams to read the intermediary archive
-        FileInputStream fis = new FileInputStream(mOsFrameworkLocation);
-        ZipInputStream zis = new ZipInputStream(fis);
-        try {
-            // loop on the entries of the intermediary package and put them in the final package.
-            ZipEntry entry;
-
-            while ((entry = zis.getNextEntry()) != null) {
-                // get the name of the entry.
-                String currEntryName = entry.getName();
-
-                if (currEntryName.equals(entryName)) {
-                    long entrySize = entry.getSize();
-                    if (entrySize > Integer.MAX_VALUE) {
-                        throw new InvalidAttributeValueException();
-                    }
-
-                    data = readZipData(zis, (int)entrySize);
-                    return data;
-                }
-            }
+        String entryName = className.replace('.', '/') + SdkConstants.DOT_CLASS;
 
+        ZipFile zipFile = getZipFile();
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
             return null;
-        } finally {
-            zis.close();
         }
+
+        return readZipData(zipFile, entry);
     }
 
     /**
-     * Reads data for the <em>current</em> entry from the zip input stream.
+     * Reads the data of an entry of the zip file.
      *
-     * @param zis The Zip input stream
-     * @param entrySize The entry size. -1 if unknown.
-     * @return The new data for the <em>current</em> entry.
-     * @throws IOException If ZipInputStream.read() fails.
+     * @param zipFile The zip file
+     * @param entry The entry to read.
+     * @return The data of the entry.
+     * @throws IOException If the entry cannot be read.
+     * @throws InvalidAttributeValueException If the entry is too large.
      */
-    private byte[] readZipData(ZipInputStream zis, int entrySize) throws IOException {
-        int block_size = 1024;
-        int data_size = entrySize < 1 ? block_size : entrySize;
-        int offset = 0;
-        byte[] data = new byte[data_size];
-
-        while(zis.available() != 0) {
-            int count = zis.read(data, offset, data_size - offset);
-            if (count < 0) {  // read data is done
-                break;
-            }
-            offset += count;
-
-            if (entrySize >= 1 && offset >= entrySize) {  // we know the size and we're done
-                break;
-            }
-
-            // if we don't know the entry size and we're not done reading,
-            // expand the data buffer some more.
-            if (offset >= data_size) {
-                byte[] temp = new byte[data_size + block_size];
-                System.arraycopy(data, 0, temp, 0, data_size);
-                data_size += block_size;
-                data = temp;
-                block_size *= 2;
-            }
+    private byte[] readZipData(ZipFile zipFile, ZipEntry entry)
+            throws IOException, InvalidAttributeValueException {
+        if (entry.getSize() > Integer.MAX_VALUE) {
+            throw new InvalidAttributeValueException();
         }
 
-        if (offset < data_size) {
-            // buffer was allocated too large, trim it
-            byte[] temp = new byte[offset];
-            if (offset > 0) {
-                System.arraycopy(data, 0, temp, 0, offset);
-            }
-            data = temp;
+        InputStream is = zipFile.getInputStream(entry);
+        try {
+            return ByteStreams.toByteArray(is);
+        } finally {
+            Closeables.closeQuietly(is);
         }
-
-        return data;
     }
 
     /**
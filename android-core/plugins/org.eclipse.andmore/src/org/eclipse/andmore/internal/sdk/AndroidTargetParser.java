@@ -52,8 +52,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.management.InvalidAttributeValueException;
-
 /**
  * Parser for the platform data in an SDK.
  * <p/>
@@ -84,244 +82,271 @@ public final class AndroidTargetParser {
      * @return True if the SDK path was valid and parsing has been attempted.
      */
     public IStatus run(IProgressMonitor monitor) {
-        try {
-            SubMonitor progress = SubMonitor.convert(monitor,
-                    String.format("Parsing SDK %1$s", mAndroidTarget.getName()),
-                    16);
+        TargetDataCache cache = TargetDataCache.load(mAndroidTarget);
+        if (cache != null) {
+            try {
+                return parse(monitor, cache, null);
+            } catch (Exception e) {
+                // the cache does not match the platform, parse it again.
+                AndmoreAndroidPlugin.log(e, "Discarding the cache of target %1$s", //$NON-NLS-1$
+                        mAndroidTarget.getName());
+                TargetDataCache.delete(mAndroidTarget);
+            }
+        }
 
-            AndroidTargetData targetData = new AndroidTargetData(mAndroidTarget);
+        AndroidJarLoader classLoader = AndroidJarLoader.acquireLoader(mAndroidTarget);
+        try {
+            return parse(monitor, null, classLoader);
+        } catch (Exception e) {
+            AndmoreAndroidPlugin.logAndPrintError(e, TAG, "SDK parser failed"); //$NON-NLS-1$
+            AndmoreAndroidPlugin.printToConsole("SDK parser failed", e.getMessage());
+            return new Status(IStatus.ERROR, AndmoreAndroidPlugin.PLUGIN_ID, "SDK parser failed", e);
+        } finally {
+            AndroidJarLoader.releaseLoader(classLoader);
+        }
+    }
 
-            // parse the rest of the data.
+    /**
+     * Parses the framework and stores the result in the {@link Sdk}.
+     *
+     * @param monitor A progress monitor. Can be null. Caller is responsible for calling done.
+     * @param cache the cached class data of the target, or null to read it from the platform
+     *            and write it to the cache.
+     * @param classLoader the loader of the framework jar, used when there is no cache.
+     */
+    private IStatus parse(IProgressMonitor monitor, TargetDataCache cache,
+            AndroidJarLoader classLoader) throws Exception {
+        SubMonitor progress = SubMonitor.convert(monitor,
+                String.format("Parsing SDK %1$s", mAndroidTarget.getName()),
+                16);
 
-            AndroidJarLoader classLoader =
-                new AndroidJarLoader(mAndroidTarget.getPath(IAndroidTarget.ANDROID_JAR));
+        AndroidTargetData targetData = new AndroidTargetData(mAndroidTarget);
 
-            preload(classLoader, progress.newChild(40, SubMonitor.SUPPRESS_NONE));
+        // parse the rest of the data.
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        // classes are read from the jar on demand, so there is no need to preload them.
+        // When the class data is cached, the jar is not read at all.
 
-            // get the permissions
-            progress.subTask("Permissions");
-            String[] permissionValues = collectPermissions(classLoader);
-            progress.worked(1);
+        // get the permissions
+        progress.subTask("Permissions");
+        String[] permissionValues = cache != null ?
+                cache.getPermissions() : collectPermissions(classLoader);
+        progress.worked(1);
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            // get the action and category values for the Intents.
-            progress.subTask("Intents");
-            ArrayList<String> activity_actions = new ArrayList<String>();
-            ArrayList<String> broadcast_actions = new ArrayList<String>();
-            ArrayList<String> service_actions = new ArrayList<String>();
-            ArrayList<String> categories = new ArrayList<String>();
-            collectIntentFilterActionsAndCategories(activity_actions, broadcast_actions,
-                    service_actions, categories);
-            progress.worked(1);
-
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        // get the action and category values for the Intents.
+        progress.subTask("Intents");
+        ArrayList<String> activity_actions = new ArrayList<String>();
+        ArrayList<String> broadcast_actions = new ArrayList<String>();
+        ArrayList<String> service_actions = new ArrayList<String>();
+        ArrayList<String> categories = new ArrayList<String>();
+        collectIntentFilterActionsAndCategories(activity_actions, broadcast_actions,
+                service_actions, categories);
+        progress.worked(1);
+
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            // gather the attribute definition
-            progress.subTask("Attributes definitions");
-            AttrsXmlParser attrsXmlParser = new AttrsXmlParser(
-                    mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES),
-                    AndmoreAndroidPlugin.getDefault(),
-                    1000);
-            attrsXmlParser.preload();
-
-            progress.worked(1);
-
-            progress.subTask("Manifest definitions");
-            AttrsXmlParser attrsManifestXmlParser = new AttrsXmlParser(
-                    mAndroidTarget.getPath(IAndroidTarget.MANIFEST_ATTRIBUTES),
-                    attrsXmlParser,
-                    AndmoreAndroidPlugin.getDefault(), 1100);
-            attrsManifestXmlParser.preload();
-            progress.worked(1);
-
-            Collection<ViewClassInfo> mainList = new ArrayList<ViewClassInfo>();
-            Collection<ViewClassInfo> groupList = new ArrayList<ViewClassInfo>();
-
-            // collect the layout/widgets classes
-            progress.subTask("Widgets and layouts");
-            collectLayoutClasses(classLoader, attrsXmlParser, mainList, groupList,
-                    progress.newChild(1));
-
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        // gather the attribute definition
+        progress.subTask("Attributes definitions");
+        AttrsXmlParser attrsXmlParser = new AttrsXmlParser(
+                mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES),
+                AndmoreAndroidPlugin.getDefault(),
+                1000);
+        attrsXmlParser.preload();
+
+        progress.worked(1);
+
+        progress.subTask("Manifest definitions");
+        AttrsXmlParser attrsManifestXmlParser = new AttrsXmlParser(
+                mAndroidTarget.getPath(IAndroidTarget.MANIFEST_ATTRIBUTES),
+                attrsXmlParser,
+                AndmoreAndroidPlugin.getDefault(), 1100);
+        attrsManifestXmlParser.preload();
+        progress.worked(1);
+
+        Collection<ViewClassInfo> mainList = new ArrayList<ViewClassInfo>();
+        Collection<ViewClassInfo> groupList = new ArrayList<ViewClassInfo>();
+
+        // collect the layout/widgets classes
+        progress.subTask("Widgets and layouts");
+        IProgressMonitor layoutMonitor = progress.newChild(1);
+        TargetDataCache.Recorder layoutRecorder = null;
+        IAndroidClassLoader layoutClassLoader;
+        if (cache != null) {
+            layoutClassLoader = cache.getLayoutClassLoader();
+        } else {
+            layoutRecorder = new TargetDataCache.Recorder(
+                    getLayoutClassLoader(classLoader, layoutMonitor));
+            layoutClassLoader = layoutRecorder;
+        }
+        boolean layoutsCollected = collectLayoutClasses(layoutClassLoader, attrsXmlParser,
+                mainList, groupList, layoutMonitor);
 
-            ViewClassInfo[] layoutViewsInfo = mainList.toArray(
-                    new ViewClassInfo[mainList.size()]);
-            ViewClassInfo[] layoutGroupsInfo = groupList.toArray(
-                    new ViewClassInfo[groupList.size()]);
-            mainList.clear();
-            groupList.clear();
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            // collect the preferences classes.
-            collectPreferenceClasses(classLoader, attrsXmlParser, mainList, groupList,
-                    progress.newChild(1));
+        ViewClassInfo[] layoutViewsInfo = mainList.toArray(
+                new ViewClassInfo[mainList.size()]);
+        ViewClassInfo[] layoutGroupsInfo = groupList.toArray(
+                new ViewClassInfo[groupList.size()]);
+        mainList.clear();
+        groupList.clear();
+
+        // collect the preferences classes.
+        TargetDataCache.Recorder preferenceRecorder = null;
+        IAndroidClassLoader preferenceClassLoader;
+        if (cache != null) {
+            preferenceClassLoader = cache.getPreferenceClassLoader();
+        } else {
+            preferenceRecorder = new TargetDataCache.Recorder(classLoader);
+            preferenceClassLoader = preferenceRecorder;
+        }
+        boolean preferencesCollected = collectPreferenceClasses(preferenceClassLoader,
+                attrsXmlParser, mainList, groupList, progress.newChild(1));
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            ViewClassInfo[] preferencesInfo = mainList.toArray(new ViewClassInfo[mainList.size()]);
-            ViewClassInfo[] preferenceGroupsInfo = groupList.toArray(
-                    new ViewClassInfo[groupList.size()]);
+        ViewClassInfo[] preferencesInfo = mainList.toArray(new ViewClassInfo[mainList.size()]);
+        ViewClassInfo[] preferenceGroupsInfo = groupList.toArray(
+                new ViewClassInfo[groupList.size()]);
 
-            Map<String, DeclareStyleableInfo> xmlMenuMap = collectMenuDefinitions(attrsXmlParser);
-            Map<String, DeclareStyleableInfo> xmlSearchableMap = collectSearchableDefinitions(
-                    attrsXmlParser);
-            Map<String, DeclareStyleableInfo> manifestMap = collectManifestDefinitions(
-                                                                            attrsManifestXmlParser);
-            Map<String, Map<String, Integer>> enumValueMap = attrsXmlParser.getEnumFlagValues();
+        Map<String, DeclareStyleableInfo> xmlMenuMap = collectMenuDefinitions(attrsXmlParser);
+        Map<String, DeclareStyleableInfo> xmlSearchableMap = collectSearchableDefinitions(
+                attrsXmlParser);
+        Map<String, DeclareStyleableInfo> manifestMap = collectManifestDefinitions(
+                                                                        attrsManifestXmlParser);
+        Map<String, Map<String, Integer>> enumValueMap = attrsXmlParser.getEnumFlagValues();
 
-            Map<String, DeclareStyleableInfo> xmlAppWidgetMap = null;
-            if (mAndroidTarget.getVersion().getApiLevel() >= 3) {
-                xmlAppWidgetMap = collectAppWidgetDefinitions(attrsXmlParser);
-            }
+        Map<String, DeclareStyleableInfo> xmlAppWidgetMap = null;
+        if (mAndroidTarget.getVersion().getApiLevel() >= 3) {
+            xmlAppWidgetMap = collectAppWidgetDefinitions(attrsXmlParser);
+        }
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            // From the information that was collected, create the pieces that will be put in
-            // the PlatformData object.
-            AndroidManifestDescriptors manifestDescriptors = new AndroidManifestDescriptors();
-            manifestDescriptors.updateDescriptors(manifestMap);
-            progress.worked(1);
+        // From the information that was collected, create the pieces that will be put in
+        // the PlatformData object.
+        AndroidManifestDescriptors manifestDescriptors = new AndroidManifestDescriptors();
+        manifestDescriptors.updateDescriptors(manifestMap);
+        progress.worked(1);
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            LayoutDescriptors layoutDescriptors = new LayoutDescriptors();
-            layoutDescriptors.updateDescriptors(layoutViewsInfo, layoutGroupsInfo,
-                    attrsXmlParser.getDeclareStyleableList(), mAndroidTarget);
-            progress.worked(1);
+        LayoutDescriptors layoutDescriptors = new LayoutDescriptors();
+        layoutDescriptors.updateDescriptors(layoutViewsInfo, layoutGroupsInfo,
+                attrsXmlParser.getDeclareStyleableList(), mAndroidTarget);
+        progress.worked(1);
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            MenuDescriptors menuDescriptors = new MenuDescriptors();
-            menuDescriptors.updateDescriptors(xmlMenuMap);
-            progress.worked(1);
+        MenuDescriptors menuDescriptors = new MenuDescriptors();
+        menuDescriptors.updateDescriptors(xmlMenuMap);
+        progress.worked(1);
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            OtherXmlDescriptors otherXmlDescriptors = new OtherXmlDescriptors();
-            otherXmlDescriptors.updateDescriptors(
-                    xmlSearchableMap,
-                    xmlAppWidgetMap,
-                    preferencesInfo,
-                    preferenceGroupsInfo);
-            progress.worked(1);
+        OtherXmlDescriptors otherXmlDescriptors = new OtherXmlDescriptors();
+        otherXmlDescriptors.updateDescriptors(
+                xmlSearchableMap,
+                xmlAppWidgetMap,
+                preferencesInfo,
+                preferenceGroupsInfo);
+        progress.worked(1);
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            DrawableDescriptors drawableDescriptors = new DrawableDescriptors();
-            Map<String, DeclareStyleableInfo> map = attrsXmlParser.getDeclareStyleableList();
-            drawableDescriptors.updateDescriptors(map);
-            progress.worked(1);
+        DrawableDescriptors drawableDescriptors = new DrawableDescriptors();
+        Map<String, DeclareStyleableInfo> map = attrsXmlParser.getDeclareStyleableList();
+        drawableDescriptors.updateDescriptors(map);
+        progress.worked(1);
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            AnimatorDescriptors animatorDescriptors = new AnimatorDescriptors();
-            animatorDescriptors.updateDescriptors(map);
-            progress.worked(1);
+        AnimatorDescriptors animatorDescriptors = new AnimatorDescriptors();
+        animatorDescriptors.updateDescriptors(map);
+        progress.worked(1);
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
-
-            AnimDescriptors animDescriptors = new AnimDescriptors();
-            animDescriptors.updateDescriptors(map);
-            progress.worked(1);
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
 
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
+        AnimDescriptors animDescriptors = new AnimDescriptors();
+        animDescriptors.updateDescriptors(map);
+        progress.worked(1);
 
-            ColorDescriptors colorDescriptors = new ColorDescriptors();
-            colorDescriptors.updateDescriptors(map);
-            progress.worked(1);
-
-            // load the framework resources.
-            ResourceRepository frameworkResources =
-                    ResourceManager.getInstance().loadFrameworkResources(mAndroidTarget);
-            progress.worked(1);
-
-            // now load the layout lib bridge
-            LayoutLibrary layoutBridge =  LayoutLibrary.load(
-                    mAndroidTarget.getPath(IAndroidTarget.LAYOUT_LIB),
-                    AndmoreAndroidPlugin.getDefault(),
-                    "ADT plug-in");
-
-            progress.worked(1);
-
-            // and finally create the PlatformData with all that we loaded.
-            targetData.setExtraData(
-                    manifestDescriptors,
-                    layoutDescriptors,
-                    menuDescriptors,
-                    otherXmlDescriptors,
-                    drawableDescriptors,
-                    animatorDescriptors,
-                    animDescriptors,
-                    colorDescriptors,
-                    enumValueMap,
-                    permissionValues,
-                    activity_actions.toArray(new String[activity_actions.size()]),
-                    broadcast_actions.toArray(new String[broadcast_actions.size()]),
-                    service_actions.toArray(new String[service_actions.size()]),
-                    categories.toArray(new String[categories.size()]),
-                    mAndroidTarget.getPlatformLibraries(),
-                    mAndroidTarget.getOptionalLibraries(),
-                    frameworkResources,
-                    layoutBridge);
-
-            targetData.setAttributeMap(attrsXmlParser.getAttributeMap());
-
-            Sdk.getCurrent().setTargetData(mAndroidTarget, targetData);
-
-            return Status.OK_STATUS;
-        } catch (Exception e) {
-            AndmoreAndroidPlugin.logAndPrintError(e, TAG, "SDK parser failed"); //$NON-NLS-1$
-            AndmoreAndroidPlugin.printToConsole("SDK parser failed", e.getMessage());
-            return new Status(IStatus.ERROR, AndmoreAndroidPlugin.PLUGIN_ID, "SDK parser failed", e);
+        if (progress.isCanceled()) {
+            return Status.CANCEL_STATUS;
         }
-    }
 
-    /**
-     * Preloads all "interesting" classes from the framework SDK jar.
-     * <p/>
-     * Currently this preloads all classes from the framework jar
-     *
-     * @param classLoader The framework SDK jar classloader
-     * @param monitor A progress monitor. Can be null. Caller is responsible for calling done.
-     */
-    private void preload(AndroidJarLoader classLoader, IProgressMonitor monitor) {
-        try {
-            classLoader.preLoadClasses("" /* all classes */,        //$NON-NLS-1$
-                    mAndroidTarget.getName(),                       // monitor task label
-                    monitor);
-        } catch (InvalidAttributeValueException e) {
-            AndmoreAndroidPlugin.log(e, "Problem preloading classes"); //$NON-NLS-1$
-        } catch (IOException e) {
-            AndmoreAndroidPlugin.log(e, "Problem preloading classes"); //$NON-NLS-1$
+        ColorDescriptors colorDescriptors = new ColorDescriptors();
+        colorDescriptors.updateDescriptors(map);
+        progress.worked(1);
+
+        // load the framework resources.
+        ResourceRepository frameworkResources =
+                ResourceManager.getInstance().loadFrameworkResources(mAndroidTarget);
+        progress.worked(1);
+
+        // now load the layout lib bridge
+        LayoutLibrary layoutBridge =  LayoutLibrary.load(
+                mAndroidTarget.getPath(IAndroidTarget.LAYOUT_LIB),
+                AndmoreAndroidPlugin.getDefault(),
+                "ADT plug-in");
+
+        progress.worked(1);
+
+        // and finally create the PlatformData with all that we loaded.
+        targetData.setExtraData(
+                manifestDescriptors,
+                layoutDescriptors,
+                menuDescriptors,
+                otherXmlDescriptors,
+                drawableDescriptors,
+                animatorDescriptors,
+                animDescriptors,
+                colorDescriptors,
+                enumValueMap,
+                permissionValues,
+                activity_actions.toArray(new String[activity_actions.size()]),
+                broadcast_actions.toArray(new String[broadcast_actions.size()]),
+                service_actions.toArray(new String[service_actions.size()]),
+                categories.toArray(new String[categories.size()]),
+                mAndroidTarget.getPlatformLibraries(),
+                mAndroidTarget.getOptionalLibraries(),
+                frameworkResources,
+                layoutBridge);
+
+        targetData.setAttributeMap(attrsXmlParser.getAttributeMap());
+
+        Sdk.getCurrent().setTargetData(mAndroidTarget, targetData);
+
+        // only cache complete data, so that a partial parse is attempted again next time.
+        if (cache == null && layoutsCollected && preferencesCollected) {
+            TargetDataCache.save(mAndroidTarget, permissionValues, layoutRecorder,
+                    preferenceRecorder);
         }
+
+        return Status.OK_STATUS;
     }
 
     /**
@@ -436,27 +461,20 @@ public final class AndroidTargetParser {
     }
 
     /**
-     * Collects all layout classes information from the class loader and the
-     * attrs.xml and sets the corresponding structures in the resource manager.
+     * Returns the class loader used to collect the layout classes: the widget list of the
+     * platform if it can be read, or the framework SDK jar otherwise.
      *
      * @param classLoader The framework SDK jar classloader in case we cannot get the widget from
      * the platform directly
-     * @param attrsXmlParser The parser of the attrs.xml file
-     * @param mainList the Collection to receive the main list of {@link ViewClassInfo}.
-     * @param groupList the Collection to receive the group list of {@link ViewClassInfo}.
      * @param monitor A progress monitor. Can be null. Caller is responsible for calling done.
      */
-    private void collectLayoutClasses(AndroidJarLoader classLoader,
-            AttrsXmlParser attrsXmlParser,
-            Collection<ViewClassInfo> mainList,
-            Collection<ViewClassInfo> groupList,
+    private IAndroidClassLoader getLayoutClassLoader(AndroidJarLoader classLoader,
             IProgressMonitor monitor) {
-        LayoutParamsParser ldp = null;
         try {
             WidgetClassLoader loader = new WidgetClassLoader(
                     mAndroidTarget.getPath(IAndroidTarget.WIDGETS));
             if (loader.parseWidgetList(monitor)) {
-                ldp = new LayoutParamsParser(loader, attrsXmlParser);
+                return loader;
             }
             // if the parsing failed, we'll use the old loader below.
         } catch (FileNotFoundException e) {
@@ -464,10 +482,27 @@ public final class AndroidTargetParser {
             // the file does not exist, we'll use the old loader below.
         }
 
-        if (ldp == null) {
-            ldp = new LayoutParamsParser(classLoader, attrsXmlParser);
-        }
-        ldp.parseLayoutClasses(monitor);
+        return classLoader;
+    }
+
+    /**
+     * Collects all layout classes information from the class loader and the
+     * attrs.xml and sets the corresponding structures in the resource manager.
+     *
+     * @param classLoader The class loader giving access to the widgets of the platform
+     * @param attrsXmlParser The parser of the attrs.xml file
+     * @param mainList the Collection to receive the main list of {@link ViewClassInfo}.
+     * @param groupList the Collection to receive the group list of {@link ViewClassInfo}.
+     * @param monitor A progress monitor. Can be null. Caller is responsible for calling done.
+     * @return true if the layout classes were collected without errors.
+     */
+    private boolean collectLayoutClasses(IAndroidClassLoader classLoader,
+            AttrsXmlParser attrsXmlParser,
+            Collection<ViewClassInfo> mainList,
+            Collection<ViewClassInfo> groupList,
+            IProgressMonitor monitor) {
+        LayoutParamsParser ldp = new LayoutParamsParser(classLoader, attrsXmlParser);
+        boolean parsed = ldp.parseLayoutClasses(monitor);
 
         List<ViewClassInfo> views = ldp.getViews();
         List<ViewClassInfo> groups = ldp.getGroups();
@@ -475,7 +510,10 @@ public final class AndroidTargetParser {
         if (views != null && groups != null) {
             mainList.addAll(views);
             groupList.addAll(groups);
+            return parsed;
         }
+
+        return false;
     }
 
     /**
@@ -487,14 +525,15 @@ public final class AndroidTargetParser {
      * @param mainList the Collection to receive the main list of {@link ViewClassInfo}.
      * @param groupList the Collection to receive the group list of {@link ViewClassInfo}.
      * @param monitor A progress monitor. Can be null. Caller is responsible for calling done.
+     * @return true if the preference classes were collected.
      */
-    private void collectPreferenceClasses(AndroidJarLoader classLoader,
+    private boolean collectPreferenceClasses(IAndroidClassLoader classLoader,
             AttrsXmlParser attrsXmlParser, Collection<ViewClassInfo> mainList,
             Collection<ViewClassInfo> groupList, IProgressMonitor monitor) {
         LayoutParamsParser ldp = new LayoutParamsParser(classLoader, attrsXmlParser);
 
         try {
-            ldp.parsePreferencesClasses(monitor);
+            boolean parsed = ldp.parsePreferencesClasses(monitor);
 
             List<ViewClassInfo> prefs = ldp.getViews();
             List<ViewClassInfo> groups = ldp.getGroups();
@@ -502,7 +541,11 @@ public final class AndroidTargetParser {
             if (prefs != null && groups != null) {
                 mainList.addAll(prefs);
                 groupList.addAll(groups);
+                return parsed;
             }
+        } catch (TargetDataCache.MissingDataException e) {
+            // let the caller discard the cache.
+            throw e;
         } catch (NoClassDefFoundError e) {
             AndmoreAndroidPlugin.logAndPrintError(e, TAG,
                     "Collect preferences failed, class %1$s not found in %2$s",
@@ -513,6 +556,8 @@ public final class AndroidTargetParser {
             AndmoreAndroidPlugin.printErrorToConsole("Android Framework Parser",
                     "failed to collect preference classes");
         }
+
+        return false;
     }
 
     /**
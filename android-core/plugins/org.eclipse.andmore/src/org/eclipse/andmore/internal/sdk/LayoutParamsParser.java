@@ -128,22 +128,29 @@ public class LayoutParamsParser {
      * <p/>
      * Note on Vocabulary: FQCN=Fully Qualified Class Name (e.g. "my.package.class$innerClass")
      * @param monitor A progress monitor. Can be null. Caller is responsible for calling done.
+     * @return true if the classes were parsed, false if an error was logged.
      */
-    public void parseLayoutClasses(IProgressMonitor monitor) {
-        parseClasses(monitor,
+    public boolean parseLayoutClasses(IProgressMonitor monitor) {
+        return parseClasses(monitor,
                 SdkConstants.CLASS_VIEW,
                 SdkConstants.CLASS_VIEWGROUP,
                 SdkConstants.CLASS_VIEWGROUP_LAYOUTPARAMS);
     }
 
-    public void parsePreferencesClasses(IProgressMonitor monitor) {
-        parseClasses(monitor,
+    /**
+     * Parses the preference classes.
+     *
+     * @param monitor A progress monitor. Can be null. Caller is responsible for calling done.
+     * @return true if the classes were parsed, false if an error was logged.
+     */
+    public boolean parsePreferencesClasses(IProgressMonitor monitor) {
+        return parseClasses(monitor,
                 SdkConstants.CLASS_PREFERENCE,
                 SdkConstants.CLASS_PREFERENCEGROUP,
                 null /* paramsClassName */ );
     }
 
-    private void parseClasses(IProgressMonitor monitor,
+    private boolean parseClasses(IProgressMonitor monitor,
             String rootClassName,
             String groupClassName,
             String paramsClassName) {
@@ -201,6 +208,8 @@ public class LayoutParamsParser {
                 }
                 progress.worked(1);
             }
+
+            return true;
         } catch (ClassNotFoundException e) {
             AndmoreAndroidPlugin.log(e, "Problem loading class %1$s or %2$s",  //$NON-NLS-1$
                     rootClassName, groupClassName);
@@ -211,6 +220,8 @@ public class LayoutParamsParser {
         } catch (IOException e) {
             AndmoreAndroidPlugin.log(e, "Problem loading classes"); //$NON-NLS-1$
         }
+
+        return false;
     }
 
     /**
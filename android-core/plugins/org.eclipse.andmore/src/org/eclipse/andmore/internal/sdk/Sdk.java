@@ -913,6 +913,9 @@ public final class Sdk  {
             }
 
             mTargetDataMap.clear();
+
+            // release the framework jars so that they can be replaced.
+            AndroidJarLoader.disposeLoaders();
         }
     }
 
@@ -965,6 +968,9 @@ public final class Sdk  {
             }
 
             mTargetDataMap.clear();
+
+            // release the framework jars so that they can be replaced.
+            AndroidJarLoader.disposeLoaders();
         }
     }
 
@@ -0,0 +1,674 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.sdk;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.sdklib.IAndroidTarget;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.andmore.internal.sdk.IAndroidClassLoader.IClassDescriptor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.InvalidAttributeValueException;
+
+/**
+ * A persistent cache of the data that {@link AndroidTargetParser} extracts from the classes of
+ * a platform.
+ * <p/>
+ * Finding the layout and preference classes of a platform requires defining most of the
+ * classes of its android.jar, which dominates the time needed to load a target. The cache
+ * records the answers of the class loaders used by the {@link LayoutParamsParser}s, along with
+ * the permissions of the platform, so that they can be replayed on the next start without
+ * touching android.jar. The rest of the target data is still built from the attrs.xml files.
+ * <p/>
+ * A cache file is only used if it was written by the same version of the cache for the same
+ * target, and if the platform files it was built from have not changed since.
+ */
+final class TargetDataCache {
+
+    private static final String CACHE_FOLDER = "targetcache";  //$NON-NLS-1$
+    private static final String DOT_CACHE = ".bin";            //$NON-NLS-1$
+
+    private static final int MAGIC = 0x41544443; // ATDC
+    /** Version of the cache format. Must be incremented whenever the format changes. */
+    private static final int VERSION = 1;
+
+    /** Marker for values that were never requested while recording. */
+    private static final int UNKNOWN = -2;
+    /** Marker for null values. */
+    private static final int NONE = -1;
+
+    /**
+     * Exception thrown when the parser requests class data that is not in the cache, which
+     * means the cache is out of date.
+     */
+    static final class MissingDataException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MissingDataException(String message) {
+            super(message);
+        }
+    }
+
+    private final String[] mPermissions;
+    private final IAndroidClassLoader mLayoutClassLoader;
+    private final IAndroidClassLoader mPreferenceClassLoader;
+
+    private TargetDataCache(String[] permissions, IAndroidClassLoader layoutClassLoader,
+            IAndroidClassLoader preferenceClassLoader) {
+        mPermissions = permissions;
+        mLayoutClassLoader = layoutClassLoader;
+        mPreferenceClassLoader = preferenceClassLoader;
+    }
+
+    /** Returns the permissions of the platform. */
+    @NonNull
+    String[] getPermissions() {
+        return mPermissions;
+    }
+
+    /** Returns a class loader replaying the lookups of the layout classes. */
+    @NonNull
+    IAndroidClassLoader getLayoutClassLoader() {
+        return mLayoutClassLoader;
+    }
+
+    /** Returns a class loader replaying the lookups of the preference classes. */
+    @NonNull
+    IAndroidClassLoader getPreferenceClassLoader() {
+        return mPreferenceClassLoader;
+    }
+
+    /**
+     * Loads the cached data of a target.
+     *
+     * @param target the target
+     * @return the cached data, or null if there is no valid cache for the target.
+     */
+    @Nullable
+    static TargetDataCache load(@NonNull IAndroidTarget target) {
+        File file = getCacheFile(target);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !in.readUTF().equals(target.hashString())) {
+                return null;
+            }
+
+            for (String path : getSourcePaths(target)) {
+                File source = new File(path);
+                if (in.readLong() != source.length() || in.readLong() != source.lastModified()) {
+                    return null;
+                }
+            }
+
+            String[] permissions = new String[in.readInt()];
+            for (int i = 0; i < permissions.length; i++) {
+                permissions[i] = in.readUTF();
+            }
+
+            IAndroidClassLoader layoutClassLoader = new CachedClassLoader(in);
+            IAndroidClassLoader preferenceClassLoader = new CachedClassLoader(in);
+
+            return new TargetDataCache(permissions, layoutClassLoader, preferenceClassLoader);
+        } catch (IOException e) {
+            // corrupted or truncated cache, ignore it.
+            return null;
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Saves the data of a target.
+     *
+     * @param target the target
+     * @param permissions the permissions of the platform
+     * @param layoutRecorder the recorder used to collect the layout classes
+     * @param preferenceRecorder the recorder used to collect the preference classes
+     */
+    static void save(@NonNull IAndroidTarget target, @NonNull String[] permissions,
+            @NonNull Recorder layoutRecorder, @NonNull Recorder preferenceRecorder) {
+        File file = getCacheFile(target);
+        if (file == null) {
+            return;
+        }
+
+        File folder = file.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            return;
+        }
+
+        // write to a temporary file first so that a partially written cache is never used.
+        File tempFile = new File(folder, file.getName() + ".tmp"); //$NON-NLS-1$
+        DataOutputStream out = null;
+        boolean success = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(target.hashString());
+
+            for (String path : getSourcePaths(target)) {
+                File source = new File(path);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+            }
+
+            out.writeInt(permissions.length);
+            for (String permission : permissions) {
+                out.writeUTF(permission);
+            }
+
+            layoutRecorder.write(out);
+            preferenceRecorder.write(out);
+            out.close();
+            out = null;
+
+            file.delete();
+            success = tempFile.renameTo(file);
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Failed to write the cache of target %1$s", //$NON-NLS-1$
+                    target.getName());
+        } finally {
+            Closeables.closeQuietly(out);
+            if (!success) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the cached data of a target.
+     */
+    static void delete(@NonNull IAndroidTarget target) {
+        File file = getCacheFile(target);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Nullable
+    private static File getCacheFile(@NonNull IAndroidTarget target) {
+        AndmoreAndroidPlugin plugin = AndmoreAndroidPlugin.getDefault();
+        String hashString = target.hashString();
+        if (plugin == null || hashString == null) {
+            return null;
+        }
+
+        File folder = plugin.getStateLocation().append(CACHE_FOLDER).toFile();
+        String name = Hashing.sha1().hashString(hashString, Charsets.UTF_8).toString();
+        return new File(folder, name + DOT_CACHE);
+    }
+
+    /** Returns the platform files that the cached data is extracted from. */
+    @NonNull
+    private static String[] getSourcePaths(@NonNull IAndroidTarget target) {
+        return new String[] {
+                target.getPath(IAndroidTarget.ANDROID_JAR),
+                target.getPath(IAndroidTarget.WIDGETS),
+        };
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * A class loader recording the answers of another class loader, so that they can be
+     * written to the cache.
+     * <p/>
+     * Only the properties of the classes that are actually requested are recorded, since some
+     * of them cannot be computed for every class.
+     */
+    static final class Recorder implements IAndroidClassLoader {
+        private final IAndroidClassLoader mDelegate;
+
+        /** The recorded classes, by the descriptor of the delegate. */
+        private final Map<IClassDescriptor, RecordedClass> mClasses =
+                new HashMap<IClassDescriptor, RecordedClass>();
+        private final List<RecordedClass> mClassList = new ArrayList<RecordedClass>();
+
+        /** The results of {@link #findClassesDerivingFrom(String, String[])}. */
+        private final List<Map<String, ArrayList<IClassDescriptor>>> mDerivingQueries =
+                new ArrayList<Map<String, ArrayList<IClassDescriptor>>>();
+        private final List<String> mDerivingPackages = new ArrayList<String>();
+
+        /** The results of {@link #getClass(String)}, null for classes that were not found. */
+        private final Map<String, RecordedClass> mGetClassResults =
+                new LinkedHashMap<String, RecordedClass>();
+        private final List<String> mNotFoundClasses = new ArrayList<String>();
+
+        Recorder(@NonNull IAndroidClassLoader delegate) {
+            mDelegate = delegate;
+        }
+
+        private RecordedClass wrap(IClassDescriptor descriptor) {
+            if (descriptor == null) {
+                return null;
+            }
+
+            RecordedClass recorded = mClasses.get(descriptor);
+            if (recorded == null) {
+                recorded = new RecordedClass(this, mClassList.size(), descriptor);
+                mClasses.put(descriptor, recorded);
+                mClassList.add(recorded);
+            }
+            return recorded;
+        }
+
+        @Override
+        public HashMap<String, ArrayList<IClassDescriptor>> findClassesDerivingFrom(
+                String rootPackage, String[] superClasses)
+                throws IOException, InvalidAttributeValueException, ClassFormatError {
+            HashMap<String, ArrayList<IClassDescriptor>> found =
+                    mDelegate.findClassesDerivingFrom(rootPackage, superClasses);
+
+            HashMap<String, ArrayList<IClassDescriptor>> result =
+                    new HashMap<String, ArrayList<IClassDescriptor>>();
+            for (Map.Entry<String, ArrayList<IClassDescriptor>> entry : found.entrySet()) {
+                ArrayList<IClassDescriptor> list = new ArrayList<IClassDescriptor>();
+                for (IClassDescriptor descriptor : entry.getValue()) {
+                    list.add(wrap(descriptor));
+                }
+                result.put(entry.getKey(), list);
+            }
+
+            mDerivingPackages.add(rootPackage);
+            mDerivingQueries.add(result);
+            return result;
+        }
+
+        @Override
+        public IClassDescriptor getClass(String className) throws ClassNotFoundException {
+            try {
+                RecordedClass recorded = wrap(mDelegate.getClass(className));
+                mGetClassResults.put(className, recorded);
+                return recorded;
+            } catch (ClassNotFoundException e) {
+                mNotFoundClasses.add(className);
+                throw e;
+            }
+        }
+
+        @Override
+        public String getSource() {
+            return mDelegate.getSource();
+        }
+
+        private static int getId(IClassDescriptor descriptor) {
+            return descriptor == null ? NONE : ((RecordedClass) descriptor).mId;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(mClassList.size());
+            for (RecordedClass c : mClassList) {
+                out.writeBoolean(c.mNameKnown);
+                if (c.mNameKnown) {
+                    writeString(out, c.mName);
+                }
+                out.writeBoolean(c.mSimpleNameKnown);
+                if (c.mSimpleNameKnown) {
+                    writeString(out, c.mSimpleName);
+                }
+                out.writeByte(c.mInstantiableKnown ? (c.mInstantiable ? 1 : 0) : UNKNOWN);
+                out.writeInt(c.mSuperClassKnown ? getId(c.mSuperClass) : UNKNOWN);
+                out.writeInt(c.mEnclosingClassKnown ? getId(c.mEnclosingClass) : UNKNOWN);
+                if (c.mDeclaredClasses == null) {
+                    out.writeInt(UNKNOWN);
+                } else {
+                    out.writeInt(c.mDeclaredClasses.length);
+                    for (IClassDescriptor declared : c.mDeclaredClasses) {
+                        out.writeInt(getId(declared));
+                    }
+                }
+            }
+
+            out.writeInt(mDerivingQueries.size());
+            for (int i = 0; i < mDerivingQueries.size(); i++) {
+                out.writeUTF(mDerivingPackages.get(i));
+                Map<String, ArrayList<IClassDescriptor>> result = mDerivingQueries.get(i);
+                out.writeInt(result.size());
+                for (Map.Entry<String, ArrayList<IClassDescriptor>> entry : result.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (IClassDescriptor descriptor : entry.getValue()) {
+                        out.writeInt(getId(descriptor));
+                    }
+                }
+            }
+
+            out.writeInt(mGetClassResults.size());
+            for (Map.Entry<String, RecordedClass> entry : mGetClassResults.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(getId(entry.getValue()));
+            }
+
+            out.writeInt(mNotFoundClasses.size());
+            for (String className : mNotFoundClasses) {
+                out.writeUTF(className);
+            }
+        }
+    }
+
+    /** A class descriptor recording the answers of another descriptor. */
+    private static final class RecordedClass implements IClassDescriptor {
+        private final Recorder mRecorder;
+        private final int mId;
+        private final IClassDescriptor mDelegate;
+
+        private boolean mNameKnown;
+        private String mName;
+        private boolean mSimpleNameKnown;
+        private String mSimpleName;
+        private boolean mInstantiableKnown;
+        private boolean mInstantiable;
+        private boolean mSuperClassKnown;
+        private IClassDescriptor mSuperClass;
+        private boolean mEnclosingClassKnown;
+        private IClassDescriptor mEnclosingClass;
+        private IClassDescriptor[] mDeclaredClasses;
+
+        RecordedClass(Recorder recorder, int id, IClassDescriptor delegate) {
+            mRecorder = recorder;
+            mId = id;
+            mDelegate = delegate;
+        }
+
+        @Override
+        public String getFullClassName() {
+            if (!mNameKnown) {
+                mName = mDelegate.getFullClassName();
+                mNameKnown = true;
+            }
+            return mName;
+        }
+
+        @Override
+        public String getSimpleName() {
+            if (!mSimpleNameKnown) {
+                mSimpleName = mDelegate.getSimpleName();
+                mSimpleNameKnown = true;
+            }
+            return mSimpleName;
+        }
+
+        @Override
+        public boolean isInstantiable() {
+            if (!mInstantiableKnown) {
+                mInstantiable = mDelegate.isInstantiable();
+                mInstantiableKnown = true;
+            }
+            return mInstantiable;
+        }
+
+        @Override
+        public IClassDescriptor getSuperclass() {
+            if (!mSuperClassKnown) {
+                mSuperClass = mRecorder.wrap(mDelegate.getSuperclass());
+                mSuperClassKnown = true;
+            }
+            return mSuperClass;
+        }
+
+        @Override
+        public IClassDescriptor getEnclosingClass() {
+            if (!mEnclosingClassKnown) {
+                mEnclosingClass = mRecorder.wrap(mDelegate.getEnclosingClass());
+                mEnclosingClassKnown = true;
+            }
+            return mEnclosingClass;
+        }
+
+        @Override
+        public IClassDescriptor[] getDeclaredClasses() {
+            if (mDeclaredClasses == null) {
+                IClassDescriptor[] declared = mDelegate.getDeclaredClasses();
+                mDeclaredClasses = new IClassDescriptor[declared.length];
+                for (int i = 0; i < declared.length; i++) {
+                    mDeclaredClasses[i] = mRecorder.wrap(declared[i]);
+                }
+            }
+            return mDeclaredClasses.clone();
+        }
+    }
+
+    /**
+     * A class loader replaying the answers recorded by a {@link Recorder}.
+     * <p/>
+     * Requesting anything that was not recorded throws a {@link MissingDataException}.
+     */
+    private static final class CachedClassLoader implements IAndroidClassLoader {
+        private final List<String> mDerivingPackages = new ArrayList<String>();
+        private final List<Map<String, List<CachedClass>>> mDerivingQueries =
+                new ArrayList<Map<String, List<CachedClass>>>();
+        private final Map<String, CachedClass> mGetClassResults =
+                new HashMap<String, CachedClass>();
+        private final List<String> mNotFoundClasses = new ArrayList<String>();
+        private int mNextQuery;
+
+        CachedClassLoader(DataInputStream in) throws IOException {
+            CachedClass[] classes = new CachedClass[in.readInt()];
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = new CachedClass();
+            }
+
+            for (CachedClass c : classes) {
+                c.mNameKnown = in.readBoolean();
+                if (c.mNameKnown) {
+                    c.mName = readString(in);
+                }
+                c.mSimpleNameKnown = in.readBoolean();
+                if (c.mSimpleNameKnown) {
+                    c.mSimpleName = readString(in);
+                }
+                c.mInstantiable = in.readByte();
+                c.mSuperClassKnown = readClass(in, classes, c, true);
+                c.mEnclosingClassKnown = readClass(in, classes, c, false);
+                int declaredCount = in.readInt();
+                if (declaredCount != UNKNOWN) {
+                    c.mDeclaredClasses = new CachedClass[declaredCount];
+                    for (int i = 0; i < declaredCount; i++) {
+                        c.mDeclaredClasses[i] = getClass(classes, in.readInt());
+                    }
+                }
+            }
+
+            int queryCount = in.readInt();
+            for (int i = 0; i < queryCount; i++) {
+                mDerivingPackages.add(in.readUTF());
+                Map<String, List<CachedClass>> result = new HashMap<String, List<CachedClass>>();
+                int keyCount = in.readInt();
+                for (int j = 0; j < keyCount; j++) {
+                    String key = in.readUTF();
+                    List<CachedClass> list = new ArrayList<CachedClass>();
+                    int count = in.readInt();
+                    for (int k = 0; k < count; k++) {
+                        list.add(getClass(classes, in.readInt()));
+                    }
+                    result.put(key, list);
+                }
+                mDerivingQueries.add(result);
+            }
+
+            int getClassCount = in.readInt();
+            for (int i = 0; i < getClassCount; i++) {
+                String className = in.readUTF();
+                mGetClassResults.put(className, getClass(classes, in.readInt()));
+            }
+
+            int notFoundCount = in.readInt();
+            for (int i = 0; i < notFoundCount; i++) {
+                mNotFoundClasses.add(in.readUTF());
+            }
+        }
+
+        private static CachedClass getClass(CachedClass[] classes, int id) throws IOException {
+            if (id == NONE) {
+                return null;
+            }
+            if (id < 0 || id >= classes.length) {
+                throw new IOException("Invalid class index " + id); //$NON-NLS-1$
+            }
+            return classes[id];
+        }
+
+        private static boolean readClass(DataInputStream in, CachedClass[] classes,
+                CachedClass c, boolean superClass) throws IOException {
+            int id = in.readInt();
+            if (id == UNKNOWN) {
+                return false;
+            }
+
+            if (superClass) {
+                c.mSuperClass = getClass(classes, id);
+            } else {
+                c.mEnclosingClass = getClass(classes, id);
+            }
+            return true;
+        }
+
+        @Override
+        public HashMap<String, ArrayList<IClassDescriptor>> findClassesDerivingFrom(
+                String rootPackage, String[] superClasses) {
+            // queries are replayed in the order they were recorded.
+            if (mNextQuery >= mDerivingQueries.size()
+                    || !mDerivingPackages.get(mNextQuery).equals(rootPackage)) {
+                throw new MissingDataException("Query not in cache: " + rootPackage); //$NON-NLS-1$
+            }
+
+            Map<String, List<CachedClass>> result = mDerivingQueries.get(mNextQuery++);
+            HashMap<String, ArrayList<IClassDescriptor>> map =
+                    new HashMap<String, ArrayList<IClassDescriptor>>();
+            for (Map.Entry<String, List<CachedClass>> entry : result.entrySet()) {
+                map.put(entry.getKey(), new ArrayList<IClassDescriptor>(entry.getValue()));
+            }
+            return map;
+        }
+
+        @Override
+        public IClassDescriptor getClass(String className) throws ClassNotFoundException {
+            if (mNotFoundClasses.contains(className)) {
+                throw new ClassNotFoundException(className);
+            }
+            if (!mGetClassResults.containsKey(className)) {
+                throw new MissingDataException("Class not in cache: " + className); //$NON-NLS-1$
+            }
+            return mGetClassResults.get(className);
+        }
+
+        @Override
+        public String getSource() {
+            return "Cache"; //$NON-NLS-1$
+        }
+    }
+
+    /** A class descriptor replaying the answers recorded by a {@link RecordedClass}. */
+    private static final class CachedClass implements IClassDescriptor {
+        private boolean mNameKnown;
+        private String mName;
+        private boolean mSimpleNameKnown;
+        private String mSimpleName;
+        private byte mInstantiable = UNKNOWN;
+        private boolean mSuperClassKnown;
+        private CachedClass mSuperClass;
+        private boolean mEnclosingClassKnown;
+        private CachedClass mEnclosingClass;
+        private CachedClass[] mDeclaredClasses;
+
+        private MissingDataException notCached() {
+            return new MissingDataException("Class data not in cache: " + mName); //$NON-NLS-1$
+        }
+
+        @Override
+        public String getFullClassName() {
+            if (!mNameKnown) {
+                throw notCached();
+            }
+            return mName;
+        }
+
+        @Override
+        public String getSimpleName() {
+            if (!mSimpleNameKnown) {
+                throw notCached();
+            }
+            return mSimpleName;
+        }
+
+        @Override
+        public boolean isInstantiable() {
+            if (mInstantiable == UNKNOWN) {
+                throw notCached();
+            }
+            return mInstantiable == 1;
+        }
+
+        @Override
+        public IClassDescriptor getSuperclass() {
+            if (!mSuperClassKnown) {
+                throw notCached();
+            }
+            return mSuperClass;
+        }
+
+        @Override
+        public IClassDescriptor getEnclosingClass() {
+            if (!mEnclosingClassKnown) {
+                throw notCached();
+            }
+            return mEnclosingClass;
+        }
+
+        @Override
+        public IClassDescriptor[] getDeclaredClasses() {
+            if (mDeclaredClasses == null) {
+                throw notCached();
+            }
+            return mDeclaredClasses.clone();
+        }
+    }
+}